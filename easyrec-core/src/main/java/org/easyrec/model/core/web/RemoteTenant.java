@@ -74,6 +74,8 @@ public class RemoteTenant {
     public static final String SCHEDULER_ENABLED = "AUTO_RULEMINER.enabled";
     public static final String SCHEDULER_EXECUTION_TIME = "AUTO_RULEMINER.executionTime";
     public static final String SCHEDULER_DEFAULT_EXECUTION_TIME = "02:00";
+    public static final String SCHEDULER_PRIORITY = "AUTO_RULEMINER.priority";
+    public static final String SCHEDULER_DEFAULT_PRIORITY = "0";
 
     public static final String AUTO_ARCHIVER_ENABLED = "AUTO_ARCHIVER.enabled";
     public static final String AUTO_ARCHIVER_TIME_RANGE = "AUTO_ARCHIVER.timeRange";
@@ -455,6 +457,23 @@ public class RemoteTenant {
         }
     }
 
+    /**
+     * Returns the priority of the tenant's scheduled generator runs if set
+     * otherwise the default priority. Tenants with a higher priority are
+     * served first when several tenants wait for the plugin scheduler.
+     *
+     * @return priority
+     */
+    public int getSchedulerPriority() {
+        String priority = tenantConfigProperties.getProperty(SCHEDULER_PRIORITY);
+
+        try {
+            return Integer.parseInt(Strings.isNullOrEmpty(priority) ? SCHEDULER_DEFAULT_PRIORITY : priority.trim());
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(SCHEDULER_DEFAULT_PRIORITY);
+        }
+    }
+
     /**
      * Returns the time range for actions that are moved to the archive table.
      *
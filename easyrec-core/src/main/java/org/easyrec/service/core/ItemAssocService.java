@@ -23,6 +23,10 @@ import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.transfer.IAConstraintVO;
 import org.easyrec.service.BaseItemAssocService;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Describes methods to access item association rules (within the recommender engine).
  * This is a concrete (Integer) typed interface of the generic {@link org.easyrec.service.BaseItemAssocService} interface.
@@ -43,4 +47,11 @@ import org.easyrec.service.BaseItemAssocService;
 public interface ItemAssocService extends
         BaseItemAssocService<ItemAssocVO<Integer,Integer>, Integer, AssociatedItemVO<Integer, Integer>, Integer, Integer, ItemVO<Integer, Integer>, IAConstraintVO<Integer, Integer>, Integer> {
 
+    /**
+     * Returns the associated items of several items with as few queries as possible, see
+     * {@link org.easyrec.store.dao.core.ItemAssocDAO#getItemsTo(java.util.Collection, Integer, Integer, IAConstraintVO)}.
+     */
+    public Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> getItemsTo(
+            Collection<ItemVO<Integer, Integer>> itemsFrom, Integer assocTypeId, Integer itemToTypeId,
+            IAConstraintVO<Integer, Integer> constraints);
 }
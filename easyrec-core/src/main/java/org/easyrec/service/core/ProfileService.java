@@ -300,4 +300,12 @@ public interface ProfileService {
      */
     public List<ItemVO<Integer, Integer>> getItemsByItemType(Integer tenantId, String itemType, int count);
 
+    /**
+     * Rebuilds the index of the configured profile dimensions of a tenant from the stored profiles.
+     *
+     * @param tenantId the tenantId of the profiles
+     * @return the number of indexed profiles
+     */
+    public int reindexProfiles(Integer tenantId);
+
 }
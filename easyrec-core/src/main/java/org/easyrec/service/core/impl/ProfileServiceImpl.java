@@ -26,26 +26,17 @@ import org.easyrec.service.core.exception.FieldNotFoundException;
 import org.easyrec.service.core.exception.MultipleProfileFieldsFoundException;
 import org.easyrec.service.domain.TypeMappingService;
 import org.easyrec.store.dao.IDMappingDAO;
+import org.easyrec.store.dao.core.CachedProfile;
 import org.easyrec.store.dao.core.ProfileDAO;
 import org.w3c.dom.*;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.validation.SchemaFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.net.URL;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -63,7 +54,7 @@ public class ProfileServiceImpl implements ProfileService {
     private SchemaFactory sf;
     private DocumentBuilderFactory dbf;
 
-    private Transformer trans;
+    private ProfileXMLProcessor xmlProcessor;
 
     // logging
     private final Log logger = LogFactory.getLog(this.getClass());
@@ -91,13 +82,7 @@ public class ProfileServiceImpl implements ProfileService {
             logger.debug("Parser loaded from: " + url);
         }
 
-        TransformerFactory tf = TransformerFactory.newInstance();
-        try {
-            trans = tf.newTransformer();
-            trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-        } catch (Exception e) {
-
-        }
+        xmlProcessor = new ProfileXMLProcessor(dbf, ProfileXMLProcessor.DEFAULT_XPATH_CACHE_SIZE);
     }
 
     public boolean storeProfile(Integer tenantId, Integer itemId, String itemTypeId, String profileXML) {
@@ -161,19 +146,37 @@ public class ProfileServiceImpl implements ProfileService {
 
         try {
             int itemIntID = idMappingDAO.lookup(itemId);
+            Integer itemTypeId = typeMappingService.getIdOfItemType(tenantId, itemType);
 
-            XPathFactory xpf = XPathFactory.newInstance();
+            // cached profiles remember the values extracted before
+            CachedProfile cachedProfile = profileDAO.getCachedProfile(tenantId, itemIntID, itemTypeId);
 
-            Document doc = getProfileXMLDocument(tenantId, itemIntID, itemType);
+            if (cachedProfile != null) {
+                List<String> values = cachedProfile.getFieldValues(dimensionXPath);
 
-            XPath xp = xpf.newXPath();
-            NodeList nodeList = (NodeList) xp.evaluate(dimensionXPath, doc, XPathConstants.NODESET);
+                if (values == null)
+                    values = cachedProfile.putFieldValues(dimensionXPath,
+                            xmlProcessor.extractValues(cachedProfile.getProfileXML(), dimensionXPath));
 
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                Node node = nodeList.item(i);
-                result.add(node.getTextContent());
+                result.addAll(values);
+                return result;
             }
 
+            // indexed dimensions are read from the profile index, profiles not indexed yet are parsed
+            if (profileDAO.isIndexedDimension(dimensionXPath)) {
+                List<String> values = profileDAO.getIndexedDimensionValues(tenantId, itemIntID, itemTypeId,
+                        dimensionXPath);
+
+                if (!values.isEmpty()) {
+                    result.addAll(values);
+                    return result;
+                }
+            }
+
+            // simple paths are read without building a DOM
+            result.addAll(xmlProcessor.extractValues(profileDAO.getProfile(tenantId, itemIntID, itemTypeId),
+                    dimensionXPath));
+
         } catch (Exception e) {
             logger.error("Error loading profile field: " + e.getMessage());
             e.printStackTrace();
@@ -209,35 +212,26 @@ public class ProfileServiceImpl implements ProfileService {
     public boolean insertOrUpdateMultiDimension(Integer tenantId, Integer itemId, String itemType, String dimensionXPath,
                                                 List<String> values) {
 
-        XPathFactory xpf = XPathFactory.newInstance();
-
         try {
             // load and parse the profile
             Document doc = getProfileXMLDocument(tenantId, itemId, itemType);
-            // check if the element exists
-            Node node = null;
-            Node parent = null;
-            XPath xp = xpf.newXPath();
+            // the existing values are discarded; evaluated once instead of one generated XPath per value
+            NodeList nodeList = xmlProcessor.evaluateNodes(dimensionXPath, doc);
+            Set<String> existingValues = new HashSet<String>();
+            for (int i = 0; i < nodeList.getLength(); i++)
+                existingValues.add(nodeList.item(i).getTextContent());
             for (Iterator<String> it = values.iterator(); it.hasNext(); ) {
-                String value = it.next();
-                // look if value already exists
-                node = (Node) xp.evaluate(dimensionXPath + "[text()='" + value + "']", doc, XPathConstants.NODE);
-                // if value exists, value can be discarded
-                if (node != null) {
-                    // optimization: if a node was found, store the parent; later no new XPath evaluation is necessary
-                    parent = node.getParentNode();
-                    it.remove();
-                }
+                if (existingValues.contains(it.next())) it.remove();
             }
             if (values.isEmpty()) return true; // nothing left to do
             String parentPath = dimensionXPath.substring(0, dimensionXPath.lastIndexOf("/"));
-            parent = (Node) xp.evaluate(parentPath, doc, XPathConstants.NODE);
+            Node parent = xmlProcessor.evaluateNode(parentPath, doc);
             // find path to parent
             if (parent == null) {
                 String tmpPath = parentPath;
                 while (parent == null) {
                     tmpPath = parentPath.substring(0, tmpPath.lastIndexOf("/"));
-                    parent = (Node) xp.evaluate(tmpPath, doc, XPathConstants.NODE);
+                    parent = xmlProcessor.evaluateNode(tmpPath, doc);
                 }
                 parent = insertElement(doc, parent, parentPath.substring(tmpPath.length()), null);
             }
@@ -248,11 +242,7 @@ public class ProfileServiceImpl implements ProfileService {
                 parent.appendChild(el);
             }
 
-            StringWriter writer = new StringWriter();
-            Result result = new StreamResult(writer);
-            trans.transform(new DOMSource(doc), result);
-            writer.close();
-            String xml = writer.toString();
+            String xml = xmlProcessor.serialize(doc);
             logger.debug(xml);
             storeProfile(tenantId, itemId, itemType, xml);
 
@@ -274,13 +264,11 @@ public class ProfileServiceImpl implements ProfileService {
     public boolean insertOrUpdateSimpleDimension(Integer tenantId, Integer itemId, String itemTypeId,
                                                  String dimensionXPath, String value) {
 
-        XPathFactory xpf = XPathFactory.newInstance();
         try {
             // load and parse the profile
             Document doc = getProfileXMLDocument(tenantId, itemId, itemTypeId);
             // check if the element exists
-            XPath xp = xpf.newXPath();
-            Node node = (Node) xp.evaluate(dimensionXPath, doc, XPathConstants.NODE);
+            Node node = xmlProcessor.evaluateNode(dimensionXPath, doc);
             // if the element exists, just update the value
             if (node != null) {
                 // if value doesn't change, there is no need to alter the profile and write it to database
@@ -291,18 +279,14 @@ public class ProfileServiceImpl implements ProfileService {
                 String tmpPath = dimensionXPath;
                 while (node == null) {
                     tmpPath = dimensionXPath.substring(0, tmpPath.lastIndexOf("/"));
-                    node = (Node) xp.evaluate(tmpPath, doc, XPathConstants.NODE);
+                    node = xmlProcessor.evaluateNode(tmpPath, doc);
                 }
                 // found the correct node to insert or ended at Document root, hence insert
                 insertElement(doc, node, dimensionXPath.substring(tmpPath.length()/*, dimensionXPath.length()*/),
                         value);
             }
 
-            StringWriter writer = new StringWriter();
-            Result result = new StreamResult(writer);
-            trans.transform(new DOMSource(doc), result);
-            writer.close();
-            String xml = writer.toString();
+            String xml = xmlProcessor.serialize(doc);
             logger.debug(xml);
             storeProfile(tenantId, itemId, itemTypeId, xml);
 
@@ -328,15 +312,12 @@ public class ProfileServiceImpl implements ProfileService {
         try {
             int itemIntID = idMappingDAO.lookup(itemId);
 
-            XPathFactory xpf = XPathFactory.newInstance();
-
             // load and parse the profile
             Document doc = getProfileXMLDocument(tenantId, itemIntID, itemTypeId);
 
             // follow the XPath from bottom to top until you find the first existing path element
-            XPath xp = xpf.newXPath();
             String tmpPath = dimensionXPath;
-            NodeList nodeList = (NodeList) xp.evaluate(tmpPath, doc, XPathConstants.NODESET);
+            NodeList nodeList = xmlProcessor.evaluateNodes(tmpPath, doc);
             if (nodeList.getLength() > 1)
                 throw new MultipleProfileFieldsFoundException(nodeList.getLength() + " nodes found.");
 
@@ -348,17 +329,13 @@ public class ProfileServiceImpl implements ProfileService {
                     tmpPath = dimensionXPath.substring(0, tmpPath.lastIndexOf("/"));
                     if ("".equals(tmpPath))
                         tmpPath = "/";
-                    node = (Node) xp.evaluate(tmpPath, doc, XPathConstants.NODE);
+                    node = xmlProcessor.evaluateNode(tmpPath, doc);
                 }
                 insertElement(doc, node,
                         dimensionXPath.substring(tmpPath.length()), value);
             }
 
-            StringWriter writer = new StringWriter();
-            Result result = new StreamResult(writer);
-            trans.transform(new DOMSource(doc), result);
-            writer.close();
-            String xml = writer.toString();
+            String xml = xmlProcessor.serialize(doc);
             logger.debug(xml);
             storeProfile(tenantId, itemId, itemTypeId, xml);
         } catch (Exception e) {
@@ -387,16 +364,12 @@ public class ProfileServiceImpl implements ProfileService {
     public boolean deleteProfileField(Integer tenantId, String itemId, String itemType, String deleteXPath)
             throws XPathExpressionException, TransformerException, SAXException, FieldNotFoundException {
 
-        XPathFactory xpf = XPathFactory.newInstance();
         try {
             // load and parse the profile
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(new InputSource(new StringReader(
-                    getProfile(tenantId, itemId, itemType))));
+            Document doc = xmlProcessor.parse(getProfile(tenantId, itemId, itemType));
 
             // check if the element exists
-            XPath xp = xpf.newXPath();
-            NodeList nodeList = (NodeList) xp.evaluate(deleteXPath, doc, XPathConstants.NODESET);
+            NodeList nodeList = xmlProcessor.evaluateNodes(deleteXPath, doc);
 
             if (nodeList.getLength() == 0)
                 throw new FieldNotFoundException("Field does not exist in this profile!");
@@ -405,11 +378,7 @@ public class ProfileServiceImpl implements ProfileService {
                 node.getParentNode().removeChild(node);
             }
 
-            StringWriter writer = new StringWriter();
-            Result result = new StreamResult(writer);
-            trans.transform(new DOMSource(doc), result);
-            writer.close();
-            String xml = writer.toString();
+            String xml = xmlProcessor.serialize(doc);
             logger.debug(xml);
             storeProfile(tenantId, itemId, itemType, xml);
 
@@ -446,6 +415,10 @@ public class ProfileServiceImpl implements ProfileService {
         return profileDAO.getItemsByItemType(tenantId, typeMappingService.getIdOfItemType(tenantId, itemType), count);
     }
 
+    public int reindexProfiles(Integer tenantId) {
+        return profileDAO.reindexProfiles(tenantId);
+    }
+
     /**
      * Inserts a new element and value into an XML Document at the position given in xPathExpression
      * relative to the Node given in startNode.
@@ -472,13 +445,8 @@ public class ProfileServiceImpl implements ProfileService {
     }
 
     private Document getProfileXMLDocument(Integer tenantId, Integer itemId, String itemTypeId)
-            throws ParserConfigurationException, SAXException, IOException {
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        String profile = getProfile(tenantId, itemId, itemTypeId);
-        if (profile == null || profile.equals(""))
-            return db.newDocument();
-        else
-            return db.parse(new InputSource(new StringReader(profile)));
+            throws SAXException, IOException {
+        return xmlProcessor.parse(getProfile(tenantId, itemId, itemTypeId));
     }
 
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2011 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.core.impl;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Parses, queries and serializes profile XML for the {@link ProfileServiceImpl}.
+ * <p/>
+ * <code>DocumentBuilder</code>s, <code>Transformer</code>s and compiled <code>XPathExpression</code>s are not thread
+ * safe, so every thread gets its own instances, which are reused for all its profiles. The compiled expressions are
+ * kept in a per thread LRU map of at most <code>xPathCacheSize</code> expressions.
+ * <p/>
+ * {@link #extractValues(String, String)} reads the values of simple absolute paths like <code>/profile/genre</code>
+ * with a StAX reader instead of building a DOM.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class ProfileXMLProcessor {
+    public static final int DEFAULT_XPATH_CACHE_SIZE = 256;
+
+    // an absolute path of element names without namespace prefixes, predicates or axes
+    private static final Pattern STREAMABLE_XPATH = Pattern.compile("(/[A-Za-z_][A-Za-z0-9_.\\-]*)+");
+
+    private final DocumentBuilderFactory documentBuilderFactory;
+    private final TransformerFactory transformerFactory;
+    private final XPathFactory xPathFactory;
+    private final XMLInputFactory xmlInputFactory;
+    private final int xPathCacheSize;
+
+    private final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+            synchronized (documentBuilderFactory) {
+                try {
+                    return documentBuilderFactory.newDocumentBuilder();
+                } catch (ParserConfigurationException e) {
+                    throw new IllegalStateException("Creating a DocumentBuilder failed.", e);
+                }
+            }
+        }
+    };
+
+    private final ThreadLocal<Transformer> transformer = new ThreadLocal<Transformer>() {
+        @Override
+        protected Transformer initialValue() {
+            synchronized (transformerFactory) {
+                try {
+                    Transformer transformer = transformerFactory.newTransformer();
+                    transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+
+                    return transformer;
+                } catch (TransformerConfigurationException e) {
+                    throw new IllegalStateException("Creating a Transformer failed.", e);
+                }
+            }
+        }
+    };
+
+    private final ThreadLocal<XPathCache> xPathCache = new ThreadLocal<XPathCache>() {
+        @Override
+        protected XPathCache initialValue() {
+            synchronized (xPathFactory) {
+                return new XPathCache(xPathFactory.newXPath());
+            }
+        }
+    };
+
+    /**
+     * @param documentBuilderFactory the factory of the DOM parsers, should be namespace aware
+     * @param xPathCacheSize         the number of compiled XPath expressions kept per thread
+     */
+    public ProfileXMLProcessor(DocumentBuilderFactory documentBuilderFactory, int xPathCacheSize) {
+        if (documentBuilderFactory == null) throw new IllegalArgumentException("Missing 'documentBuilderFactory'");
+        if (xPathCacheSize <= 0) throw new IllegalArgumentException("'xPathCacheSize' must be greater than 0");
+
+        this.documentBuilderFactory = documentBuilderFactory;
+        this.xPathCacheSize = xPathCacheSize;
+
+        transformerFactory = TransformerFactory.newInstance();
+        xPathFactory = XPathFactory.newInstance();
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    }
+
+    /**
+     * Parses a profile, <code>null</code> or an empty string is parsed to an empty document.
+     */
+    public Document parse(String profileXML) throws SAXException, IOException {
+        DocumentBuilder builder = documentBuilder.get();
+
+        try {
+            if (profileXML == null || profileXML.length() == 0) return builder.newDocument();
+
+            return builder.parse(new InputSource(new StringReader(profileXML)));
+        } finally {
+            builder.reset();
+        }
+    }
+
+    public String serialize(Document document) throws TransformerException {
+        StringWriter writer = new StringWriter();
+
+        transformer.get().transform(new DOMSource(document), new StreamResult(writer));
+
+        return writer.toString();
+    }
+
+    /**
+     * Returns the compiled expression from the cache of the current thread. The expression must only be used by the
+     * current thread.
+     */
+    public XPathExpression compile(String xPath) throws XPathExpressionException {
+        XPathCache cache = xPathCache.get();
+        XPathExpression expression = cache.get(xPath);
+
+        if (expression == null) {
+            expression = cache.xPath.compile(xPath);
+            cache.put(xPath, expression);
+        }
+
+        return expression;
+    }
+
+    public NodeList evaluateNodes(String xPath, Object item) throws XPathExpressionException {
+        return (NodeList) compile(xPath).evaluate(item, XPathConstants.NODESET);
+    }
+
+    public Node evaluateNode(String xPath, Object item) throws XPathExpressionException {
+        return (Node) compile(xPath).evaluate(item, XPathConstants.NODE);
+    }
+
+    /**
+     * @return <code>true</code> if {@link #extractValues(String, String)} reads the values of the XPath without
+     *         building a DOM.
+     */
+    public static boolean isStreamable(String xPath) {
+        return xPath != null && STREAMABLE_XPATH.matcher(xPath).matches();
+    }
+
+    /**
+     * Returns the text content of all nodes of a profile matching an XPath, in document order. Simple absolute paths
+     * (see {@link #isStreamable(String)}) are read with a StAX reader, all other XPaths are evaluated on the parsed
+     * profile.
+     */
+    public List<String> extractValues(String profileXML, String xPath)
+            throws XPathExpressionException, SAXException, IOException {
+        if (!isStreamable(xPath)) {
+            NodeList nodes = evaluateNodes(xPath, parse(profileXML));
+            List<String> values = new ArrayList<String>(nodes.getLength());
+
+            for (int i = 0; i < nodes.getLength(); i++)
+                values.add(nodes.item(i).getTextContent());
+
+            return values;
+        }
+
+        List<String> values = new ArrayList<String>();
+
+        if (profileXML == null || profileXML.length() == 0) return values;
+
+        String[] path = xPath.substring(1).split("/");
+
+        try {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new StringReader(profileXML));
+
+            try {
+                // the open elements on the current branch, the first 'matched' of them match the path
+                int depth = 0;
+                int matched = 0;
+                StringBuilder text = null;
+
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            if (matched == depth && depth < path.length && isEmpty(reader.getNamespaceURI()) &&
+                                    path[depth].equals(reader.getLocalName())) {
+                                matched++;
+
+                                if (matched == path.length) text = new StringBuilder();
+                            }
+
+                            depth++;
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            depth--;
+
+                            if (matched > depth) {
+                                if (matched == path.length) {
+                                    values.add(text.toString());
+                                    text = null;
+                                }
+
+                                matched--;
+                            }
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE:
+                            if (text != null)
+                                text.append(reader.getTextCharacters(), reader.getTextStart(),
+                                        reader.getTextLength());
+                            break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
+        }
+
+        return values;
+    }
+
+    private static boolean isEmpty(String namespaceURI) {
+        return namespaceURI == null || namespaceURI.length() == 0;
+    }
+
+    private class XPathCache extends LinkedHashMap<String, XPathExpression> {
+        private static final long serialVersionUID = 1L;
+
+        private final XPath xPath;
+
+        private XPathCache(XPath xPath) {
+            super(16, 0.75f, true);
+
+            this.xPath = xPath;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+            return size() > xPathCacheSize;
+        }
+    }
+}
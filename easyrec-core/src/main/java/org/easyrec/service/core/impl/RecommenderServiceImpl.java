@@ -26,10 +26,13 @@ import org.easyrec.service.core.ActionService;
 import org.easyrec.service.core.ItemAssocService;
 import org.easyrec.service.core.RecommendationHistoryService;
 import org.easyrec.service.core.RecommenderService;
+import org.easyrec.store.dao.core.impl.ItemAssocSnapshotStore;
 import org.springframework.beans.factory.InitializingBean;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.easyrec.util.core.RecommenderUtils.filterAlreadyActedOn;
 import static org.easyrec.util.core.RecommenderUtils.filterDuplicates;
@@ -71,6 +74,7 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
     private ActionService actionService;
     private ItemAssocService itemAssocService;
     private RecommendationHistoryService recommendationHistoryService;
+    private ItemAssocSnapshotStore itemAssocSnapshotStore;
     private Integer maximumNumberOfRelatedItemsPerItem = null;
     private boolean filterResults = true;
 
@@ -98,16 +102,32 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
             Integer tenantId, Integer userId, String sessionId, Integer consideredActionTypeId,
             Integer consideredItemTypeId, Double ratingThreshold, Integer numberOfLastActionsConsidered, Integer assocTypeId,
             Integer requestedItemTypeId) {
-        List<ItemVO<Integer, Integer>> itemsActedOn = actionService
-                .getItemsByUserActionAndType(tenantId, userId, sessionId, consideredActionTypeId, consideredItemTypeId, ratingThreshold,
-                        numberOfLastActionsConsidered);
-        List<AssociatedItemVO<Integer, Integer>> currentAssociatedItems;
+        List<ItemVO<Integer, Integer>> itemsActedOn;
+        // the history used for filtering, null if it has to be read separately
+        List<ItemVO<Integer, Integer>> itemsToFilter = null;
+
+        if (filterResults && ratingThreshold == null &&
+                (consideredItemTypeId == null ? requestedItemTypeId == null :
+                        consideredItemTypeId.equals(requestedItemTypeId))) {
+            // the considered items are the first items of the history used for filtering, read it only once
+            itemsToFilter = actionService.getItemsByUserActionAndType(tenantId, userId, sessionId,
+                    consideredActionTypeId, requestedItemTypeId, null, null);
+            itemsActedOn = numberOfLastActionsConsidered != null && numberOfLastActionsConsidered > 0 &&
+                    numberOfLastActionsConsidered < itemsToFilter.size() ?
+                    itemsToFilter.subList(0, numberOfLastActionsConsidered) : itemsToFilter;
+        } else {
+            itemsActedOn = actionService.getItemsByUserActionAndType(tenantId, userId, sessionId,
+                    consideredActionTypeId, consideredItemTypeId, ratingThreshold, numberOfLastActionsConsidered);
+        }
+
+        Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> associatedItemsPerItem =
+                getItemsTo(tenantId, itemsActedOn, assocTypeId, requestedItemTypeId,
+                        new IAConstraintVO<Integer, Integer>(maximumNumberOfRelatedItemsPerItem, null, tenantId,
+                                true));
         List<RecommendedItemVO<Integer, Integer>> allRecommendedItems = null;
 
         for (ItemVO<Integer, Integer> currentItem : itemsActedOn) {
-            currentAssociatedItems = itemAssocService.getItemsTo(currentItem, assocTypeId, requestedItemTypeId,
-                    new IAConstraintVO<Integer, Integer>(maximumNumberOfRelatedItemsPerItem, null, tenantId,
-                            true));
+            List<AssociatedItemVO<Integer, Integer>> currentAssociatedItems = associatedItemsPerItem.get(currentItem);
             if (currentAssociatedItems != null) {
                 if (allRecommendedItems == null) {
                     allRecommendedItems = convertAssociatedItems(currentAssociatedItems, currentItem);
@@ -120,7 +140,7 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
         // filter duplicates and history
         if (filterResults) {
             allRecommendedItems = doFiltering(tenantId, userId, sessionId, consideredActionTypeId, requestedItemTypeId,
-                    allRecommendedItems, DEFAULT_USE_AVERAGE_PREDICTION_VALUES_FOR_DUPLICATES);
+                    allRecommendedItems, DEFAULT_USE_AVERAGE_PREDICTION_VALUES_FOR_DUPLICATES, itemsToFilter);
         }
 
         // create recommendation object
@@ -144,17 +164,16 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
                                                                                                     ItemVO<Integer, Integer> item,
                                                                                                     Integer filteredActionTypeId,
                                                                                                     Integer requestedItemTypeId) {
-        List<AssociatedItemVO<Integer, Integer>> associatedItems = itemAssocService
-                .getItemsTo(item, assocTypeId, requestedItemTypeId,
-                        new IAConstraintVO<Integer, Integer>(maximumNumberOfRelatedItemsPerItem, null, null,
-                                null, tenantId, true, false));
+        List<AssociatedItemVO<Integer, Integer>> associatedItems = getItemsTo(tenantId, item, assocTypeId,
+                requestedItemTypeId, new IAConstraintVO<Integer, Integer>(maximumNumberOfRelatedItemsPerItem, null,
+                        null, null, tenantId, true, false));
         List<RecommendedItemVO<Integer, Integer>> recommendedItems = convertAssociatedItems(associatedItems,
                 item);
 
         // filter duplicates and history
         if (filterResults) {
             recommendedItems = doFiltering(tenantId, userId, sessionId, filteredActionTypeId, requestedItemTypeId,
-                    recommendedItems, DEFAULT_USE_AVERAGE_PREDICTION_VALUES_FOR_DUPLICATES);
+                    recommendedItems, DEFAULT_USE_AVERAGE_PREDICTION_VALUES_FOR_DUPLICATES, null);
         }
 
         RecommendationVO<Integer, Integer> recommendation = new RecommendationVO<Integer, Integer>(
@@ -200,6 +219,14 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
         return recommendationHistoryService;
     }
 
+    public ItemAssocSnapshotStore getItemAssocSnapshotStore() {
+        return itemAssocSnapshotStore;
+    }
+
+    public void setItemAssocSnapshotStore(ItemAssocSnapshotStore itemAssocSnapshotStore) {
+        this.itemAssocSnapshotStore = itemAssocSnapshotStore;
+    }
+
     public Integer getMaximumNumberOfRelatedItemsPerItem() {
         return maximumNumberOfRelatedItemsPerItem;
     }
@@ -219,6 +246,52 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
 
     //////////////////////////////////////////////////////////////////////////////
     // private methods
+
+    /**
+     * Reads the associated items from the snapshot of the tenant if there is one, otherwise from the database.
+     */
+    private List<AssociatedItemVO<Integer, Integer>> getItemsTo(Integer tenantId, ItemVO<Integer, Integer> item,
+                                                                Integer assocTypeId, Integer requestedItemTypeId,
+                                                                IAConstraintVO<Integer, Integer> constraints) {
+        if (itemAssocSnapshotStore != null) {
+            List<AssociatedItemVO<Integer, Integer>> associatedItems = itemAssocSnapshotStore
+                    .getItemsTo(tenantId, item, assocTypeId, requestedItemTypeId, constraints.getNumberOfResults());
+
+            if (associatedItems != null) return associatedItems;
+        }
+
+        return itemAssocService.getItemsTo(item, assocTypeId, requestedItemTypeId, constraints);
+    }
+
+    /**
+     * Reads the associated items of several items, from the snapshot of the tenant if possible and with one batched
+     * query for the remaining items.
+     */
+    private Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> getItemsTo(
+            Integer tenantId, List<ItemVO<Integer, Integer>> items, Integer assocTypeId, Integer requestedItemTypeId,
+            IAConstraintVO<Integer, Integer> constraints) {
+        if (itemAssocSnapshotStore == null)
+            return itemAssocService.getItemsTo(items, assocTypeId, requestedItemTypeId, constraints);
+
+        Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> associatedItemsPerItem =
+                new HashMap<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>>();
+        List<ItemVO<Integer, Integer>> missingItems = new ArrayList<ItemVO<Integer, Integer>>();
+
+        for (ItemVO<Integer, Integer> item : items) {
+            List<AssociatedItemVO<Integer, Integer>> associatedItems = itemAssocSnapshotStore
+                    .getItemsTo(tenantId, item, assocTypeId, requestedItemTypeId, constraints.getNumberOfResults());
+
+            if (associatedItems != null) associatedItemsPerItem.put(item, associatedItems);
+            else missingItems.add(item);
+        }
+
+        if (!missingItems.isEmpty())
+            associatedItemsPerItem.putAll(
+                    itemAssocService.getItemsTo(missingItems, assocTypeId, requestedItemTypeId, constraints));
+
+        return associatedItemsPerItem;
+    }
+
     private List<RecommendedItemVO<Integer, Integer>> convertAssociatedItems(
             List<AssociatedItemVO<Integer, Integer>> associatedItems,
             ItemVO<Integer, Integer> currentItem) {
@@ -240,13 +313,13 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
                                                                            String sessionId, Integer actionTypeId,
                                                                            Integer itemTypeId,
                                                                            List<RecommendedItemVO<Integer, Integer>> recommendedItems,
-                                                                           boolean useAveragePredictionValues) {
+                                                                           boolean useAveragePredictionValues,
+                                                                           List<ItemVO<Integer, Integer>> itemsActedOn) {
         // filter duplicates 
         recommendedItems = filterDuplicates(recommendedItems, useAveragePredictionValues);
 
-        // filter out shortly acted on items
-        List<ItemVO<Integer, Integer>> itemsActedOn = null;
-        if (userId != null || sessionId != null) {
+        // filter out shortly acted on items, unless the caller already read them
+        if (itemsActedOn == null && (userId != null || sessionId != null)) {
             itemsActedOn = actionService
                     .getItemsByUserActionAndType(tenantId, userId, sessionId, actionTypeId, itemTypeId, null, null);
         }
@@ -91,4 +91,28 @@ public interface BaseProfileDAO<T, I, IT> extends TableCreatingDAO {
 
     public void deactivateProfile(T tenant, I item, IT itemType);
 
+    /**
+     * Returns if the values of a dimension are kept in the profile index. Dimension lookups of indexed
+     * dimensions don't need to evaluate the XPath on the stored profiles.
+     *
+     * @param dimensionXPath the XPath of the dimension, exactly as configured
+     */
+    public boolean isIndexedDimension(String dimensionXPath);
+
+    /**
+     * Returns the text of the nodes matching an indexed dimension of a profile, in document order.
+     *
+     * @return the indexed values or an empty list if the dimension is not indexed, the profile has no such
+     *         node or the profile wasn't indexed yet
+     */
+    public List<String> getIndexedDimensionValues(T tenantId, I itemId, IT itemTypeId, String dimensionXPath);
+
+    /**
+     * Rebuilds the profile index of a tenant from its stored profiles, e.g. after the indexed dimensions were
+     * changed.
+     *
+     * @return the number of indexed profiles
+     */
+    public int reindexProfiles(T tenantId);
+
 }
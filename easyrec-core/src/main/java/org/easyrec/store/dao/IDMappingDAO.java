@@ -17,6 +17,9 @@
  */
 package org.easyrec.store.dao;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * This interface provides methods to map a String IDs to Integers.
  * For an example of a spring bean definition config file see tests.
@@ -59,4 +62,13 @@ public interface IDMappingDAO {
      */
     public String lookup(Integer id);
 
+    /**
+     * Returns the String IDs mapped to the given Integer IDs. The mappings are read with as few queries as possible
+     * (one <code>IN (...)</code> query per chunk of IDs), IDs without a mapping are missing in the result.
+     *
+     * @param ids the Integers to be looked up in the mapping
+     * @return the Strings mapped to the given Integers
+     */
+    public Map<Integer, String> lookupAll(Collection<Integer> ids);
+
 }
@@ -46,5 +46,13 @@ import java.util.List;
 public interface ActionDAO extends
         BaseActionDAO<ActionVO<Integer, Integer>, RankedItemVO<Integer, Integer>, Integer, Integer, ItemVO<Integer, Integer>, RatingVO<Integer, Integer>, Integer, Integer> {
 
+    /**
+     * Inserts the given actions with multi-row insert statements. The generated ids are set on the actions.
+     *
+     * @param actions       the actions to insert
+     * @param useDateFromVO if true the action time of the VO is used, otherwise the current time
+     * @return the number of inserted rows
+     */
+    public int insertActions(List<ActionVO<Integer, Integer>> actions, boolean useDateFromVO);
 
 }
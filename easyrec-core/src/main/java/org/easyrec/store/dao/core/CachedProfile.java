@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core;
+
+import java.util.List;
+
+/**
+ * A profile read through the profile cache of a {@link ProfileDAO} and the values extracted from it per XPath, so
+ * repeated field loads of the same profile neither query the database nor parse the profile again.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public interface CachedProfile {
+
+    /**
+     * @return the profile XML, <code>null</code> if the item has no profile
+     */
+    public String getProfileXML();
+
+    /**
+     * @return the values extracted for the XPath before or <code>null</code>
+     */
+    public List<String> getFieldValues(String xPath);
+
+    /**
+     * Remembers the values extracted from the profile for an XPath.
+     *
+     * @return the values, unmodifiable
+     */
+    public List<String> putFieldValues(String xPath, List<String> values);
+}
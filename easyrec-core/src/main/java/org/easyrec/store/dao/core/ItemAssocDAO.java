@@ -23,6 +23,11 @@ import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.transfer.IAConstraintVO;
 import org.easyrec.store.dao.BaseItemAssocDAO;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 /**
  * This interface provides methods to access {@link org.easyrec.model.core.ItemAssocVO} entries in a SAT recommender database.
  * <p/>
@@ -43,4 +48,37 @@ import org.easyrec.store.dao.BaseItemAssocDAO;
 public interface ItemAssocDAO extends
         BaseItemAssocDAO<ItemAssocVO<Integer, Integer>, AssociatedItemVO<Integer, Integer>, Integer, Integer, ItemVO<Integer, Integer>, IAConstraintVO<Integer, Integer>> {
 
+    /**
+     * Inserts the item associations of an iterator to the database, if some of them already exited the old ones get
+     * overriden. The associations are read from the iterator and written in chunks, so they never need to be held
+     * in memory at once.
+     *
+     * @param itemAssocs Iterator over the item associations to be inserted or updated.
+     * @return Number of item associations inserted or updated
+     */
+    public int insertOrUpdateItemAssocs(Iterator<ItemAssocVO<Integer, Integer>> itemAssocs);
+
+    /**
+     * Opens a sink which inserts (or updates) the item associations added to it in chunks. The sink must be closed
+     * after the last association was added.
+     *
+     * @return a new sink
+     */
+    public ItemAssocSink openItemAssocSink();
+
+    /**
+     * Returns the associated items of several items, like {@link #getItemsTo(Object, Object, Object, Object)} for each
+     * of them but with one query per item type (and chunk of items). The number of results of the constraints is
+     * applied per item.
+     *
+     * @param itemsFrom    the items the associations start from
+     * @param assocTypeId  the assoc type or <code>null</code> for all
+     * @param itemToTypeId the type of the associated items or <code>null</code> for all
+     * @param constraints  the constraints
+     * @return a map from every given item (in the given order) to its associated items, items without associations
+     *         are mapped to an empty list
+     */
+    public Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> getItemsTo(
+            Collection<ItemVO<Integer, Integer>> itemsFrom, Integer assocTypeId, Integer itemToTypeId,
+            IAConstraintVO<Integer, Integer> constraints);
 }
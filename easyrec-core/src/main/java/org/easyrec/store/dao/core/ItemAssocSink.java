@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core;
+
+import org.easyrec.model.core.ItemAssocVO;
+
+/**
+ * Receives item associations which are inserted (or updated if they already exist) in chunks while they are added,
+ * so a caller producing a large number of associations does not need to hold them in memory.
+ * <p/>
+ * A sink is not thread safe and must be closed to write the last chunk.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public interface ItemAssocSink {
+
+    /**
+     * Adds an item association, writes the current chunk if it is full.
+     */
+    public void add(ItemAssocVO<Integer, Integer> itemAssoc);
+
+    /**
+     * Writes all item associations added so far.
+     */
+    public void flush();
+
+    /**
+     * Writes all remaining item associations and releases the sink.
+     */
+    public void close();
+
+    /**
+     * Drops the item associations which weren't written yet and releases the sink. Chunks which were already written
+     * are kept. Does nothing if the sink is closed.
+     */
+    public void discard();
+
+    /**
+     * @return Number of item associations written so far
+     */
+    public int getRowsWritten();
+}
@@ -18,6 +18,7 @@
  */
 package org.easyrec.store.dao.core;
 
+import gnu.trove.map.hash.TIntIntHashMap;
 import org.easyrec.model.core.web.Item;
 import org.easyrec.model.core.transfer.TimeConstraintVO;
 import org.easyrec.model.core.web.RemoteTenant;
@@ -28,7 +29,9 @@ import org.easyrec.model.core.web.statistic.ItemDetails;
 import org.easyrec.store.dao.BasicDAO;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -114,6 +117,19 @@ public interface ItemDAO extends BasicDAO {
     @Nullable
     public Item get(RemoteTenant remoteTenant, String itemId, String itemType);
 
+    /**
+     * This function returns the items of the given type for the given item ids.
+     * Cached items are not queried, all others are read with one <code>IN (...)</code>
+     * query per chunk of ids and put into the cache.
+     *
+     * @param remoteTenant
+     * @param itemType
+     * @param itemIds
+     *
+     * @return the found items mapped by their item id, ids without an item are missing
+     */
+    public Map<String, Item> getAll(RemoteTenant remoteTenant, String itemType, Collection<String> itemIds);
+
     /**
      * This function returns an item (as it is) for the given id.
      * Note: don't forget to update item URLs!
@@ -325,4 +341,14 @@ public interface ItemDAO extends BasicDAO {
      */
     public int getItemTypeIdOfItem(Integer tenantId, Integer itemId);
 
+    /**
+     * Returns the type ids of all items of a tenant with a single query, so generators don't need to call
+     * {@link #getItemTypeIdOfItem(Integer, Integer)} for every item they write a rule for.
+     *
+     * @param tenantId the tenantId of the items
+     *
+     * @return a map from the int id of every item to the id of its item type
+     */
+    public TIntIntHashMap getItemTypeIdsOfItems(Integer tenantId);
+
 }
@@ -37,5 +37,10 @@ import org.easyrec.store.dao.BaseProfileDAO;
  */
 public interface ProfileDAO extends BaseProfileDAO<Integer, Integer, Integer> {
 
-
+    /**
+     * Returns the profile of an item from the profile cache, the profile is loaded and cached on a miss.
+     *
+     * @return the cached profile or <code>null</code> if no profile cache is configured
+     */
+    public CachedProfile getCachedProfile(Integer tenantId, Integer itemId, Integer itemTypeId);
 }
@@ -0,0 +1,553 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.model.core.ActionVO;
+import org.easyrec.store.dao.core.ActionDAO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Buffers actions in a bounded queue and writes them to the database in multi-row batches on a background thread.
+ * <p/>
+ * A batch is flushed as soon as it contains <code>flushSize</code> actions or the oldest action in it waited for
+ * <code>flushLatency</code> milliseconds. When the queue is full the configured {@link BackpressurePolicy} is
+ * applied. On shutdown the queue is drained to the database for at most <code>shutdownTimeout</code> milliseconds,
+ * whatever remains (and every batch that could not be written) is spilled to a file in <code>spillDirectory</code>
+ * and replayed on the next start. Actions inserted while the writer is not running are written synchronously.
+ * <p/>
+ * Note that actions inserted through the writer only get their database id set once their batch is written.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class ActionBatchWriter {
+    /**
+     * Defines what happens to an action if the queue is full.
+     */
+    public enum BackpressurePolicy {
+        /**
+         * the caller waits until there is space in the queue
+         */
+        BLOCK,
+        /**
+         * the caller inserts the action synchronously
+         */
+        SYNCHRONOUS,
+        /**
+         * the action is dropped and counted as rejected
+         */
+        DROP
+    }
+
+    // constants
+    private static final String SPILL_FILE_PREFIX = "actions_";
+    private static final String SPILL_FILE_SUFFIX = ".spill";
+
+    // logging
+    private final Log logger = LogFactory.getLog(this.getClass());
+
+    // configuration
+    private boolean enabled = false;
+    private int queueCapacity = 100000;
+    private int flushSize = 1000;
+    private long flushLatency = 200;
+    private long shutdownTimeout = 10000;
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+    private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+    // state
+    private BlockingQueue<ActionVO<Integer, Integer>> queue;
+    private ActionDAO actionDAO;
+    private Thread writerThread;
+    private volatile boolean running = false;
+    // queueing actions holds the read lock, stopping the writer the write lock, so no action is queued after the
+    // writer was stopped
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+    // not the writer itself, shutdown() holds that monitor while waiting for the writer thread to spill
+    private final Object spillLock = new Object();
+
+    // metrics
+    private final AtomicLong actionsQueued = new AtomicLong();
+    private final AtomicLong actionsWritten = new AtomicLong();
+    private final AtomicLong actionsRejected = new AtomicLong();
+    private final AtomicLong actionsSpilled = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong totalFlushTime = new AtomicLong();
+    private volatile long lastFlushTime = 0;
+    private volatile long maxFlushTime = 0;
+
+    /**
+     * Starts the background writer thread. Actions spilled by a previous shutdown are written first.
+     *
+     * @param actionDAO the DAO used to write batches of actions
+     */
+    public synchronized void start(ActionDAO actionDAO) {
+        if (running) {
+            throw new IllegalStateException("writer is already running!");
+        }
+
+        this.actionDAO = actionDAO;
+        this.queue = new ArrayBlockingQueue<ActionVO<Integer, Integer>>(queueCapacity);
+
+        replaySpillFiles();
+
+        running = true;
+        writerThread = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "ActionBatchWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        if (logger.isInfoEnabled()) {
+            logger.info("started action batch writer: queueCapacity=" + queueCapacity + ", flushSize=" + flushSize +
+                    ", flushLatency=" + flushLatency + "ms, backpressurePolicy=" + backpressurePolicy);
+        }
+    }
+
+    /**
+     * Stops the writer. Pending actions are written to the database until <code>shutdownTimeout</code> elapses, the
+     * remaining actions are spilled to disk.
+     */
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+
+        runningLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+
+        try {
+            writerThread.join(shutdownTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            writerThread.interrupt();
+        }
+
+        // the worker is stopped and nothing is queued anymore, so this drain is the last one
+        List<ActionVO<Integer, Integer>> remaining = new ArrayList<ActionVO<Integer, Integer>>(queue.size());
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            if (writerThread.isAlive()) {
+                spill(remaining);
+            } else {
+                write(remaining);
+            }
+        }
+
+        if (logger.isInfoEnabled()) {
+            logger.info("stopped action batch writer: " + this);
+        }
+    }
+
+    /**
+     * Queues an action for writing. The action time is set to the current time unless <code>useDateFromVO</code> is
+     * set, so the stored time reflects the time the action was received and not the time it was written.
+     *
+     * @param action        the action to queue
+     * @param useDateFromVO if true the action time of the VO is kept
+     * @return 1 if the action was accepted, 0 if it was dropped
+     */
+    public int insertAction(ActionVO<Integer, Integer> action, boolean useDateFromVO) {
+        if (!useDateFromVO || action.getActionTime() == null) {
+            action.setActionTime(new Date(System.currentTimeMillis()));
+        }
+
+        runningLock.readLock().lock();
+        try {
+            if (running) {
+                return enqueue(action);
+            }
+        } finally {
+            runningLock.readLock().unlock();
+        }
+
+        // stopped (or not started yet), the action is written by the caller
+        return actionDAO.insertActions(Collections.singletonList(action), true);
+    }
+
+    private int enqueue(ActionVO<Integer, Integer> action) {
+        if (queue.offer(action)) {
+            actionsQueued.incrementAndGet();
+            return 1;
+        }
+
+        switch (backpressurePolicy) {
+            case BLOCK:
+                try {
+                    queue.put(action);
+                    actionsQueued.incrementAndGet();
+                    return 1;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    actionsRejected.incrementAndGet();
+                    return 0;
+                }
+            case SYNCHRONOUS:
+                return write(Collections.singletonList(action));
+            default:
+                actionsRejected.incrementAndGet();
+                if (logger.isWarnEnabled()) {
+                    logger.warn("action queue is full, dropped action=" + action);
+                }
+                return 0;
+        }
+    }
+
+    private void writeLoop() {
+        List<ActionVO<Integer, Integer>> batch = new ArrayList<ActionVO<Integer, Integer>>(flushSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                ActionVO<Integer, Integer> first = queue.poll(flushLatency, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.currentTimeMillis() + flushLatency;
+                while (batch.size() < flushSize) {
+                    queue.drainTo(batch, flushSize - batch.size());
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (batch.size() >= flushSize || remaining <= 0) {
+                        break;
+                    }
+                    ActionVO<Integer, Integer> next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                // interrupted by shutdown, the current batch is spilled
+                if (!batch.isEmpty()) {
+                    spill(batch);
+                }
+                return;
+            }
+        }
+    }
+
+    private int write(List<ActionVO<Integer, Integer>> batch) {
+        long start = System.currentTimeMillis();
+
+        try {
+            int rowsAffected = actionDAO.insertActions(batch, true);
+
+            long time = System.currentTimeMillis() - start;
+            actionsWritten.addAndGet(batch.size());
+            flushes.incrementAndGet();
+            totalFlushTime.addAndGet(time);
+            lastFlushTime = time;
+            if (time > maxFlushTime) {
+                maxFlushTime = time;
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("wrote " + batch.size() + " actions in " + time + "ms, queue depth=" + queue.size());
+            }
+
+            return rowsAffected;
+        } catch (RuntimeException e) {
+            logger.error("failed to write " + batch.size() + " actions, spilling them to disk", e);
+            spill(batch);
+            return 0;
+        }
+    }
+
+    private void spill(Collection<ActionVO<Integer, Integer>> actions) {
+        synchronized (spillLock) {
+            File spillFile = new File(spillDirectory,
+                    SPILL_FILE_PREFIX + System.currentTimeMillis() + "_" + System.nanoTime() + SPILL_FILE_SUFFIX);
+
+            try {
+                writeSpillFile(spillFile, actions);
+                actionsSpilled.addAndGet(actions.size());
+
+                if (logger.isInfoEnabled()) {
+                    logger.info("spilled " + actions.size() + " actions to " + spillFile.getAbsolutePath());
+                }
+            } catch (IOException e) {
+                logger.error("could not spill " + actions.size() + " actions to " + spillFile.getAbsolutePath() +
+                        ", actions are lost", e);
+            }
+        }
+    }
+
+    /**
+     * Replaces a spill file by one with the given actions. The new file is written next to the old one first, so a
+     * failure leaves the old file in place.
+     */
+    private void rewriteSpillFile(File spillFile, Collection<ActionVO<Integer, Integer>> actions) {
+        File tmpFile = new File(spillFile.getParentFile(), spillFile.getName() + ".tmp");
+
+        try {
+            writeSpillFile(tmpFile, actions);
+
+            if (!spillFile.delete()) {
+                throw new IOException("could not delete " + spillFile.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            logger.error("could not rewrite spill file " + spillFile.getAbsolutePath() +
+                    ", its replayed actions will be inserted again", e);
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                logger.warn("could not delete " + tmpFile.getAbsolutePath());
+            }
+            return;
+        }
+
+        if (!tmpFile.renameTo(spillFile)) {
+            logger.error("could not rename " + tmpFile.getAbsolutePath() + " to " + spillFile.getAbsolutePath() +
+                    ", the remaining actions have to be replayed from it manually");
+        }
+    }
+
+    private void writeSpillFile(File spillFile, Collection<ActionVO<Integer, Integer>> actions) throws IOException {
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+
+        try {
+            for (ActionVO<Integer, Integer> action : actions) {
+                out.writeObject(action);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private void replaySpillFiles() {
+        File[] spillFiles = spillDirectory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SPILL_FILE_PREFIX) && name.endsWith(SPILL_FILE_SUFFIX);
+            }
+        });
+        if (spillFiles == null || spillFiles.length == 0) {
+            return;
+        }
+        Arrays.sort(spillFiles);
+
+        for (File spillFile : spillFiles) {
+            List<ActionVO<Integer, Integer>> actions = new ArrayList<ActionVO<Integer, Integer>>();
+            ObjectInputStream in = null;
+
+            try {
+                in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+                while (true) {
+                    actions.add((ActionVO<Integer, Integer>) in.readObject());
+                }
+            } catch (EOFException e) {
+                // end of spill file reached
+            } catch (Exception e) {
+                logger.error("could not read spill file " + spillFile.getAbsolutePath() + ", skipping it", e);
+                continue;
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        logger.warn("could not close spill file " + spillFile.getAbsolutePath(), e);
+                    }
+                }
+            }
+
+            int replayed = 0;
+
+            try {
+                while (replayed < actions.size()) {
+                    int to = Math.min(replayed + flushSize, actions.size());
+                    actionDAO.insertActions(actions.subList(replayed, to), true);
+                    replayed = to;
+                }
+            } catch (RuntimeException e) {
+                // only the actions not written yet are kept, so they aren't inserted twice on the next replay
+                logger.error("could not replay spill file " + spillFile.getAbsolutePath() + ", keeping the " +
+                        (actions.size() - replayed) + " remaining actions", e);
+                if (replayed > 0) {
+                    rewriteSpillFile(spillFile, actions.subList(replayed, actions.size()));
+                }
+                continue;
+            }
+            if (!spillFile.delete()) {
+                logger.warn("could not delete replayed spill file " + spillFile.getAbsolutePath());
+            }
+
+            if (logger.isInfoEnabled()) {
+                logger.info("replayed " + actions.size() + " actions from " + spillFile.getAbsolutePath());
+            }
+        }
+    }
+
+    // metrics
+
+    public int getQueueDepth() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    public long getActionsQueued() {
+        return actionsQueued.get();
+    }
+
+    public long getActionsWritten() {
+        return actionsWritten.get();
+    }
+
+    public long getActionsRejected() {
+        return actionsRejected.get();
+    }
+
+    public long getActionsSpilled() {
+        return actionsSpilled.get();
+    }
+
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    public long getLastFlushTime() {
+        return lastFlushTime;
+    }
+
+    public long getMaxFlushTime() {
+        return maxFlushTime;
+    }
+
+    public double getAverageFlushTime() {
+        long count = flushes.get();
+        return count > 0 ? (double) totalFlushTime.get() / count : 0;
+    }
+
+    // getter/setter
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be greater than 0!");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getFlushSize() {
+        return flushSize;
+    }
+
+    public void setFlushSize(int flushSize) {
+        if (flushSize < 1) {
+            throw new IllegalArgumentException("flushSize must be greater than 0!");
+        }
+        this.flushSize = flushSize;
+    }
+
+    public long getFlushLatency() {
+        return flushLatency;
+    }
+
+    public void setFlushLatency(long flushLatency) {
+        if (flushLatency < 1) {
+            throw new IllegalArgumentException("flushLatency must be greater than 0!");
+        }
+        this.flushLatency = flushLatency;
+    }
+
+    public long getShutdownTimeout() {
+        return shutdownTimeout;
+    }
+
+    public void setShutdownTimeout(long shutdownTimeout) {
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    public void setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        this.backpressurePolicy = backpressurePolicy;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Sets the directory pending actions are spilled to, {@code null} for <code>java.io.tmpdir</code>.
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory != null ? spillDirectory : new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    @Override
+    public String toString() {
+        return "ActionBatchWriter{queueDepth=" + getQueueDepth() + ", queued=" + getActionsQueued() + ", written=" +
+                getActionsWritten() + ", rejected=" + getActionsRejected() + ", spilled=" + getActionsSpilled() +
+                ", flushes=" + getFlushes() + ", avgFlushTime=" + getAverageFlushTime() + "ms, maxFlushTime=" +
+                getMaxFlushTime() + "ms}";
+    }
+}
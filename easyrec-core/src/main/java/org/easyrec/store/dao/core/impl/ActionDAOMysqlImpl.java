@@ -30,10 +30,11 @@ import org.easyrec.service.core.TenantService;
 import org.easyrec.store.dao.core.ActionDAO;
 import org.easyrec.store.dao.core.types.AssocTypeDAO;
 import org.easyrec.store.dao.impl.AbstractBaseActionDAOMysqlImpl;
-import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -44,9 +45,12 @@ import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class provides a Mysql implementation of the {@link org.easyrec.store.dao.core.ActionDAO} interface.
@@ -68,7 +72,7 @@ import java.util.List;
 @DAO
 public class ActionDAOMysqlImpl extends
         AbstractBaseActionDAOMysqlImpl<ActionVO<Integer, Integer>, RankedItemVO<Integer, Integer>, Integer, Integer, ItemVO<Integer, Integer>, RatingVO<Integer, Integer>, Integer, Integer>
-        implements ActionDAO {
+        implements ActionDAO, DisposableBean {
     // constants
     private final static String DEFAULT_COUNT_ALIAS_NAME = "itemCounter";
     private final static String DEFAULT_RATING_ALIAS_NAME = "rating";
@@ -79,10 +83,16 @@ public class ActionDAOMysqlImpl extends
     private static final String SQL_INSERT_ACTION;
     private static final String SQL_REMOVE_ACTIONS;
     private static final PreparedStatementCreatorFactory PS_INSERT_ACTION;
+    // maximum number of rows per multi-row insert statement
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+    private static final String SQL_INSERT_ACTIONS_PREFIX;
+    private static final String SQL_INSERT_ACTIONS_ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
     // members
     private TenantService tenantService;
     private AssocTypeDAO assocTypeDAO;
+    private ActionBatchWriter batchWriter;
+    private ActionRankingIndex rankingIndex;
 
     private ActionVORowMapper actionVORowMapper = new ActionVORowMapper();
     private RankedItemVORowMapper rankedItemVORowMapper = new RankedItemVORowMapper();
@@ -107,6 +117,15 @@ public class ActionDAOMysqlImpl extends
         PS_INSERT_ACTION = new PreparedStatementCreatorFactory(SQL_INSERT_ACTION, ARG_TYPES_INSERT);
         PS_INSERT_ACTION.setReturnGeneratedKeys(true);
 
+        SQL_INSERT_ACTIONS_PREFIX = new StringBuilder("INSERT INTO ").append(DEFAULT_TABLE_NAME).append(" (")
+                .append(DEFAULT_TENANT_COLUMN_NAME).append(", ").append(DEFAULT_USER_COLUMN_NAME).append(", ")
+                .append(DEFAULT_SESSION_COLUMN_NAME).append(", ").append(DEFAULT_IP_COLUMN_NAME).append(", ")
+                .append(DEFAULT_ITEM_COLUMN_NAME).append(", ").append(DEFAULT_ITEM_TYPE_COLUMN_NAME).append(", ")
+                .append(DEFAULT_ACTION_TYPE_COLUMN_NAME).append(", ").append(DEFAULT_RATING_VALUE_COLUMN_NAME)
+                .append(", ").append(DEFAULT_SEARCH_SUCCEEDED_COLUMN_NAME).append(", ")
+                .append(DEFAULT_NUMBER_OF_FOUND_ITEMS).append(", ").append(DEFAULT_DESCRIPTION_COLUMN_NAME)
+                .append(", ").append(DEFAULT_ACTION_TIME_COLUMN_NAME).append(") VALUES ").toString();
+
         SQL_REMOVE_ACTIONS = new StringBuilder("DELETE FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ")
                 .append(DEFAULT_TENANT_COLUMN_NAME).append("=? ").toString();
 
@@ -130,6 +149,55 @@ public class ActionDAOMysqlImpl extends
         }
     }
 
+    @Override
+    protected void initDao() throws Exception {
+        super.initDao();
+
+        if (batchWriter != null && batchWriter.isEnabled()) {
+            batchWriter.start(this);
+        }
+        if (rankingIndex != null && rankingIndex.isEnabled()) {
+            rankingIndex.start(getJdbcTemplate());
+        }
+    }
+
+    public void destroy() throws Exception {
+        if (batchWriter != null) {
+            batchWriter.shutdown();
+        }
+        if (rankingIndex != null) {
+            rankingIndex.shutdown();
+        }
+    }
+
+    public ActionBatchWriter getBatchWriter() {
+        return batchWriter;
+    }
+
+    /**
+     * Sets an optional {@link ActionBatchWriter}. If the writer is enabled {@link #insertAction} queues actions
+     * which are written asynchronously in batches.
+     *
+     * @param batchWriter the batch writer
+     */
+    public void setBatchWriter(ActionBatchWriter batchWriter) {
+        this.batchWriter = batchWriter;
+    }
+
+    public ActionRankingIndex getRankingIndex() {
+        return rankingIndex;
+    }
+
+    /**
+     * Sets an optional {@link ActionRankingIndex}. If the index is enabled it counts every inserted action and
+     * answers {@link #getRankedItemsByActionType} from memory whenever possible.
+     *
+     * @param rankingIndex the ranking index
+     */
+    public void setRankingIndex(ActionRankingIndex rankingIndex) {
+        this.rankingIndex = rankingIndex;
+    }
+
     // abstract (generic) method implementation of 'AbstractBaseActionDAOMysqlImpl<ActionVO>'
     @Override
     public Date getNewestActionDate(Integer tenantId, Integer userId, String sessionId) {
@@ -183,12 +251,11 @@ public class ActionDAOMysqlImpl extends
         // validate non-empty fields (NOT NULL)
         validateNonEmptyFields(action, useDateFromVO);
 
-        Object[] args = {action.getTenant(), action.getUser(), action.getSessionId(), action.getIp(),
-                ((action.getItem() != null) ? action.getItem().getItem() : null),
-                ((action.getItem() != null) ? action.getItem().getType() : null), action.getActionType(),
-                action.getRatingValue(), action.getSearchSucceeded(), action.getNumberOfFoundItems(),
-                action.getDescription(), ((useDateFromVO && action.getActionTime() != null) ? action.getActionTime() :
-                                          new Date(System.currentTimeMillis()))};
+        if (batchWriter != null && batchWriter.isRunning()) {
+            return batchWriter.insertAction(action, useDateFromVO);
+        }
+
+        Object[] args = getInsertArgs(action, useDateFromVO);
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
 
@@ -197,6 +264,68 @@ public class ActionDAOMysqlImpl extends
         // retrieve auto increment id, and set to VO
         action.setId(keyHolder.getKey().intValue());
 
+        if (rankingIndex != null) {
+            rankingIndex.record(action, (Date) args[args.length - 1]);
+        }
+
+        return rowsAffected;
+    }
+
+    @Override
+    public int insertActions(List<ActionVO<Integer, Integer>> actions, boolean useDateFromVO) {
+        if (actions == null) {
+            throw new IllegalArgumentException("Missing 'actions'");
+        }
+
+        int rowsAffected = 0;
+
+        for (int from = 0; from < actions.size(); from += MAX_ROWS_PER_INSERT) {
+            List<ActionVO<Integer, Integer>> chunk =
+                    actions.subList(from, Math.min(from + MAX_ROWS_PER_INSERT, actions.size()));
+
+            StringBuilder sqlString = new StringBuilder(SQL_INSERT_ACTIONS_PREFIX);
+            List<Object> args = new ArrayList<Object>(chunk.size() * ARG_TYPES_INSERT.length);
+            int[] argTypes = new int[chunk.size() * ARG_TYPES_INSERT.length];
+            Date[] actionTimes = new Date[chunk.size()];
+
+            for (int i = 0; i < chunk.size(); i++) {
+                ActionVO<Integer, Integer> action = chunk.get(i);
+                validateNonEmptyFields(action, useDateFromVO);
+
+                if (i > 0) {
+                    sqlString.append(", ");
+                }
+                sqlString.append(SQL_INSERT_ACTIONS_ROW);
+
+                Object[] actionArgs = getInsertArgs(action, useDateFromVO);
+                actionTimes[i] = (Date) actionArgs[actionArgs.length - 1];
+                args.addAll(Arrays.asList(actionArgs));
+                System.arraycopy(ARG_TYPES_INSERT, 0, argTypes, i * ARG_TYPES_INSERT.length,
+                        ARG_TYPES_INSERT.length);
+            }
+
+            PreparedStatementCreatorFactory factory =
+                    new PreparedStatementCreatorFactory(sqlString.toString(), argTypes);
+            factory.setReturnGeneratedKeys(true);
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+
+            rowsAffected += getJdbcTemplate().update(factory.newPreparedStatementCreator(args), keyHolder);
+
+            // the ids let the ranking index tell these actions apart from the ones read by a rebuild
+            List<Map<String, Object>> keys = keyHolder.getKeyList();
+            if (keys.size() == chunk.size()) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    chunk.get(i).setId(((Number) keys.get(i).values().iterator().next()).intValue());
+                }
+            }
+
+            if (rankingIndex != null) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    rankingIndex.record(chunk.get(i), actionTimes[i]);
+                }
+            }
+        }
+
         return rowsAffected;
     }
 
@@ -212,13 +341,17 @@ public class ActionDAOMysqlImpl extends
 
         int rowsAffected = getJdbcTemplate().update(SQL_REMOVE_ACTIONS, args, argTypes);
 
+        if (rankingIndex != null) {
+            rankingIndex.clear(tenantId);
+        }
+
         return rowsAffected;
     }
 
     @Override
     public Iterator<ActionVO<Integer, Integer>> getActionIterator(int bulkSize) {
-        return new ResultSetIteratorMysql<ActionVO<Integer, Integer>>(getDataSource(),
-                bulkSize, getActionIteratorQueryString(), actionVORowMapper);
+        return new KeysetResultSetIteratorMysql<ActionVO<Integer, Integer>>(getDataSource(),
+                bulkSize, getActionIteratorQueryString(), DEFAULT_ID_COLUMN_NAME, actionVORowMapper);
     }
 
     @Override
@@ -233,8 +366,8 @@ public class ActionDAOMysqlImpl extends
         DaoUtils.ArgsAndTypesHolder holder = new DaoUtils.ArgsAndTypesHolder(args, argTypes);
         String s = getActionIteratorQueryString(timeConstraints, holder);
 
-        return new ResultSetIteratorMysql<ActionVO<Integer, Integer>>(getDataSource(),
-                bulkSize, s, holder.getArgs(), holder.getArgTypes(), actionVORowMapper);
+        return new KeysetResultSetIteratorMysql<ActionVO<Integer, Integer>>(getDataSource(),
+                bulkSize, s, holder.getArgs(), holder.getArgTypes(), DEFAULT_ID_COLUMN_NAME, actionVORowMapper);
     }
 
     @Override
@@ -302,6 +435,15 @@ public class ActionDAOMysqlImpl extends
             throw new IllegalArgumentException("missing constraints, missing 'actionTypeId'");
         }
 
+        if (rankingIndex != null) {
+            List<RankedItemVO<Integer, Integer>> rankedItems = rankingIndex
+                    .getRankedItems(tenantId, actionTypeId, itemTypeId, numberOfResults, timeConstraints, sortDesc);
+
+            if (rankedItems != null) {
+                return rankedItems;
+            }
+        }
+
         StringBuilder interestingColumns = new StringBuilder(DEFAULT_TENANT_COLUMN_NAME);
         interestingColumns.append(", ");
         interestingColumns.append(DEFAULT_ACTION_TYPE_COLUMN_NAME);
@@ -800,6 +942,15 @@ public class ActionDAOMysqlImpl extends
 
     ///////////////////////////////////////////////////////////////////////////
     // private methods
+    private Object[] getInsertArgs(ActionVO<Integer, Integer> action, boolean useDateFromVO) {
+        return new Object[]{action.getTenant(), action.getUser(), action.getSessionId(), action.getIp(),
+                ((action.getItem() != null) ? action.getItem().getItem() : null),
+                ((action.getItem() != null) ? action.getItem().getType() : null), action.getActionType(),
+                action.getRatingValue(), action.getSearchSucceeded(), action.getNumberOfFoundItems(),
+                action.getDescription(), ((useDateFromVO && action.getActionTime() != null) ? action.getActionTime() :
+                                          new Date(System.currentTimeMillis()))};
+    }
+
     private void validateNonEmptyFields(ActionVO<Integer, Integer> action,
                                         boolean useDateFromVO) {
         if (action.getTenant() == null) {
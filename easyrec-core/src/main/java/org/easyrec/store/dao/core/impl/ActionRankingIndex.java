@@ -0,0 +1,795 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.model.core.ActionVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RankedItemVO;
+import org.easyrec.model.core.transfer.TimeConstraintVO;
+import org.easyrec.store.dao.BaseActionDAO;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps per tenant and action type counters of how often each item was acted upon, so the "most viewed/bought/rated"
+ * rankings can be answered from memory instead of grouping the whole action table.
+ * <p/>
+ * Counts are kept in hourly buckets for the last month which are rolled into running totals for the
+ * {@link Window#DAY}, {@link Window#WEEK} and {@link Window#MONTH} windows plus an all time total. A ranking is
+ * the top-k of one of these totals. Windows are aligned to full hours, i.e. a window may contain up to one hour of
+ * actions more than the exact time range.
+ * <p/>
+ * The counters are filled from the action table on start (in the background, rankings fall back to the database
+ * until this is finished) and afterwards updated by the {@link ActionDAOMysqlImpl} for every inserted action.
+ * Actions written to the table by other means (e.g. archiving) are only reflected after {@link #rebuild(Integer)}.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class ActionRankingIndex {
+    /**
+     * The time ranges a ranking can be answered for.
+     */
+    public enum Window {
+        DAY, WEEK, MONTH, ALL
+    }
+
+    // constants
+    private static final long MILLIS_PER_HOUR = 60L * 60L * 1000L;
+    private static final long MILLIS_PER_DAY = 24L * MILLIS_PER_HOUR;
+    private static final long MILLIS_PER_WEEK = 7L * MILLIS_PER_DAY;
+
+    private static final String SQL_MAX_ID;
+    private static final String SQL_LOAD_ACTIONS;
+    private static final String SQL_LOAD_ACTIONS_OF_TENANT;
+
+    static {
+        SQL_MAX_ID = new StringBuilder("SELECT MAX(").append(BaseActionDAO.DEFAULT_ID_COLUMN_NAME).append(") FROM ")
+                .append(BaseActionDAO.DEFAULT_TABLE_NAME).toString();
+
+        SQL_LOAD_ACTIONS = new StringBuilder("SELECT ").append(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME).append(", ")
+                .append(BaseActionDAO.DEFAULT_ACTION_TYPE_COLUMN_NAME).append(", ")
+                .append(BaseActionDAO.DEFAULT_ITEM_TYPE_COLUMN_NAME).append(", ")
+                .append(BaseActionDAO.DEFAULT_ITEM_COLUMN_NAME).append(", ")
+                .append(BaseActionDAO.DEFAULT_ACTION_TIME_COLUMN_NAME).append(" FROM ")
+                .append(BaseActionDAO.DEFAULT_TABLE_NAME).append(" WHERE ")
+                .append(BaseActionDAO.DEFAULT_ID_COLUMN_NAME).append(" <= ?").toString();
+
+        SQL_LOAD_ACTIONS_OF_TENANT = new StringBuilder(SQL_LOAD_ACTIONS).append(" AND ")
+                .append(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME).append(" = ?").toString();
+    }
+
+    // logging
+    private final Log logger = LogFactory.getLog(this.getClass());
+
+    // configuration
+    private boolean enabled = false;
+    private boolean backgroundLoad = true;
+    private long timeRangeTolerance = 60000;
+
+    // state
+    private final ConcurrentMap<Long, RankingCounters> counters = new ConcurrentHashMap<Long, RankingCounters>();
+    private JdbcTemplate jdbcTemplate;
+    private volatile boolean running = false;
+    private volatile boolean ready = false;
+
+    // rebuild state, guarded by journal
+    private final Object rebuildLock = new Object();
+    private final List<RecordedAction> journal = new ArrayList<RecordedAction>();
+    private final Set<Integer> rebuildingTenants = new HashSet<Integer>();
+    private boolean rebuildingAll = false;
+    private volatile boolean rebuilding = false;
+
+    // metrics
+    private final AtomicLong actionsRecorded = new AtomicLong();
+    private final AtomicLong rankingsServed = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private volatile long lastRebuildTime = 0;
+
+    /**
+     * Starts the index. The counters are loaded from the action table, by default on a background thread. Until
+     * this is finished {@link #getRankedItems} returns <code>null</code>.
+     *
+     * @param jdbcTemplate the template used to read the action table
+     */
+    public synchronized void start(JdbcTemplate jdbcTemplate) {
+        if (running) {
+            throw new IllegalStateException("ranking index is already running!");
+        }
+
+        this.jdbcTemplate = jdbcTemplate;
+        running = true;
+
+        if (!backgroundLoad) {
+            rebuild(null);
+            ready = true;
+            return;
+        }
+
+        Thread loader = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    rebuild(null);
+                    ready = true;
+                } catch (Exception e) {
+                    logger.error("failed to load the ranking index, rankings are read from the database", e);
+                }
+            }
+        }, "ActionRankingIndex");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        ready = false;
+        counters.clear();
+    }
+
+    /**
+     * Counts an inserted action.
+     *
+     * @param action     the action, actions without item are ignored
+     * @param actionTime the time the action was stored with
+     */
+    public void record(ActionVO<Integer, Integer> action, Date actionTime) {
+        ItemVO<Integer, Integer> item = action.getItem();
+
+        if (item == null || item.getItem() == null) {
+            return;
+        }
+
+        record(action.getTenant(), action.getActionType(), item.getType(), item.getItem(),
+                action.getId() != null ? action.getId() : 0, actionTime.getTime());
+    }
+
+    /**
+     * Counts an inserted action.
+     *
+     * @param actionId   the database id of the action, 0 if unknown
+     * @param actionTime the time the action was stored with in milliseconds
+     */
+    public void record(int tenantId, int actionTypeId, int itemTypeId, int itemId, int actionId, long actionTime) {
+        if (!running) {
+            return;
+        }
+
+        actionsRecorded.incrementAndGet();
+
+        if (rebuilding) {
+            synchronized (journal) {
+                if (rebuildingAll || rebuildingTenants.contains(tenantId)) {
+                    journal.add(new RecordedAction(tenantId, actionTypeId, itemTypeId, itemId, actionId, actionTime));
+                    return;
+                }
+            }
+        }
+
+        getOrCreateCounters(counters, tenantId, actionTypeId)
+                .add(itemKey(itemTypeId, itemId), actionTime, 1, currentTimeMillis());
+    }
+
+    /**
+     * Removes all counters of a tenant, e.g. after its actions were deleted.
+     */
+    public void clear(int tenantId) {
+        for (Iterator<Long> it = counters.keySet().iterator(); it.hasNext(); ) {
+            if (tenantOf(it.next()) == tenantId) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Reloads the counters of a tenant (or all tenants) from the action table. Rankings of the affected tenants are
+     * read from the database while the rebuild runs; actions inserted in the meantime are counted afterwards.
+     * <p/>
+     * The table is read with a single streaming query so it does not need to fit into memory.
+     *
+     * @param tenantId the tenant to rebuild, <code>null</code> rebuilds all tenants
+     */
+    public void rebuild(@Nullable final Integer tenantId) {
+        if (!running) {
+            throw new IllegalStateException("ranking index is not running!");
+        }
+
+        synchronized (rebuildLock) {
+            long start = System.currentTimeMillis();
+
+            synchronized (journal) {
+                if (tenantId == null) {
+                    rebuildingAll = true;
+                } else {
+                    rebuildingTenants.add(tenantId);
+                }
+                rebuilding = true;
+            }
+
+            final Map<Long, RankingCounters> loaded = new HashMap<Long, RankingCounters>();
+            final long now = currentTimeMillis();
+            final int maxId;
+            final long[] rows = new long[1];
+
+            try {
+                maxId = jdbcTemplate.queryForInt(SQL_MAX_ID);
+
+                jdbcTemplate.query(new PreparedStatementCreator() {
+                    public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                        PreparedStatement ps = con.prepareStatement(
+                                tenantId == null ? SQL_LOAD_ACTIONS : SQL_LOAD_ACTIONS_OF_TENANT,
+                                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                        // tells the MySQL driver to stream rows instead of reading the whole result
+                        ps.setFetchSize(Integer.MIN_VALUE);
+                        ps.setInt(1, maxId);
+                        if (tenantId != null) {
+                            ps.setInt(2, tenantId);
+                        }
+                        return ps;
+                    }
+                }, new RowCallbackHandler() {
+                    public void processRow(ResultSet rs) throws SQLException {
+                        int itemId = rs.getInt(4);
+                        if (rs.wasNull()) {
+                            return;
+                        }
+                        Timestamp actionTime = rs.getTimestamp(5);
+
+                        getOrCreateCounters(loaded, rs.getInt(1), rs.getInt(2))
+                                .add(itemKey(rs.getInt(3), itemId), actionTime.getTime(), 1, now);
+                        rows[0]++;
+                    }
+                });
+            } catch (RuntimeException e) {
+                // keep the old counters and apply what was recorded in the meantime
+                finishRebuild(tenantId, Collections.<Long, RankingCounters>emptyMap(), Integer.MIN_VALUE, false);
+                throw e;
+            }
+
+            finishRebuild(tenantId, loaded, maxId, true);
+
+            rebuilds.incrementAndGet();
+            lastRebuildTime = System.currentTimeMillis() - start;
+
+            if (logger.isInfoEnabled()) {
+                logger.info("rebuilt ranking index for " + (tenantId == null ? "all tenants" : "tenant " + tenantId) +
+                        " from " + rows[0] + " actions in " + lastRebuildTime + "ms");
+            }
+        }
+    }
+
+    /**
+     * Returns the window matching the time constraint of a ranking request. A window matches if the constraint
+     * ends now and starts one day, one week, one month or not at all before now (with a tolerance of
+     * <code>timeRangeTolerance</code> milliseconds).
+     *
+     * @return the matching window or <code>null</code> if the constraint cannot be answered from the index
+     */
+    @Nullable
+    public Window getWindow(@Nullable TimeConstraintVO timeConstraints) {
+        if (timeConstraints == null) {
+            return Window.ALL;
+        }
+
+        long now = currentTimeMillis();
+        Date dateFrom = timeConstraints.getDateFrom();
+        Date dateTo = timeConstraints.getDateTo();
+
+        if (dateTo != null && dateTo.getTime() < now - timeRangeTolerance) {
+            return null;
+        }
+        if (dateFrom == null) {
+            return Window.ALL;
+        }
+        if (Math.abs(dateFrom.getTime() - (now - MILLIS_PER_DAY)) <= timeRangeTolerance) {
+            return Window.DAY;
+        }
+        if (Math.abs(dateFrom.getTime() - (now - MILLIS_PER_WEEK)) <= timeRangeTolerance) {
+            return Window.WEEK;
+        }
+        if (Math.abs(dateFrom.getTime() - monthAgo(now)) <= timeRangeTolerance) {
+            return Window.MONTH;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the items of a tenant ranked by the number of actions of the given type.
+     *
+     * @param itemTypeId      restricts the ranking to an item type, <code>null</code> for all item types
+     * @param numberOfResults the maximum number of items to return, <code>null</code> for all
+     * @param sortDesc        <code>false</code> ranks the least acted upon items first
+     * @return the ranked items or <code>null</code> if the index cannot answer the request (not loaded yet, the
+     *         tenant is rebuilt or the time constraint does not match a window)
+     */
+    @Nullable
+    public List<RankedItemVO<Integer, Integer>> getRankedItems(Integer tenantId, Integer actionTypeId,
+                                                               @Nullable Integer itemTypeId,
+                                                               @Nullable Integer numberOfResults,
+                                                               @Nullable TimeConstraintVO timeConstraints,
+                                                               @Nullable Boolean sortDesc) {
+        if (!isAvailable(tenantId)) {
+            return null;
+        }
+
+        Window window = getWindow(timeConstraints);
+        if (window == null) {
+            return null;
+        }
+
+        RankingCounters rankingCounters = counters.get(countersKey(tenantId, actionTypeId));
+        List<RankedItemVO<Integer, Integer>> result;
+
+        if (rankingCounters == null) {
+            result = new ArrayList<RankedItemVO<Integer, Integer>>(0);
+        } else {
+            int limit = numberOfResults != null && numberOfResults > 0 ? numberOfResults : Integer.MAX_VALUE;
+
+            result = rankingCounters.top(tenantId, actionTypeId, itemTypeId, limit, window,
+                    sortDesc == null || sortDesc, currentTimeMillis());
+        }
+
+        rankingsServed.incrementAndGet();
+
+        return result;
+    }
+
+    private boolean isAvailable(int tenantId) {
+        if (!ready) {
+            return false;
+        }
+        if (rebuilding) {
+            synchronized (journal) {
+                return !rebuildingAll && !rebuildingTenants.contains(tenantId);
+            }
+        }
+
+        return true;
+    }
+
+    private void finishRebuild(@Nullable Integer tenantId, Map<Long, RankingCounters> loaded, int maxId,
+                               boolean replace) {
+        synchronized (journal) {
+            if (replace) {
+                if (tenantId == null) {
+                    counters.clear();
+                } else {
+                    clear(tenantId);
+                }
+                counters.putAll(loaded);
+            }
+
+            long now = currentTimeMillis();
+            for (RecordedAction action : journal) {
+                // actions with an id up to maxId were already read from the table. Every insert of the
+                // ActionDAOMysqlImpl sets the id, actions recorded without one are always applied
+                if (action.actionId == 0 || action.actionId > maxId) {
+                    getOrCreateCounters(counters, action.tenantId, action.actionTypeId)
+                            .add(itemKey(action.itemTypeId, action.itemId), action.actionTime, 1, now);
+                }
+            }
+            journal.clear();
+
+            if (tenantId == null) {
+                rebuildingAll = false;
+            } else {
+                rebuildingTenants.remove(tenantId);
+            }
+            rebuilding = rebuildingAll || !rebuildingTenants.isEmpty();
+        }
+    }
+
+    /**
+     * Returns the current time, may be overridden for testing.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private RankingCounters getOrCreateCounters(Map<Long, RankingCounters> map, int tenantId, int actionTypeId) {
+        Long key = countersKey(tenantId, actionTypeId);
+        RankingCounters rankingCounters = map.get(key);
+
+        if (rankingCounters == null) {
+            rankingCounters = new RankingCounters(currentTimeMillis());
+
+            if (map instanceof ConcurrentMap) {
+                RankingCounters existing = ((ConcurrentMap<Long, RankingCounters>) map).putIfAbsent(key,
+                        rankingCounters);
+                if (existing != null) {
+                    rankingCounters = existing;
+                }
+            } else {
+                map.put(key, rankingCounters);
+            }
+        }
+
+        return rankingCounters;
+    }
+
+    private static Long countersKey(int tenantId, int actionTypeId) {
+        return ((long) tenantId << 32) | (actionTypeId & 0xFFFFFFFFL);
+    }
+
+    private static int tenantOf(long countersKey) {
+        return (int) (countersKey >>> 32);
+    }
+
+    private static long itemKey(int itemTypeId, int itemId) {
+        return ((long) itemTypeId << 32) | (itemId & 0xFFFFFFFFL);
+    }
+
+    private static int hourOf(long time) {
+        return (int) (time / MILLIS_PER_HOUR);
+    }
+
+    private static long monthAgo(long time) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(time);
+        cal.add(Calendar.MONTH, -1);
+        return cal.getTimeInMillis();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // metrics
+
+    public long getActionsRecorded() {
+        return actionsRecorded.get();
+    }
+
+    public long getRankingsServed() {
+        return rankingsServed.get();
+    }
+
+    public long getRebuilds() {
+        return rebuilds.get();
+    }
+
+    public long getLastRebuildTime() {
+        return lastRebuildTime;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // configuration
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isBackgroundLoad() {
+        return backgroundLoad;
+    }
+
+    public void setBackgroundLoad(boolean backgroundLoad) {
+        this.backgroundLoad = backgroundLoad;
+    }
+
+    public long getTimeRangeTolerance() {
+        return timeRangeTolerance;
+    }
+
+    /**
+     * Sets how far (in milliseconds) the bounds of a time constraint may be off the bounds of a window to still be
+     * answered from the index.
+     */
+    public void setTimeRangeTolerance(long timeRangeTolerance) {
+        if (timeRangeTolerance < 0) {
+            throw new IllegalArgumentException("timeRangeTolerance must not be negative!");
+        }
+        this.timeRangeTolerance = timeRangeTolerance;
+    }
+
+    @Override
+    public String toString() {
+        return "ActionRankingIndex{ready=" + ready + ", counters=" + counters.size() + ", actionsRecorded=" +
+                actionsRecorded.get() + ", rankingsServed=" + rankingsServed.get() + ", rebuilds=" + rebuilds.get() +
+                ", lastRebuildTime=" + lastRebuildTime + "ms}";
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // private inner classes
+
+    /**
+     * The counters of one tenant and action type. Items are keyed by their item type and id packed into a long.
+     */
+    private static final class RankingCounters {
+        // indexes into windows/windowStart
+        private static final int DAY = 0;
+        private static final int WEEK = 1;
+        private static final int MONTH = 2;
+
+        private final TLongIntHashMap all = new TLongIntHashMap();
+        // hour -> counts of the actions in that hour, for the last month only
+        private final TIntObjectHashMap<TLongIntHashMap> hours = new TIntObjectHashMap<TLongIntHashMap>();
+        private final TLongIntHashMap[] windows = {new TLongIntHashMap(), new TLongIntHashMap(),
+                new TLongIntHashMap()};
+        // first hour contained in each window
+        private final int[] windowStart;
+        private int currentHour;
+
+        RankingCounters(long now) {
+            currentHour = hourOf(now);
+            windowStart = windowStarts(now);
+        }
+
+        synchronized void add(long itemKey, long actionTime, int count, long now) {
+            advance(now);
+
+            all.adjustOrPutValue(itemKey, count, count);
+
+            int hour = hourOf(actionTime);
+            if (hour < windowStart[MONTH]) {
+                return;
+            }
+
+            TLongIntHashMap bucket = hours.get(hour);
+            if (bucket == null) {
+                bucket = new TLongIntHashMap();
+                hours.put(hour, bucket);
+            }
+            bucket.adjustOrPutValue(itemKey, count, count);
+
+            for (int w = DAY; w <= MONTH; w++) {
+                if (hour >= windowStart[w]) {
+                    windows[w].adjustOrPutValue(itemKey, count, count);
+                }
+            }
+        }
+
+        synchronized List<RankedItemVO<Integer, Integer>> top(int tenantId, int actionTypeId,
+                                                              @Nullable Integer itemTypeId, int limit, Window window,
+                                                              boolean desc, long now) {
+            advance(now);
+
+            TLongIntHashMap totals;
+            switch (window) {
+                case DAY:
+                    totals = windows[DAY];
+                    break;
+                case WEEK:
+                    totals = windows[WEEK];
+                    break;
+                case MONTH:
+                    totals = windows[MONTH];
+                    break;
+                default:
+                    totals = all;
+                    break;
+            }
+
+            TopK topK = new TopK(Math.min(limit, totals.size()), desc);
+            for (TLongIntIterator it = totals.iterator(); it.hasNext(); ) {
+                it.advance();
+                if (itemTypeId == null || (int) (it.key() >>> 32) == itemTypeId) {
+                    topK.offer(it.key(), it.value());
+                }
+            }
+
+            return topK.toRankedItems(tenantId, actionTypeId);
+        }
+
+        private void advance(long now) {
+            int hour = hourOf(now);
+            if (hour <= currentHour) {
+                return;
+            }
+            currentHour = hour;
+
+            int[] starts = windowStarts(now);
+            int[] bucketHours = hours.keys();
+
+            for (int w = DAY; w <= MONTH; w++) {
+                if (starts[w] <= windowStart[w]) {
+                    continue;
+                }
+                // subtract the buckets which dropped out of the window
+                for (int bucketHour : bucketHours) {
+                    if (bucketHour >= windowStart[w] && bucketHour < starts[w]) {
+                        subtract(windows[w], hours.get(bucketHour));
+                    }
+                }
+                windowStart[w] = starts[w];
+            }
+
+            for (int bucketHour : bucketHours) {
+                if (bucketHour < windowStart[MONTH]) {
+                    hours.remove(bucketHour);
+                }
+            }
+        }
+
+        private static void subtract(TLongIntHashMap totals, TLongIntHashMap bucket) {
+            for (TLongIntIterator it = bucket.iterator(); it.hasNext(); ) {
+                it.advance();
+                if (totals.adjustOrPutValue(it.key(), -it.value(), 0) <= 0) {
+                    totals.remove(it.key());
+                }
+            }
+        }
+
+        private static int[] windowStarts(long now) {
+            return new int[]{hourOf(now - MILLIS_PER_DAY), hourOf(now - MILLIS_PER_WEEK), hourOf(monthAgo(now))};
+        }
+    }
+
+    /**
+     * A bounded binary heap keeping the <code>k</code> items with the highest (or lowest) counts. The root is the
+     * item which is replaced first.
+     */
+    private static final class TopK {
+        private final long[] keys;
+        private final int[] counts;
+        private final boolean desc;
+        private int size = 0;
+
+        TopK(int k, boolean desc) {
+            keys = new long[k];
+            counts = new int[k];
+            this.desc = desc;
+        }
+
+        void offer(long key, int count) {
+            if (keys.length == 0) {
+                return;
+            }
+            if (size < keys.length) {
+                keys[size] = key;
+                counts[size] = count;
+                siftUp(size++);
+            } else if (before(count, key, counts[0], keys[0])) {
+                keys[0] = key;
+                counts[0] = count;
+                siftDown(0);
+            }
+        }
+
+        List<RankedItemVO<Integer, Integer>> toRankedItems(int tenantId, int actionTypeId) {
+            RankedItemVO<Integer, Integer>[] ranked = newArray(size);
+
+            // removing the root repeatedly yields the items from the last to the first rank
+            for (int rank = size; rank > 0; rank--) {
+                long key = keys[0];
+                ranked[rank - 1] = new RankedItemVO<Integer, Integer>(
+                        new ItemVO<Integer, Integer>(tenantId, (int) key, (int) (key >>> 32)), actionTypeId, rank,
+                        counts[0]);
+
+                size--;
+                keys[0] = keys[size];
+                counts[0] = counts[size];
+                siftDown(0);
+            }
+
+            List<RankedItemVO<Integer, Integer>> result = new ArrayList<RankedItemVO<Integer, Integer>>(ranked.length);
+            Collections.addAll(result, ranked);
+            return result;
+        }
+
+        /**
+         * @return true if the first item ranks before the second one
+         */
+        private boolean before(int count1, long key1, int count2, long key2) {
+            if (count1 != count2) {
+                return desc ? count1 > count2 : count1 < count2;
+            }
+            return key1 < key2;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(counts[parent], keys[parent], counts[i], keys[i])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && before(counts[child], keys[child], counts[child + 1], keys[child + 1])) {
+                    child++;
+                }
+                if (!before(counts[i], keys[i], counts[child], keys[child])) {
+                    break;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            int count = counts[i];
+            counts[i] = counts[j];
+            counts[j] = count;
+        }
+
+        @SuppressWarnings({"unchecked"})
+        private static RankedItemVO<Integer, Integer>[] newArray(int size) {
+            return new RankedItemVO[size];
+        }
+    }
+
+    private static final class RecordedAction {
+        private final int tenantId;
+        private final int actionTypeId;
+        private final int itemTypeId;
+        private final int itemId;
+        private final int actionId;
+        private final long actionTime;
+
+        private RecordedAction(int tenantId, int actionTypeId, int itemTypeId, int itemId, int actionId,
+                               long actionTime) {
+            this.tenantId = tenantId;
+            this.actionTypeId = actionTypeId;
+            this.itemTypeId = itemTypeId;
+            this.itemId = itemId;
+            this.actionId = actionId;
+            this.actionTime = actionTime;
+        }
+    }
+}
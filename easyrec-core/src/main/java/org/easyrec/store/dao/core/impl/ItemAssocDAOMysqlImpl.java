@@ -20,6 +20,9 @@ package org.easyrec.store.dao.core.impl;
 
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.AssociatedItemVO;
@@ -27,26 +30,33 @@ import org.easyrec.model.core.ItemAssocVO;
 import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.transfer.IAConstraintVO;
 import org.easyrec.store.dao.core.ItemAssocDAO;
+import org.easyrec.store.dao.core.ItemAssocSink;
 import org.easyrec.store.dao.impl.AbstractBaseItemAssocDAOMysqlImpl;
-import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.StatementCallback;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 
 import javax.sql.DataSource;
-import java.io.*;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class provides a Mysql implementation of the {@link org.easyrec.store.dao.core.ItemAssocDAO} interface.
@@ -68,6 +78,12 @@ import java.util.List;
 public class ItemAssocDAOMysqlImpl extends
         AbstractBaseItemAssocDAOMysqlImpl<ItemAssocVO<Integer,Integer>, AssociatedItemVO<Integer, Integer>, Integer, Integer, ItemVO<Integer, Integer>, IAConstraintVO<Integer, Integer>>
         implements ItemAssocDAO {
+    // constants
+    private static final int DEFAULT_LOAD_CHUNK_SIZE = 100000;
+    // maximum number of item ids in the IN list of a single query of getItemsTo(Collection, ...)
+    private static final int ITEMS_FROM_CHUNK_SIZE = 500;
+    private static final String SQL_LOAD_ITEM_ASSOCS;
+
     private ItemAssocVORowMapper itemAssocVORowMapper = new ItemAssocVORowMapper();
     private AssociatedItemFromVORowMapper associatedItemFromVORowMapper = new AssociatedItemFromVORowMapper();
     private AssociatedItemToVORowMapper associatedItemToVORowMapper = new AssociatedItemToVORowMapper();
@@ -75,6 +91,40 @@ public class ItemAssocDAOMysqlImpl extends
     // logging
     private final Log logger = LogFactory.getLog(this.getClass());
 
+    private int loadChunkSize = DEFAULT_LOAD_CHUNK_SIZE;
+
+    static {
+        // the file name is ignored since the rows are passed to the driver as stream, see loadItemAssocs
+        StringBuilder sqlString = new StringBuilder("LOAD DATA LOCAL INFILE 'itemassocs' REPLACE INTO TABLE ");
+        sqlString.append(DEFAULT_TABLE_NAME);
+        sqlString.append(" CHARACTER SET utf8 (");
+        sqlString.append(DEFAULT_TENANT_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ITEM_FROM_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ITEM_FROM_TYPE_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ASSOC_TYPE_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ASSOC_VALUE_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ITEM_TO_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ITEM_TO_TYPE_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_SOURCE_TYPE_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_SOURCE_INFO_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_VIEW_TYPE_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ACTIVE_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_CHANGE_DATE_COLUMN_NAME);
+        sqlString.append(")");
+        SQL_LOAD_ITEM_ASSOCS = sqlString.toString();
+    }
+
     // constructor
     public ItemAssocDAOMysqlImpl(DataSource dataSource, SqlScriptService sqlScriptService) {
         super(sqlScriptService);
@@ -180,115 +230,43 @@ public class ItemAssocDAOMysqlImpl extends
             List<ItemAssocVO<Integer,Integer>> itemAssocs) {
         if (itemAssocs == null) throw new IllegalArgumentException("Missing 'itemAssocs'");
 
-        StringBuilder sqlString = new StringBuilder("LOAD DATA LOCAL INFILE ? REPLACE INTO TABLE ");
-        sqlString.append(DEFAULT_TABLE_NAME);
-        sqlString.append(" (");
-        sqlString.append(DEFAULT_TENANT_COLUMN_NAME);
-        sqlString.append(", ");
-        sqlString.append(DEFAULT_ITEM_FROM_COLUMN_NAME);
-        sqlString.append(", ");
-        sqlString.append(DEFAULT_ITEM_FROM_TYPE_COLUMN_NAME);
-        sqlString.append(", ");
-        sqlString.append(DEFAULT_ASSOC_TYPE_COLUMN_NAME);
-        sqlString.append(", ");
-        sqlString.append(DEFAULT_ASSOC_VALUE_COLUMN_NAME);
-        sqlString.append(", ");
-        sqlString.append(DEFAULT_ITEM_TO_COLUMN_NAME);
-        sqlString.append(", ");
-        sqlString.append(DEFAULT_ITEM_TO_TYPE_COLUMN_NAME);
-        sqlString.append(", ");
-        sqlString.append(DEFAULT_SOURCE_TYPE_COLUMN_NAME);
-        sqlString.append(", ");
-        sqlString.append(DEFAULT_SOURCE_INFO_COLUMN_NAME);
-        sqlString.append(", ");
-        sqlString.append(DEFAULT_VIEW_TYPE_COLUMN_NAME);
-        sqlString.append(", ");
-        sqlString.append(DEFAULT_ACTIVE_COLUMN_NAME);
-        sqlString.append(", ");
-        sqlString.append(DEFAULT_CHANGE_DATE_COLUMN_NAME);
-        sqlString.append(")");
-
-        File tempFile = null;
-        BufferedWriter writer;
-
-        try {
-            tempFile = File.createTempFile("insert_item_assocs", ".tmp");
-            writer = new BufferedWriter(new FileWriter(tempFile));
-
-            for (ItemAssocVO<Integer,Integer> itemAssoc : itemAssocs) {
-                validateUniqueKey(itemAssoc);
-
-                writeItemAssoc(writer, itemAssoc);
-            }
-
-            writer.close();
-
-            getJdbcTemplate().update(sqlString.toString(), new Object[]{tempFile.getAbsolutePath()}, new int[]{Types.VARCHAR});
-
-            return itemAssocs.size();
-        } catch (IOException ex) {
-            if (logger.isWarnEnabled()) logger.warn("Exception when writing item assocaitions to file.", ex);
-
-            throw new RuntimeException(ex);
-        } finally {
-            if (tempFile != null) tempFile.delete();
-
-            if (logger.isDebugEnabled()) logger.debug("closed file");
-        }
+        return insertOrUpdateItemAssocs(itemAssocs.iterator());
     }
 
+    public int insertOrUpdateItemAssocs(Iterator<ItemAssocVO<Integer, Integer>> itemAssocs) {
+        if (itemAssocs == null) throw new IllegalArgumentException("Missing 'itemAssocs'");
 
-    private void writeItemAssoc(Writer writer,
-                                ItemAssocVO<Integer,Integer> itemAssoc)
-            throws IOException {
-        SimpleDateFormat sqlDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        writer.append(itemAssoc.getTenant().toString());
-        writer.append('\t');
-
-        writer.append(itemAssoc.getItemFrom().getItem().toString());
-        writer.append('\t');
-
-        writer.append(itemAssoc.getItemFrom().getType().toString());
-        writer.append('\t');
-
-        writer.append(itemAssoc.getAssocType().toString());
-        writer.append('\t');
-
-        writer.append(itemAssoc.getAssocValue().toString());
-        writer.append('\t');
-
-        writer.append(itemAssoc.getItemTo().getItem().toString());
-        writer.append('\t');
-
-        writer.append(itemAssoc.getItemTo().getType().toString());
-        writer.append('\t');
-
-        writer.append(itemAssoc.getSourceType().toString());
-        writer.append('\t');
-
-        String sourceInfo = itemAssoc.getSourceInfo();
-        sourceInfo = sourceInfo.replace("\\", "\\\\");
-        sourceInfo = sourceInfo.replace("\0", "\\0");
-        sourceInfo = sourceInfo.replace("\b", "\\b");
-        sourceInfo = sourceInfo.replace("\n", "\\n");
-        sourceInfo = sourceInfo.replace("\r", "\\r");
-        sourceInfo = sourceInfo.replace("\t", "\\t");
-        writer.append(sourceInfo);
-        writer.append('\t');
+        ItemAssocSink sink = openItemAssocSink();
 
-        writer.append(itemAssoc.getViewType().toString());
-        writer.append('\t');
+        while (itemAssocs.hasNext()) {
+            sink.add(itemAssocs.next());
+        }
+        sink.close();
 
-        String isActive = "1";
-        if (itemAssoc.isActive() != null) isActive = itemAssoc.isActive() ? "1" : "0";
-        writer.append(isActive);
-        writer.append('\t');
+        return sink.getRowsWritten();
+    }
 
-        String changeDate = sqlDateFormat.format(itemAssoc.getChangeDate());
-        writer.append(changeDate);
-        writer.append('\t');
+    public ItemAssocSink openItemAssocSink() {
+        return new LoadDataItemAssocSink();
+    }
 
-        writer.append('\n');
+    /**
+     * Loads the rows encoded so far with a single <code>LOAD DATA LOCAL INFILE</code> statement, the rows are passed
+     * to the MySQL driver as an input stream instead of a file.
+     */
+    private void loadItemAssocs(final ItemAssocRowEncoder encoder) {
+        getJdbcTemplate().execute(new StatementCallback<Integer>() {
+            public Integer doInStatement(Statement statement) throws SQLException {
+                com.mysql.jdbc.Statement mysqlStatement = statement.unwrap(com.mysql.jdbc.Statement.class);
+
+                mysqlStatement.setLocalInfileInputStream(encoder.getInputStream());
+                try {
+                    return statement.executeUpdate(SQL_LOAD_ITEM_ASSOCS);
+                } finally {
+                    mysqlStatement.setLocalInfileInputStream(null);
+                }
+            }
+        });
     }
 
     /**
@@ -839,11 +817,204 @@ public class ItemAssocDAOMysqlImpl extends
                 associatedItemToVORowMapper);
     }
 
+    @Override
+    public Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> getItemsTo(
+            Collection<ItemVO<Integer, Integer>> itemsFrom, Integer assocTypeId, Integer itemToTypeId,
+            IAConstraintVO<Integer, Integer> constraints) {
+        // validate input parameters
+        if (itemsFrom == null) {
+            throw new IllegalArgumentException("missing 'itemsFrom'");
+        }
+        validateConstraints(constraints);
+
+        Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> result =
+                new LinkedHashMap<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>>();
+        // item ids per item type
+        Map<Integer, TIntArrayList> itemIdsByType = new HashMap<Integer, TIntArrayList>();
+
+        for (ItemVO<Integer, Integer> itemFrom : itemsFrom) {
+            validateItemFrom(itemFrom);
+
+            if (result.containsKey(itemFrom)) continue;
+
+            result.put(itemFrom, new ArrayList<AssociatedItemVO<Integer, Integer>>());
+
+            TIntArrayList itemIds = itemIdsByType.get(itemFrom.getType());
+            if (itemIds == null) {
+                itemIds = new TIntArrayList();
+                itemIdsByType.put(itemFrom.getType(), itemIds);
+            }
+            itemIds.add(itemFrom.getItem());
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("fetching 'itemsTo' with itemToTypeId='" + itemToTypeId + "', assocTypeId='" + assocTypeId +
+                    "' for " + result.size() + " itemsFrom and constraints=" + constraints);
+        }
+
+        for (Map.Entry<Integer, TIntArrayList> entry : itemIdsByType.entrySet()) {
+            TIntArrayList itemIds = entry.getValue();
+
+            for (int offset = 0; offset < itemIds.size(); offset += ITEMS_FROM_CHUNK_SIZE) {
+                getItemsTo(entry.getKey(), itemIds.subList(offset,
+                        Math.min(offset + ITEMS_FROM_CHUNK_SIZE, itemIds.size())), assocTypeId, itemToTypeId,
+                        constraints, result);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Fetches the associated items of a chunk of items of the same type with one query and adds them to the
+     * lists in <code>result</code>. The number of results of the constraints is applied per item.
+     */
+    private void getItemsTo(final Integer itemFromTypeId, TIntList itemFromIds, Integer assocTypeId,
+                            Integer itemToTypeId, IAConstraintVO<Integer, Integer> constraints,
+                            final Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> result) {
+        // generate sql string
+        StringBuilder sqlString = new StringBuilder("SELECT ");
+        sqlString.append(DEFAULT_ITEM_FROM_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ITEM_TO_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_TENANT_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ITEM_TO_TYPE_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ASSOC_VALUE_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ID_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ASSOC_TYPE_COLUMN_NAME);
+        sqlString.append(" FROM ");
+        sqlString.append(DEFAULT_TABLE_NAME);
+        sqlString.append(" WHERE ");
+
+        sqlString.append(DEFAULT_ITEM_FROM_COLUMN_NAME);
+        sqlString.append(" IN (");
+
+        List<Object> args = Lists.newArrayList();
+        List<Integer> argt = Lists.newArrayList();
+
+        for (int i = 0; i < itemFromIds.size(); i++) {
+            sqlString.append(i == 0 ? "?" : ",?");
+
+            args.add(itemFromIds.get(i));
+            argt.add(Types.INTEGER);
+        }
+
+        sqlString.append(") AND ");
+        sqlString.append(DEFAULT_ITEM_FROM_TYPE_COLUMN_NAME);
+        sqlString.append("=?");
+
+        args.add(itemFromTypeId);
+        argt.add(Types.INTEGER);
+
+        if (itemToTypeId != null) {
+            sqlString.append(" AND ");
+            sqlString.append(DEFAULT_ITEM_TO_TYPE_COLUMN_NAME);
+            sqlString.append("=?");
+
+            args.add(itemToTypeId);
+            argt.add(Types.INTEGER);
+        }
+
+        if (assocTypeId != null) {
+            sqlString.append(" AND ");
+            sqlString.append(DEFAULT_ASSOC_TYPE_COLUMN_NAME);
+            sqlString.append("=?");
+
+            args.add(assocTypeId);
+            argt.add(Types.INTEGER);
+        }
+
+        if (constraints.getSourceType() != null) {
+            sqlString.append(" AND ");
+            sqlString.append(DEFAULT_SOURCE_TYPE_COLUMN_NAME);
+            sqlString.append("=?");
+
+            args.add(constraints.getSourceType());
+            argt.add(Types.INTEGER);
+
+            if (constraints.getSourceInfo() != null) {
+                sqlString.append(" AND ");
+                sqlString.append(DEFAULT_SOURCE_INFO_COLUMN_NAME);
+                sqlString.append(" LIKE ?");
+
+                args.add(constraints.getSourceInfo());
+                argt.add(Types.VARCHAR);
+            }
+        }
+
+        if (constraints.getViewType() != null) {
+            sqlString.append(" AND ");
+            sqlString.append(DEFAULT_VIEW_TYPE_COLUMN_NAME);
+            sqlString.append("=?");
+
+            args.add(constraints.getViewType());
+            argt.add(Types.INTEGER);
+        }
+
+        if (constraints.getTenant() != null) {
+            sqlString.append(" AND ");
+            sqlString.append(DEFAULT_TENANT_COLUMN_NAME);
+            sqlString.append("=?");
+
+            args.add(constraints.getTenant());
+            argt.add(Types.INTEGER);
+        }
+
+        if (constraints.isActive() != null) {
+            sqlString.append(" AND ");
+            sqlString.append(DEFAULT_ACTIVE_COLUMN_NAME);
+            sqlString.append("=?");
+
+            args.add(constraints.isActive());
+            argt.add(Types.BOOLEAN);
+        }
+
+        // rows of different items may be interleaved, the order per item is kept when grouping them below
+        if (constraints.getSortAsc() != null) {
+            sqlString.append(" ORDER BY ");
+            sqlString.append(constraints.getSortField());
+            sqlString.append(" ");
+
+            if (constraints.getSortAsc())
+                sqlString.append(DaoUtils.ORDER_ASC);
+            else
+                sqlString.append(DaoUtils.ORDER_DESC);
+        }
+
+        final int numberOfResults = constraints.getNumberOfResults() != null &&
+                constraints.getNumberOfResults() > 0 ? constraints.getNumberOfResults() : Integer.MAX_VALUE;
+        // the lists in result are keyed by the given ItemVOs, rows are matched by item id
+        final TIntObjectHashMap<List<AssociatedItemVO<Integer, Integer>>> listsByItemId =
+                new TIntObjectHashMap<List<AssociatedItemVO<Integer, Integer>>>(itemFromIds.size());
+
+        for (Map.Entry<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> entry : result
+                .entrySet()) {
+            if (itemFromTypeId.equals(entry.getKey().getType()))
+                listsByItemId.put(entry.getKey().getItem(), entry.getValue());
+        }
+
+        getJdbcTemplate().query(sqlString.toString(), args.toArray(), Ints.toArray(argt), new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                List<AssociatedItemVO<Integer, Integer>> associatedItems =
+                        listsByItemId.get(rs.getInt(DEFAULT_ITEM_FROM_COLUMN_NAME));
+
+                if (associatedItems != null && associatedItems.size() < numberOfResults)
+                    associatedItems.add(associatedItemToVORowMapper.mapRow(rs, rs.getRow()));
+            }
+        });
+    }
+
     @Override
     public Iterator<ItemAssocVO<Integer,Integer>> getItemAssocIterator(
             int bulkSize) {
-        return new ResultSetIteratorMysql<ItemAssocVO<Integer,Integer>>(
-                getDataSource(), bulkSize, getItemAssocIteratorQueryString(), itemAssocVORowMapper);
+        return new KeysetResultSetIteratorMysql<ItemAssocVO<Integer,Integer>>(
+                getDataSource(), bulkSize, getItemAssocIteratorQueryString(),
+                DEFAULT_ID_COLUMN_NAME, itemAssocVORowMapper);
     }
 
     /**
@@ -1163,6 +1334,22 @@ public class ItemAssocDAOMysqlImpl extends
         return getJdbcTemplate().update(sqlString.toString(), args.toArray(), Ints.toArray(argt));
     }
 
+    public int getLoadChunkSize() {
+        return loadChunkSize;
+    }
+
+    /**
+     * Sets the number of item associations written with one <code>LOAD DATA</code> statement by
+     * {@link #insertOrUpdateItemAssocs} and {@link #openItemAssocSink()}. Each chunk is buffered in memory and
+     * committed separately.
+     */
+    public void setLoadChunkSize(int loadChunkSize) {
+        if (loadChunkSize < 1) {
+            throw new IllegalArgumentException("loadChunkSize must be at least 1!");
+        }
+        this.loadChunkSize = loadChunkSize;
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // private methods
     private void validateUniqueKey(ItemAssocVO<Integer,Integer> itemAssoc) {
@@ -1350,4 +1537,64 @@ public class ItemAssocDAOMysqlImpl extends
             return associatedItem;
         }
     }
+
+    private class LoadDataItemAssocSink implements ItemAssocSink {
+        private final ItemAssocRowEncoder encoder = new ItemAssocRowEncoder();
+        private final Date changeDate = new Date(System.currentTimeMillis());
+        private final int chunkSize = loadChunkSize;
+        private int rowsWritten = 0;
+        private boolean closed = false;
+
+        public void add(ItemAssocVO<Integer, Integer> itemAssoc) {
+            if (closed) {
+                throw new IllegalStateException("sink is already closed!");
+            }
+
+            validateUniqueKey(itemAssoc);
+            encoder.encode(itemAssoc, changeDate);
+
+            if (encoder.getRows() >= chunkSize) {
+                flush();
+            }
+        }
+
+        public void flush() {
+            if (encoder.getRows() == 0) {
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+
+            loadItemAssocs(encoder);
+            rowsWritten += encoder.getRows();
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("loaded " + encoder.getRows() + " item associations (" + encoder.getLength() +
+                        " bytes) in " + (System.currentTimeMillis() - start) + "ms");
+            }
+
+            encoder.reset();
+        }
+
+        public void close() {
+            if (closed) {
+                return;
+            }
+
+            try {
+                flush();
+            } finally {
+                closed = true;
+            }
+        }
+
+        public void discard() {
+            encoder.reset();
+            closed = true;
+        }
+
+        public int getRowsWritten() {
+            return rowsWritten;
+        }
+    }
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import org.easyrec.model.core.ItemAssocVO;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Encodes item associations as UTF-8 rows in the default format of MySQL's <code>LOAD DATA INFILE</code> (tab
+ * separated fields, newline terminated lines, backslash escaped) into a reusable buffer.
+ * <p/>
+ * Apart from formatting the assoc value and growing the buffer no objects are created per row: integers are written
+ * digit by digit, the change date is formatted once per second and cached and the source info is escaped and encoded
+ * in a single pass.
+ * <p/>
+ * The column order is tenantId, itemFromId, itemFromTypeId, assocTypeId, assocValue, itemToId, itemToTypeId,
+ * sourceTypeId, sourceInfo, viewTypeId, active, changeDate.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class ItemAssocRowEncoder {
+    // constants
+    private static final int MAX_INT_LENGTH = 11;
+    private static final int DATE_LENGTH = 19;
+    // upper bound of a row without the source info
+    private static final int MAX_FIXED_ROW_LENGTH = 9 * MAX_INT_LENGTH + 32 + DATE_LENGTH + 12;
+
+    // members
+    private byte[] buffer;
+    private int length = 0;
+    private int rows = 0;
+
+    private final Calendar calendar = Calendar.getInstance();
+    private final byte[] cachedDate = new byte[DATE_LENGTH];
+    private long cachedSecond = Long.MIN_VALUE;
+
+    public ItemAssocRowEncoder() {
+        this(64 * 1024);
+    }
+
+    public ItemAssocRowEncoder(int initialCapacity) {
+        buffer = new byte[Math.max(initialCapacity, MAX_FIXED_ROW_LENGTH)];
+    }
+
+    /**
+     * Appends an item association as one row to the buffer.
+     *
+     * @param itemAssoc  the item association
+     * @param changeDate the change date to use if the association has none
+     */
+    public void encode(ItemAssocVO<Integer, Integer> itemAssoc, Date changeDate) {
+        String sourceInfo = itemAssoc.getSourceInfo();
+        // every char needs at most 3 bytes in UTF-8, plus a backslash when escaped
+        ensureCapacity(MAX_FIXED_ROW_LENGTH + (sourceInfo != null ? 4 * sourceInfo.length() : 0));
+
+        writeInteger(itemAssoc.getTenant());
+        buffer[length++] = '\t';
+        writeInteger(itemAssoc.getItemFrom().getItem());
+        buffer[length++] = '\t';
+        writeInteger(itemAssoc.getItemFrom().getType());
+        buffer[length++] = '\t';
+        writeInteger(itemAssoc.getAssocType());
+        buffer[length++] = '\t';
+        writeDouble(itemAssoc.getAssocValue());
+        buffer[length++] = '\t';
+        writeInteger(itemAssoc.getItemTo().getItem());
+        buffer[length++] = '\t';
+        writeInteger(itemAssoc.getItemTo().getType());
+        buffer[length++] = '\t';
+        writeInteger(itemAssoc.getSourceType());
+        buffer[length++] = '\t';
+        writeEscaped(sourceInfo);
+        buffer[length++] = '\t';
+        writeInteger(itemAssoc.getViewType());
+        buffer[length++] = '\t';
+        buffer[length++] = (byte) (itemAssoc.isActive() == null || itemAssoc.isActive() ? '1' : '0');
+        buffer[length++] = '\t';
+        writeDate(itemAssoc.getChangeDate() != null ? itemAssoc.getChangeDate() : changeDate);
+        buffer[length++] = '\n';
+
+        rows++;
+    }
+
+    /**
+     * @return a stream over the rows encoded since the last {@link #reset()}, the buffer is not copied
+     */
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(buffer, 0, length);
+    }
+
+    /**
+     * Discards the encoded rows but keeps the buffer for reuse.
+     */
+    public void reset() {
+        length = 0;
+        rows = 0;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(buffer.length * 2, length + additional)];
+            System.arraycopy(buffer, 0, newBuffer, 0, length);
+            buffer = newBuffer;
+        }
+    }
+
+    private void writeInteger(Integer value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+
+        long v = value;
+        if (v < 0) {
+            buffer[length++] = '-';
+            v = -v;
+        }
+
+        // write the digits backwards, then move them to the front
+        int end = length + MAX_INT_LENGTH;
+        int pos = end;
+        do {
+            buffer[--pos] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+
+        int digits = end - pos;
+        System.arraycopy(buffer, pos, buffer, length, digits);
+        length += digits;
+    }
+
+    private void writeDouble(Double value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+
+        String s = Double.toString(value);
+        for (int i = 0; i < s.length(); i++) {
+            buffer[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeEscaped(String value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '\\':
+                    buffer[length++] = '\\';
+                    buffer[length++] = '\\';
+                    break;
+                case '\0':
+                    buffer[length++] = '\\';
+                    buffer[length++] = '0';
+                    break;
+                case '\b':
+                    buffer[length++] = '\\';
+                    buffer[length++] = 'b';
+                    break;
+                case '\n':
+                    buffer[length++] = '\\';
+                    buffer[length++] = 'n';
+                    break;
+                case '\r':
+                    buffer[length++] = '\\';
+                    buffer[length++] = 'r';
+                    break;
+                case '\t':
+                    buffer[length++] = '\\';
+                    buffer[length++] = 't';
+                    break;
+                default:
+                    if (c < 0x80) {
+                        buffer[length++] = (byte) c;
+                    } else if (c < 0x800) {
+                        buffer[length++] = (byte) (0xC0 | (c >> 6));
+                        buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < value.length() &&
+                            Character.isLowSurrogate(value.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                        buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                        buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                        buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                        buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                    } else {
+                        buffer[length++] = (byte) (0xE0 | (c >> 12));
+                        buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                        buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Writes the date as 'yyyy-MM-dd HH:mm:ss' in the default time zone.
+     */
+    private void writeDate(Date date) {
+        long second = date.getTime() / 1000;
+
+        if (second != cachedSecond) {
+            calendar.setTime(date);
+            writeDigits(cachedDate, 0, calendar.get(Calendar.YEAR), 4);
+            cachedDate[4] = '-';
+            writeDigits(cachedDate, 5, calendar.get(Calendar.MONTH) + 1, 2);
+            cachedDate[7] = '-';
+            writeDigits(cachedDate, 8, calendar.get(Calendar.DAY_OF_MONTH), 2);
+            cachedDate[10] = ' ';
+            writeDigits(cachedDate, 11, calendar.get(Calendar.HOUR_OF_DAY), 2);
+            cachedDate[13] = ':';
+            writeDigits(cachedDate, 14, calendar.get(Calendar.MINUTE), 2);
+            cachedDate[16] = ':';
+            writeDigits(cachedDate, 17, calendar.get(Calendar.SECOND), 2);
+            cachedSecond = second;
+        }
+
+        System.arraycopy(cachedDate, 0, buffer, length, DATE_LENGTH);
+        length += DATE_LENGTH;
+    }
+
+    private void writeNull() {
+        buffer[length++] = '\\';
+        buffer[length++] = 'N';
+    }
+
+    private static void writeDigits(byte[] target, int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            target[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.easyrec.model.core.AssociatedItemVO;
+import org.easyrec.model.core.ItemVO;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable, memory-mapped snapshot of the active item associations of one tenant: for every combination of
+ * item from, assoc type and item to type the top-N associated items sorted by descending assoc value.
+ * <p/>
+ * The file starts with a fixed header (magic, version, tenant, top-N, number of keys, number of entries, creation
+ * time) followed by the entries (item to id, item assoc id, assoc value; grouped by key) and the index (item from
+ * id, item from type, assoc type, item to type, first entry, number of entries; sorted by these fields). Lookups are
+ * a binary search over the index with absolute reads from the mapped buffer, so a snapshot can be shared between
+ * threads without synchronization.
+ * <p/>
+ * Snapshots are created with a {@link Writer} and managed by the {@link ItemAssocSnapshotStore}.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class ItemAssocSnapshot {
+    // constants
+    public static final int MAGIC = 0x45524153;
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 16;
+    private static final int KEY_SIZE = 24;
+
+    // members
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int tenantId;
+    private final int topN;
+    private final int keyCount;
+    private final int entryCount;
+    private final long creationTime;
+    private final int indexOffset;
+
+    private ItemAssocSnapshot(File file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("'" + file + "' is not an item association snapshot");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("'" + file + "' has unsupported version " + buffer.getInt(4));
+
+        tenantId = buffer.getInt(8);
+        topN = buffer.getInt(12);
+        keyCount = buffer.getInt(16);
+        entryCount = buffer.getInt(20);
+        creationTime = buffer.getLong(24);
+        indexOffset = HEADER_SIZE + entryCount * ENTRY_SIZE;
+
+        if ((long) indexOffset + (long) keyCount * KEY_SIZE != buffer.capacity())
+            throw new IOException("'" + file + "' is truncated");
+    }
+
+    /**
+     * Maps a snapshot file read-only into memory.
+     *
+     * @param file a file written by a {@link Writer}
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static ItemAssocSnapshot open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            return new ItemAssocSnapshot(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the associated items of an item sorted by descending assoc value.
+     *
+     * @param itemFrom          the item associations start from
+     * @param assocTypeId       the assoc type
+     * @param itemToTypeId      the type of the associated items
+     * @param numberOfResults   the maximum number of items returned, at most {@link #getTopN()} items are available
+     * @return the associated items, an empty list if there are none
+     */
+    public List<AssociatedItemVO<Integer, Integer>> getItemsTo(ItemVO<Integer, Integer> itemFrom, int assocTypeId,
+                                                               int itemToTypeId, int numberOfResults) {
+        int key = find(itemFrom.getItem(), itemFrom.getType(), assocTypeId, itemToTypeId);
+
+        if (key < 0) return Collections.emptyList();
+
+        int keyOffset = indexOffset + key * KEY_SIZE;
+        int first = buffer.getInt(keyOffset + 16);
+        int count = Math.min(buffer.getInt(keyOffset + 20), numberOfResults);
+
+        List<AssociatedItemVO<Integer, Integer>> result = new ArrayList<AssociatedItemVO<Integer, Integer>>(count);
+        Integer itemToType = itemToTypeId;
+        Integer assocType = assocTypeId;
+
+        for (int i = 0; i < count; i++) {
+            int entryOffset = HEADER_SIZE + (first + i) * ENTRY_SIZE;
+
+            result.add(new AssociatedItemVO<Integer, Integer>(
+                    new ItemVO<Integer, Integer>(tenantId, buffer.getInt(entryOffset), itemToType),
+                    buffer.getDouble(entryOffset + 8), buffer.getInt(entryOffset + 4), assocType));
+        }
+
+        return result;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getTenantId() {
+        return tenantId;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ItemAssocSnapshot{tenantId=" + tenantId + ", topN=" + topN + ", keys=" + keyCount + ", entries=" +
+                entryCount + ", file=" + file + "}";
+    }
+
+    /**
+     * @return the index of the key or -1 if the snapshot contains no entries for it
+     */
+    private int find(int itemFrom, int itemFromType, int assocType, int itemToType) {
+        int low = 0;
+        int high = keyCount - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = indexOffset + mid * KEY_SIZE;
+
+            int cmp = compare(buffer.getInt(offset), itemFrom);
+            if (cmp == 0) cmp = compare(buffer.getInt(offset + 4), itemFromType);
+            if (cmp == 0) cmp = compare(buffer.getInt(offset + 8), assocType);
+            if (cmp == 0) cmp = compare(buffer.getInt(offset + 12), itemToType);
+
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid;
+        }
+
+        return -1;
+    }
+
+    private static int compare(int a, int b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    /**
+     * Writes a snapshot file. Associations must be added sorted by item from id, item from type, assoc type, item to
+     * type and descending assoc value; associations exceeding the top-N of their key are skipped.
+     */
+    public static class Writer {
+        private final File file;
+        private final int tenantId;
+        private final int topN;
+        private final DataOutputStream out;
+        private final TIntArrayList index = new TIntArrayList();
+
+        private int entryCount = 0;
+        private int keyCount = 0;
+        private int currentCount = 0;
+        private boolean closed = false;
+
+        public Writer(File file, int tenantId, int topN) throws IOException {
+            if (topN < 1) throw new IllegalArgumentException("'topN' must be greater than 0");
+
+            this.file = file;
+            this.tenantId = tenantId;
+            this.topN = topN;
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+            // the header is rewritten on close
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        public void add(int itemFrom, int itemFromType, int assocType, int itemToType, int itemTo, int itemAssocId,
+                        double assocValue) throws IOException {
+            int cmp = keyCount == 0 ? 1 : compareToCurrentKey(itemFrom, itemFromType, assocType, itemToType);
+
+            if (cmp < 0) throw new IllegalArgumentException("associations must be sorted by key");
+
+            if (cmp > 0) {
+                index.add(itemFrom);
+                index.add(itemFromType);
+                index.add(assocType);
+                index.add(itemToType);
+                index.add(entryCount);
+                index.add(0);
+                keyCount++;
+                currentCount = 0;
+            }
+
+            if (currentCount == topN) return;
+
+            if ((long) HEADER_SIZE + (long) (entryCount + 1) * ENTRY_SIZE + (long) (keyCount + 1) * KEY_SIZE >
+                    Integer.MAX_VALUE)
+                throw new IOException("snapshot of tenant " + tenantId + " exceeds 2GB");
+
+            out.writeInt(itemTo);
+            out.writeInt(itemAssocId);
+            out.writeDouble(assocValue);
+
+            entryCount++;
+            currentCount++;
+            index.set(index.size() - 1, currentCount);
+        }
+
+        /**
+         * Writes the index and the header and closes the file.
+         */
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+
+            try {
+                for (int i = 0; i < index.size(); i++) {
+                    out.writeInt(index.get(i));
+                }
+            } finally {
+                out.close();
+            }
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeInt(tenantId);
+                raf.writeInt(topN);
+                raf.writeInt(keyCount);
+                raf.writeInt(entryCount);
+                raf.writeLong(System.currentTimeMillis());
+                raf.getFD().sync();
+            } finally {
+                raf.close();
+            }
+        }
+
+        public int getKeyCount() {
+            return keyCount;
+        }
+
+        public int getEntryCount() {
+            return entryCount;
+        }
+
+        private int compareToCurrentKey(int itemFrom, int itemFromType, int assocType, int itemToType) {
+            int offset = index.size() - 6;
+
+            int cmp = compare(itemFrom, index.get(offset));
+            if (cmp == 0) cmp = compare(itemFromType, index.get(offset + 1));
+            if (cmp == 0) cmp = compare(assocType, index.get(offset + 2));
+            if (cmp == 0) cmp = compare(itemToType, index.get(offset + 3));
+
+            return cmp;
+        }
+    }
+}
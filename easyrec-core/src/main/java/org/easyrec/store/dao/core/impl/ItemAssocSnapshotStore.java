@@ -0,0 +1,340 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.model.core.AssociatedItemVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.store.dao.BaseItemAssocDAO;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes and serves {@link ItemAssocSnapshot}s, one per tenant.
+ * <p/>
+ * {@link #publish(int)} is called after generator runs: the active item associations of the tenant are streamed from
+ * the itemassoc table into a new snapshot file which is then mapped into memory and atomically replaces the previous
+ * snapshot of the tenant. On {@link #init()} the newest snapshot file of every tenant found in the snapshot directory
+ * is mapped, so recommendations can be served right after a restart without warming up.
+ * <p/>
+ * Item associations changed outside of generator runs (e.g. imported through the API) are only reflected after the
+ * next publish.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class ItemAssocSnapshotStore {
+    // constants
+    private static final String FILE_PREFIX = "itemassoc-";
+    private static final String FILE_SUFFIX = ".snapshot";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String SQL_LOAD_ITEM_ASSOCS;
+
+    static {
+        SQL_LOAD_ITEM_ASSOCS = new StringBuilder("SELECT ")
+                .append(BaseItemAssocDAO.DEFAULT_ITEM_FROM_COLUMN_NAME).append(", ")
+                .append(BaseItemAssocDAO.DEFAULT_ITEM_FROM_TYPE_COLUMN_NAME).append(", ")
+                .append(BaseItemAssocDAO.DEFAULT_ASSOC_TYPE_COLUMN_NAME).append(", ")
+                .append(BaseItemAssocDAO.DEFAULT_ITEM_TO_TYPE_COLUMN_NAME).append(", ")
+                .append(BaseItemAssocDAO.DEFAULT_ITEM_TO_COLUMN_NAME).append(", ")
+                .append(BaseItemAssocDAO.DEFAULT_ID_COLUMN_NAME).append(", ")
+                .append(BaseItemAssocDAO.DEFAULT_ASSOC_VALUE_COLUMN_NAME).append(" FROM ")
+                .append(BaseItemAssocDAO.DEFAULT_TABLE_NAME).append(" WHERE ")
+                .append(BaseItemAssocDAO.DEFAULT_TENANT_COLUMN_NAME).append(" = ? AND ")
+                .append(BaseItemAssocDAO.DEFAULT_ACTIVE_COLUMN_NAME).append(" = 1 ORDER BY ")
+                .append(BaseItemAssocDAO.DEFAULT_ITEM_FROM_COLUMN_NAME).append(", ")
+                .append(BaseItemAssocDAO.DEFAULT_ITEM_FROM_TYPE_COLUMN_NAME).append(", ")
+                .append(BaseItemAssocDAO.DEFAULT_ASSOC_TYPE_COLUMN_NAME).append(", ")
+                .append(BaseItemAssocDAO.DEFAULT_ITEM_TO_TYPE_COLUMN_NAME).append(", ")
+                .append(BaseItemAssocDAO.DEFAULT_ASSOC_VALUE_COLUMN_NAME).append(" DESC").toString();
+    }
+
+    // logging
+    private final Log logger = LogFactory.getLog(this.getClass());
+
+    // configuration
+    private boolean enabled = false;
+    private File directory = new File("snapshots");
+    private int topN = 100;
+
+    // state
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentMap<Integer, ItemAssocSnapshot> snapshots =
+            new ConcurrentHashMap<Integer, ItemAssocSnapshot>();
+    private final Object publishLock = new Object();
+
+    // metrics
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong publishes = new AtomicLong();
+    private volatile long lastPublishTime = 0;
+
+    public ItemAssocSnapshotStore(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Maps the newest snapshot of every tenant found in the snapshot directory, older snapshots and left over
+     * temporary files are deleted.
+     */
+    public void init() {
+        if (!enabled) return;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IllegalStateException("Could not create snapshot directory '" + directory + "'");
+
+        Map<Integer, File> newest = new HashMap<Integer, File>();
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(FILE_PREFIX);
+            }
+        });
+
+        for (File file : files) {
+            Integer tenantId = parseTenantId(file.getName());
+
+            if (tenantId == null) {
+                delete(file);
+                continue;
+            }
+
+            File current = newest.get(tenantId);
+            if (current == null || current.getName().compareTo(file.getName()) < 0) {
+                if (current != null) delete(current);
+                newest.put(tenantId, file);
+            } else {
+                delete(file);
+            }
+        }
+
+        for (Map.Entry<Integer, File> entry : newest.entrySet()) {
+            try {
+                ItemAssocSnapshot snapshot = ItemAssocSnapshot.open(entry.getValue());
+                snapshots.put(entry.getKey(), snapshot);
+
+                if (logger.isInfoEnabled()) logger.info("loaded " + snapshot);
+            } catch (IOException e) {
+                logger.warn("could not load item association snapshot '" + entry.getValue() + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Writes a new snapshot of the active item associations of a tenant and replaces the current one. If writing
+     * fails the current snapshot is kept.
+     *
+     * @param tenantId the tenant
+     */
+    public void publish(int tenantId) {
+        if (!enabled) return;
+
+        synchronized (publishLock) {
+            long start = System.currentTimeMillis();
+            File file = new File(directory, FILE_PREFIX + tenantId + "-" + String.format("%019d", start) + FILE_SUFFIX);
+            File tempFile = new File(directory, file.getName() + TEMP_SUFFIX);
+
+            ItemAssocSnapshot snapshot;
+
+            try {
+                writeSnapshot(tenantId, tempFile);
+
+                if (!tempFile.renameTo(file))
+                    throw new IOException("could not rename '" + tempFile + "' to '" + file + "'");
+
+                snapshot = ItemAssocSnapshot.open(file);
+            } catch (Exception e) {
+                logger.error("publishing the item association snapshot of tenant " + tenantId + " failed", e);
+                delete(tempFile);
+                return;
+            }
+
+            ItemAssocSnapshot previous = snapshots.put(tenantId, snapshot);
+            // readers still using the previous mapping are not affected by deleting its file
+            if (previous != null) delete(previous.getFile());
+
+            publishes.incrementAndGet();
+            lastPublishTime = System.currentTimeMillis() - start;
+
+            if (logger.isInfoEnabled()) logger.info("published " + snapshot + " in " + lastPublishTime + "ms");
+        }
+    }
+
+    /**
+     * Drops the snapshot of a tenant, recommendations are read from the database afterwards.
+     */
+    public void remove(int tenantId) {
+        ItemAssocSnapshot previous = snapshots.remove(tenantId);
+
+        if (previous != null) delete(previous.getFile());
+    }
+
+    @Nullable
+    public ItemAssocSnapshot getSnapshot(int tenantId) {
+        return snapshots.get(tenantId);
+    }
+
+    /**
+     * Returns the active associated items of an item sorted by descending assoc value from the snapshot of the
+     * tenant.
+     *
+     * @return the associated items or <code>null</code> if the request cannot be answered from a snapshot (there is
+     *         no snapshot of the tenant, the assoc type or item type is not given or more than <code>topN</code>
+     *         items are requested)
+     */
+    @Nullable
+    public List<AssociatedItemVO<Integer, Integer>> getItemsTo(Integer tenantId, ItemVO<Integer, Integer> itemFrom,
+                                                               Integer assocTypeId, Integer itemToTypeId,
+                                                               Integer numberOfResults) {
+        if (!enabled) return null;
+
+        ItemAssocSnapshot snapshot = tenantId != null ? snapshots.get(tenantId) : null;
+
+        if (snapshot == null || assocTypeId == null || itemToTypeId == null || itemFrom.getItem() == null ||
+                itemFrom.getType() == null || numberOfResults == null || numberOfResults > snapshot.getTopN()) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+
+        lookups.incrementAndGet();
+        return snapshot.getItemsTo(itemFrom, assocTypeId, itemToTypeId, numberOfResults);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(File directory) {
+        if (directory == null) throw new IllegalArgumentException("Missing 'directory'");
+
+        this.directory = directory;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    public void setTopN(int topN) {
+        if (topN < 1) throw new IllegalArgumentException("'topN' must be greater than 0");
+
+        this.topN = topN;
+    }
+
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    public long getPublishes() {
+        return publishes.get();
+    }
+
+    public long getLastPublishTime() {
+        return lastPublishTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ItemAssocSnapshotStore{enabled=" + enabled + ", tenants=" + snapshots.size() + ", lookups=" +
+                lookups.get() + ", fallbacks=" + fallbacks.get() + ", publishes=" + publishes.get() +
+                ", lastPublishTime=" + lastPublishTime + "ms}";
+    }
+
+    private void writeSnapshot(final int tenantId, File file) throws IOException {
+        final ItemAssocSnapshot.Writer writer = new ItemAssocSnapshot.Writer(file, tenantId, topN);
+
+        try {
+            jdbcTemplate.query(new PreparedStatementCreator() {
+                public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                    PreparedStatement ps = con.prepareStatement(SQL_LOAD_ITEM_ASSOCS, ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_READ_ONLY);
+                    // tells the MySQL driver to stream rows instead of reading the whole result
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    ps.setInt(1, tenantId);
+                    return ps;
+                }
+            }, new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    try {
+                        writer.add(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getInt(5),
+                                rs.getInt(6), rs.getDouble(7));
+                    } catch (IOException e) {
+                        throw new IllegalStateException("could not write snapshot", e);
+                    }
+                }
+            });
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return the tenant of a snapshot file name or <code>null</code> if the file is not a complete snapshot
+     */
+    @Nullable
+    private static Integer parseTenantId(String name) {
+        if (!name.endsWith(FILE_SUFFIX)) return null;
+
+        int end = name.indexOf('-', FILE_PREFIX.length());
+        if (end < 0) return null;
+
+        try {
+            return Integer.valueOf(name.substring(FILE_PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void delete(File file) {
+        if (file.exists() && !file.delete())
+            logger.warn("could not delete '" + file + "', it is removed on the next start");
+    }
+}
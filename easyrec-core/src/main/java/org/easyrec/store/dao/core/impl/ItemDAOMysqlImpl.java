@@ -22,6 +22,7 @@ import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
+import gnu.trove.map.hash.TIntIntHashMap;
 import org.easyrec.model.core.transfer.TimeConstraintVO;
 import org.easyrec.model.core.web.Item;
 import org.easyrec.model.core.web.RemoteTenant;
@@ -31,9 +32,11 @@ import org.easyrec.store.dao.impl.BasicDAOMysqlImpl;
 import org.easyrec.util.core.Web;
 import org.easyrec.utils.io.MySQL;
 import org.easyrec.utils.io.Text;
+import org.easyrec.utils.spring.store.StreamingPreparedStatementCreator;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -42,9 +45,12 @@ import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 import org.springframework.web.util.HtmlUtils;
@@ -68,7 +74,10 @@ import org.springframework.web.util.HtmlUtils;
  */
 
 public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
+    // maximum number of item ids in the IN list of a single query of getAll
+    private static final int GET_ALL_CHUNK_SIZE = 500;
     private static final String SQL_GET_ITEM;
+    private static final String SQL_GET_ITEMS_BY_ITEMIDS;
     private static final String SQL_GET_ITEM_BY_ID;
     private static final String SQL_ADD_ITEM;
     private static final String SQL_INSERT_OR_UPDATE_ITEM;
@@ -76,11 +85,14 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
     private static final String SQL_DEACTIVATE_ITEM;
     private static final String SQL_REMOVE_ITEM;
     private static final String SQL_REMOVE_ITEMS;
+    private static final String SQL_REMOVE_PROFILE_INDEX;
+    private static final String SQL_REMOVE_PROFILE_INDEX_OF_ITEM;
     private static final String SQL_HOT_ITEMS;
     private static final String SQL_SEARCH_ITEMS_START;
     private static final String SQL_SEARCH_ITEMS_COUNT_START;
     private static final StringBuilder SQL_GET_ITEMS;
     private static final String SQL_GET_ITEMTYPE_OF_ITEM;
+    private static final String SQL_GET_ITEMTYPES_OF_ITEMS;
     private static final int[] ARGTYPES_ITEM_KEY;
     private static final int[] ARGTYPES_ITEM_ID;
     private static final int[] ARGTYPES_ADD_ITEM;
@@ -96,6 +108,8 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
     private ItemDetailsRowMapper itemDetailsRowMapper = new ItemDetailsRowMapper();
 
     private Cache cache;
+    // the profiles are stored in the item table, the profile cache is keyed by the int ids of the items
+    private ProfileCache profileCache;
     
     private HashMap<String, Item> itemCache = new HashMap<String, Item>();
 
@@ -119,6 +133,11 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
                 .append(" FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ")
                 .append("    TENANTID = ? AND ITEMID = ? AND ITEMTYPE = ?").toString();
 
+        SQL_GET_ITEMS_BY_ITEMIDS = new StringBuilder().append(" SELECT ")
+                .append("    ID, TENANTID, ITEMID, ITEMTYPE, DESCRIPTION, URL, IMAGEURL, ACTIVE, CREATIONDATE ")
+                .append(" FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ")
+                .append("    TENANTID = ? AND ITEMTYPE = ? AND ITEMID IN (").toString();
+
         SQL_GET_ITEM_BY_ID = new StringBuilder().append(" SELECT ")
                 .append("    ID, TENANTID, ITEMID, ITEMTYPE, DESCRIPTION, URL, IMAGEURL, ACTIVE, CREATIONDATE ")
                 .append(" FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ").append("    ID = ?").toString();
@@ -153,6 +172,11 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
         SQL_REMOVE_ITEMS = new StringBuilder().append(" DELETE FROM ").append(DEFAULT_TABLE_NAME)
                 .append(" WHERE TENANTID = ? ").toString();
 
+        SQL_REMOVE_PROFILE_INDEX = " DELETE FROM profile_index WHERE TENANTID = ? ";
+
+        SQL_REMOVE_PROFILE_INDEX_OF_ITEM =
+                " DELETE FROM profile_index WHERE TENANTID = ? AND ITEMID = ? AND ITEMTYPE = ? ";
+
         SQL_SEARCH_ITEMS_START =
                 "SELECT id, tenantId, itemId, itemType, description, url, imageUrl, active, creationDate FROM " +
                         DEFAULT_TABLE_NAME + " WHERE tenantId = ?";
@@ -163,6 +187,8 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
 
         SQL_GET_ITEMTYPE_OF_ITEM = "SELECT id FROM itemtype WHERE tenantId=? AND name=(SELECT distinct itemtype from item where tenantId=? and itemid=(select stringId from idmapping where intId = ?))";
 
+        SQL_GET_ITEMTYPES_OF_ITEMS = "SELECT m.intId, t.id FROM item i INNER JOIN idmapping m ON (m.stringId = i.itemid) INNER JOIN itemtype t ON (t.tenantId = i.tenantId AND t.name = i.itemtype) WHERE i.tenantId = ?";
+
 
         ARGTYPES_ITEM_KEY = new int[]{Types.INTEGER, Types.VARCHAR, Types.VARCHAR};
         ARGTYPES_ITEM_ID = new int[]{Types.INTEGER};
@@ -286,6 +312,57 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
         }
     }
 
+    @Override
+    public Map<String, Item> getAll(RemoteTenant remoteTenant, String itemType, Collection<String> itemIds) {
+        Map<String, Item> items = new HashMap<String, Item>(itemIds.size() * 2);
+        List<String> uncachedItemIds = Lists.newArrayList();
+
+        for (String itemId : new LinkedHashSet<String>(itemIds)) {
+            if (itemId == null) continue;
+
+            Element e = cache.get(makeCacheKey(remoteTenant.getId(), itemType, itemId));
+
+            if (e != null) items.put(itemId, (Item) e.getValue());
+            else uncachedItemIds.add(itemId);
+        }
+
+        for (int from = 0; from < uncachedItemIds.size(); from += GET_ALL_CHUNK_SIZE) {
+            List<String> chunk = uncachedItemIds.subList(from,
+                    Math.min(from + GET_ALL_CHUNK_SIZE, uncachedItemIds.size()));
+
+            StringBuilder sql = new StringBuilder(SQL_GET_ITEMS_BY_ITEMIDS);
+            Object[] args = new Object[chunk.size() + 2];
+            int[] argTypes = new int[args.length];
+
+            args[0] = remoteTenant.getId();
+            argTypes[0] = Types.INTEGER;
+            args[1] = itemType;
+            argTypes[1] = Types.VARCHAR;
+
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ",?");
+                args[i + 2] = chunk.get(i);
+                argTypes[i + 2] = Types.VARCHAR;
+            }
+            sql.append(")");
+
+            try {
+                for (Item i : getJdbcTemplate().query(sql.toString(), args, argTypes, itemRowMapper)) {
+                    i.setUrl(Text.matchMax(remoteTenant.getUrl(), i.getUrl()));
+                    i.setImageUrl(Text.matchMax(remoteTenant.getUrl(), i.getImageUrl()));
+                    cache.put(new Element(makeCacheKey(remoteTenant.getId(), itemType, i.getItemId()), i));
+
+                    items.put(i.getItemId(), i);
+                }
+            } catch (Exception ex) {
+                // unlike a missing item in get() this is a real failure, the items of the chunk are left out
+                logger.warn("failed to get " + chunk.size() + " items or failed to insert them into the cache", ex);
+            }
+        }
+
+        return items;
+    }
+
     @Override
     public boolean exists(RemoteTenant remoteTenant, String itemId, String itemType) {
         return get(remoteTenant, itemId, itemType) != null;
@@ -354,6 +431,8 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
         try {
             getJdbcTemplate().update(SQL_REMOVE_ITEM, args, ARGTYPES_ITEM_KEY);
             cache.remove(makeCacheKey(tenantId, itemType, itemId));
+            getJdbcTemplate().update(SQL_REMOVE_PROFILE_INDEX_OF_ITEM, args, ARGTYPES_ITEM_KEY);
+            if (profileCache != null) profileCache.invalidateTenant(tenantId);
 //            itemCache.remove(makeCacheKey(tenantId, itemType, itemId));
         } catch (Exception e) {
             if (logger.isDebugEnabled()) logger.debug("failed to remove item from db or cache", e);
@@ -368,6 +447,8 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
         try {
             getJdbcTemplate().update(SQL_REMOVE_ITEMS, args, argTypes);
             cache.removeAll();
+            getJdbcTemplate().update(SQL_REMOVE_PROFILE_INDEX, args, argTypes);
+            if (profileCache != null) profileCache.invalidateTenant(tenantId);
 //            itemCache.clear();
 
         } catch (Exception e) {
@@ -642,6 +723,20 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
         return getJdbcTemplate().queryForInt(SQL_GET_ITEMTYPE_OF_ITEM, args, argTypes);
     }
 
+    @Override
+    public TIntIntHashMap getItemTypeIdsOfItems(Integer tenantId) {
+        final TIntIntHashMap itemTypeIds = new TIntIntHashMap();
+
+        getJdbcTemplate().query(new StreamingPreparedStatementCreator(SQL_GET_ITEMTYPES_OF_ITEMS,
+                new Object[]{tenantId}, new int[]{Types.INTEGER}), new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                itemTypeIds.put(rs.getInt(1), rs.getInt(2));
+            }
+        });
+
+        return itemTypeIds;
+    }
+
     private void generateSearchQueryWithRules(StringBuilder query, List<Object> args, List<Integer> argt,
                                               Integer tenantId, String itemId, Iterable<String> itemTypes,
                                               String description, String url, String imageUrl, Boolean active,
@@ -817,6 +912,10 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
     public void setCache(Cache cache) {
         this.cache = cache;
     }
+
+    public void setProfileCache(ProfileCache profileCache) {
+        this.profileCache = profileCache;
+    }
     
     
 }
\ No newline at end of file
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2011 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import org.easyrec.store.dao.core.CachedProfile;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded LRU cache of the profiles read by the {@link ProfileDAOMysqlImpl}, keyed by tenant, item and item type.
+ * <p/>
+ * A {@link CachedProfile} is immutable: it holds the profile XML and the values extracted from it per XPath, so
+ * repeated field loads of the same profile neither query the database nor parse the profile again. The cache is
+ * bounded by the number of profiles and by an estimate of their memory (the characters of the XML and the extracted
+ * values), the least recently used profiles are evicted first.
+ * <p/>
+ * Every change of a profile invalidates its entry. A profile loaded from the database is only put into the cache if
+ * there was no invalidation since the load started (see {@link #getGeneration()}), so a concurrent change can't be
+ * overwritten by the old profile.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class ProfileCache {
+
+    // estimated object overhead of an entry, a string and a list of values
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int STRING_OVERHEAD = 48;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    private boolean enabled = true;
+    private int maxProfiles = 10000;
+    private long maxMemory = 64L * 1024 * 1024;
+
+    // guarded by this
+    private long memory = 0;
+    private long generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    /**
+     * Returns the cached profile or <code>null</code> if it isn't cached or the cache is disabled.
+     */
+    public synchronized CachedProfile get(int tenantId, int itemId, int itemTypeId) {
+        if (!enabled) return null;
+
+        Entry profile = entries.get(new Key(tenantId, itemId, itemTypeId));
+
+        if (profile == null) misses++;
+        else hits++;
+
+        return profile;
+    }
+
+    /**
+     * Caches a profile loaded from the database.
+     *
+     * @param generation the {@link #getGeneration() generation} read before the profile was loaded, the profile is
+     *                   not cached if any profile was invalidated since
+     * @return the profile, also if it wasn't cached
+     */
+    public synchronized CachedProfile put(int tenantId, int itemId, int itemTypeId, String profileXML,
+                                          long generation) {
+        Key key = new Key(tenantId, itemId, itemTypeId);
+        Entry profile = new Entry(this, key, profileXML);
+
+        if (!enabled || generation != this.generation || profile.weight > maxMemory) return profile;
+
+        Entry previous = entries.put(key, profile);
+
+        if (previous != null) memory -= previous.weight;
+
+        memory += profile.weight;
+        evict();
+
+        return profile;
+    }
+
+    /**
+     * Removes the profile of an item, must be called after the profile was changed in the database.
+     */
+    public synchronized void invalidate(int tenantId, int itemId, int itemTypeId) {
+        generation++;
+        invalidations++;
+
+        remove(new Key(tenantId, itemId, itemTypeId));
+    }
+
+    /**
+     * Removes all profiles of a tenant, e.g. after its items were removed.
+     */
+    public synchronized void invalidateTenant(int tenantId) {
+        generation++;
+        invalidations++;
+
+        for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Entry> entry = it.next();
+
+            if (entry.getKey().tenantId == tenantId) {
+                memory -= entry.getValue().weight;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+        memory = 0;
+    }
+
+    /**
+     * @return the number of invalidations so far
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    private synchronized void putFieldValues(Entry profile, String xPath, List<String> values) {
+        // only profiles still in the cache are accounted
+        if (entries.get(profile.key) != profile) {
+            profile.fieldValues.putIfAbsent(xPath, values);
+            return;
+        }
+
+        if (profile.fieldValues.putIfAbsent(xPath, values) == null) {
+            long weight = weight(xPath, values);
+
+            profile.weight += weight;
+            memory += weight;
+            evict();
+        }
+    }
+
+    private void remove(Key key) {
+        Entry profile = entries.remove(key);
+
+        if (profile != null) memory -= profile.weight;
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+
+        while ((entries.size() > maxProfiles || memory > maxMemory) && it.hasNext()) {
+            memory -= it.next().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static long weight(String string) {
+        return string == null ? 0 : STRING_OVERHEAD + 2L * string.length();
+    }
+
+    private static long weight(String xPath, List<String> values) {
+        long weight = weight(xPath) + STRING_OVERHEAD;
+
+        for (String value : values)
+            weight += weight(value);
+
+        return weight;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // configuration and statistics
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+
+        if (!enabled) clear();
+    }
+
+    public synchronized int getMaxProfiles() {
+        return maxProfiles;
+    }
+
+    public synchronized void setMaxProfiles(int maxProfiles) {
+        if (maxProfiles <= 0) throw new IllegalArgumentException("'maxProfiles' must be greater than 0");
+
+        this.maxProfiles = maxProfiles;
+        evict();
+    }
+
+    /**
+     * @return the estimated memory of the cached profiles in bytes at which profiles are evicted
+     */
+    public synchronized long getMaxMemory() {
+        return maxMemory;
+    }
+
+    public synchronized void setMaxMemory(long maxMemory) {
+        if (maxMemory <= 0) throw new IllegalArgumentException("'maxMemory' must be greater than 0");
+
+        this.maxMemory = maxMemory;
+        evict();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated memory of the cached profiles in bytes
+     */
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("profiles=%d, memory=%d bytes, hits=%d, misses=%d, hitRate=%.3f, evictions=%d, " +
+                "invalidations=%d", entries.size(), memory, hits, misses, getHitRate(), evictions, invalidations);
+    }
+
+    /**
+     * A profile and the values extracted from it.
+     */
+    private static final class Entry implements CachedProfile {
+        private final ProfileCache cache;
+        private final Key key;
+        private final String profileXML;
+        private final ConcurrentMap<String, List<String>> fieldValues =
+                new ConcurrentHashMap<String, List<String>>(4);
+        // guarded by the cache
+        private long weight;
+
+        private Entry(ProfileCache cache, Key key, String profileXML) {
+            this.cache = cache;
+            this.key = key;
+            this.profileXML = profileXML;
+            this.weight = ENTRY_OVERHEAD + weight(profileXML);
+        }
+
+        public String getProfileXML() {
+            return profileXML;
+        }
+
+        public List<String> getFieldValues(String xPath) {
+            return fieldValues.get(xPath);
+        }
+
+        public List<String> putFieldValues(String xPath, List<String> values) {
+            List<String> unmodifiableValues = Collections.unmodifiableList(values);
+
+            cache.putFieldValues(this, xPath, unmodifiableValues);
+
+            return unmodifiableValues;
+        }
+    }
+
+    private static final class Key {
+        private final int tenantId;
+        private final int itemId;
+        private final int itemTypeId;
+
+        private Key(int tenantId, int itemId, int itemTypeId) {
+            this.tenantId = tenantId;
+            this.itemId = itemId;
+            this.itemTypeId = itemTypeId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key other = (Key) o;
+
+            return tenantId == other.tenantId && itemId == other.itemId && itemTypeId == other.itemTypeId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * tenantId + itemId) + itemTypeId;
+        }
+    }
+}
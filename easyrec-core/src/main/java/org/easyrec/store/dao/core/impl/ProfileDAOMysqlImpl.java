@@ -24,27 +24,56 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.ItemVO;
 import org.easyrec.store.dao.IDMappingDAO;
+import org.easyrec.store.dao.core.CachedProfile;
 import org.easyrec.store.dao.core.ProfileDAO;
 import org.easyrec.store.dao.core.types.ItemTypeDAO;
 import org.easyrec.store.dao.core.types.impl.ItemTypeDAOMysqlImpl;
 import org.easyrec.store.dao.impl.AbstractBaseProfileDAOMysqlImpl;
 import org.easyrec.store.dao.impl.IDMappingDAOMysqlImpl;
+import org.easyrec.utils.spring.store.StreamingPreparedStatementCreator;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
 import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
 import javax.sql.DataSource;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.StringReader;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
 
 /**
+ * Stores the profiles in the profileData column of the item table.
+ * <p/>
+ * The values of the dimensions configured with {@link #setIndexedDimensions(String)} are additionally kept in the
+ * profile_index table, one row per node matching the dimension XPath. The index is written whenever a profile is
+ * stored, so dimension lookups of indexed dimensions read the index instead of evaluating <code>ExtractValue()</code>
+ * on the profile of every item. Profiles stored before a dimension was configured are indexed by
+ * {@link #reindexProfiles(Integer)}, until then the lookups of their own values fall back to
+ * <code>ExtractValue()</code>. The dimensions a tenant was reindexed with are recorded in the profile_index_dimension
+ * table, lookups of items by a dimension the index wasn't built for also use <code>ExtractValue()</code>.
+ * <p/>
+ * If a {@link ProfileCache} is set, profiles read without an active filter are served from the cache. Every write of
+ * a profile through this DAO invalidates its cache entry.
+ *
  * @author szavrel
  * @author Fabian Salcher
  */
@@ -80,6 +109,48 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
             .append(DEFAULT_TENANT_ID_COLUMN_NAME).append("=? AND ").append(DEFAULT_ITEM_ID_COLUMN_NAME)
             .append("=? AND ").append(DEFAULT_ITEM_TYPE_ID_COLUMN_NAME).append("=?").toString();
 
+    private final static String PROFILE_INDEX_TABLE_NAME = "profile_index";
+    // dimensions whose index was built from all profiles of a tenant
+    private final static String PROFILE_INDEX_DIMENSION_TABLE_NAME = "profile_index_dimension";
+    // length of the dimension and value columns of the profile index
+    private final static int MAX_INDEXED_LENGTH = 250;
+    private final static int INDEX_BATCH_SIZE = 1000;
+    private final static String SQL_DELETE_POSTINGS = new StringBuilder("DELETE FROM ")
+            .append(PROFILE_INDEX_TABLE_NAME).append(" WHERE ").append(DEFAULT_TENANT_ID_COLUMN_NAME).append("=? AND ")
+            .append(DEFAULT_ITEM_ID_COLUMN_NAME).append("=? AND ").append(DEFAULT_ITEM_TYPE_ID_COLUMN_NAME).append("=?")
+            .toString();
+    private final static String SQL_DELETE_TENANT_POSTINGS = new StringBuilder("DELETE FROM ")
+            .append(PROFILE_INDEX_TABLE_NAME).append(" WHERE ").append(DEFAULT_TENANT_ID_COLUMN_NAME).append("=?")
+            .toString();
+    private final static String SQL_INSERT_POSTING = new StringBuilder("INSERT INTO ")
+            .append(PROFILE_INDEX_TABLE_NAME).append(" (").append(DEFAULT_TENANT_ID_COLUMN_NAME).append(", ")
+            .append(DEFAULT_ITEM_ID_COLUMN_NAME).append(", ").append(DEFAULT_ITEM_TYPE_ID_COLUMN_NAME)
+            .append(", dimension, position, value) VALUES (?, ?, ?, ?, ?, ?)").toString();
+    private final static String SQL_GET_POSTINGS = new StringBuilder("SELECT value FROM ")
+            .append(PROFILE_INDEX_TABLE_NAME).append(" WHERE ").append(DEFAULT_TENANT_ID_COLUMN_NAME).append("=? AND ")
+            .append(DEFAULT_ITEM_ID_COLUMN_NAME).append("=? AND ").append(DEFAULT_ITEM_TYPE_ID_COLUMN_NAME)
+            .append("=? AND dimension=? ORDER BY position").toString();
+    private final static String SQL_DELETE_TENANT_INDEXED_DIMENSIONS = new StringBuilder("DELETE FROM ")
+            .append(PROFILE_INDEX_DIMENSION_TABLE_NAME).append(" WHERE ").append(DEFAULT_TENANT_ID_COLUMN_NAME)
+            .append("=?").toString();
+    private final static String SQL_INSERT_INDEXED_DIMENSION = new StringBuilder("INSERT INTO ")
+            .append(PROFILE_INDEX_DIMENSION_TABLE_NAME).append(" (").append(DEFAULT_TENANT_ID_COLUMN_NAME)
+            .append(", dimension) VALUES (?, ?)").toString();
+    private final static String SQL_IS_INDEX_BUILT = new StringBuilder("SELECT COUNT(*) FROM ")
+            .append(PROFILE_INDEX_DIMENSION_TABLE_NAME).append(" WHERE ").append(DEFAULT_TENANT_ID_COLUMN_NAME)
+            .append("=? AND dimension=?").toString();
+    private final static String SQL_GET_PROFILES_OF_TENANT = new StringBuilder("SELECT ")
+            .append(DEFAULT_ITEM_ID_COLUMN_NAME).append(", ").append(DEFAULT_ITEM_TYPE_ID_COLUMN_NAME).append(", ")
+            .append(DEFAULT_PROFILE_DATA_COLUMN_NAME).append(" FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ")
+            .append(DEFAULT_TENANT_ID_COLUMN_NAME).append("=? AND ").append(DEFAULT_PROFILE_DATA_COLUMN_NAME)
+            .append(" IS NOT NULL").toString();
+
+    private final static int[] ARGTYPES_POSTING = new int[]{Types.INTEGER, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR, Types.INTEGER, Types.VARCHAR};
+    private final static int[] ARGTYPES_GET_POSTINGS = new int[]{Types.INTEGER, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR};
+    private final static int[] ARGTYPES_INDEXED_DIMENSION = new int[]{Types.INTEGER, Types.VARCHAR};
+
     private final int[] ARGTYPES_PROFILE_KEY = new int[]{Types.INTEGER, Types.VARCHAR, Types.VARCHAR};
     private final int[] ARGTYPES_PROFILE_ID = new int[]{Types.INTEGER};
 
@@ -91,6 +162,17 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
     private IDMappingDAO idMappingDAO;
     private ItemTypeDAO itemTypeDAO;
 
+    private ProfileCache profileCache;
+
+    private List<String> indexedDimensions = Collections.emptyList();
+    // DocumentBuilders and XPath expressions aren't thread safe
+    private final ThreadLocal<ProfileIndexer> profileIndexer = new ThreadLocal<ProfileIndexer>() {
+        @Override
+        protected ProfileIndexer initialValue() {
+            return new ProfileIndexer(indexedDimensions);
+        }
+    };
+
     // constructor
     public ProfileDAOMysqlImpl(DataSource dataSource, SqlScriptService sqlScriptService) {
         super(sqlScriptService);
@@ -111,6 +193,74 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
 
     }
 
+    /**
+     * Sets the dimensions kept in the profile index as a comma separated list of XPaths, e.g.
+     * <code>/profile/genre,/profile/author</code>. Lookups are only answered from the index for exactly these
+     * XPaths.
+     */
+    public void setIndexedDimensions(String indexedDimensions) {
+        List<String> dimensions = new ArrayList<String>();
+
+        if (indexedDimensions != null) {
+            XPath xPath = XPathFactory.newInstance().newXPath();
+
+            for (String dimension : indexedDimensions.split(",")) {
+                dimension = dimension.trim();
+
+                if (dimension.length() == 0) continue;
+                if (dimension.length() > MAX_INDEXED_LENGTH)
+                    throw new IllegalArgumentException(
+                            "'indexedDimensions' must not be longer than " + MAX_INDEXED_LENGTH + " characters");
+
+                try {
+                    xPath.compile(dimension);
+                } catch (XPathExpressionException e) {
+                    throw new IllegalArgumentException("'indexedDimensions' contains an invalid XPath: " + dimension,
+                            e);
+                }
+
+                dimensions.add(dimension);
+            }
+        }
+
+        this.indexedDimensions = Collections.unmodifiableList(dimensions);
+    }
+
+    /**
+     * Sets the cache of the profiles, without a cache every profile is read from the database.
+     */
+    public void setProfileCache(ProfileCache profileCache) {
+        this.profileCache = profileCache;
+    }
+
+    public CachedProfile getCachedProfile(Integer tenantId, Integer itemId, Integer itemTypeId) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("tenantId must not be 'null'!");
+        }
+        if (itemId == null) {
+            throw new IllegalArgumentException("itemId must not be 'null'!");
+        }
+        if (itemTypeId == null) {
+            throw new IllegalArgumentException("itemTypeId must not be 'null'");
+        }
+
+        if (profileCache == null || !profileCache.isEnabled()) return null;
+
+        CachedProfile profile = profileCache.get(tenantId, itemId, itemTypeId);
+
+        if (profile != null) return profile;
+
+        // read before the profile, a profile changed while it is loaded isn't cached
+        long generation = profileCache.getGeneration();
+        String profileXML = loadProfile(tenantId, itemId, itemTypeId, null);
+
+        return profileCache.put(tenantId, itemId, itemTypeId, profileXML, generation);
+    }
+
+    public boolean isIndexedDimension(String dimensionXPath) {
+        return indexedDimensions.contains(dimensionXPath);
+    }
+
     @Override
     public String getDefaultTableName() {
         return DEFAULT_TABLE_NAME;
@@ -132,6 +282,18 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
             throw new IllegalArgumentException("itemTypeId must not be 'null'");
         }
 
+        // the cache doesn't know whether an item is active
+        if (active == null) {
+            CachedProfile profile = getCachedProfile(tenantId, itemId, itemTypeId);
+
+            // null if there is no cache or it has been disabled
+            if (profile != null) return profile.getProfileXML();
+        }
+
+        return loadProfile(tenantId, itemId, itemTypeId, active);
+    }
+
+    private String loadProfile(Integer tenantId, Integer itemId, Integer itemTypeId, Boolean active) {
         String itemType = itemTypeDAO.getTypeById(tenantId, itemTypeId);
         String mappedItemId = idMappingDAO.lookup(itemId);
         if (mappedItemId == null)
@@ -184,6 +346,9 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
         PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(STORE_PROFILE_QUERY, argTypes);
 
         int rowsAffected = getJdbcTemplate().update(factory.newPreparedStatementCreator(args));
+        invalidateCachedProfile(tenantId, itemId, itemTypeId);
+        indexProfile(tenantId, mappedItemId, itemType, profileXML);
+
         return rowsAffected;
     }
 
@@ -199,6 +364,8 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
         } catch (Exception e) {
             logger.debug(e);
         }
+
+        invalidateCachedProfile(tenant, item, itemType);
     }
 
 
@@ -215,6 +382,8 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
         } catch (Exception e) {
             logger.debug(e);
         }
+
+        invalidateCachedProfile(tenant, item, itemType);
     }
 
 
@@ -233,18 +402,25 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
             throw new IllegalArgumentException("itemTypeId must not be 'null'");
         }
 
-        Object[] args;
-        int[] argTypes;
+        String mappedItemId = idMappingDAO.lookup(itemId);
+        String itemType = itemTypeDAO.getTypeById(tenantId, itemTypeId);
 
-        args = new Object[]{dimensionXPath, tenantId, idMappingDAO.lookup(itemId),
-                itemTypeDAO.getTypeById(tenantId, itemTypeId)};
-        argTypes = new int[]{Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.VARCHAR};
+        List<String> values = getPostings(tenantId, mappedItemId, itemType, dimensionXPath);
 
-        String result = getJdbcTemplate().queryForObject(GET_DIM_VALUE_QUERY, args, argTypes, String.class);
-        StringTokenizer st = new StringTokenizer(result, " ");
+        if (values.isEmpty()) {
+            Object[] args = new Object[]{dimensionXPath, tenantId, mappedItemId, itemType};
+            int[] argTypes = new int[]{Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.VARCHAR};
 
-        while (st.hasMoreTokens()) {
-            ret.add(st.nextToken());
+            values = Collections.singletonList(
+                    getJdbcTemplate().queryForObject(GET_DIM_VALUE_QUERY, args, argTypes, String.class));
+        }
+
+        for (String value : values) {
+            StringTokenizer st = new StringTokenizer(value, " ");
+
+            while (st.hasMoreTokens()) {
+                ret.add(st.nextToken());
+            }
         }
 
         return ret;
@@ -263,16 +439,43 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
             throw new IllegalArgumentException("itemTypeId must not be 'null'");
         }
 
-        Object[] args;
-        int[] argTypes;
+        String mappedItemId = idMappingDAO.lookup(itemId);
+        String itemType = itemTypeDAO.getTypeById(tenantId, itemTypeId);
 
-        args = new Object[]{dimensionXPath, tenantId, idMappingDAO.lookup(itemId),
-                itemTypeDAO.getTypeById(tenantId, itemTypeId)};
-        argTypes = new int[]{Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.VARCHAR};
+        List<String> values = getPostings(tenantId, mappedItemId, itemType, dimensionXPath);
+
+        // ExtractValue() joins the text of all matching nodes with spaces
+        if (!values.isEmpty()) {
+            StringBuilder value = new StringBuilder(values.get(0));
+
+            for (int i = 1; i < values.size(); i++)
+                value.append(' ').append(values.get(i));
+
+            return value.toString();
+        }
+
+        Object[] args = new Object[]{dimensionXPath, tenantId, mappedItemId, itemType};
+        int[] argTypes = new int[]{Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.VARCHAR};
 
         return getJdbcTemplate().queryForObject(GET_DIM_VALUE_QUERY, args, argTypes, String.class);
     }
 
+    public List<String> getIndexedDimensionValues(Integer tenantId, Integer itemId, Integer itemTypeId,
+                                                  String dimensionXPath) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("tenantId must not be 'null'!");
+        }
+        if (itemId == null) {
+            throw new IllegalArgumentException("itemId must not be 'null'!");
+        }
+        if (itemTypeId == null) {
+            throw new IllegalArgumentException("itemTypeId must not be 'null'");
+        }
+
+        return getPostings(tenantId, idMappingDAO.lookup(itemId), itemTypeDAO.getTypeById(tenantId, itemTypeId),
+                dimensionXPath);
+    }
+
     public boolean updateXML(Integer tenantId, Integer itemId, Integer itemTypeId,
                              String updateXPath, String newXML) {
 
@@ -332,6 +535,9 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
         PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(STORE_PROFILE_QUERY, argTypes);
 
         int rowsAffected = getJdbcTemplate().update(factory.newPreparedStatementCreator(args));
+        invalidateCachedProfile(tenantId, itemId, itemTypeId);
+        indexProfile(tenantId, mappedItemId, itemType, null);
+
         return (rowsAffected > 0);
     }
 
@@ -341,12 +547,17 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
         List<Object> args = Lists.newArrayList();
         List<Integer> argt = Lists.newArrayList();
 
-        StringBuilder sqlString = new StringBuilder("SELECT ");
+        // longer values can't be in the index, profiles stored before the dimension was indexed are only found
+        // once the index of the tenant was rebuilt
+        boolean indexed = isIndexedDimension(dimensionXPath) && value != null &&
+                value.length() <= MAX_INDEXED_LENGTH && tenantId != null && isIndexBuilt(tenantId, dimensionXPath);
+
+        StringBuilder sqlString = new StringBuilder(indexed ? "SELECT DISTINCT " : "SELECT ");
         sqlString.append(DEFAULT_TENANT_ID_COLUMN_NAME).append(",");
         sqlString.append(DEFAULT_ITEM_ID_COLUMN_NAME).append(",");
         sqlString.append(DEFAULT_ITEM_TYPE_ID_COLUMN_NAME);
         sqlString.append(" FROM ");
-        sqlString.append(DEFAULT_TABLE_NAME);
+        sqlString.append(indexed ? PROFILE_INDEX_TABLE_NAME : DEFAULT_TABLE_NAME);
         sqlString.append(" WHERE ");
 
         if (tenantId != null) {
@@ -361,8 +572,12 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
             argt.add(Types.VARCHAR);
         }
 
-        sqlString.append("ExtractValue(").append(DEFAULT_PROFILE_DATA_COLUMN_NAME);
-        sqlString.append(",?)=?");
+        if (indexed)
+            sqlString.append("dimension=? AND value=?");
+        else {
+            sqlString.append("ExtractValue(").append(DEFAULT_PROFILE_DATA_COLUMN_NAME);
+            sqlString.append(",?)=?");
+        }
 
         args.add(dimensionXPath);
         argt.add(Types.VARCHAR);
@@ -404,8 +619,147 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
         return getJdbcTemplate().query(sqlString.toString(), args.toArray(), Ints.toArray(argt), itemRowMapper);
     }
 
+    public int reindexProfiles(final Integer tenantId) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("tenantId must not be 'null'!");
+        }
+
+        getJdbcTemplate().update(SQL_DELETE_TENANT_INDEXED_DIMENSIONS, new Object[]{tenantId},
+                new int[]{Types.INTEGER});
+        getJdbcTemplate().update(SQL_DELETE_TENANT_POSTINGS, new Object[]{tenantId}, new int[]{Types.INTEGER});
+
+        if (indexedDimensions.isEmpty()) return 0;
+
+        final List<Object[]> batch = new ArrayList<Object[]>();
+        final int[] profiles = {0};
+        final ProfileIndexer indexer = profileIndexer.get();
+
+        // the profiles are streamed, the postings are written on another connection
+        getJdbcTemplate().query(new StreamingPreparedStatementCreator(SQL_GET_PROFILES_OF_TENANT,
+                new Object[]{tenantId}, new int[]{Types.INTEGER}), new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                batch.addAll(indexer.getPostings(tenantId, rs.getString(1), rs.getString(2), rs.getString(3)));
+                profiles[0]++;
+
+                if (batch.size() >= INDEX_BATCH_SIZE) {
+                    getJdbcTemplate().batchUpdate(SQL_INSERT_POSTING, batch, ARGTYPES_POSTING);
+                    batch.clear();
+                }
+            }
+        });
+
+        if (!batch.isEmpty())
+            getJdbcTemplate().batchUpdate(SQL_INSERT_POSTING, batch, ARGTYPES_POSTING);
+
+        List<Object[]> dimensions = new ArrayList<Object[]>(indexedDimensions.size());
+        for (String dimension : indexedDimensions)
+            dimensions.add(new Object[]{tenantId, dimension});
+        getJdbcTemplate().batchUpdate(SQL_INSERT_INDEXED_DIMENSION, dimensions, ARGTYPES_INDEXED_DIMENSION);
+
+        if (logger.isInfoEnabled())
+            logger.info("Indexed " + profiles[0] + " profiles of tenant " + tenantId);
+
+        return profiles[0];
+    }
+
+    private void invalidateCachedProfile(Integer tenantId, Integer itemId, Integer itemTypeId) {
+        if (profileCache != null) profileCache.invalidate(tenantId, itemId, itemTypeId);
+    }
+
+    private void indexProfile(Integer tenantId, String itemId, String itemType, String profileXML) {
+        if (indexedDimensions.isEmpty()) return;
+
+        getJdbcTemplate().update(SQL_DELETE_POSTINGS, new Object[]{tenantId, itemId, itemType}, ARGTYPES_PROFILE_KEY);
+
+        List<Object[]> postings = profileIndexer.get().getPostings(tenantId, itemId, itemType, profileXML);
+
+        if (!postings.isEmpty())
+            getJdbcTemplate().batchUpdate(SQL_INSERT_POSTING, postings, ARGTYPES_POSTING);
+    }
+
+    private boolean isIndexBuilt(Integer tenantId, String dimensionXPath) {
+        return getJdbcTemplate().queryForObject(SQL_IS_INDEX_BUILT, new Object[]{tenantId, dimensionXPath},
+                ARGTYPES_INDEXED_DIMENSION, Integer.class) > 0;
+    }
+
+    private List<String> getPostings(Integer tenantId, String itemId, String itemType, String dimensionXPath) {
+        if (itemId == null || !isIndexedDimension(dimensionXPath)) return Collections.emptyList();
+
+        return getJdbcTemplate().queryForList(SQL_GET_POSTINGS, new Object[]{tenantId, itemId, itemType,
+                dimensionXPath}, ARGTYPES_GET_POSTINGS, String.class);
+    }
+
     //////////////////////////////////////////////////////////////////////////////
     // private inner classes
+
+    /**
+     * Extracts the values of the indexed dimensions from a profile.
+     */
+    private class ProfileIndexer {
+        private final List<String> dimensions;
+        private final List<XPathExpression> expressions = new ArrayList<XPathExpression>();
+        private final DocumentBuilder documentBuilder;
+
+        private ProfileIndexer(List<String> dimensions) {
+            this.dimensions = dimensions;
+
+            try {
+                DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+                documentBuilderFactory.setNamespaceAware(true);
+                documentBuilder = documentBuilderFactory.newDocumentBuilder();
+
+                XPath xPath = XPathFactory.newInstance().newXPath();
+
+                for (String dimension : dimensions)
+                    expressions.add(xPath.compile(dimension));
+            } catch (Exception e) {
+                throw new IllegalStateException("Creating the profile indexer failed.", e);
+            }
+        }
+
+        /**
+         * Returns the arguments of {@link ProfileDAOMysqlImpl#SQL_INSERT_POSTING} for the text of every node
+         * matching an indexed dimension. A dimension with a value too long for the index is left out completely, so
+         * lookups of its values fall back to <code>ExtractValue()</code>.
+         */
+        private List<Object[]> getPostings(Integer tenantId, String itemId, String itemType, String profileXML) {
+            List<Object[]> postings = new ArrayList<Object[]>();
+
+            if (profileXML == null || profileXML.length() == 0) return postings;
+
+            try {
+                Document document = documentBuilder.parse(new InputSource(new StringReader(profileXML)));
+
+                for (int i = 0; i < expressions.size(); i++) {
+                    NodeList nodes = (NodeList) expressions.get(i).evaluate(document, XPathConstants.NODESET);
+                    List<Object[]> dimensionPostings = new ArrayList<Object[]>(nodes.getLength());
+
+                    for (int position = 0; position < nodes.getLength(); position++) {
+                        String value = nodes.item(position).getTextContent();
+
+                        if (value.length() > MAX_INDEXED_LENGTH) {
+                            dimensionPostings.clear();
+                            break;
+                        }
+
+                        dimensionPostings.add(
+                                new Object[]{tenantId, itemId, itemType, dimensions.get(i), position, value});
+                    }
+
+                    postings.addAll(dimensionPostings);
+                }
+            } catch (Exception e) {
+                logger.warn("Could not index the profile of item " + itemId + " (" + itemType + ") of tenant " +
+                        tenantId + ": " + e.getMessage());
+                postings.clear();
+            } finally {
+                documentBuilder.reset();
+            }
+
+            return postings;
+        }
+    }
+
     private class ItemVORowMapper implements RowMapper<ItemVO<Integer, Integer>> {
         public ItemVO<Integer, Integer> mapRow(ResultSet rs, int rowNum) throws SQLException {
             int tenant = DaoUtils.getInteger(rs, DEFAULT_TENANT_ID_COLUMN_NAME);
@@ -26,7 +26,7 @@ import org.easyrec.service.domain.TypeMappingService;
 import org.easyrec.store.dao.core.ActionDAO;
 import org.easyrec.store.dao.domain.TypedActionDAO;
 import org.easyrec.store.dao.impl.AbstractBaseActionDAOMysqlImpl;
-import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
@@ -102,8 +102,8 @@ public class TypedActionDAOMysqlImpl extends
 
     @Override
     public Iterator<ActionVO<Integer, String>> getActionIterator(int bulkSize) {
-        return new ResultSetIteratorMysql<ActionVO<Integer, String>>(getDataSource(),
-                bulkSize, getActionIteratorQueryString(), actionVORowMapper);
+        return new KeysetResultSetIteratorMysql<ActionVO<Integer, String>>(getDataSource(),
+                bulkSize, getActionIteratorQueryString(), DEFAULT_ID_COLUMN_NAME, actionVORowMapper);
     }
 
     @Override
@@ -118,8 +118,8 @@ public class TypedActionDAOMysqlImpl extends
         DaoUtils.ArgsAndTypesHolder holder = new DaoUtils.ArgsAndTypesHolder(args, argTypes);
         String s = getActionIteratorQueryString(timeConstraints, holder);
 
-        return new ResultSetIteratorMysql<ActionVO<Integer, String>>(getDataSource(),
-                bulkSize, s, holder.getArgs(), holder.getArgTypes(), actionVORowMapper);
+        return new KeysetResultSetIteratorMysql<ActionVO<Integer, String>>(getDataSource(),
+                bulkSize, s, holder.getArgs(), holder.getArgTypes(), DEFAULT_ID_COLUMN_NAME, actionVORowMapper);
     }
 
     @Override
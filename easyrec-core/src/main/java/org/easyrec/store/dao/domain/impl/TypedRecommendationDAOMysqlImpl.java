@@ -24,7 +24,7 @@ import org.easyrec.store.dao.core.RecommendationDAO;
 import org.easyrec.store.dao.core.RecommendedItemDAO;
 import org.easyrec.store.dao.domain.TypedRecommendationDAO;
 import org.easyrec.store.dao.impl.AbstractBaseRecommendationDAOMysqlImpl;
-import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
@@ -111,8 +111,9 @@ public class TypedRecommendationDAOMysqlImpl extends
     @Override
     public Iterator<RecommendationVO<Integer, String>> getRecommendationIterator(
             int bulkSize) {
-        return new ResultSetIteratorMysql<RecommendationVO<Integer, String>>(
-                getDataSource(), bulkSize, getRecommendationIteratorQueryString(), recommendationVORowMapper);
+        return new KeysetResultSetIteratorMysql<RecommendationVO<Integer, String>>(
+                getDataSource(), bulkSize, getRecommendationIteratorQueryString(),
+                DEFAULT_ID_COLUMN_NAME, recommendationVORowMapper);
     }
 
     @Override
@@ -127,8 +128,9 @@ public class TypedRecommendationDAOMysqlImpl extends
         DaoUtils.ArgsAndTypesHolder holder = new DaoUtils.ArgsAndTypesHolder(args, argTypes);
         String s = getRecommendationIteratorQueryString(timeConstraints, holder);
 
-        return new ResultSetIteratorMysql<RecommendationVO<Integer, String>>(
-                getDataSource(), bulkSize, s, holder.getArgs(), holder.getArgTypes(), recommendationVORowMapper);
+        return new KeysetResultSetIteratorMysql<RecommendationVO<Integer, String>>(
+                getDataSource(), bulkSize, s, holder.getArgs(), holder.getArgTypes(),
+                DEFAULT_ID_COLUMN_NAME, recommendationVORowMapper);
     }
 
     //////////////////////////////////////////////////////////////////////////////
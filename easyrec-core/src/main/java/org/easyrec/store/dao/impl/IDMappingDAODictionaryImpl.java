@@ -0,0 +1,286 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.utils.spring.store.dao.annotation.DAO;
+import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class extends the {@link IDMappingDAOMysqlImpl} with an {@link IDMappingDictionary} that holds all known
+ * mappings in memory. The dictionary is warmed with the content of the idmapping table at startup.
+ * <p/>
+ * Looking up an existing mapping never takes a lock nor touches the database. Unknown String IDs are collected and
+ * allocated in batches: the thread holding the allocation lock inserts all String IDs that were requested in the
+ * meantime with a single multi-row <code>INSERT IGNORE</code> and reads back their Integer IDs with a single
+ * <code>SELECT ... IN (...)</code>.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+
+@DAO
+public class IDMappingDAODictionaryImpl extends IDMappingDAOMysqlImpl {
+    // constants
+    private final static int DEFAULT_BATCH_SIZE = 500;
+
+    private final static String LOAD_ALL_QUERY = new StringBuilder().append("SELECT ")
+            .append(DEFAULT_INT_ID_COLUMN_NAME).append(", ").append(DEFAULT_STRING_ID_COLUMN_NAME).append(" FROM ")
+            .append(DEFAULT_TABLE_NAME).toString();
+
+    private final static String MAX_ID_QUERY = new StringBuilder().append("SELECT MAX(")
+            .append(DEFAULT_INT_ID_COLUMN_NAME).append(") FROM ").append(DEFAULT_TABLE_NAME).toString();
+
+    // logging
+    private final Log logger = LogFactory.getLog(this.getClass());
+
+    private final IDMappingDictionary dictionary;
+    private final ConcurrentLinkedQueue<String> pendingIds = new ConcurrentLinkedQueue<String>();
+    private final Object allocationLock = new Object();
+
+    private boolean warmUp = true;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    // constructor
+    public IDMappingDAODictionaryImpl(DataSource dataSource, SqlScriptService sqlScriptService) {
+        this(dataSource, sqlScriptService, 0);
+    }
+
+    public IDMappingDAODictionaryImpl(DataSource dataSource, SqlScriptService sqlScriptService, int expectedSize) {
+        super(dataSource, sqlScriptService);
+        dictionary = new IDMappingDictionary(expectedSize);
+    }
+
+    @Override
+    protected void initDao() throws Exception {
+        super.initDao();
+
+        if (warmUp) {
+            warmUp();
+        }
+    }
+
+    /**
+     * Loads all mappings of the idmapping table into the dictionary. The table is read with a single streaming
+     * query so the result set does not need to fit into memory.
+     */
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+
+        getJdbcTemplate().query(new PreparedStatementCreator() {
+            public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                PreparedStatement ps = con.prepareStatement(LOAD_ALL_QUERY, ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY);
+                // tells the MySQL driver to stream rows instead of reading the whole result
+                ps.setFetchSize(Integer.MIN_VALUE);
+                return ps;
+            }
+        }, new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                dictionary.put(rs.getInt(1), rs.getString(2));
+            }
+        });
+
+        if (logger.isInfoEnabled()) {
+            logger.info("loaded " + dictionary.size() + " id mappings in " + (System.currentTimeMillis() - start) +
+                    "ms");
+        }
+    }
+
+    /**
+     * Returns the highest Integer ID currently stored in the database, may be used to presize the dictionary.
+     *
+     * @return the highest Integer ID; 0 if the table is empty
+     */
+    public int getMaxId() {
+        return getJdbcTemplate().queryForInt(MAX_ID_QUERY);
+    }
+
+    @Override
+    public Integer lookup(String id) {
+        if (id == null) {
+            return null;
+        }
+        if (id.length() == 0) {
+            throw new IllegalArgumentException("id must not be an empty String!");
+        }
+
+        int intId = dictionary.get(id);
+        if (intId != IDMappingDictionary.NO_ID) {
+            return intId;
+        }
+
+        return allocate(id);
+    }
+
+    @Override
+    public String lookup(Integer id) {
+        if (id == null) {
+            return null;
+        }
+
+        String stringId = dictionary.get(id);
+        if (stringId != null) {
+            return stringId;
+        }
+
+        // the mapping might have been created by another node, cache it if so
+        stringId = super.lookup(id);
+        if (stringId != null) {
+            dictionary.put(id, stringId);
+        }
+        return stringId;
+    }
+
+    @Override
+    public Map<Integer, String> lookupAll(Collection<Integer> ids) {
+        Map<Integer, String> result = new HashMap<Integer, String>(ids.size() * 2);
+        List<Integer> unknownIds = null;
+
+        for (Integer id : ids) {
+            if (id == null) {
+                continue;
+            }
+
+            String stringId = dictionary.get(id);
+            if (stringId != null) {
+                result.put(id, stringId);
+            } else {
+                if (unknownIds == null) {
+                    unknownIds = new ArrayList<Integer>();
+                }
+                unknownIds.add(id);
+            }
+        }
+
+        // mappings created by other nodes are read with a single query and cached
+        if (unknownIds != null) {
+            Map<Integer, String> loaded = super.lookupAll(unknownIds);
+            for (Map.Entry<Integer, String> entry : loaded.entrySet()) {
+                dictionary.put(entry.getKey(), entry.getValue());
+            }
+            result.putAll(loaded);
+        }
+
+        return result;
+    }
+
+    public IDMappingDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0!");
+        }
+        this.batchSize = batchSize;
+    }
+
+    private Integer allocate(String id) {
+        pendingIds.add(id);
+
+        synchronized (allocationLock) {
+            // another thread might have allocated the id while we were waiting for the lock
+            int intId = dictionary.get(id);
+            if (intId != IDMappingDictionary.NO_ID) {
+                return intId;
+            }
+
+            Set<String> batch = new LinkedHashSet<String>();
+            String pendingId;
+            while ((pendingId = pendingIds.poll()) != null) {
+                if (dictionary.get(pendingId) == IDMappingDictionary.NO_ID) {
+                    batch.add(pendingId);
+                }
+            }
+            batch.add(id);
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("allocating " + batch.size() + " new id mappings");
+            }
+
+            List<String> ids = new ArrayList<String>(batch);
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                allocateBatch(ids.subList(from, Math.min(from + batchSize, ids.size())));
+            }
+
+            intId = dictionary.get(id);
+            if (intId != IDMappingDictionary.NO_ID) {
+                return intId;
+            }
+        }
+
+        // the database considers the id equal to an existing one (e.g. due to its collation)
+        Integer intId = super.lookup(id);
+        if (intId != null) {
+            dictionary.put(intId, id);
+        }
+        return intId;
+    }
+
+    private void allocateBatch(List<String> ids) {
+        Object[] args = ids.toArray();
+
+        getJdbcTemplate().update(
+                new StringBuilder().append("INSERT IGNORE INTO ").append(DEFAULT_TABLE_NAME).append(" (")
+                        .append(DEFAULT_STRING_ID_COLUMN_NAME).append(") VALUES ")
+                        .append(placeholders(ids.size(), "(?)")).toString(), args);
+
+        getJdbcTemplate().query(
+                new StringBuilder().append(LOAD_ALL_QUERY).append(" WHERE ").append(DEFAULT_STRING_ID_COLUMN_NAME)
+                        .append(" IN (").append(placeholders(ids.size())).append(")").toString(), args,
+                new RowCallbackHandler() {
+                    public void processRow(ResultSet rs) throws SQLException {
+                        dictionary.put(rs.getInt(1), rs.getString(2));
+                    }
+                });
+    }
+}
@@ -28,6 +28,7 @@ import org.easyrec.utils.spring.store.dao.impl.AbstractTableCreatingDAOImpl;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -36,7 +37,13 @@ import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class provides a Mysql implementation of the {@link org.easyrec.store.dao.IDMappingDAO} interface.
@@ -60,9 +67,12 @@ import java.util.List;
 public class IDMappingDAOMysqlImpl extends AbstractTableCreatingDAOImpl implements IDMappingDAO {
     // constants
     private final static String TABLE_CREATING_SQL_SCRIPT_NAME = "classpath:/sql/IDMapping.sql";
+    // maximum number of ids in the IN list of a single query of lookupAll
+    private final static int LOOKUP_ALL_CHUNK_SIZE = 500;
     private final static String LOOKUP_BY_INT_QUERY;
     private final static String INSERT_BY_STRING_QUERY;
     private final static String LOOKUP_BY_STRING_QUERY;
+    private final static String LOOKUP_ALL_BY_INT_QUERY;
 
     private final static int[] ARG_TYPES_INSERT_BY_STRING;
     private final static int[] ARG_TYPES_LOOKUP_BY_STRING;
@@ -87,6 +97,10 @@ public class IDMappingDAOMysqlImpl extends AbstractTableCreatingDAOImpl implemen
                 .append(" FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ").append(DEFAULT_INT_ID_COLUMN_NAME)
                 .append("=?").toString();
 
+        LOOKUP_ALL_BY_INT_QUERY = new StringBuilder().append("SELECT ").append(DEFAULT_INT_ID_COLUMN_NAME)
+                .append(", ").append(DEFAULT_STRING_ID_COLUMN_NAME).append(" FROM ").append(DEFAULT_TABLE_NAME)
+                .append(" WHERE ").append(DEFAULT_INT_ID_COLUMN_NAME).append(" IN (").toString();
+
         INSERT_BY_STRING_QUERY = new StringBuilder().append("INSERT INTO ").append(DEFAULT_TABLE_NAME).append(" (")
                 .append(DEFAULT_STRING_ID_COLUMN_NAME).append(") VALUES(?)").toString();
 
@@ -178,6 +192,55 @@ public class IDMappingDAOMysqlImpl extends AbstractTableCreatingDAOImpl implemen
         return (!retList.isEmpty()) ? retList.get(0) : null;
     }
 
+    public Map<Integer, String> lookupAll(Collection<Integer> ids) {
+        final Map<Integer, String> result = new HashMap<Integer, String>(ids.size() * 2);
+
+        // remove duplicates and nulls
+        Set<Integer> distinctIds = new LinkedHashSet<Integer>(ids);
+        distinctIds.remove(null);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("looking up mappings for " + distinctIds.size() + " Integers");
+        }
+
+        List<Integer> idList = new ArrayList<Integer>(distinctIds);
+        for (int from = 0; from < idList.size(); from += LOOKUP_ALL_CHUNK_SIZE) {
+            List<Integer> chunk = idList.subList(from, Math.min(from + LOOKUP_ALL_CHUNK_SIZE, idList.size()));
+
+            getJdbcTemplate().query(new StringBuilder().append(LOOKUP_ALL_BY_INT_QUERY)
+                    .append(placeholders(chunk.size())).append(")").toString(), chunk.toArray(),
+                    new RowCallbackHandler() {
+                        public void processRow(ResultSet rs) throws SQLException {
+                            result.put(rs.getInt(1), rs.getString(2));
+                        }
+                    });
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a comma separated list of <code>count</code> placeholders for an <code>IN (...)</code> list.
+     */
+    protected static String placeholders(int count) {
+        return placeholders(count, "?");
+    }
+
+    /**
+     * Returns a comma separated list of <code>count</code> times <code>placeholder</code>, e.g. <code>(?)</code> for
+     * the rows of a multi-row <code>VALUES</code> list.
+     */
+    protected static String placeholders(int count, String placeholder) {
+        StringBuilder sb = new StringBuilder(count * (placeholder.length() + 1));
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(placeholder);
+        }
+        return sb.toString();
+    }
+
 
     /******************************************************************************************/
     /************************************** Rowmappers ****************************************/
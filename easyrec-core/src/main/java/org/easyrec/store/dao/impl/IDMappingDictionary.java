@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent, bidirectional in-memory dictionary mapping String IDs to Integer IDs and vice versa.
+ * <p/>
+ * The Integer to String direction is a chunked array indexed directly by the (dense, auto-incremented) Integer ID.
+ * The String to Integer direction is an open addressing hash index that only stores the Integer IDs; keys are
+ * compared against the Strings held in the array, so every String is stored exactly once.
+ * <p/>
+ * Reads never take a lock. Writes are serialized on the dictionary itself; a reader racing with a resize of the
+ * hash index may report a miss for an entry that was just added, callers are expected to re-check under their own
+ * lock before going to the database.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class IDMappingDictionary {
+    // constants
+    public static final int NO_ID = -1;
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = (Integer.MAX_VALUE >>> CHUNK_BITS) + 1;
+
+    private static final int MIN_CAPACITY = 1024;
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+
+    // Integer -> String
+    private final AtomicReferenceArray<AtomicReferenceArray<String>> strings =
+            new AtomicReferenceArray<AtomicReferenceArray<String>>(MAX_CHUNKS);
+
+    // String -> Integer; slots contain the Integer ID or 0 if empty
+    private volatile AtomicIntegerArray index;
+
+    // String IDs that only differ from their stored representation by collation (e.g. case); rarely used
+    private final ConcurrentHashMap<String, Integer> aliases = new ConcurrentHashMap<String, Integer>();
+
+    private int size = 0;
+    private int threshold;
+
+    public IDMappingDictionary() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of mappings the dictionary is presized for
+     */
+    public IDMappingDictionary(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < (expectedSize / MAX_LOAD_FACTOR) && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        index = new AtomicIntegerArray(capacity);
+        threshold = (int) (capacity * MAX_LOAD_FACTOR);
+    }
+
+    /**
+     * Returns the Integer ID mapped to the given String ID without taking any locks.
+     *
+     * @param id the String to be looked up
+     * @return the Integer mapped to the given String; {@link #NO_ID} if the mapping is unknown.
+     */
+    public int get(String id) {
+        AtomicIntegerArray table = index;
+        int mask = table.length() - 1;
+        int slot = hash(id) & mask;
+
+        while (true) {
+            int intId = table.get(slot);
+            if (intId == 0) {
+                break;
+            }
+            String candidate = get(intId);
+            if (id.equals(candidate)) {
+                return intId;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        Integer alias = aliases.get(id);
+        return alias != null ? alias : NO_ID;
+    }
+
+    /**
+     * Returns the String ID mapped to the given Integer ID without taking any locks.
+     *
+     * @param id the Integer to be looked up
+     * @return the String mapped to the given Integer; null if the mapping is unknown.
+     */
+    public String get(int id) {
+        if (id <= 0) {
+            return null;
+        }
+        AtomicReferenceArray<String> chunk = strings.get(id >>> CHUNK_BITS);
+        return chunk != null ? chunk.get(id & CHUNK_MASK) : null;
+    }
+
+    /**
+     * Adds a mapping to the dictionary. Adding an already existing mapping has no effect.
+     *
+     * @param intId    the Integer ID, must be greater than 0
+     * @param stringId the String ID
+     */
+    public synchronized void put(int intId, String stringId) {
+        if (intId <= 0) {
+            throw new IllegalArgumentException("intId must be greater than 0!");
+        }
+        String existing = get(intId);
+        if (existing != null) {
+            if (!existing.equals(stringId)) {
+                aliases.put(stringId, intId);
+            }
+            return;
+        }
+
+        int chunkIndex = intId >>> CHUNK_BITS;
+        AtomicReferenceArray<String> chunk = strings.get(chunkIndex);
+        if (chunk == null) {
+            chunk = new AtomicReferenceArray<String>(CHUNK_SIZE);
+            strings.set(chunkIndex, chunk);
+        }
+        // publish the string before the index slot so readers never see an id without its string
+        chunk.set(intId & CHUNK_MASK, stringId);
+
+        if (size >= threshold) {
+            resize();
+        }
+        insert(index, intId, stringId);
+        size++;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < MAX_CHUNKS; i++) {
+            strings.set(i, null);
+        }
+        aliases.clear();
+        index = new AtomicIntegerArray(MIN_CAPACITY);
+        threshold = (int) (MIN_CAPACITY * MAX_LOAD_FACTOR);
+        size = 0;
+    }
+
+    private void resize() {
+        AtomicIntegerArray oldTable = index;
+        AtomicIntegerArray newTable = new AtomicIntegerArray(oldTable.length() << 1);
+
+        for (int i = 0; i < oldTable.length(); i++) {
+            int intId = oldTable.get(i);
+            if (intId != 0) {
+                insert(newTable, intId, get(intId));
+            }
+        }
+
+        threshold = (int) (newTable.length() * MAX_LOAD_FACTOR);
+        index = newTable;
+    }
+
+    private static void insert(AtomicIntegerArray table, int intId, String stringId) {
+        int mask = table.length() - 1;
+        int slot = hash(stringId) & mask;
+
+        while (table.get(slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table.set(slot, intId);
+    }
+
+    private static int hash(String id) {
+        // spread the bits of String.hashCode() since the table size is a power of two
+        int h = id.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.easyrec.util.core;
 
+import gnu.trove.map.hash.TLongIntHashMap;
 import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.RecommendedItemVO;
 
@@ -56,6 +57,58 @@ public class RecommenderUtils {
             return null;
         }
 
+        if (!hasSameTenant(recommendedItems)) {
+            return filterDuplicatesOfItemVOs(recommendedItems, useAveragePredictionValues);
+        }
+
+        // all items are of the same tenant, so item id and type identify an item and can be packed into a long
+        int size = recommendedItems.size();
+        TLongIntHashMap positions = new TLongIntHashMap(size, 0.5f, 0L, -1);
+        List<RecommendedItemVO<Integer, Integer>> filtered = new ArrayList<RecommendedItemVO<Integer, Integer>>(size);
+        double[] sums = useAveragePredictionValues ? new double[size] : null;
+        int[] counts = useAveragePredictionValues ? new int[size] : null;
+
+        for (RecommendedItemVO<Integer, Integer> recItem : recommendedItems) {
+            long key = itemKey(recItem.getItem());
+            int position = positions.get(key);
+
+            if (position < 0) {
+                position = filtered.size();
+                positions.put(key, position);
+                filtered.add(recItem);
+            }
+
+            if (useAveragePredictionValues) {
+                sums[position] += recItem.getPredictionValue();
+                counts[position]++;
+            }
+        }
+
+        if (useAveragePredictionValues) {
+            for (int i = 0; i < filtered.size(); i++) {
+                if (counts[i] == 1) continue;
+
+                RecommendedItemVO<Integer, Integer> recItem = filtered.get(i);
+                filtered.set(i, new RecommendedItemVO<Integer, Integer>(
+                        recItem.getId(),
+                        recItem.getItem(),
+                        round(sums[i] / (double) counts[i], 16),
+                        recItem.getRecommendationId(),
+                        recItem.getItemAssocId(),
+                        recItem.getExplanation()
+                ));
+            }
+        }
+
+        return filtered;
+    }
+
+    /**
+     * The variant of {@link #filterDuplicates(java.util.List, boolean)} for items of different tenants or with
+     * missing ids.
+     */
+    private static List<RecommendedItemVO<Integer, Integer>> filterDuplicatesOfItemVOs(
+            List<RecommendedItemVO<Integer, Integer>> recommendedItems, boolean useAveragePredictionValues) {
         List<RecommendedItemVO<Integer, Integer>> filtered = new ArrayList<RecommendedItemVO<Integer, Integer>>(recommendedItems.size());
 
         if (useAveragePredictionValues) {
@@ -138,6 +191,26 @@ public class RecommenderUtils {
         }
     }
 
+    private static boolean hasSameTenant(List<RecommendedItemVO<Integer, Integer>> recommendedItems) {
+        ItemVO<Integer, Integer> first = recommendedItems.get(0).getItem();
+        Integer tenant = first != null ? first.getTenant() : null;
+
+        for (RecommendedItemVO<Integer, Integer> recItem : recommendedItems) {
+            ItemVO<Integer, Integer> item = recItem.getItem();
+
+            if (item == null || item.getItem() == null || item.getType() == null ||
+                    (tenant == null ? item.getTenant() != null : !tenant.equals(item.getTenant()))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long itemKey(ItemVO<Integer, Integer> item) {
+        return ((long) item.getType() << 32) | (item.getItem() & 0xFFFFFFFFL);
+    }
+
     private static double round(double d, int decimalPlace) {
         BigDecimal bd = new BigDecimal(Double.toString(d));
         bd = bd.setScale(decimalPlace, BigDecimal.ROUND_HALF_UP);
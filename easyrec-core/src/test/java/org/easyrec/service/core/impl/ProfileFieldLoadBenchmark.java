@@ -0,0 +1,146 @@
+/*
+ * Copyright 2011 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.core.impl;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the XML handling of <code>/profile/field/load</code> ({@code ProfileServiceImpl.loadProfileField}) before
+ * and after the {@link ProfileXMLProcessor}: a new XPathFactory, DocumentBuilder and XPath per call, the pooled
+ * DocumentBuilder with a cached compiled expression, and the StAX path. Loading the profile from the database is the
+ * same for all variants and not measured.
+ */
+public class ProfileFieldLoadBenchmark {
+
+    private static final int NUMBER_OF_THREADS = 8;
+    private static final int LOADS_PER_THREAD = 20000;
+    private static final int NUMBER_OF_FIELDS = 50;
+    private static final String FIELD_XPATH = "/profile/attributes/genre";
+
+    private interface FieldLoader {
+        List<String> load(String profileXML, String xPath) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+
+        final ProfileXMLProcessor processor =
+                new ProfileXMLProcessor(documentBuilderFactory, ProfileXMLProcessor.DEFAULT_XPATH_CACHE_SIZE);
+
+        FieldLoader perCall = new FieldLoader() {
+            public List<String> load(String profileXML, String xPath) throws Exception {
+                XPathFactory xpf = XPathFactory.newInstance();
+                Document doc;
+
+                synchronized (documentBuilderFactory) {
+                    doc = documentBuilderFactory.newDocumentBuilder()
+                            .parse(new InputSource(new StringReader(profileXML)));
+                }
+
+                return values((NodeList) xpf.newXPath().evaluate(xPath, doc, XPathConstants.NODESET));
+            }
+        };
+        FieldLoader pooledDOM = new FieldLoader() {
+            public List<String> load(String profileXML, String xPath) throws Exception {
+                return values(processor.evaluateNodes(xPath, processor.parse(profileXML)));
+            }
+        };
+        FieldLoader streaming = new FieldLoader() {
+            public List<String> load(String profileXML, String xPath) throws Exception {
+                return processor.extractValues(profileXML, xPath);
+            }
+        };
+
+        String profileXML = profile();
+
+        // the first round warms up the JIT
+        for (int threads : new int[]{1, 1, NUMBER_OF_THREADS}) {
+            run("per call DOM/XPath", threads, perCall, profileXML);
+            run("pooled DOM/XPath", threads, pooledDOM, profileXML);
+            run("StAX", threads, streaming, profileXML);
+        }
+    }
+
+    private static String profile() {
+        StringBuilder profile = new StringBuilder("<profile><name>benchmark item</name><attributes>");
+
+        for (int i = 0; i < NUMBER_OF_FIELDS; i++) {
+            profile.append("<genre>genre ").append(i).append("</genre>");
+            profile.append("<description>a longer description of attribute ").append(i).append("</description>");
+        }
+
+        return profile.append("</attributes></profile>").toString();
+    }
+
+    private static List<String> values(NodeList nodes) {
+        List<String> values = new ArrayList<String>(nodes.getLength());
+
+        for (int i = 0; i < nodes.getLength(); i++)
+            values.add(nodes.item(i).getTextContent());
+
+        return values;
+    }
+
+    private static void run(String name, int threads, final FieldLoader loader, final String profileXML)
+            throws InterruptedException {
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final CountDownLatch doneSignal = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        startSignal.await();
+                        for (int i = 0; i < LOADS_PER_THREAD; i++) {
+                            if (loader.load(profileXML, FIELD_XPATH).size() != NUMBER_OF_FIELDS)
+                                throw new IllegalStateException("wrong number of values");
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        doneSignal.countDown();
+                    }
+                }
+            });
+            thread.start();
+        }
+
+        long start = System.nanoTime();
+        startSignal.countDown();
+        doneSignal.await();
+        long elapsed = System.nanoTime() - start;
+
+        long loads = (long) threads * LOADS_PER_THREAD;
+        System.out.println(name + " (" + threads + " threads): " + loads + " loads in " + (elapsed / 1000000) +
+                "ms, " + (elapsed * threads / loads / 1000) + "us/load per thread");
+    }
+}
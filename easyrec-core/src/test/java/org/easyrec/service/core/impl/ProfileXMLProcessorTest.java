@@ -0,0 +1,100 @@
+/*
+ * Copyright 2011 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.core.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ProfileXMLProcessorTest {
+
+    private static final String PROFILE = "<profile><genre>rock</genre><details><genre>nested</genre></details>" +
+            "<genre>a<b>c</b><![CDATA[<d>]]>&amp;</genre><genre/><n:genre xmlns:n=\"urn:n\">ns</n:genre></profile>";
+
+    private ProfileXMLProcessor processor;
+
+    @Before
+    public void setUp() {
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+
+        processor = new ProfileXMLProcessor(documentBuilderFactory, 2);
+    }
+
+    @Test
+    public void streamedValuesMatchDOM() throws Exception {
+        for (String xPath : new String[]{"/profile/genre", "/profile/details/genre", "/profile", "/genre"}) {
+            assertThat(ProfileXMLProcessor.isStreamable(xPath), is(true));
+            assertThat(processor.extractValues(PROFILE, xPath), is(domValues(xPath)));
+        }
+
+        assertThat(processor.extractValues(PROFILE, "/profile/genre"), is(Arrays.asList("rock", "ac<d>&", "")));
+    }
+
+    @Test
+    public void otherXPathsAreEvaluatedOnTheDOM() throws Exception {
+        assertThat(ProfileXMLProcessor.isStreamable("//genre"), is(false));
+        assertThat(ProfileXMLProcessor.isStreamable("/profile/genre[1]"), is(false));
+        assertThat(ProfileXMLProcessor.isStreamable("/n:profile"), is(false));
+
+        assertThat(processor.extractValues(PROFILE, "//genre"), is(Arrays.asList("rock", "nested", "ac<d>&", "")));
+        assertThat(processor.extractValues(PROFILE, "/profile/genre[1]"), is(Arrays.asList("rock")));
+    }
+
+    @Test
+    public void emptyProfile() throws Exception {
+        assertThat(processor.extractValues(null, "/profile/genre").isEmpty(), is(true));
+        assertThat(processor.extractValues("", "//genre").isEmpty(), is(true));
+    }
+
+    @Test
+    public void compiledExpressionsAreCached() throws Exception {
+        assertThat(processor.compile("/profile/genre"), is(sameInstance(processor.compile("/profile/genre"))));
+
+        // the cache holds two expressions
+        processor.compile("/profile/a");
+        processor.compile("/profile/b");
+
+        assertThat(processor.compile("/profile/a"), is(sameInstance(processor.compile("/profile/a"))));
+    }
+
+    @Test
+    public void serializeOmitsDeclaration() throws Exception {
+        assertThat(processor.serialize(processor.parse("<profile><genre>rock</genre></profile>")),
+                is("<profile><genre>rock</genre></profile>"));
+    }
+
+    private List<String> domValues(String xPath) throws Exception {
+        NodeList nodes = processor.evaluateNodes(xPath, processor.parse(PROFILE));
+        List<String> values = new ArrayList<String>();
+
+        for (int i = 0; i < nodes.getLength(); i++)
+            values.add(nodes.item(i).getTextContent());
+
+        return values;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core;
+
+import org.easyrec.model.core.ActionVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.store.dao.core.impl.ActionBatchWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ActionBatchWriterTest {
+    private static final long TIMEOUT = 5000;
+
+    private File spillDirectory;
+    private ActionBatchWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        spillDirectory = File.createTempFile("ActionBatchWriterTest", "");
+        spillDirectory.delete();
+        spillDirectory.mkdir();
+
+        writer = newWriter();
+    }
+
+    @After
+    public void tearDown() {
+        writer.shutdown();
+
+        File[] files = spillDirectory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        spillDirectory.delete();
+    }
+
+    @Test
+    public void insertAction_flushesBySize() throws InterruptedException {
+        RecordingActionDAO dao = new RecordingActionDAO();
+        writer.setFlushSize(3);
+        writer.setFlushLatency(60000);
+        writer.start(dao.proxy());
+
+        for (int i = 0; i < 3; i++)
+            writer.insertAction(action(i), true);
+
+        dao.awaitWritten(3);
+
+        assertThat(dao.batchSizes(), is(Collections.singletonList(3)));
+    }
+
+    @Test
+    public void insertAction_flushesByLatency() throws InterruptedException {
+        RecordingActionDAO dao = new RecordingActionDAO();
+        writer.setFlushSize(1000);
+        writer.setFlushLatency(50);
+        writer.start(dao.proxy());
+
+        writer.insertAction(action(1), true);
+
+        dao.awaitWritten(1);
+
+        assertThat(dao.batchSizes(), is(Collections.singletonList(1)));
+    }
+
+    @Test
+    public void insertAction_dropWhenFull() throws InterruptedException {
+        RecordingActionDAO dao = new RecordingActionDAO();
+        fillQueue(dao, ActionBatchWriter.BackpressurePolicy.DROP);
+
+        assertThat(writer.insertAction(action(3), true), is(0));
+        assertThat(writer.getActionsRejected(), is(1L));
+
+        dao.release();
+        dao.awaitWritten(2);
+
+        assertThat(dao.written(), is(2));
+    }
+
+    @Test
+    public void insertAction_synchronousWhenFull() throws InterruptedException {
+        RecordingActionDAO dao = new RecordingActionDAO();
+        fillQueue(dao, ActionBatchWriter.BackpressurePolicy.SYNCHRONOUS);
+
+        // written by the calling thread while the writer thread is still blocked
+        assertThat(writer.insertAction(action(3), true), is(1));
+        assertThat(dao.written(), is(1));
+
+        dao.release();
+        dao.awaitWritten(3);
+
+        assertThat(writer.getActionsRejected(), is(0L));
+    }
+
+    @Test
+    public void insertAction_blockWhenFull() throws InterruptedException {
+        RecordingActionDAO dao = new RecordingActionDAO();
+        fillQueue(dao, ActionBatchWriter.BackpressurePolicy.BLOCK);
+
+        Thread caller = new Thread(new Runnable() {
+            public void run() {
+                writer.insertAction(action(3), true);
+            }
+        });
+        caller.start();
+        caller.join(200);
+
+        assertThat(caller.isAlive(), is(true));
+
+        dao.release();
+        caller.join(TIMEOUT);
+        dao.awaitWritten(3);
+
+        assertThat(caller.isAlive(), is(false));
+        assertThat(writer.getActionsQueued(), is(3L));
+    }
+
+    @Test
+    public void insertAction_synchronousWhenStopped() {
+        RecordingActionDAO dao = new RecordingActionDAO();
+        writer.start(dao.proxy());
+        writer.shutdown();
+
+        assertThat(writer.insertAction(action(1), true), is(1));
+        assertThat(dao.written(), is(1));
+    }
+
+    @Test
+    public void start_replaysSpilledActions() throws InterruptedException {
+        RecordingActionDAO failingDao = new RecordingActionDAO();
+        failingDao.failures = Integer.MAX_VALUE;
+        writer.setFlushSize(2);
+        writer.setFlushLatency(60000);
+        writer.start(failingDao.proxy());
+
+        writer.insertAction(action(1), true);
+        writer.insertAction(action(2), true);
+        failingDao.awaitCalls(1);
+        writer.shutdown();
+
+        assertThat(writer.getActionsSpilled(), is(2L));
+        assertThat(spillDirectory.list().length, is(1));
+
+        RecordingActionDAO dao = new RecordingActionDAO();
+        writer = newWriter();
+        writer.start(dao.proxy());
+
+        assertThat(dao.written(), is(2));
+        assertThat(spillDirectory.list().length, is(0));
+    }
+
+    @Test
+    public void start_partiallyReplayedFileKeepsRemainingActions() throws InterruptedException {
+        RecordingActionDAO failingDao = new RecordingActionDAO();
+        failingDao.failures = Integer.MAX_VALUE;
+        writer.setFlushSize(3);
+        writer.setFlushLatency(60000);
+        writer.start(failingDao.proxy());
+
+        for (int i = 0; i < 3; i++)
+            writer.insertAction(action(i), true);
+        failingDao.awaitCalls(1);
+        writer.shutdown();
+
+        // the first action of the file is written, then the database fails
+        RecordingActionDAO dao = new RecordingActionDAO();
+        dao.failAfter = 1;
+        writer = newWriter();
+        writer.setFlushSize(1);
+        writer.start(dao.proxy());
+        writer.shutdown();
+
+        assertThat(dao.written(), is(1));
+        assertThat(spillDirectory.list().length, is(1));
+
+        RecordingActionDAO replayDao = new RecordingActionDAO();
+        writer = newWriter();
+        writer.start(replayDao.proxy());
+
+        assertThat(replayDao.written(), is(2));
+        assertThat(spillDirectory.list().length, is(0));
+    }
+
+    @Test
+    public void setSpillDirectory_nullUsesTempDirectory() {
+        writer.setSpillDirectory(null);
+
+        assertThat(writer.getSpillDirectory(), is(new File(System.getProperty("java.io.tmpdir"))));
+    }
+
+    private ActionBatchWriter newWriter() {
+        ActionBatchWriter writer = new ActionBatchWriter();
+        writer.setSpillDirectory(spillDirectory);
+        writer.setShutdownTimeout(TIMEOUT);
+        return writer;
+    }
+
+    /**
+     * Starts the writer with a queue of one action and blocks the writer thread in the DAO, so the queue is full
+     * after two actions.
+     */
+    private void fillQueue(RecordingActionDAO dao, ActionBatchWriter.BackpressurePolicy policy)
+            throws InterruptedException {
+        dao.blockWriterThread = true;
+        writer.setQueueCapacity(1);
+        writer.setFlushSize(1);
+        writer.setBackpressurePolicy(policy);
+        writer.start(dao.proxy());
+
+        writer.insertAction(action(1), true);
+        dao.awaitCalls(1);
+        writer.insertAction(action(2), true);
+    }
+
+    private static ActionVO<Integer, Integer> action(int itemId) {
+        return new ActionVO<Integer, Integer>(1, 1, "session", "127.0.0.1",
+                new ItemVO<Integer, Integer>(1, itemId, 1), 1, null, null, null, null);
+    }
+
+    /**
+     * Records the batches written by {@link ActionDAO#insertActions}, all other methods are unsupported.
+     */
+    private static class RecordingActionDAO implements InvocationHandler {
+        private final List<Integer> batchSizes = new ArrayList<Integer>();
+        private final CountDownLatch released = new CountDownLatch(1);
+        private int calls = 0;
+        // number of calls failing
+        int failures = 0;
+        // number of calls succeeding before all further calls fail
+        int failAfter = Integer.MAX_VALUE;
+        boolean blockWriterThread = false;
+
+        ActionDAO proxy() {
+            return (ActionDAO) Proxy.newProxyInstance(ActionDAO.class.getClassLoader(),
+                    new Class<?>[]{ActionDAO.class}, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().equals("insertActions"))
+                throw new UnsupportedOperationException(method.getName());
+
+            synchronized (this) {
+                calls++;
+                notifyAll();
+            }
+
+            if (blockWriterThread && Thread.currentThread().getName().equals("ActionBatchWriter"))
+                released.await(TIMEOUT, TimeUnit.MILLISECONDS);
+
+            synchronized (this) {
+                if (failures > 0) {
+                    failures--;
+                    throw new IllegalStateException("database is down");
+                }
+                if (batchSizes.size() >= failAfter)
+                    throw new IllegalStateException("database is down");
+
+                batchSizes.add(((List<?>) args[0]).size());
+                notifyAll();
+
+                return ((List<?>) args[0]).size();
+            }
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        synchronized List<Integer> batchSizes() {
+            return new ArrayList<Integer>(batchSizes);
+        }
+
+        synchronized int written() {
+            int written = 0;
+
+            for (int size : batchSizes)
+                written += size;
+
+            return written;
+        }
+
+        synchronized void awaitWritten(int actions) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+
+            while (written() < actions && System.currentTimeMillis() < deadline)
+                wait(50);
+        }
+
+        synchronized void awaitCalls(int calls) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+
+            while (this.calls < calls && System.currentTimeMillis() < deadline)
+                wait(50);
+        }
+    }
+}
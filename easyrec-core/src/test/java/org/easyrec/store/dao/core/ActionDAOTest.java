@@ -131,6 +131,38 @@ public class ActionDAOTest {
         actionDAO.insertAction(action, false);
     }
 
+    @Test
+    @ExpectedDataSet(DATA_FILENAME_SOME_MORE_WITH_ALL_FIELDS_SET)
+    public void testInsertActionsAllFieldsSet() {
+        List<ActionVO<Integer, Integer>> actions = new ArrayList<ActionVO<Integer, Integer>>();
+        // search (failed)
+        actions.add(new ActionVO<Integer, Integer>(2, 2, "abc6", "192.168.124.1",
+                new ItemVO<Integer, Integer>(2, null, 2), 4, null, false, 0, "modana"));
+        // search (succeeded)
+        actions.add(new ActionVO<Integer, Integer>(2, 2, "abc6", "192.168.124.2",
+                new ItemVO<Integer, Integer>(2, 13, 2), 4, null, true, 1, "madonna"));
+        // ratingValue set
+        actions.add(new ActionVO<Integer, Integer>(2, 2, "abc6", "192.168.124.3",
+                new ItemVO<Integer, Integer>(2, 19, 1), 3, 7, null, null, null));
+
+        int rowsAffected = actionDAO.insertActions(actions, false);
+
+        assertEquals(3, rowsAffected);
+        // the generated ids are set, so the ranking index can tell the actions apart from the loaded ones
+        Map<Integer, ActionVO<Integer, Integer>> storedActions = new HashMap<Integer, ActionVO<Integer, Integer>>();
+        for (ActionVO<Integer, Integer> storedAction : iteratorToList(actionDAO.getActionIterator(5000))) {
+            storedActions.put(storedAction.getId(), storedAction);
+        }
+        for (ActionVO<Integer, Integer> action : actions) {
+            assertNotNull(action.getId());
+
+            ActionVO<Integer, Integer> storedAction = storedActions.get(action.getId());
+            assertNotNull(storedAction);
+            assertEquals(action.getIp(), storedAction.getIp());
+            assertEquals(action.getDescription(), storedAction.getDescription());
+        }
+    }
+
 
     @Test
     public void testInsertActionMissingConstraint() {
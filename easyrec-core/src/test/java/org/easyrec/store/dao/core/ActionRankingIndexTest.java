@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core;
+
+import org.easyrec.model.core.RankedItemVO;
+import org.easyrec.model.core.transfer.TimeConstraintVO;
+import org.easyrec.store.dao.core.impl.ActionRankingIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.unitils.UnitilsJUnit4TestClassRunner;
+import org.unitils.dbunit.annotation.DataSet;
+import org.unitils.spring.annotation.SpringApplicationContext;
+import org.unitils.spring.annotation.SpringBeanByName;
+
+import javax.sql.DataSource;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+@RunWith(UnitilsJUnit4TestClassRunner.class)
+@SpringApplicationContext({
+        "spring/easyrecDataSource.xml",
+        "spring/core/TenantConfig_DEFAULT.xml",
+        "spring/core/dao/AuthenticationDAO.xml",
+        "spring/core/dao/types/ActionTypeDAO.xml",
+        "spring/core/dao/types/AggregateTypeDAO.xml",
+        "spring/core/dao/types/AssocTypeDAO.xml",
+        "spring/core/dao/types/ItemTypeDAO.xml",
+        "spring/core/dao/types/SourceTypeDAO.xml",
+        "spring/core/dao/types/ViewTypeDAO.xml",
+        "spring/core/dao/ItemAssocDAO.xml",
+        "spring/core/dao/TenantDAO.xml",
+        "spring/core/dao/ProfileDAO.xml",
+        "spring/core/idMapping.xml",
+        "spring/core/service/ItemAssocService.xml",
+        "spring/core/service/TenantService.xml",
+        "spring/core/service/ClusterService.xml",
+        "spring/core/service/ClusterStrategies.xml",
+        "spring/core/dao/ActionDAO.xml"})
+@DataSet(ActionDAOTest.DATA_FILENAME_RANKINGS)
+public class ActionRankingIndexTest {
+    private static final long HOUR = 60L * 60L * 1000L;
+
+    @SpringBeanByName
+    private ActionDAO actionDAO;
+
+    @SpringBeanByName
+    private DataSource easyrecDataSource;
+
+    private ActionRankingIndex index;
+
+    @Before
+    public void setUp() {
+        index = new ActionRankingIndex();
+        index.setBackgroundLoad(false);
+        index.start(new JdbcTemplate(easyrecDataSource));
+    }
+
+    @After
+    public void tearDown() {
+        index.shutdown();
+    }
+
+    @Test
+    public void getRankedItems_matchesDatabase() {
+        for (int actionTypeId = 1; actionTypeId <= 4; actionTypeId++) {
+            for (Integer itemTypeId : new Integer[]{null, 1, 2}) {
+                List<RankedItemVO<Integer, Integer>> expected =
+                        actionDAO.getRankedItemsByActionType(1, actionTypeId, itemTypeId, 500, null, true);
+                List<RankedItemVO<Integer, Integer>> actual =
+                        index.getRankedItems(1, actionTypeId, itemTypeId, 500, null, true);
+
+                // items with equal counts may be ranked in a different order
+                assertThat(countsByItem(actual), is(countsByItem(expected)));
+                for (int i = 0; i < actual.size(); i++) {
+                    assertThat(actual.get(i).getRank(), is(i + 1));
+                    assertThat(actual.get(i).getCount(), is(expected.get(i).getCount()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void getRankedItems_limitAndAscending() {
+        List<RankedItemVO<Integer, Integer>> all = index.getRankedItems(1, 1, 1, null, null, true);
+        List<RankedItemVO<Integer, Integer>> top = index.getRankedItems(1, 1, 1, 2, null, true);
+        List<RankedItemVO<Integer, Integer>> bottom = index.getRankedItems(1, 1, 1, 2, null, false);
+
+        assertThat(top.size(), is(2));
+        assertThat(top.get(0).getCount(), is(all.get(0).getCount()));
+        assertThat(bottom.size(), is(2));
+        assertThat(bottom.get(0).getCount(), is(all.get(all.size() - 1).getCount()));
+    }
+
+    @Test
+    public void getRankedItems_windows() {
+        long now = System.currentTimeMillis();
+        index.record(1, 1, 1, 100, 0, now);
+        index.record(1, 1, 1, 100, 0, now - HOUR);
+        index.record(1, 1, 1, 101, 0, now - 3 * 24 * HOUR);
+
+        List<RankedItemVO<Integer, Integer>> day = index.getRankedItems(1, 1, 1, 10,
+                new TimeConstraintVO(new Date(now - 24 * HOUR), new Date(now)), true);
+        List<RankedItemVO<Integer, Integer>> week = index.getRankedItems(1, 1, 1, 10,
+                new TimeConstraintVO(new Date(now - 7 * 24 * HOUR), new Date(now)), true);
+
+        assertThat(day.size(), is(1));
+        assertThat(day.get(0).getItem().getItem(), is(100));
+        assertThat(day.get(0).getCount(), is(2));
+        assertThat(week.size(), is(2));
+        assertThat(week.get(1).getItem().getItem(), is(101));
+    }
+
+    @Test
+    public void getRankedItems_unalignedTimeRangeIsNotAnswered() {
+        TimeConstraintVO constraint = new TimeConstraintVO(new Date(1000), new Date(2000));
+
+        assertThat(index.getWindow(constraint), is(nullValue()));
+        assertThat(index.getRankedItems(1, 1, 1, 10, constraint, true), is(nullValue()));
+    }
+
+    @Test
+    public void clear_removesTenant() {
+        index.clear(1);
+
+        assertThat(index.getRankedItems(1, 1, null, 10, null, true).size(), is(0));
+    }
+
+    private static Map<String, Integer> countsByItem(List<RankedItemVO<Integer, Integer>> rankedItems) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (RankedItemVO<Integer, Integer> rankedItem : rankedItems) {
+            counts.put(rankedItem.getItem().getType() + ":" + rankedItem.getItem().getItem(), rankedItem.getCount());
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core;
+
+import org.easyrec.store.dao.IDMappingDAO;
+import org.easyrec.store.dao.impl.IDMappingDAODictionaryImpl;
+import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import javax.sql.DataSource;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * !!! CAUTION This class inserts id mappings into the configured database !!!
+ * <p/>
+ * Compares the throughput of the ehcache backed {@link org.easyrec.store.dao.impl.IDMappingDAOMysqlImpl} with the
+ * {@link IDMappingDAODictionaryImpl} under 64 concurrent callers. Each caller looks up random String IDs of a fixed
+ * pool (which is created first) followed by the Integer to String lookup of the result.
+ * <p/>
+ * Run with the database configured in easyrec.database.properties.
+ */
+public class IDMappingDAOBenchmark {
+
+    private static final int NUMBER_OF_THREADS = 64;
+    private static final int NUMBER_OF_IDS = 100000;
+    private static final int LOOKUPS_PER_THREAD = 200000;
+    private static final String ID_PREFIX = "benchmark_";
+
+    public static void main(String[] args) throws Exception {
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(
+                new String[]{"/spring/easyrecDataSource.xml", "/spring/core/dao/IDMappingDAO.xml"});
+
+        try {
+            IDMappingDAO mysqlDAO = (IDMappingDAO) context.getBean("idMappingDAO");
+
+            System.out.println("creating " + NUMBER_OF_IDS + " id mappings ...");
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < NUMBER_OF_IDS; i++) {
+                mysqlDAO.lookup(ID_PREFIX + i);
+            }
+            System.out.println("done in " + (System.currentTimeMillis() - start) + "ms");
+
+            IDMappingDAODictionaryImpl dictionaryDAO = new IDMappingDAODictionaryImpl(
+                    (DataSource) context.getBean("easyrecDataSource"),
+                    (SqlScriptService) context.getBean("easyrecSqlScriptService"), NUMBER_OF_IDS);
+            start = System.currentTimeMillis();
+            dictionaryDAO.afterPropertiesSet();
+            System.out.println("dictionary warmed up in " + (System.currentTimeMillis() - start) + "ms");
+
+            // first round warms up the JIT and the ehcache
+            run("IDMappingDAOMysqlImpl (warmup)", mysqlDAO);
+            run("IDMappingDAODictionaryImpl (warmup)", dictionaryDAO);
+            run("IDMappingDAOMysqlImpl", mysqlDAO);
+            run("IDMappingDAODictionaryImpl", dictionaryDAO);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void run(String name, final IDMappingDAO dao) throws InterruptedException {
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final CountDownLatch doneSignal = new CountDownLatch(NUMBER_OF_THREADS);
+
+        for (int t = 0; t < NUMBER_OF_THREADS; t++) {
+            final long seed = t;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        startSignal.await();
+                        for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+                            Integer intId = dao.lookup(ID_PREFIX + random.nextInt(NUMBER_OF_IDS));
+                            dao.lookup(intId);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        doneSignal.countDown();
+                    }
+                }
+            });
+            thread.start();
+        }
+
+        long start = System.nanoTime();
+        startSignal.countDown();
+        doneSignal.await();
+        long elapsed = System.nanoTime() - start;
+
+        long lookups = 2L * NUMBER_OF_THREADS * LOOKUPS_PER_THREAD;
+        System.out.println(name + ": " + lookups + " lookups in " + (elapsed / 1000000) + "ms, " +
+                (lookups * 1000000000L / elapsed) + " lookups/s, " + (elapsed / lookups) + "ns/lookup");
+    }
+}
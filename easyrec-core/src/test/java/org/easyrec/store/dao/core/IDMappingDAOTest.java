@@ -29,6 +29,8 @@ import org.unitils.spring.annotation.SpringApplicationContext;
 import org.unitils.spring.annotation.SpringBean;
 
 import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertThat;
@@ -97,6 +99,16 @@ public class IDMappingDAOTest {
         assertThat(returnedName, is(nullValue()));
     }
 
+    @Test
+    public void lookupAll() {
+        Map<Integer, String> returnedNames = mappingDAO.lookupAll(Arrays.asList(1, 3, null, 3, 4));
+
+        assertThat(returnedNames.size(), is(2));
+        assertThat(returnedNames.get(1), is("test1"));
+        assertThat(returnedNames.get(3), is("test3"));
+        assertThat(returnedNames.containsKey(4), is(false));
+    }
+
     @Test
     public void lookup_stringInCache() {
         Stopwatch st = new Stopwatch();
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core;
+
+import org.easyrec.store.dao.impl.IDMappingDictionary;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class IDMappingDictionaryTest {
+
+    @Test
+    public void get_unknownIds() {
+        IDMappingDictionary dictionary = new IDMappingDictionary();
+
+        assertThat(dictionary.get("test1"), is(IDMappingDictionary.NO_ID));
+        assertThat(dictionary.get(1), is(nullValue()));
+        assertThat(dictionary.get(0), is(nullValue()));
+    }
+
+    @Test
+    public void put_bothDirections() {
+        IDMappingDictionary dictionary = new IDMappingDictionary();
+        dictionary.put(1, "test1");
+        dictionary.put(70000, "test2");
+
+        assertThat(dictionary.get("test1"), is(1));
+        assertThat(dictionary.get("test2"), is(70000));
+        assertThat(dictionary.get(1), is("test1"));
+        assertThat(dictionary.get(70000), is("test2"));
+        assertThat(dictionary.size(), is(2));
+    }
+
+    @Test
+    public void put_existingMappingIsIgnored() {
+        IDMappingDictionary dictionary = new IDMappingDictionary();
+        dictionary.put(1, "test1");
+        dictionary.put(1, "test1");
+
+        assertThat(dictionary.size(), is(1));
+    }
+
+    @Test
+    public void put_aliasMapsToExistingId() {
+        IDMappingDictionary dictionary = new IDMappingDictionary();
+        dictionary.put(1, "TEST1");
+        dictionary.put(1, "test1");
+
+        assertThat(dictionary.get("test1"), is(1));
+        assertThat(dictionary.get("TEST1"), is(1));
+        assertThat(dictionary.get(1), is("TEST1"));
+    }
+
+    @Test
+    public void put_resize() {
+        IDMappingDictionary dictionary = new IDMappingDictionary();
+        for (int i = 1; i <= 100000; i++) {
+            dictionary.put(i, "item" + i);
+        }
+
+        assertThat(dictionary.size(), is(100000));
+        for (int i = 1; i <= 100000; i++) {
+            assertThat(dictionary.get("item" + i), is(i));
+            assertThat(dictionary.get(i), is("item" + i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void put_invalidId() {
+        new IDMappingDictionary().put(0, "test1");
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core;
+
+import org.easyrec.model.core.ItemAssocVO;
+import org.easyrec.model.core.ItemVO;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * !!! CAUTION This class inserts item associations into the configured database and removes them afterwards !!!
+ * <p/>
+ * Measures rows/s and peak heap of {@link ItemAssocDAO#insertOrUpdateItemAssocs} for a large number of generated
+ * item associations (10M by default). In <code>stream</code> mode the associations are generated lazily by an
+ * iterator, in <code>list</code> mode they are materialized in a list first like generators used to do (needs a
+ * large heap, e.g. -Xmx4g).
+ * <p/>
+ * Usage: <code>ItemAssocDAOBenchmark [stream|list] [numberOfAssociations] [loadChunkSize]</code>
+ * <p/>
+ * Run with the database configured in easyrec.database.properties.
+ */
+public class ItemAssocDAOBenchmark {
+
+    private static final int TENANT_ID = Integer.MAX_VALUE - 1;
+    private static final int ITEMS_PER_ROW = 1000;
+
+    public static void main(String[] args) throws Exception {
+        boolean stream = args.length < 1 || !"list".equals(args[0]);
+        int numberOfAssociations = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(
+                new String[]{"/spring/easyrecDataSource.xml", "/spring/core/dao/ItemAssocDAO.xml"});
+
+        try {
+            ItemAssocDAO itemAssocDAO = (ItemAssocDAO) context.getBean("itemAssocDAO");
+            if (args.length > 2) {
+                ((org.easyrec.store.dao.core.impl.ItemAssocDAOMysqlImpl) itemAssocDAO)
+                        .setLoadChunkSize(Integer.parseInt(args[2]));
+            }
+
+            System.gc();
+            resetPeakHeap();
+            long start = System.currentTimeMillis();
+
+            int rows;
+            if (stream) {
+                rows = itemAssocDAO.insertOrUpdateItemAssocs(new GeneratingIterator(numberOfAssociations));
+            } else {
+                List<ItemAssocVO<Integer, Integer>> itemAssocs =
+                        new ArrayList<ItemAssocVO<Integer, Integer>>(numberOfAssociations);
+                for (Iterator<ItemAssocVO<Integer, Integer>> it = new GeneratingIterator(numberOfAssociations);
+                     it.hasNext(); ) {
+                    itemAssocs.add(it.next());
+                }
+                rows = itemAssocDAO.insertOrUpdateItemAssocs(itemAssocs);
+            }
+
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+            System.out.println((stream ? "stream" : "list") + ": " + rows + " item associations in " + elapsed +
+                    "ms, " + (rows * 1000L / elapsed) + " rows/s, peak heap " + (getPeakHeap() / (1024 * 1024)) +
+                    "MB");
+
+            itemAssocDAO.removeItemAssocsQBE(new ItemAssocVO<Integer, Integer>(null, TENANT_ID, null, null, null,
+                    null, null, null, null, null, null));
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * @return the sum of the peak usages of all heap pools, an upper bound of the actual peak
+     */
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static class GeneratingIterator implements Iterator<ItemAssocVO<Integer, Integer>> {
+        private final int numberOfAssociations;
+        private final Date changeDate = new Date();
+        private int next = 0;
+
+        private GeneratingIterator(int numberOfAssociations) {
+            this.numberOfAssociations = numberOfAssociations;
+        }
+
+        public boolean hasNext() {
+            return next < numberOfAssociations;
+        }
+
+        public ItemAssocVO<Integer, Integer> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            int itemFrom = next / ITEMS_PER_ROW;
+            int itemTo = next % ITEMS_PER_ROW;
+            next++;
+
+            return new ItemAssocVO<Integer, Integer>(null, TENANT_ID,
+                    new ItemVO<Integer, Integer>(TENANT_ID, itemFrom, 1), 1, 1.0 / (itemTo + 1),
+                    new ItemVO<Integer, Integer>(TENANT_ID, itemTo, 1), 1, "benchmark", 1, true, changeDate);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -32,9 +32,11 @@ import org.unitils.spring.annotation.SpringApplicationContext;
 import org.unitils.spring.annotation.SpringBeanByName;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
@@ -159,6 +161,41 @@ public class ItemAssocDAOTest {
         assertEquals(itemAssocs.size(), itemsEqual);
     }
 
+    @Test
+    public void testItemAssocSink() {
+        Date date = new Date((System.currentTimeMillis() / 1000) * 1000L);
+
+        ItemAssocSink sink = itemAssocDAO.openItemAssocSink();
+        for (int i = 10; i < 20; i++) {
+            sink.add(new ItemAssocVO<Integer, Integer>(null, 2, new ItemVO<Integer, Integer>(2, i, 1), 1, 0.5,
+                    new ItemVO<Integer, Integer>(2, i + 1, 1), 1, "sink", 1, true, date));
+        }
+        sink.close();
+
+        assertEquals(10, sink.getRowsWritten());
+
+        // existing associations are replaced
+        sink = itemAssocDAO.openItemAssocSink();
+        sink.add(new ItemAssocVO<Integer, Integer>(null, 2, new ItemVO<Integer, Integer>(2, 10, 1), 1, 0.75,
+                new ItemVO<Integer, Integer>(2, 11, 1), 1, "sink", 1, true, date));
+        sink.close();
+
+        int rows = 0;
+        Iterator<ItemAssocVO<Integer, Integer>> it = itemAssocDAO.getItemAssocIterator(5000);
+        while (it.hasNext()) {
+            ItemAssocVO<Integer, Integer> itemAssoc = it.next();
+
+            if ("sink".equals(itemAssoc.getSourceInfo())) {
+                rows++;
+                if (itemAssoc.getItemFrom().getItem() == 10) {
+                    assertEquals(0.75, itemAssoc.getAssocValue(), 0.0);
+                }
+            }
+        }
+
+        assertEquals(10, rows);
+    }
+
     @Test
     @DataSet(DATA_FILENAME_ONE_LESS)
     @ExpectedDataSet(DATA_FILENAME_NO_CHANGEDATE)
@@ -457,6 +494,27 @@ public class ItemAssocDAOTest {
         // HINT: hardcoded check if list equals expected list (Mantis Issue: #721)
     }
 
+    @Test
+    public void testGetItemsToOfSeveralItems() {
+        ItemVO<Integer, Integer> item1 = new ItemVO<Integer, Integer>(1, 1, 1);
+        ItemVO<Integer, Integer> item2 = new ItemVO<Integer, Integer>(1, 2, 1);
+        ItemVO<Integer, Integer> item3 = new ItemVO<Integer, Integer>(1, 3, 1);
+
+        Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> associatedItems = itemAssocDAO
+                .getItemsTo(Arrays.asList(item1, item2, item3), 1, 1,
+                        new IAConstraintVO<Integer, Integer>(3, null, null, null, 1, true, false));
+
+        assertEquals(3, associatedItems.size());
+        assertEquals(3, associatedItems.get(item1).size());
+        // the number of results is applied per item and the sort order is kept
+        assertEquals(0.9, associatedItems.get(item1).get(0).getAssocValue(), 0.0);
+        assertEquals(0.6, associatedItems.get(item1).get(1).getAssocValue(), 0.0);
+        assertEquals(0.5, associatedItems.get(item1).get(2).getAssocValue(), 0.0);
+        assertEquals(1, associatedItems.get(item2).size());
+        assertEquals(new ItemVO<Integer, Integer>(1, 7, 1), associatedItems.get(item2).get(0).getItem());
+        assertTrue(associatedItems.get(item3).isEmpty());
+    }
+
     @Test
     public void testGetItemsToEmptyDB() {
         Unitils.getInstance().getModulesRepository().getModuleOfType(DatabaseModule.class).cleanSchemas();
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core;
+
+import org.easyrec.model.core.AssociatedItemVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.store.dao.core.impl.ItemAssocSnapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ItemAssocSnapshotTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("itemassoc-", ".snapshot");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void getItemsTo_sortedTopN() throws IOException {
+        ItemAssocSnapshot.Writer writer = new ItemAssocSnapshot.Writer(file, 1, 2);
+        writer.add(1, 1, 1, 1, 10, 100, 3.0);
+        writer.add(1, 1, 1, 1, 11, 101, 2.0);
+        writer.add(1, 1, 1, 1, 12, 102, 1.0);
+        writer.add(1, 1, 1, 2, 13, 103, 5.0);
+        writer.add(1, 1, 2, 1, 14, 104, 4.0);
+        writer.add(2, 1, 1, 1, 15, 105, 0.5);
+        writer.close();
+
+        ItemAssocSnapshot snapshot = ItemAssocSnapshot.open(file);
+
+        assertThat(snapshot.getTenantId(), is(1));
+        assertThat(snapshot.getKeyCount(), is(4));
+        assertThat(snapshot.getEntryCount(), is(5));
+
+        List<AssociatedItemVO<Integer, Integer>> items =
+                snapshot.getItemsTo(new ItemVO<Integer, Integer>(1, 1, 1), 1, 1, 10);
+
+        assertThat(items.size(), is(2));
+        assertThat(items.get(0).getItem(), is(new ItemVO<Integer, Integer>(1, 10, 1)));
+        assertThat(items.get(0).getAssocValue(), is(3.0));
+        assertThat(items.get(0).getItemAssocId(), is(100));
+        assertThat(items.get(0).getAssocType(), is(1));
+        assertThat(items.get(1).getItem(), is(new ItemVO<Integer, Integer>(1, 11, 1)));
+
+        assertThat(snapshot.getItemsTo(new ItemVO<Integer, Integer>(1, 1, 1), 1, 1, 1).size(), is(1));
+        assertThat(snapshot.getItemsTo(new ItemVO<Integer, Integer>(1, 1, 1), 1, 2, 10).get(0).getItem(),
+                is(new ItemVO<Integer, Integer>(1, 13, 2)));
+        assertThat(snapshot.getItemsTo(new ItemVO<Integer, Integer>(1, 1, 1), 2, 1, 10).get(0).getItemAssocId(),
+                is(104));
+        assertThat(snapshot.getItemsTo(new ItemVO<Integer, Integer>(1, 2, 1), 1, 1, 10).get(0).getAssocValue(),
+                is(0.5));
+    }
+
+    @Test
+    public void getItemsTo_unknownItem() throws IOException {
+        ItemAssocSnapshot.Writer writer = new ItemAssocSnapshot.Writer(file, 1, 10);
+        writer.add(5, 1, 1, 1, 10, 100, 1.0);
+        writer.close();
+
+        ItemAssocSnapshot snapshot = ItemAssocSnapshot.open(file);
+
+        assertThat(snapshot.getItemsTo(new ItemVO<Integer, Integer>(1, 4, 1), 1, 1, 10).isEmpty(), is(true));
+        assertThat(snapshot.getItemsTo(new ItemVO<Integer, Integer>(1, 6, 1), 1, 1, 10).isEmpty(), is(true));
+        assertThat(snapshot.getItemsTo(new ItemVO<Integer, Integer>(1, 5, 2), 1, 1, 10).isEmpty(), is(true));
+    }
+
+    @Test
+    public void open_emptySnapshot() throws IOException {
+        new ItemAssocSnapshot.Writer(file, 3, 10).close();
+
+        ItemAssocSnapshot snapshot = ItemAssocSnapshot.open(file);
+
+        assertThat(snapshot.getTenantId(), is(3));
+        assertThat(snapshot.getItemsTo(new ItemVO<Integer, Integer>(3, 1, 1), 1, 1, 10).isEmpty(), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void add_unsortedKeys() throws IOException {
+        ItemAssocSnapshot.Writer writer = new ItemAssocSnapshot.Writer(file, 1, 10);
+
+        try {
+            writer.add(2, 1, 1, 1, 10, 100, 1.0);
+            writer.add(1, 1, 1, 1, 10, 101, 1.0);
+        } finally {
+            writer.close();
+        }
+    }
+}
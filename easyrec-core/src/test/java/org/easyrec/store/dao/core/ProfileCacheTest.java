@@ -0,0 +1,157 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core;
+
+import org.easyrec.store.dao.core.impl.ProfileCache;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ProfileCacheTest {
+    private static final String PROFILE = "<profile><genre>rock</genre></profile>";
+
+    @Test
+    public void get_cachedProfile() {
+        ProfileCache cache = new ProfileCache();
+
+        assertThat(cache.get(1, 1, 1), is(nullValue()));
+
+        cache.put(1, 1, 1, PROFILE, cache.getGeneration());
+
+        assertThat(cache.get(1, 1, 1).getProfileXML(), is(PROFILE));
+        assertThat(cache.get(1, 1, 2), is(nullValue()));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(2L));
+        assertThat(cache.getHitRate(), is(1.0 / 3));
+    }
+
+    @Test
+    public void get_profileWithoutXML() {
+        ProfileCache cache = new ProfileCache();
+        cache.put(1, 1, 1, null, cache.getGeneration());
+
+        assertThat(cache.get(1, 1, 1), is(notNullValue()));
+        assertThat(cache.get(1, 1, 1).getProfileXML(), is(nullValue()));
+    }
+
+    @Test
+    public void invalidate_removesProfile() {
+        ProfileCache cache = new ProfileCache();
+        cache.put(1, 1, 1, PROFILE, cache.getGeneration());
+        cache.put(1, 2, 1, PROFILE, cache.getGeneration());
+
+        cache.invalidate(1, 1, 1);
+
+        assertThat(cache.get(1, 1, 1), is(nullValue()));
+        assertThat(cache.get(1, 2, 1), is(notNullValue()));
+    }
+
+    @Test
+    public void invalidateTenant_removesProfilesOfTenant() {
+        ProfileCache cache = new ProfileCache();
+        cache.put(1, 1, 1, PROFILE, cache.getGeneration());
+        cache.put(2, 1, 1, PROFILE, cache.getGeneration());
+
+        cache.invalidateTenant(1);
+
+        assertThat(cache.get(1, 1, 1), is(nullValue()));
+        assertThat(cache.get(2, 1, 1), is(notNullValue()));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void put_staleProfileIsNotCached() {
+        ProfileCache cache = new ProfileCache();
+        long generation = cache.getGeneration();
+
+        // the profile is changed while the old one is loaded
+        cache.invalidate(1, 1, 1);
+        CachedProfile profile = cache.put(1, 1, 1, PROFILE, generation);
+
+        assertThat(profile.getProfileXML(), is(PROFILE));
+        assertThat(cache.get(1, 1, 1), is(nullValue()));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        ProfileCache cache = new ProfileCache();
+        cache.setMaxProfiles(2);
+        cache.put(1, 1, 1, PROFILE, cache.getGeneration());
+        cache.put(1, 2, 1, PROFILE, cache.getGeneration());
+        cache.get(1, 1, 1);
+        cache.put(1, 3, 1, PROFILE, cache.getGeneration());
+
+        assertThat(cache.get(1, 1, 1), is(notNullValue()));
+        assertThat(cache.get(1, 2, 1), is(nullValue()));
+        assertThat(cache.get(1, 3, 1), is(notNullValue()));
+        assertThat(cache.getEvictions(), is(1L));
+    }
+
+    @Test
+    public void putFieldValues_countsTowardsMemory() {
+        ProfileCache cache = new ProfileCache();
+        CachedProfile profile = cache.put(1, 1, 1, PROFILE, cache.getGeneration());
+        long memory = cache.getMemory();
+
+        List<String> values = profile.putFieldValues("/profile/genre", Arrays.asList("rock"));
+
+        assertThat(values, is(Arrays.asList("rock")));
+        assertThat(cache.get(1, 1, 1).getFieldValues("/profile/genre"), is(values));
+        assertThat(cache.getMemory() > memory, is(true));
+
+        cache.invalidate(1, 1, 1);
+
+        assertThat(cache.getMemory(), is(0L));
+    }
+
+    @Test
+    public void setMaxMemory_evictsProfiles() {
+        ProfileCache cache = new ProfileCache();
+        cache.put(1, 1, 1, PROFILE, cache.getGeneration());
+        cache.put(1, 2, 1, PROFILE, cache.getGeneration());
+
+        cache.setMaxMemory(cache.getMemory() - 1);
+
+        assertThat(cache.size(), is(1));
+        assertThat(cache.get(1, 2, 1), is(notNullValue()));
+    }
+
+    @Test
+    public void setEnabled_disabledCacheIsEmpty() {
+        ProfileCache cache = new ProfileCache();
+        cache.put(1, 1, 1, PROFILE, cache.getGeneration());
+
+        cache.setEnabled(false);
+        cache.put(1, 2, 1, PROFILE, cache.getGeneration());
+
+        assertThat(cache.size(), is(0));
+        assertThat(cache.get(1, 2, 1), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxProfiles_mustBePositive() {
+        new ProfileCache().setMaxProfiles(0);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core;
+
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.StreamingResultSetIteratorMysql;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+
+/**
+ * !!! CAUTION This class creates (and drops) the table 'benchmark_scan' in the configured database !!!
+ * <p/>
+ * Compares the time of a full table scan with the offset paging {@link ResultSetIteratorMysql}, the
+ * {@link KeysetResultSetIteratorMysql} and the {@link StreamingResultSetIteratorMysql}. The table has the layout of
+ * the action table and is filled with 1M, 10M and 100M rows (or the row counts passed as arguments). The offset paging
+ * iterator is skipped for tables with more than 1M rows as its scan time grows quadratically.
+ * <p/>
+ * Run with the database configured in easyrec.database.properties.
+ */
+public class ResultSetIteratorBenchmark {
+
+    private static final String TABLE_NAME = "benchmark_scan";
+    private static final int BULK_SIZE = 5000;
+    private static final int INSERT_BATCH_SIZE = 10000;
+    private static final int MAX_OFFSET_PAGING_ROWS = 1000000;
+
+    private static final RowMapper<Integer> ITEM_ID_MAPPER = new RowMapper<Integer>() {
+        public Integer mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return rs.getInt("itemId");
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        long[] rowCounts = {1000000L, 10000000L, 100000000L};
+        if (args.length > 0) {
+            rowCounts = new long[args.length];
+            for (int i = 0; i < args.length; i++) {
+                rowCounts[i] = Long.parseLong(args[i]);
+            }
+        }
+
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(
+                new String[]{"/spring/easyrecDataSource.xml"});
+
+        try {
+            DataSource dataSource = (DataSource) context.getBean("easyrecDataSource");
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE_NAME);
+            jdbcTemplate.execute("CREATE TABLE " + TABLE_NAME + " (id INT(11) UNSIGNED NOT NULL AUTO_INCREMENT, " +
+                    "tenantId INT(11) NOT NULL, userId INT(11), itemId INT(11) NOT NULL, " +
+                    "actionTime DATETIME NOT NULL, PRIMARY KEY (id)) ENGINE=InnoDB");
+
+            try {
+                long rows = 0;
+                for (long rowCount : rowCounts) {
+                    System.out.println("filling " + TABLE_NAME + " up to " + rowCount + " rows ...");
+                    long start = System.currentTimeMillis();
+                    rows = fill(jdbcTemplate, rows, rowCount);
+                    System.out.println("done in " + (System.currentTimeMillis() - start) + "ms");
+
+                    String sql = "SELECT * FROM " + TABLE_NAME;
+
+                    if (rowCount <= MAX_OFFSET_PAGING_ROWS) {
+                        scan("offset paging", rowCount,
+                                new ResultSetIteratorMysql<Integer>(dataSource, BULK_SIZE, sql, ITEM_ID_MAPPER));
+                    }
+                    scan("keyset paging", rowCount,
+                            new KeysetResultSetIteratorMysql<Integer>(dataSource, BULK_SIZE, sql, "id",
+                                    ITEM_ID_MAPPER));
+                    scan("streaming", rowCount,
+                            new StreamingResultSetIteratorMysql<Integer>(dataSource, BULK_SIZE, sql, ITEM_ID_MAPPER));
+                }
+            } finally {
+                jdbcTemplate.execute("DROP TABLE " + TABLE_NAME);
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    private static long fill(JdbcTemplate jdbcTemplate, long rows, long rowCount) {
+        while (rows < rowCount) {
+            int batch = (int) Math.min(INSERT_BATCH_SIZE, rowCount - rows);
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(TABLE_NAME)
+                    .append(" (tenantId, userId, itemId, actionTime) VALUES ");
+
+            for (int i = 0; i < batch; i++) {
+                long row = rows + i;
+                if (i > 0) sql.append(',');
+                sql.append("(1,").append(row % 100000).append(',').append(row % 1000003)
+                        .append(",NOW() - INTERVAL ").append(row % 86400).append(" SECOND)");
+            }
+
+            jdbcTemplate.update(sql.toString());
+            rows += batch;
+        }
+
+        return rows;
+    }
+
+    private static void scan(String name, long rowCount, Iterator<Integer> iterator) {
+        long start = System.nanoTime();
+        long rows = 0;
+        long checksum = 0;
+
+        try {
+            while (iterator.hasNext()) {
+                checksum += iterator.next();
+                rows++;
+            }
+        } finally {
+            if (iterator instanceof StreamingResultSetIteratorMysql) {
+                ((StreamingResultSetIteratorMysql<?>) iterator).close();
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        if (rows != rowCount) {
+            System.out.println(name + ": expected " + rowCount + " rows, but read " + rows);
+        }
+        System.out.println(name + ": " + rows + " rows in " + (elapsed / 1000000) + "ms, " +
+                (rows * 1000000000L / Math.max(elapsed, 1)) + " rows/s (checksum " + checksum + ")");
+    }
+}
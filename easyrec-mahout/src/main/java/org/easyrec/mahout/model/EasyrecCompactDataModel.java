@@ -0,0 +1,589 @@
+/*
+ * Copyright 2011 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.mahout.model;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveArrayIterator;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.model.AbstractDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericItemPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.easyrec.mahout.store.MahoutDataModelMappingDAO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * A read only DataModel that holds the actions of a tenant and action type in a few primitive arrays.
+ * <p/>
+ * The actions are read with a single streaming query ordered by user. The preferences of the i-th user (in the order
+ * of the user IDs) are stored from <code>userStart[i]</code> to <code>userStart[i + 1]</code> in the item index,
+ * value and time arrays, ordered by item ID. The same layout indexed by item holds the positions of the preferences
+ * of every item. Several actions of a user on the same item count as a single preference with the latest value.
+ * <p/>
+ * If a snapshot directory is given the arrays are written to a snapshot file after loading. As long as the highest
+ * action id and the number of actions of the tenant and action type do not change, later instances memory-map the
+ * snapshot instead of reading the action table.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class EasyrecCompactDataModel extends AbstractDataModel {
+    private static final int SNAPSHOT_MAGIC = 0x45524d44;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final int tenantId;
+    private final int actionTypeId;
+    private final boolean hasRatingValues;
+    private final MahoutDataModelMappingDAO mahoutDataModelMappingDAO;
+    private final File snapshotDirectory;
+
+    private volatile Preferences preferences;
+
+    /**
+     * @param tenantId                  the tenantId of the dataset you want to load
+     * @param actionTypeId              the INT id of the actionType you want to use for your recommender
+     * @param hasRatingValues           a boolean which tells the DataModel about your Data Set having rating values
+     *                                  or not.
+     * @param mahoutDataModelMappingDAO an instance of MahoutDataModelMappingDAO
+     * @param snapshotDirectory         the directory of the snapshot files or <code>null</code> to always read the
+     *                                  action table
+     */
+    public EasyrecCompactDataModel(int tenantId, int actionTypeId, boolean hasRatingValues,
+                                   MahoutDataModelMappingDAO mahoutDataModelMappingDAO, File snapshotDirectory) {
+        if (mahoutDataModelMappingDAO == null) throw new IllegalArgumentException("Missing 'mahoutDataModelMappingDAO'");
+
+        this.tenantId = tenantId;
+        this.actionTypeId = actionTypeId;
+        this.hasRatingValues = hasRatingValues;
+        this.mahoutDataModelMappingDAO = mahoutDataModelMappingDAO;
+        this.snapshotDirectory = snapshotDirectory;
+
+        load();
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        load();
+    }
+
+    private void load() {
+        Date cutoffDate = new Date();
+        long maxActionId = mahoutDataModelMappingDAO.getMaxActionId(tenantId, cutoffDate, actionTypeId);
+        int numActions = mahoutDataModelMappingDAO.getNumActions(tenantId, cutoffDate, actionTypeId);
+
+        File snapshot = null;
+        Preferences loaded = null;
+
+        if (snapshotDirectory != null) {
+            snapshot = new File(snapshotDirectory,
+                    "mahout-" + tenantId + "-" + actionTypeId + "-" + (hasRatingValues ? "r" : "b") + ".snapshot");
+
+            if (snapshot.isFile()) {
+                try {
+                    loaded = readSnapshot(snapshot, maxActionId, numActions);
+                } catch (IOException e) {
+                    logger.warn("caught exception while reading snapshot " + snapshot, e);
+                }
+            }
+        }
+
+        if (loaded == null) {
+            loaded = readActions(cutoffDate, numActions);
+
+            if (snapshot != null) {
+                try {
+                    writeSnapshot(snapshot, loaded, maxActionId, numActions);
+                } catch (IOException e) {
+                    logger.warn("caught exception while writing snapshot " + snapshot, e);
+                }
+            }
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("reusing snapshot " + snapshot);
+        }
+
+        setMaxPreference(mahoutDataModelMappingDAO.getMaxPreference(tenantId, cutoffDate, actionTypeId));
+        setMinPreference(mahoutDataModelMappingDAO.getMinPreference(tenantId, cutoffDate, actionTypeId));
+        preferences = loaded;
+    }
+
+    private Preferences readActions(Date cutoffDate, int numActions) {
+        PreferenceCollector collector = new PreferenceCollector(Math.max(numActions, 16));
+        mahoutDataModelMappingDAO.getPreferences(tenantId, cutoffDate, actionTypeId, collector);
+
+        int numUsers = collector.numUsers;
+        int numPrefs = collector.numPrefs;
+
+        // item IDs, sorted and without duplicates
+        long[] itemIDs = Arrays.copyOf(collector.prefItemIDs, numPrefs);
+        Arrays.sort(itemIDs);
+        int numItems = 0;
+        for (int i = 0; i < numPrefs; i++)
+            if (numItems == 0 || itemIDs[numItems - 1] != itemIDs[i]) itemIDs[numItems++] = itemIDs[i];
+        itemIDs = Arrays.copyOf(itemIDs, numItems);
+
+        int[] userStart = Arrays.copyOf(collector.userStart, numUsers + 1);
+        userStart[numUsers] = numPrefs;
+
+        int[] prefItems = new int[numPrefs];
+        int[] itemStart = new int[numItems + 1];
+        for (int i = 0; i < numPrefs; i++) {
+            prefItems[i] = Arrays.binarySearch(itemIDs, collector.prefItemIDs[i]);
+            itemStart[prefItems[i] + 1]++;
+        }
+        for (int i = 0; i < numItems; i++)
+            itemStart[i + 1] += itemStart[i];
+
+        // users are visited in order, so the users of every item are ordered by user ID
+        int[] itemPrefs = new int[numPrefs];
+        int[] itemUsers = new int[numPrefs];
+        int[] next = Arrays.copyOf(itemStart, numItems);
+        for (int user = 0; user < numUsers; user++) {
+            for (int pref = userStart[user]; pref < userStart[user + 1]; pref++) {
+                int position = next[prefItems[pref]]++;
+                itemPrefs[position] = pref;
+                itemUsers[position] = user;
+            }
+        }
+
+        return new Preferences(LongBuffer.wrap(Arrays.copyOf(collector.userIDs, numUsers)), IntBuffer.wrap(userStart),
+                IntBuffer.wrap(prefItems),
+                hasRatingValues ? FloatBuffer.wrap(Arrays.copyOf(collector.prefValues, numPrefs)) : null,
+                LongBuffer.wrap(Arrays.copyOf(collector.prefTimes, numPrefs)), LongBuffer.wrap(itemIDs),
+                IntBuffer.wrap(itemStart), IntBuffer.wrap(itemPrefs), IntBuffer.wrap(itemUsers));
+    }
+
+    private Preferences readSnapshot(File snapshot, long maxActionId, int numActions) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+        int numUsers, numItems, numPrefs;
+
+        try {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION || in.readInt() != tenantId ||
+                    in.readInt() != actionTypeId || in.readBoolean() != hasRatingValues ||
+                    in.readLong() != maxActionId || in.readInt() != numActions)
+                return null;
+
+            numUsers = in.readInt();
+            numItems = in.readInt();
+            numPrefs = in.readInt();
+        } finally {
+            in.close();
+        }
+
+        RandomAccessFile file = new RandomAccessFile(snapshot, "r");
+
+        try {
+            SnapshotReader reader = new SnapshotReader(file.getChannel());
+
+            // the mapped buffers stay valid after the file is closed
+            return new Preferences(reader.longs(numUsers), reader.ints(numUsers + 1), reader.ints(numPrefs),
+                    hasRatingValues ? reader.floats(numPrefs) : null, reader.longs(numPrefs), reader.longs(numItems),
+                    reader.ints(numItems + 1), reader.ints(numPrefs), reader.ints(numPrefs));
+        } finally {
+            file.close();
+        }
+    }
+
+    private void writeSnapshot(File snapshot, Preferences preferences, long maxActionId, int numActions)
+            throws IOException {
+        // a single section must not be larger than a mapped buffer
+        if (8L * preferences.prefTimes.capacity() > Integer.MAX_VALUE) {
+            logger.warn("not writing snapshot " + snapshot + ", too many preferences");
+            return;
+        }
+
+        File temp = new File(snapshot.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+        try {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(tenantId);
+            out.writeInt(actionTypeId);
+            out.writeBoolean(hasRatingValues);
+            out.writeLong(maxActionId);
+            out.writeInt(numActions);
+            out.writeInt(preferences.userIDs.capacity());
+            out.writeInt(preferences.itemIDs.capacity());
+            out.writeInt(preferences.prefItems.capacity());
+
+            write(out, preferences.userIDs);
+            write(out, preferences.userStart);
+            write(out, preferences.prefItems);
+            if (hasRatingValues) write(out, preferences.prefValues);
+            write(out, preferences.prefTimes);
+            write(out, preferences.itemIDs);
+            write(out, preferences.itemStart);
+            write(out, preferences.itemPrefs);
+            write(out, preferences.itemUsers);
+        } finally {
+            out.close();
+        }
+
+        // replace the old snapshot only after the new one is complete
+        if (!temp.renameTo(snapshot) && !(snapshot.delete() && temp.renameTo(snapshot))) {
+            temp.delete();
+            logger.warn("could not replace snapshot " + snapshot);
+        }
+    }
+
+    private static void write(DataOutputStream out, LongBuffer buffer) throws IOException {
+        for (int i = 0; i < buffer.capacity(); i++)
+            out.writeLong(buffer.get(i));
+    }
+
+    private static void write(DataOutputStream out, IntBuffer buffer) throws IOException {
+        for (int i = 0; i < buffer.capacity(); i++)
+            out.writeInt(buffer.get(i));
+    }
+
+    private static void write(DataOutputStream out, FloatBuffer buffer) throws IOException {
+        for (int i = 0; i < buffer.capacity(); i++)
+            out.writeFloat(buffer.get(i));
+    }
+
+    /**
+     * @return the index of <code>id</code> in the sorted <code>ids</code> or -1 if it is not contained.
+     */
+    private static int indexOf(LongBuffer ids, long id) {
+        int low = 0;
+        int high = ids.capacity() - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = ids.get(middle);
+
+            if (value < id) low = middle + 1;
+            else if (value > id) high = middle - 1;
+            else return middle;
+        }
+
+        return -1;
+    }
+
+    private static int indexOf(IntBuffer values, int from, int to, int value) {
+        int low = from;
+        int high = to - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int current = values.get(middle);
+
+            if (current < value) low = middle + 1;
+            else if (current > value) high = middle - 1;
+            else return middle;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the position of the preference of the user for the item or -1 if there is none.
+     */
+    private int preferenceOf(Preferences preferences, long userID, long itemID) {
+        int user = indexOf(preferences.userIDs, userID);
+        int item = indexOf(preferences.itemIDs, itemID);
+        if (user < 0 || item < 0) return -1;
+
+        return indexOf(preferences.prefItems, preferences.userStart.get(user), preferences.userStart.get(user + 1),
+                item);
+    }
+
+    private static long[] toArray(LongBuffer buffer) {
+        long[] result = new long[buffer.capacity()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+    public LongPrimitiveIterator getUserIDs() throws TasteException {
+        return new LongPrimitiveArrayIterator(toArray(preferences.userIDs));
+    }
+
+    public PreferenceArray getPreferencesFromUser(long userID) throws TasteException {
+        Preferences preferences = this.preferences;
+        int user = indexOf(preferences.userIDs, userID);
+        if (user < 0) throw new NoSuchUserException(userID);
+
+        int from = preferences.userStart.get(user);
+        int to = preferences.userStart.get(user + 1);
+        PreferenceArray result = new GenericUserPreferenceArray(to - from);
+
+        for (int pref = from; pref < to; pref++) {
+            result.setUserID(pref - from, userID);
+            result.setItemID(pref - from, preferences.itemIDs.get(preferences.prefItems.get(pref)));
+            result.setValue(pref - from, preferences.valueOf(pref));
+        }
+
+        return result;
+    }
+
+    public FastIDSet getItemIDsFromUser(long userID) throws TasteException {
+        Preferences preferences = this.preferences;
+        int user = indexOf(preferences.userIDs, userID);
+        if (user < 0) throw new NoSuchUserException(userID);
+
+        int from = preferences.userStart.get(user);
+        int to = preferences.userStart.get(user + 1);
+        FastIDSet result = new FastIDSet(to - from);
+
+        for (int pref = from; pref < to; pref++)
+            result.add(preferences.itemIDs.get(preferences.prefItems.get(pref)));
+
+        return result;
+    }
+
+    public LongPrimitiveIterator getItemIDs() throws TasteException {
+        return new LongPrimitiveArrayIterator(toArray(preferences.itemIDs));
+    }
+
+    public PreferenceArray getPreferencesForItem(long itemID) throws TasteException {
+        Preferences preferences = this.preferences;
+        int item = indexOf(preferences.itemIDs, itemID);
+        if (item < 0) throw new NoSuchItemException(itemID);
+
+        int from = preferences.itemStart.get(item);
+        int to = preferences.itemStart.get(item + 1);
+        PreferenceArray result = new GenericItemPreferenceArray(to - from);
+
+        for (int position = from; position < to; position++) {
+            result.setItemID(position - from, itemID);
+            result.setUserID(position - from, preferences.userIDs.get(preferences.itemUsers.get(position)));
+            result.setValue(position - from, preferences.valueOf(preferences.itemPrefs.get(position)));
+        }
+
+        return result;
+    }
+
+    public Float getPreferenceValue(long userID, long itemID) throws TasteException {
+        Preferences preferences = this.preferences;
+        int pref = preferenceOf(preferences, userID, itemID);
+
+        //as mahout/taste doesn't catch the NoSuchUserException, we don't throw it to save time
+        return pref < 0 ? null : preferences.valueOf(pref);
+    }
+
+    public Long getPreferenceTime(long userID, long itemID) throws TasteException {
+        Preferences preferences = this.preferences;
+        int pref = preferenceOf(preferences, userID, itemID);
+
+        return pref < 0 ? null : preferences.prefTimes.get(pref);
+    }
+
+    public int getNumItems() throws TasteException {
+        return preferences.itemIDs.capacity();
+    }
+
+    public int getNumUsers() throws TasteException {
+        return preferences.userIDs.capacity();
+    }
+
+    public int getNumUsersWithPreferenceFor(long itemID) throws TasteException {
+        Preferences preferences = this.preferences;
+        int item = indexOf(preferences.itemIDs, itemID);
+
+        return item < 0 ? 0 : preferences.itemStart.get(item + 1) - preferences.itemStart.get(item);
+    }
+
+    public int getNumUsersWithPreferenceFor(long itemID1, long itemID2) throws TasteException {
+        Preferences preferences = this.preferences;
+        int item1 = indexOf(preferences.itemIDs, itemID1);
+        int item2 = indexOf(preferences.itemIDs, itemID2);
+        if (item1 < 0 || item2 < 0) return 0;
+
+        // both user lists are ordered by user ID
+        int position1 = preferences.itemStart.get(item1);
+        int to1 = preferences.itemStart.get(item1 + 1);
+        int position2 = preferences.itemStart.get(item2);
+        int to2 = preferences.itemStart.get(item2 + 1);
+        int count = 0;
+
+        while (position1 < to1 && position2 < to2) {
+            int user1 = preferences.itemUsers.get(position1);
+            int user2 = preferences.itemUsers.get(position2);
+
+            if (user1 < user2) position1++;
+            else if (user1 > user2) position2++;
+            else {
+                count++;
+                position1++;
+                position2++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * <b> Not supported, the model is read only. </b>
+     */
+    public void setPreference(long userID, long itemID, float value) throws TasteException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * <b> Not supported, the model is read only. </b>
+     */
+    public void removePreference(long userID, long itemID) throws TasteException {
+        throw new UnsupportedOperationException();
+    }
+
+    public boolean hasPreferenceValues() {
+        return hasRatingValues;
+    }
+
+    /**
+     * The arrays of one load, either wrapped arrays or mapped sections of a snapshot file.
+     */
+    private static class Preferences {
+        private final LongBuffer userIDs;
+        private final IntBuffer userStart;
+        private final IntBuffer prefItems;
+        private final FloatBuffer prefValues;
+        private final LongBuffer prefTimes;
+        private final LongBuffer itemIDs;
+        private final IntBuffer itemStart;
+        private final IntBuffer itemPrefs;
+        private final IntBuffer itemUsers;
+
+        private Preferences(LongBuffer userIDs, IntBuffer userStart, IntBuffer prefItems, FloatBuffer prefValues,
+                            LongBuffer prefTimes, LongBuffer itemIDs, IntBuffer itemStart, IntBuffer itemPrefs,
+                            IntBuffer itemUsers) {
+            this.userIDs = userIDs;
+            this.userStart = userStart;
+            this.prefItems = prefItems;
+            this.prefValues = prefValues;
+            this.prefTimes = prefTimes;
+            this.itemIDs = itemIDs;
+            this.itemStart = itemStart;
+            this.itemPrefs = itemPrefs;
+            this.itemUsers = itemUsers;
+        }
+
+        private float valueOf(int pref) {
+            return prefValues == null ? 1f : prefValues.get(pref);
+        }
+    }
+
+    /**
+     * Collects the streamed actions, which are ordered by user, item and time.
+     */
+    private static class PreferenceCollector implements MahoutDataModelMappingDAO.PreferenceHandler {
+        private long[] userIDs = new long[16];
+        private int[] userStart = new int[17];
+        private long[] prefItemIDs;
+        private float[] prefValues;
+        private long[] prefTimes;
+        private int numUsers = 0;
+        private int numPrefs = 0;
+
+        private PreferenceCollector(int capacity) {
+            prefItemIDs = new long[capacity];
+            prefValues = new float[capacity];
+            prefTimes = new long[capacity];
+        }
+
+        public void handlePreference(long userID, long itemID, float value, long time) {
+            if (numUsers == 0 || userIDs[numUsers - 1] != userID) {
+                if (numUsers == userIDs.length) {
+                    userIDs = Arrays.copyOf(userIDs, numUsers * 2);
+                    userStart = Arrays.copyOf(userStart, numUsers * 2 + 1);
+                }
+
+                userIDs[numUsers] = userID;
+                userStart[numUsers++] = numPrefs;
+            } else if (prefItemIDs[numPrefs - 1] == itemID) {
+                // a later action of the user on the same item
+                prefValues[numPrefs - 1] = value;
+                prefTimes[numPrefs - 1] = time;
+                return;
+            }
+
+            if (numPrefs == prefItemIDs.length) {
+                prefItemIDs = Arrays.copyOf(prefItemIDs, numPrefs * 2);
+                prefValues = Arrays.copyOf(prefValues, numPrefs * 2);
+                prefTimes = Arrays.copyOf(prefTimes, numPrefs * 2);
+            }
+
+            prefItemIDs[numPrefs] = itemID;
+            prefValues[numPrefs] = value;
+            prefTimes[numPrefs++] = time;
+        }
+    }
+
+    /**
+     * Maps the consecutive sections of a snapshot file.
+     */
+    private static class SnapshotReader {
+        // magic, version, tenant, action type, rating values, max action id, actions, users, items, preferences
+        private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 1 + 8 + 4 + 4 + 4 + 4;
+
+        private final FileChannel channel;
+        private long position = HEADER_SIZE;
+
+        private SnapshotReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private LongBuffer longs(int count) throws IOException {
+            return map(8L * count).asLongBuffer();
+        }
+
+        private IntBuffer ints(int count) throws IOException {
+            return map(4L * count).asIntBuffer();
+        }
+
+        private FloatBuffer floats(int count) throws IOException {
+            return map(4L * count).asFloatBuffer();
+        }
+
+        private MappedByteBuffer map(long size) throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            position += size;
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2011 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.mahout.recommender;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.easyrec.model.core.ItemAssocVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.service.core.ItemAssocService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the recommendations of a Mahout {@link Recommender} for all users as item associations from the users to the
+ * recommended items.
+ * <p/>
+ * The users are recommended for on a pool of threads, Mahout recommenders only read the data model. The calling
+ * thread collects the item associations of the users and writes them in batches of {@link #BATCH_SIZE}. The item
+ * types of the recommended items are looked up in a map loaded before, so no query is needed per rule.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class RecommendationWriter {
+    public static final int BATCH_SIZE = 10000;
+
+    /**
+     * Connects the writer to the execution control of a generator.
+     */
+    public interface Progress {
+        boolean isAbortRequested();
+
+        void updateProgress(int currentStep, int totalSteps);
+    }
+
+    private static final Log logger = LogFactory.getLog(RecommendationWriter.class);
+
+    private final Recommender recommender;
+    private final ItemAssocService itemAssocService;
+    private final TIntIntHashMap itemTypeIds;
+    private final int tenantId;
+    private final int userTypeId;
+    private final int assocTypeId;
+    private final int sourceTypeId;
+    private final String sourceInfo;
+    private final int viewTypeId;
+    private final Date execution;
+
+    private final AtomicLong recommendDuration = new AtomicLong(0);
+    private long writeDuration = 0;
+    private int users = 0;
+    private int rules = 0;
+
+    /**
+     * @param itemTypeIds the item type ids of the items, see
+     *                    {@link org.easyrec.store.dao.core.ItemDAO#getItemTypeIdsOfItems(Integer)}
+     * @param sourceInfo  the source info of the written item associations
+     * @param execution   the change date of the written item associations
+     */
+    public RecommendationWriter(Recommender recommender, ItemAssocService itemAssocService,
+                                TIntIntHashMap itemTypeIds, int tenantId, int userTypeId, int assocTypeId,
+                                int sourceTypeId, String sourceInfo, int viewTypeId, Date execution) {
+        if (recommender == null) throw new IllegalArgumentException("Missing 'recommender'");
+        if (itemAssocService == null) throw new IllegalArgumentException("Missing 'itemAssocService'");
+        if (itemTypeIds == null) throw new IllegalArgumentException("Missing 'itemTypeIds'");
+
+        this.recommender = recommender;
+        this.itemAssocService = itemAssocService;
+        this.itemTypeIds = itemTypeIds;
+        this.tenantId = tenantId;
+        this.userTypeId = userTypeId;
+        this.assocTypeId = assocTypeId;
+        this.sourceTypeId = sourceTypeId;
+        this.sourceInfo = sourceInfo;
+        this.viewTypeId = viewTypeId;
+        this.execution = execution;
+    }
+
+    /**
+     * Recommends <code>howMany</code> items to every user and writes the recommendations. Stops early if an abort is
+     * requested, the recommendations of the users done so far are written anyway. The user ids are closed afterwards
+     * if they are {@link Closeable}.
+     *
+     * @param userIDs  the users to recommend for
+     * @param numUsers the number of users, for the progress
+     * @param threads  the number of threads recommending
+     * @return the number of written item associations
+     */
+    public int write(LongPrimitiveIterator userIDs, int numUsers, int howMany, int threads, Progress progress) {
+        if (threads <= 0) throw new IllegalArgumentException("'threads' must be greater than 0");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<List<ItemAssocVO<Integer, Integer>>> completionService =
+                new ExecutorCompletionService<List<ItemAssocVO<Integer, Integer>>>(executor);
+        List<ItemAssocVO<Integer, Integer>> batch = new ArrayList<ItemAssocVO<Integer, Integer>>();
+        int submitted = 0;
+
+        try {
+            // a few users per thread are in flight, the calling thread writes while the others recommend
+            while (submitted < threads * 2 && userIDs.hasNext()) {
+                completionService.submit(new UserRecommendations(userIDs.nextLong(), howMany));
+                submitted++;
+            }
+
+            while (users < submitted) {
+                List<ItemAssocVO<Integer, Integer>> itemAssocs = completionService.take().get();
+                users++;
+
+                if (progress.isAbortRequested()) break;
+
+                if (userIDs.hasNext()) {
+                    completionService.submit(new UserRecommendations(userIDs.nextLong(), howMany));
+                    submitted++;
+                }
+
+                batch.addAll(itemAssocs);
+
+                if (batch.size() >= BATCH_SIZE) {
+                    insert(batch);
+                    batch = new ArrayList<ItemAssocVO<Integer, Integer>>();
+                }
+
+                progress.updateProgress(users, numUsers);
+            }
+
+            insert(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Recommending for the users was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Recommending for the users failed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            close(userIDs);
+        }
+
+        if (logger.isInfoEnabled())
+            logger.info(String.format(
+                    "Writing %d recommendations for %d users with %d threads took %.2f seconds recommending " +
+                            "(summed over the threads) and %.2f seconds writing", rules, users, threads,
+                    recommendDuration.get() / 1000.0, writeDuration / 1000.0));
+
+        return rules;
+    }
+
+    /**
+     * Releases the user ids in case they are streamed from the database and weren't read to the end.
+     */
+    private void close(LongPrimitiveIterator userIDs) {
+        if (!(userIDs instanceof Closeable)) return;
+
+        try {
+            ((Closeable) userIDs).close();
+        } catch (IOException e) {
+            logger.warn("failed to close the user ids", e);
+        }
+    }
+
+    private void insert(List<ItemAssocVO<Integer, Integer>> itemAssocs) {
+        if (itemAssocs.isEmpty()) return;
+
+        long start = System.currentTimeMillis();
+
+        itemAssocService.insertOrUpdateItemAssocs(itemAssocs);
+
+        writeDuration += System.currentTimeMillis() - start;
+        rules += itemAssocs.size();
+    }
+
+    /**
+     * @return Time the threads spent recommending, summed over all threads, in milliseconds.
+     */
+    public long getRecommendDuration() {
+        return recommendDuration.get();
+    }
+
+    /**
+     * @return Time spent writing the item associations, in milliseconds.
+     */
+    public long getWriteDuration() {
+        return writeDuration;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getRules() {
+        return rules;
+    }
+
+    /**
+     * Turns the recommendations of a user into item associations from the user to the recommended items.
+     */
+    private class UserRecommendations implements Callable<List<ItemAssocVO<Integer, Integer>>> {
+        private final long userId;
+        private final int howMany;
+
+        private UserRecommendations(long userId, int howMany) {
+            this.userId = userId;
+            this.howMany = howMany;
+        }
+
+        public List<ItemAssocVO<Integer, Integer>> call() throws Exception {
+            long start = System.currentTimeMillis();
+
+            List<RecommendedItem> recommendations = recommender.recommend(userId, howMany);
+            List<ItemAssocVO<Integer, Integer>> itemAssocs =
+                    new ArrayList<ItemAssocVO<Integer, Integer>>(recommendations.size());
+
+            if (recommendations.isEmpty()) {
+                logger.debug("User " + userId + " : no recommendations");
+            }
+
+            ItemVO<Integer, Integer> fromItem = new ItemVO<Integer, Integer>(tenantId, (int) userId, userTypeId);
+
+            for (RecommendedItem recommendedItem : recommendations) {
+                int itemToId = (int) recommendedItem.getItemID();
+
+                if (!itemTypeIds.containsKey(itemToId)) {
+                    logger.debug("User " + userId + " : unknown item " + itemToId);
+                    continue;
+                }
+
+                ItemVO<Integer, Integer> toItem =
+                        new ItemVO<Integer, Integer>(tenantId, itemToId, itemTypeIds.get(itemToId));
+
+                itemAssocs.add(new ItemAssocVO<Integer, Integer>(tenantId, fromItem, assocTypeId,
+                        (double) recommendedItem.getValue(), toItem, sourceTypeId, sourceInfo, viewTypeId, null,
+                        execution));
+            }
+
+            recommendDuration.addAndGet(System.currentTimeMillis() - start);
+
+            return itemAssocs;
+        }
+    }
+}
@@ -224,4 +224,37 @@ public interface MahoutDataModelMappingDAO {
      */
     float getMinPreference(int tenantId, Date cutoffDate, int actionTypeId);
 
+    /**
+     * Receives the preferences read by {@link MahoutDataModelMappingDAO#getPreferences(int, java.util.Date, int,
+     * PreferenceHandler)}.
+     */
+    interface PreferenceHandler {
+        void handlePreference(long userID, long itemID, float value, long time);
+    }
+
+    /**
+     * Reads all actions of a tenant and action type with a single streaming query, ordered by user ID, item ID and
+     * action time. A user and item may therefore be passed to the handler several times, the last time with the
+     * latest value.
+     *
+     * @param tenantId   internal tenant id
+     * @param cutoffDate the maximal age of the data you plan to use. Use new Date() for the complete data.
+     * @param handler    receives the preferences
+     */
+    void getPreferences(int tenantId, Date cutoffDate, int actionTypeId, PreferenceHandler handler);
+
+    /**
+     * @param tenantId   internal tenant id
+     * @param cutoffDate the maximal age of the data you plan to use. Use new Date() for the complete data.
+     * @return the highest action id of the tenant and action type or 0 if there are no actions.
+     */
+    long getMaxActionId(int tenantId, Date cutoffDate, int actionTypeId);
+
+    /**
+     * @param tenantId   internal tenant id
+     * @param cutoffDate the maximal age of the data you plan to use. Use new Date() for the complete data.
+     * @return the number of actions of the tenant and action type.
+     */
+    int getNumActions(int tenantId, Date cutoffDate, int actionTypeId);
+
 }
@@ -33,9 +33,11 @@ import org.easyrec.mahout.store.MahoutDataModelMappingDAO;
 import org.easyrec.mahout.store.iterator.LongResultSetIteratorMysql;
 import org.easyrec.store.dao.BaseActionDAO;
 import org.easyrec.utils.spring.cache.annotation.ShortCacheable;
+import org.easyrec.utils.spring.store.StreamingPreparedStatementCreator;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.support.JdbcDaoSupport;
 
@@ -210,11 +212,38 @@ public class MahoutDataModelMappingDAOMysqlImpl extends JdbcDaoSupport implement
             BaseActionDAO.DEFAULT_ACTION_TYPE_COLUMN_NAME
     );
 
+    private final String getPreferencesQuery = MessageFormat.format(
+            "SELECT {0}, {1}, {2}, {3} FROM {4} WHERE {5} = ? AND {3} <= ? AND {6} = ? ORDER BY {0}, {1}, {3}",
+            BaseActionDAO.DEFAULT_USER_COLUMN_NAME,
+            BaseActionDAO.DEFAULT_ITEM_COLUMN_NAME,
+            BaseActionDAO.DEFAULT_RATING_VALUE_COLUMN_NAME,
+            BaseActionDAO.DEFAULT_ACTION_TIME_COLUMN_NAME,
+            BaseActionDAO.DEFAULT_TABLE_NAME,
+            BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME,
+            BaseActionDAO.DEFAULT_ACTION_TYPE_COLUMN_NAME
+    );
+
+    private final String getMaxActionIdQuery = MessageFormat.format(
+            "SELECT COALESCE(MAX({0}), 0) FROM {1} WHERE {2} = ? AND {3} <= ? AND {4} = ?",
+            BaseActionDAO.DEFAULT_ID_COLUMN_NAME,
+            BaseActionDAO.DEFAULT_TABLE_NAME,
+            BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME,
+            BaseActionDAO.DEFAULT_ACTION_TIME_COLUMN_NAME,
+            BaseActionDAO.DEFAULT_ACTION_TYPE_COLUMN_NAME
+    );
+
+    private final String getNumActionsQuery = MessageFormat.format(
+            "SELECT COUNT(1) FROM {0} WHERE {1} = ? AND {2} <= ? AND {3} = ?",
+            BaseActionDAO.DEFAULT_TABLE_NAME,
+            BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME,
+            BaseActionDAO.DEFAULT_ACTION_TIME_COLUMN_NAME,
+            BaseActionDAO.DEFAULT_ACTION_TYPE_COLUMN_NAME
+    );
+
     public MahoutDataModelMappingDAOMysqlImpl(DataSource dataSource) {
         setDataSource(dataSource);
     }
 
-    @ShortCacheable
     @Override
     public LongPrimitiveIterator getUserIDs(int tenantId, Date cutoffDate, int actionTypeId) {
         Object[] args = new Object[]{tenantId, cutoffDate, actionTypeId};
@@ -257,7 +286,6 @@ public class MahoutDataModelMappingDAOMysqlImpl extends JdbcDaoSupport implement
         }
     }
 
-    @ShortCacheable
     @Override
     public LongPrimitiveIterator getItemIDs(int tenantId, Date cutoffDate, int actionTypeId) {
         Object[] args = new Object[]{tenantId, cutoffDate, actionTypeId};
@@ -384,6 +412,36 @@ public class MahoutDataModelMappingDAOMysqlImpl extends JdbcDaoSupport implement
         return 0f;
     }
 
+    @Override
+    public void getPreferences(int tenantId, Date cutoffDate, int actionTypeId, final PreferenceHandler handler) {
+        Object[] args = new Object[]{tenantId, cutoffDate, actionTypeId};
+        int[] argTypes = new int[]{Types.INTEGER, Types.TIMESTAMP, Types.INTEGER};
+
+        getJdbcTemplate().query(new StreamingPreparedStatementCreator(getPreferencesQuery, args, argTypes),
+                new RowCallbackHandler() {
+                    public void processRow(ResultSet rs) throws SQLException {
+                        handler.handlePreference(rs.getLong(1), rs.getLong(2), rs.getFloat(3),
+                                rs.getTimestamp(4).getTime());
+                    }
+                });
+    }
+
+    @Override
+    public long getMaxActionId(int tenantId, Date cutoffDate, int actionTypeId) {
+        Object[] args = new Object[]{tenantId, cutoffDate, actionTypeId};
+        int[] argTypes = new int[]{Types.INTEGER, Types.TIMESTAMP, Types.INTEGER};
+
+        return getJdbcTemplate().queryForLong(getMaxActionIdQuery, args, argTypes);
+    }
+
+    @Override
+    public int getNumActions(int tenantId, Date cutoffDate, int actionTypeId) {
+        Object[] args = new Object[]{tenantId, cutoffDate, actionTypeId};
+        int[] argTypes = new int[]{Types.INTEGER, Types.TIMESTAMP, Types.INTEGER};
+
+        return getJdbcTemplate().queryForInt(getNumActionsQuery, args, argTypes);
+    }
+
     private boolean userExists(int tenantId, Date cutoffDate, long userID, int itemTypeId) {
         Object[] args = new Object[]{userID, tenantId, cutoffDate, itemTypeId};
         int[] argTypes = new int[]{Types.INTEGER, Types.INTEGER, Types.TIMESTAMP, Types.INTEGER};
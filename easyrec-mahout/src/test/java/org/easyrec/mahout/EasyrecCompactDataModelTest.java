@@ -0,0 +1,133 @@
+/*
+ * Copyright 2011 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.mahout;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.easyrec.mahout.model.EasyrecCompactDataModel;
+import org.easyrec.mahout.store.MahoutDataModelMappingDAO;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.unitils.UnitilsJUnit4TestClassRunner;
+import org.unitils.dbunit.annotation.DataSet;
+import org.unitils.spring.annotation.SpringApplicationContext;
+import org.unitils.spring.annotation.SpringBeanByName;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(UnitilsJUnit4TestClassRunner.class)
+@SpringApplicationContext({
+        "spring/easyrecDataSource.xml",
+        "spring/easyrec-easyrecDataModel-test.xml"})
+@DataSet("/dbunit/easyrecDataModelTest.xml")
+public class EasyrecCompactDataModelTest {
+    @SpringBeanByName
+    protected MahoutDataModelMappingDAO mahoutDataModelMappingDAO;
+
+    private static int TENANT_ID = 1;
+    private static int RATE_ACTION_TYPE_ID = 2;
+    private static int BUY_ACTION_TYPE_ID = 3;
+    private static boolean HAS_RATING_VALUES = true;
+    private static boolean HAS_NO_RATING_VALUES = false;
+
+    @Test
+    public void testEasyrecCompactDataModel_getIDs() throws TasteException {
+        DataModel easyrecDataModel = new EasyrecCompactDataModel(TENANT_ID, RATE_ACTION_TYPE_ID, HAS_RATING_VALUES, mahoutDataModelMappingDAO, null);
+
+        assertEquals("123", toString(easyrecDataModel.getItemIDs()));
+        assertEquals("12", toString(easyrecDataModel.getUserIDs()));
+        assertEquals(3, easyrecDataModel.getNumItems());
+        assertEquals(2, easyrecDataModel.getNumUsers());
+    }
+
+    @Test
+    public void testEasyrecCompactDataModel_getPreferences() throws TasteException {
+        DataModel easyrecDataModel = new EasyrecCompactDataModel(TENANT_ID, RATE_ACTION_TYPE_ID, HAS_RATING_VALUES, mahoutDataModelMappingDAO, null);
+
+        assertEquals("123", toString(easyrecDataModel.getPreferencesFromUser(1)));
+        assertEquals("12", toString(easyrecDataModel.getPreferencesForItem(1)));
+        assertEquals(new Float(5), easyrecDataModel.getPreferenceValue(1, 2));
+        assertEquals(new Long(1176631920000L), easyrecDataModel.getPreferenceTime(1, 2));
+        assertNull(easyrecDataModel.getPreferenceValue(1, 4));
+        assertEquals(2, easyrecDataModel.getNumUsersWithPreferenceFor(1));
+        assertEquals(2, easyrecDataModel.getNumUsersWithPreferenceFor(1, 2));
+        assertEquals(new Float(0), new Float(easyrecDataModel.getMinPreference()));
+        assertEquals(new Float(10), new Float(easyrecDataModel.getMaxPreference()));
+    }
+
+    @Test
+    public void testEasyrecCompactDataModel_getBooleanPreferences() throws TasteException {
+        DataModel easyrecDataModel = new EasyrecCompactDataModel(TENANT_ID, BUY_ACTION_TYPE_ID, HAS_NO_RATING_VALUES, mahoutDataModelMappingDAO, null);
+
+        assertEquals(false, easyrecDataModel.hasPreferenceValues());
+        assertEquals("102030", toString(easyrecDataModel.getPreferencesFromUser(1)));
+        assertEquals("12", toString(easyrecDataModel.getPreferencesForItem(10)));
+        assertEquals(new Float(1), easyrecDataModel.getPreferenceValue(1, 20));
+    }
+
+    @Test
+    public void testEasyrecCompactDataModel_snapshot() throws TasteException, IOException {
+        File snapshotDirectory = File.createTempFile("snapshot", "");
+        assertTrue(snapshotDirectory.delete() && snapshotDirectory.mkdir());
+
+        try {
+            new EasyrecCompactDataModel(TENANT_ID, RATE_ACTION_TYPE_ID, HAS_RATING_VALUES, mahoutDataModelMappingDAO, snapshotDirectory);
+            File snapshot = new File(snapshotDirectory, "mahout-" + TENANT_ID + "-" + RATE_ACTION_TYPE_ID + "-r.snapshot");
+            assertTrue(snapshot.isFile());
+
+            // the second model is read from the snapshot
+            DataModel easyrecDataModel = new EasyrecCompactDataModel(TENANT_ID, RATE_ACTION_TYPE_ID, HAS_RATING_VALUES, mahoutDataModelMappingDAO, snapshotDirectory);
+
+            assertEquals("12", toString(easyrecDataModel.getUserIDs()));
+            assertEquals("123", toString(easyrecDataModel.getPreferencesFromUser(1)));
+            assertEquals(new Float(5), easyrecDataModel.getPreferenceValue(1, 2));
+            assertEquals(new Long(1176631920000L), easyrecDataModel.getPreferenceTime(1, 2));
+        } finally {
+            File[] files = snapshotDirectory.listFiles();
+            if (files != null)
+                for (File file : files)
+                    file.delete();
+            snapshotDirectory.delete();
+        }
+    }
+
+    private static String toString(LongPrimitiveIterator it) {
+        String ids = "";
+        while (it.hasNext()) {
+            ids += it.next();
+        }
+        return ids;
+    }
+
+    private static String toString(PreferenceArray preferences) {
+        String ids = "";
+        for (long id : preferences.getIDs()) {
+            ids += id;
+        }
+        return ids;
+    }
+}
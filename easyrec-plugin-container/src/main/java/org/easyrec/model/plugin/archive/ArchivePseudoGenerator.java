@@ -22,6 +22,7 @@ package org.easyrec.model.plugin.archive;
 import org.easyrec.plugin.model.PluginId;
 import org.easyrec.plugin.support.GeneratorPluginSupport;
 import org.easyrec.store.dao.core.ArchiveDAO;
+import org.easyrec.store.dao.core.impl.ActionRankingIndex;
 
 import java.util.Date;
 
@@ -35,11 +36,19 @@ public class ArchivePseudoGenerator
     public static final PluginId ID = new PluginId("http://www.easyrec.org/internal/Archive", "0.96");
 
     private ArchiveDAO archiveDAO;
+    private ActionRankingIndex actionRankingIndex;
 
     public void setArchiveDAO(ArchiveDAO archiveDAO) {
         this.archiveDAO = archiveDAO;
     }
 
+    /**
+     * Sets an optional ranking index which is rebuilt for the tenant after its actions were archived.
+     */
+    public void setActionRankingIndex(ActionRankingIndex actionRankingIndex) {
+        this.actionRankingIndex = actionRankingIndex;
+    }
+
     public ArchivePseudoGenerator() {
         super(DISPLAY_NAME, ID.getUri(), ID.getVersion(), ArchivePseudoConfiguration.class,
                 ArchivePseudoStatistics.class);
@@ -71,6 +80,11 @@ public class ArchivePseudoGenerator
             }
             // move actions to archive
             archiveDAO.moveActions(actualArchiveTableName, getConfiguration().getTenantId(), refDate);
+
+            // archived actions must no longer be counted
+            if (actionRankingIndex != null && actionRankingIndex.isRunning()) {
+                actionRankingIndex.rebuild(getConfiguration().getTenantId());
+            }
         }
 
         stats.setReferenceDate(refDate);
@@ -11,8 +11,10 @@ import org.easyrec.model.plugin.NamedConfiguration;
 import org.easyrec.plugin.container.PluginRegistry;
 import org.easyrec.plugin.generator.Generator;
 import org.easyrec.plugin.generator.GeneratorConfiguration;
+import org.easyrec.plugin.model.PluginId;
 import org.easyrec.plugin.stats.GeneratorStatistics;
 import org.easyrec.plugin.stats.StatisticsConstants;
+import org.easyrec.store.dao.core.impl.ItemAssocSnapshotStore;
 import org.easyrec.store.dao.core.types.AssocTypeDAO;
 import org.easyrec.store.dao.plugin.LogEntryDAO;
 import org.easyrec.store.dao.plugin.NamedConfigurationDAO;
@@ -20,6 +22,8 @@ import org.easyrec.store.dao.plugin.NamedConfigurationDAO;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class GeneratorContainer {
 
@@ -37,6 +41,10 @@ public class GeneratorContainer {
     private NamedConfigurationDAO namedConfigurationDAO;
     private LogEntryDAO logEntryDAO;
     private PluginRegistry registry;
+    private ItemAssocSnapshotStore itemAssocSnapshotStore;
+    // generators are shared instances holding the configuration and state of the current run, so runs of the same
+    // plugin are serialized while runs of different plugins may execute concurrently
+    private final ConcurrentMap<PluginId, Object> pluginLocks = new ConcurrentHashMap<PluginId, Object>();
 
     public LogEntry runGenerator(NamedConfiguration namedConfiguration) {
         return runGenerator(namedConfiguration, Predicates.<GeneratorStatistics>alwaysTrue());
@@ -61,12 +69,36 @@ public class GeneratorContainer {
      */
     public LogEntry runGenerator(NamedConfiguration namedConfiguration,
                                  Predicate<GeneratorStatistics> writeLog, boolean writeLogLast) {
+        LogEntry logEntry = runGeneratorWithoutPublishing(namedConfiguration, writeLog, writeLogLast);
+
+        if (!isFailed(logEntry)) publishSnapshot(namedConfiguration.getTenantId());
+
+        return logEntry;
+    }
+
+    /**
+     * Runs a generator like {@link #runGenerator(NamedConfiguration, Predicate, boolean)} but doesn't publish a new
+     * item association snapshot of the tenant. Callers running several generators for a tenant publish once with
+     * {@link #publishSnapshot(int)} after the last run.
+     * <p/>
+     * Runs of the same plugin are serialized, i.e. this method blocks while another thread runs the plugin.
+     */
+    public LogEntry runGeneratorWithoutPublishing(NamedConfiguration namedConfiguration,
+                                                  Predicate<GeneratorStatistics> writeLog, boolean writeLogLast) {
         Preconditions.checkNotNull(namedConfiguration);
         Preconditions.checkNotNull(namedConfiguration.getConfiguration());
         Preconditions.checkNotNull(namedConfiguration.getName());
         Preconditions.checkNotNull(namedConfiguration.getPluginId());
         Preconditions.checkNotNull(writeLog);
 
+        synchronized (getPluginLock(namedConfiguration.getPluginId())) {
+            return doRunGenerator(namedConfiguration, writeLog, writeLogLast);
+        }
+    }
+
+    private LogEntry doRunGenerator(NamedConfiguration namedConfiguration, Predicate<GeneratorStatistics> writeLog,
+                                    boolean writeLogLast) {
+
         Generator<GeneratorConfiguration, GeneratorStatistics> generator =
                 registry.getGenerators().get(namedConfiguration.getPluginId());
         GeneratorConfiguration configuration = namedConfiguration.getConfiguration();
@@ -122,21 +154,74 @@ public class GeneratorContainer {
 
     public List<LogEntry> runGeneratorsForTenant(int tenantId, Predicate<GeneratorStatistics> writeLog,
                                                  boolean writeLogLast) {
-        Map<String, Integer> assocTypes = assocTypeDAO.getMapping(tenantId);
         List<LogEntry> result = Lists.newArrayList();
+        boolean succeeded = false;
+
+        for (NamedConfiguration namedConfiguration : getActiveConfigurations(tenantId)) {
+            LogEntry logEntry = runGeneratorWithoutPublishing(namedConfiguration, writeLog, writeLogLast);
+            succeeded |= !isFailed(logEntry);
+            result.add(logEntry);
+        }
+
+        // publish once after all generators of the tenant ran
+        if (succeeded) publishSnapshot(tenantId);
+
+        return result;
+    }
+
+    /**
+     * @return the active configuration of every assoc type of the tenant, i.e. the generator runs of
+     *         {@link #runGeneratorsForTenant(int)}
+     */
+    public List<NamedConfiguration> getActiveConfigurations(int tenantId) {
+        Map<String, Integer> assocTypes = assocTypeDAO.getMapping(tenantId);
+        List<NamedConfiguration> result = Lists.newArrayList();
 
         for (Integer assocTypeId : assocTypes.values()) {
             NamedConfiguration namedConfiguration = namedConfigurationDAO.readActiveConfiguration(tenantId,
                     assocTypeId);
 
-            if (namedConfiguration == null) continue;
-
-            result.add(runGenerator(namedConfiguration, writeLog, writeLogLast));
+            if (namedConfiguration != null) result.add(namedConfiguration);
         }
 
         return result;
     }
 
+    /**
+     * Publishes a new item association snapshot of the tenant if an {@link ItemAssocSnapshotStore} is set.
+     */
+    public void publishSnapshot(int tenantId) {
+        if (itemAssocSnapshotStore != null) itemAssocSnapshotStore.publish(tenantId);
+    }
+
+    public static boolean isFailed(LogEntry logEntry) {
+        return logEntry.getStatistics() instanceof StatisticsConstants.ExecutionFailedStatistics;
+    }
+
+    public ItemAssocSnapshotStore getItemAssocSnapshotStore() {
+        return itemAssocSnapshotStore;
+    }
+
+    /**
+     * @param itemAssocSnapshotStore If set, a new item association snapshot of the tenant is published after
+     *                               generators ran successfully.
+     */
+    public void setItemAssocSnapshotStore(ItemAssocSnapshotStore itemAssocSnapshotStore) {
+        this.itemAssocSnapshotStore = itemAssocSnapshotStore;
+    }
+
+    private Object getPluginLock(PluginId pluginId) {
+        Object lock = pluginLocks.get(pluginId);
+
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = pluginLocks.putIfAbsent(pluginId, newLock);
+            if (lock == null) lock = newLock;
+        }
+
+        return lock;
+    }
+
     /*
     earlier draft
 
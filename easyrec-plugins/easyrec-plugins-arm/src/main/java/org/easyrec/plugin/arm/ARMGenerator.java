@@ -70,62 +70,70 @@ public class ARMGenerator extends GeneratorPluginSupport<ARMConfiguration, ARMSt
         }
         if (intConfiguration != null) {
             tupleCounter.init();
-            if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
-            control.updateProgress(1, 6, "Calculating # of baskets.");
-            Integer nrBaskets = assocRuleMiningService.getNumberOfBaskets(intConfiguration);
-            stats.setNrBaskets(nrBaskets);
-
-            if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
-            control.updateProgress(2, 6, "Calculating # of products.");
-            Integer nrProducts = assocRuleMiningService.getNumberOfProducts(intConfiguration);
-            stats.setNrProducts(nrProducts);
-
-            Integer support = (int) (nrBaskets * (configuration.getSupportPrcnt() / 100));
-            intConfiguration.setSupport(Math.max(support, configuration.getSupportMinAbs()));
-
-            if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
-            control.updateProgress(3, 6, "Defining set L1.");
-            TObjectIntHashMap<ItemVO<Integer, Integer>> L1 = assocRuleMiningService.defineL1(intConfiguration);
-            stats.setSizeL1(L1.size());
-            stats.setLastSupport(intConfiguration.getSupport());
-
-            if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
-            control.updateProgress(4, 6, "Defining set L2.");
-            List<TupleVO> L2 = assocRuleMiningService.defineL2(L1, tupleCounter, intConfiguration, stats);
-            stats.setSizeL2(L2.size());
-
-            if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
-            control.updateProgress(5, 6, "Generating rules.");
-
-            if (configuration.getMaxRulesPerItem() == null) {
-                List<ItemAssocVO<Integer,Integer>> rules = assocRuleMiningService.createRules(L2, L1,
-                        intConfiguration, stats, configuration.getConfidencePrcnt());
-                stats.setSizeRules(rules.size());
-                for (ItemAssocVO<Integer,Integer> itemAssocVO : rules) {
-                    //                try {
-                    //                    ruleminingItemAssocDAO.insertItemAssoc(itemAssocVO);
-                    //                } catch (DataIntegrityViolationException e) {
-                    //                    ruleminingItemAssocDAO.updateItemAssocUsingUniqueKey(itemAssocVO);
-                    //                }
-                    ruleminingItemAssocDAO.insertOrUpdateItemAssoc(itemAssocVO);
-                }
-            } else {
-                int count = 0;
-                Collection<SortedSet<ItemAssocVO<Integer,Integer>>> rules = assocRuleMiningService.createBestRules(
-                        L2, L1, intConfiguration, stats, configuration.getConfidencePrcnt());
-                for (SortedSet<ItemAssocVO<Integer,Integer>> sortedSet : rules) {
-                    count += sortedSet.size();
-                    for (ItemAssocVO<Integer,Integer> itemAssocVO : sortedSet) {
-                        //                   try {
-                        //                        ruleminingItemAssocDAO.insertItemAssoc(itemAssocVO);
-                        //                    } catch (DataIntegrityViolationException e) {
-                        //                        ruleminingItemAssocDAO.updateItemAssocUsingUniqueKey(itemAssocVO);
-                        //                    }
+            if (configuration.getPairCounterMemory() != null) {
+                tupleCounter.setMemoryBudget(configuration.getPairCounterMemory() * 1024L * 1024L);
+            }
+            try {
+                if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
+                control.updateProgress(1, 6, "Calculating # of baskets.");
+                Integer nrBaskets = assocRuleMiningService.getNumberOfBaskets(intConfiguration);
+                stats.setNrBaskets(nrBaskets);
+
+                if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
+                control.updateProgress(2, 6, "Calculating # of products.");
+                Integer nrProducts = assocRuleMiningService.getNumberOfProducts(intConfiguration);
+                stats.setNrProducts(nrProducts);
+
+                Integer support = (int) (nrBaskets * (configuration.getSupportPrcnt() / 100));
+                intConfiguration.setSupport(Math.max(support, configuration.getSupportMinAbs()));
+
+                if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
+                control.updateProgress(3, 6, "Defining set L1.");
+                TObjectIntHashMap<ItemVO<Integer, Integer>> L1 = assocRuleMiningService.defineL1(intConfiguration);
+                stats.setSizeL1(L1.size());
+                stats.setLastSupport(intConfiguration.getSupport());
+
+                if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
+                control.updateProgress(4, 6, "Defining set L2.");
+                // the tuples are read from the counter while the rules are created, which also sets the size of L2
+                Iterable<TupleVO> L2 = assocRuleMiningService.defineL2(L1, tupleCounter, intConfiguration, stats);
+
+                if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
+                control.updateProgress(5, 6, "Generating rules.");
+
+                if (configuration.getMaxRulesPerItem() == null) {
+                    List<ItemAssocVO<Integer,Integer>> rules = assocRuleMiningService.createRules(L2, L1,
+                            intConfiguration, stats, configuration.getConfidencePrcnt());
+                    stats.setSizeRules(rules.size());
+                    for (ItemAssocVO<Integer,Integer> itemAssocVO : rules) {
+                        //                try {
+                        //                    ruleminingItemAssocDAO.insertItemAssoc(itemAssocVO);
+                        //                } catch (DataIntegrityViolationException e) {
+                        //                    ruleminingItemAssocDAO.updateItemAssocUsingUniqueKey(itemAssocVO);
+                        //                }
                         ruleminingItemAssocDAO.insertOrUpdateItemAssoc(itemAssocVO);
                     }
+                } else {
+                    int count = 0;
+                    Collection<SortedSet<ItemAssocVO<Integer,Integer>>> rules = assocRuleMiningService.createBestRules(
+                            L2, L1, intConfiguration, stats, configuration.getConfidencePrcnt());
+                    for (SortedSet<ItemAssocVO<Integer,Integer>> sortedSet : rules) {
+                        count += sortedSet.size();
+                        for (ItemAssocVO<Integer,Integer> itemAssocVO : sortedSet) {
+                            //                   try {
+                            //                        ruleminingItemAssocDAO.insertItemAssoc(itemAssocVO);
+                            //                    } catch (DataIntegrityViolationException e) {
+                            //                        ruleminingItemAssocDAO.updateItemAssocUsingUniqueKey(itemAssocVO);
+                            //                    }
+                            ruleminingItemAssocDAO.insertOrUpdateItemAssoc(itemAssocVO);
+                        }
+                    }
+                    stats.setSizeRules(count);
+                    stats.setNumberOfRulesCreated(count);
                 }
-                stats.setSizeRules(count);
-                stats.setNumberOfRulesCreated(count);
+            } finally {
+                // releases the counted pairs (and the off-heap memory and run files), also of a failed run
+                tupleCounter.init();
             }
             stats.setLastConf(configuration.getConfidencePrcnt());
             stats.setNumberOfActionsConsidered(assocRuleMiningService.getNumberOfActions(intConfiguration));
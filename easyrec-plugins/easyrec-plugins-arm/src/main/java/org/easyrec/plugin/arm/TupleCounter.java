@@ -18,6 +18,7 @@
 package org.easyrec.plugin.arm;
 
 import java.util.ArrayList;
+import java.util.List;
 import org.easyrec.model.core.ItemVO;
 
 import org.easyrec.plugin.arm.model.TupleVO;
@@ -26,10 +27,34 @@ public interface TupleCounter {
     public void count(ItemVO<Integer, Integer> item1, ItemVO<Integer, Integer> item2)
             throws Exception;
 
+    /**
+     * Adds <code>occurrences</code> to the count of a pair of items given by their indices in the list of items
+     * passed to {@link #init(List)}.
+     */
+    public void count(int item1, int item2, int occurrences) throws Exception;
+
     public void init();
 
+    /**
+     * Resets the counter and assigns the indices used by {@link #count(int, int, int)} to the given items.
+     */
+    public void init(List<ItemVO<Integer, Integer>> items);
+
     public ArrayList<TupleVO> getTuples(int support) throws Exception;
 
+    /**
+     * Returns the tuples with at least the given support without collecting them in a list first. The tuples are
+     * read when iterating, which must not be done while the counter is changed.
+     */
+    public Iterable<TupleVO> tuples(int support) throws Exception;
+
+    /**
+     * Limits the memory used for the counts. Counters that cannot limit their memory ignore the budget.
+     *
+     * @param bytes the memory budget in bytes
+     */
+    public void setMemoryBudget(long bytes);
+
     public int size() throws Exception;
 
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.arm.impl;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.plugin.arm.TupleCounter;
+import org.easyrec.plugin.arm.model.TupleVO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class for tuple counters that identify a pair of items by a single long key.
+ * <p/>
+ * Every item gets an int index, either assigned by {@link #init(List)} or on its first occurrence. The key of a pair
+ * packs the indices of both items, the item with the smaller item id first (see {@link PairKeys}), so counting does
+ * not create any objects.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public abstract class AbstractIndexedTupleCounter implements TupleCounter {
+    private static final int NO_INDEX = -1;
+
+    private List<ItemVO<Integer, Integer>> items;
+    private TObjectIntHashMap<ItemVO<Integer, Integer>> indices;
+    // item ids by index, decide which item of a pair is the main key
+    private int[] itemIds;
+
+    protected AbstractIndexedTupleCounter() {
+        resetItems(1024);
+    }
+
+    public void init() {
+        resetItems(1024);
+    }
+
+    public void init(List<ItemVO<Integer, Integer>> items) {
+        init();
+        resetItems(items.size());
+
+        for (ItemVO<Integer, Integer> item : items) {
+            indexOf(item);
+        }
+    }
+
+    public void count(ItemVO<Integer, Integer> item1, ItemVO<Integer, Integer> item2)
+            throws Exception {
+        count(indexOf(item1), indexOf(item2), 1);
+    }
+
+    public void count(int item1, int item2, int occurrences) throws Exception {
+        if (itemIds[item1] < itemIds[item2]) {
+            count(PairKeys.pack(item1, item2), occurrences);
+        } else {
+            count(PairKeys.pack(item2, item1), occurrences);
+        }
+    }
+
+    public ArrayList<TupleVO> getTuples(int support) throws Exception {
+        ArrayList<TupleVO> ret = new ArrayList<TupleVO>();
+
+        for (TupleVO tuple : tuples(support)) {
+            ret.add(tuple);
+        }
+        return ret;
+    }
+
+    /**
+     * Ignored by counters that cannot limit their memory.
+     */
+    public void setMemoryBudget(long bytes) {
+    }
+
+    /**
+     * Adds <code>occurrences</code> to the count of the pair with the given key.
+     */
+    protected abstract void count(long key, int occurrences) throws Exception;
+
+    protected TupleVO tuple(long key, int support) {
+        return new TupleVO(items.get(PairKeys.first(key)), items.get(PairKeys.second(key)), support);
+    }
+
+    private void resetItems(int expectedItems) {
+        items = new ArrayList<ItemVO<Integer, Integer>>(expectedItems);
+        indices = new TObjectIntHashMap<ItemVO<Integer, Integer>>(Math.max(expectedItems * 2, 16), 0.5f, NO_INDEX);
+        itemIds = new int[Math.max(expectedItems, 1)];
+    }
+
+    private int indexOf(ItemVO<Integer, Integer> item) {
+        int index = indices.get(item);
+
+        if (index == NO_INDEX) {
+            index = items.size();
+            items.add(item);
+            indices.put(item, index);
+
+            if (index == itemIds.length) {
+                int[] grown = new int[itemIds.length * 2];
+                System.arraycopy(itemIds, 0, grown, 0, itemIds.length);
+                itemIds = grown;
+            }
+            itemIds[index] = item.getItem();
+        }
+
+        return index;
+    }
+}
@@ -155,7 +155,7 @@ public class AssocRuleMiningServiceImpl implements AssocRuleMiningService {
         return ruleminingActionDAO.defineL1(configuration);
     }
 
-    public List<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1, TupleCounter tupleCounter, ARMConfigurationInt configuration, ARMStatistics stats) {
+    public Iterable<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1, TupleCounter tupleCounter, ARMConfigurationInt configuration, ARMStatistics stats) {
 
         return ruleminingActionDAO.defineL2(L1, tupleCounter, configuration, stats);
     }
@@ -190,6 +190,10 @@ public class AssocRuleMiningServiceImpl implements AssocRuleMiningService {
         }
         ret.setActionType(actionId);
 
+        if (configuration.getCountingThreads() != null) {
+            ret.setCountingThreads(configuration.getCountingThreads());
+        }
+
         for (String type : configuration.getItemTypes()) {
             Integer itemTypeId = typeMappingService.getIdOfItemType(configuration.getTenantId(), type);
             if (itemTypeId != null) {
@@ -237,7 +241,7 @@ public class AssocRuleMiningServiceImpl implements AssocRuleMiningService {
      * @param minConfidence minConfidence
      * @return Vector
      */
-    public List<ItemAssocVO<Integer, Integer>> createRules(List<TupleVO> tuples,
+    public List<ItemAssocVO<Integer, Integer>> createRules(Iterable<TupleVO> tuples,
                                                            TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
                                                            ARMConfigurationInt configuration,
                                                            ARMStatistics stats,
@@ -253,7 +257,10 @@ public class AssocRuleMiningServiceImpl implements AssocRuleMiningService {
         stats.setMetricType(configuration.getMetricType());
         Vector<ItemAssocVO<Integer, Integer>> ret = new Vector<ItemAssocVO<Integer, Integer>>();
 
+        // the tuples may be read lazily from the tuple counter, so L2 is counted here
+        int sizeL2 = 0;
         for (TupleVO tuple : tuples) {
+            sizeL2++;
             sup1 = L1.get(tuple.getItem1());
             dsup1 = new Double(sup1);
             sup2 = L1.get(tuple.getItem2());
@@ -343,11 +350,12 @@ public class AssocRuleMiningServiceImpl implements AssocRuleMiningService {
                 ret.add(rule);
             }
         }
+        stats.setSizeL2(sizeL2);
         return ret;
     }
 
     public Collection<SortedSet<ItemAssocVO<Integer, Integer>>> createBestRules(
-            List<TupleVO> tuples,
+            Iterable<TupleVO> tuples,
             TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
             ARMConfigurationInt configuration,
             ARMStatistics stats,
@@ -362,7 +370,10 @@ public class AssocRuleMiningServiceImpl implements AssocRuleMiningService {
         stats.setMetricType(configuration.getMetricType());
         //Vector<ItemAssocVO<Integer,Integer>> ret = new Vector<ItemAssocVO<Integer,Integer>>();
         Map<ItemVO<Integer, Integer>, SortedSet<ItemAssocVO<Integer, Integer>>> ret = new HashMap<ItemVO<Integer, Integer>, SortedSet<ItemAssocVO<Integer, Integer>>>();
+        // the tuples may be read lazily from the tuple counter, so L2 is counted here
+        int sizeL2 = 0;
         for (TupleVO tuple : tuples) {
+            sizeL2++;
             sup1 = L1.get(tuple.getItem1());
             dsup1 = new Double(sup1);
             sup2 = L1.get(tuple.getItem2());
@@ -480,6 +491,7 @@ public class AssocRuleMiningServiceImpl implements AssocRuleMiningService {
                 }
             }
         }
+        stats.setSizeL2(sizeL2);
         return ret.values();
     }
 
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.arm.impl;
+
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.map.hash.TLongIntHashMap;
+import org.easyrec.plugin.arm.TupleCounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the shopping baskets from a stream of actions ordered by user and counts the item pairs of every basket
+ * with a {@link TupleCounter}.
+ * <p/>
+ * Items are passed as their indices in the item list the tuple counter was initialized with; items that occur more
+ * than once in a basket are counted once. Baskets with less than two items are skipped.
+ * <p/>
+ * With more than one thread the baskets are handed out in batches to worker threads, each counting the pairs of its
+ * share of the users in a map of its own. The maps are added to the tuple counter by {@link #finish()}, so the
+ * counts of a pair can be held once per thread in the meantime.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class BasketBuilder {
+
+    // number of baskets handed to a worker at once
+    private static final int BATCH_SIZE = 1000;
+    private static final List<int[]> END = new ArrayList<int[]>();
+
+    private final TupleCounter tupleCounter;
+
+    private int[] basket = new int[16];
+    private int basketSize = 0;
+    private int currentUser;
+    private boolean hasUser = false;
+    private int numberOfBaskets = 0;
+
+    private ExecutorService executor;
+    private List<BlockingQueue<List<int[]>>> queues;
+    private List<Future<TLongIntHashMap>> results;
+    private List<int[]> batch;
+    private int nextWorker = 0;
+
+    /**
+     * @param tupleCounter the counter, already initialized with the items
+     * @param threads      number of threads counting pairs, 1 counts in the calling thread
+     */
+    public BasketBuilder(TupleCounter tupleCounter, int threads) {
+        if (tupleCounter == null) throw new IllegalArgumentException("Missing 'tupleCounter'");
+        if (threads <= 0) throw new IllegalArgumentException("'threads' must be greater than 0");
+
+        this.tupleCounter = tupleCounter;
+
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads);
+            queues = new ArrayList<BlockingQueue<List<int[]>>>(threads);
+            results = new ArrayList<Future<TLongIntHashMap>>(threads);
+            batch = new ArrayList<int[]>(BATCH_SIZE);
+
+            for (int i = 0; i < threads; i++) {
+                BlockingQueue<List<int[]>> queue = new ArrayBlockingQueue<List<int[]>>(4);
+                queues.add(queue);
+                results.add(executor.submit(new Worker(queue)));
+            }
+        }
+    }
+
+    /**
+     * Adds an action to the basket of the given user. The actions of a user must be added one after another.
+     *
+     * @param user the user
+     * @param item the index of the item
+     */
+    public void add(int user, int item) throws Exception {
+        if (!hasUser || user != currentUser) {
+            flush();
+            currentUser = user;
+            hasUser = true;
+        }
+
+        if (basketSize == basket.length) {
+            basket = Arrays.copyOf(basket, basketSize * 2);
+        }
+        basket[basketSize++] = item;
+    }
+
+    /**
+     * Counts the last basket and waits for the pairs counted by the worker threads.
+     *
+     * @return the number of baskets with at least two items
+     */
+    public int finish() throws Exception {
+        flush();
+
+        if (executor != null) {
+            try {
+                if (!batch.isEmpty()) {
+                    dispatch(batch);
+                }
+                for (int i = 0; i < queues.size(); i++) {
+                    put(i, END);
+                }
+                for (Future<TLongIntHashMap> result : results) {
+                    for (TLongIntIterator it = result.get().iterator(); it.hasNext(); ) {
+                        it.advance();
+                        tupleCounter.count(PairKeys.first(it.key()), PairKeys.second(it.key()), it.value());
+                    }
+                }
+            } finally {
+                shutdown();
+            }
+        }
+
+        return numberOfBaskets;
+    }
+
+    /**
+     * Stops the worker threads, e.g. when reading the actions failed.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void flush() throws Exception {
+        if (basketSize < 2) {
+            basketSize = 0;
+            return;
+        }
+
+        // removes duplicate items
+        Arrays.sort(basket, 0, basketSize);
+        int size = 1;
+        for (int i = 1; i < basketSize; i++) {
+            if (basket[i] != basket[size - 1]) {
+                basket[size++] = basket[i];
+            }
+        }
+        basketSize = 0;
+
+        if (size < 2) return;
+
+        numberOfBaskets++;
+
+        if (executor == null) {
+            for (int i = 0; i < size - 1; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    tupleCounter.count(basket[i], basket[j], 1);
+                }
+            }
+        } else {
+            batch.add(Arrays.copyOf(basket, size));
+
+            if (batch.size() == BATCH_SIZE) {
+                dispatch(batch);
+                batch = new ArrayList<int[]>(BATCH_SIZE);
+            }
+        }
+    }
+
+    private void dispatch(List<int[]> baskets) throws Exception {
+        put(nextWorker, baskets);
+        nextWorker = (nextWorker + 1) % queues.size();
+    }
+
+    private void put(int worker, List<int[]> baskets) throws Exception {
+        while (!queues.get(worker).offer(baskets, 1, TimeUnit.SECONDS)) {
+            // a worker that stopped would never take from its queue again
+            if (results.get(worker).isDone()) {
+                results.get(worker).get();
+                throw new IllegalStateException("worker stopped before the end of the baskets");
+            }
+        }
+    }
+
+    /**
+     * Counts the pairs of the baskets of its queue.
+     */
+    private static class Worker implements Callable<TLongIntHashMap> {
+        private final BlockingQueue<List<int[]>> queue;
+
+        private Worker(BlockingQueue<List<int[]>> queue) {
+            this.queue = queue;
+        }
+
+        public TLongIntHashMap call() throws Exception {
+            TLongIntHashMap counts = new TLongIntHashMap();
+
+            for (List<int[]> baskets = queue.take(); baskets != END; baskets = queue.take()) {
+                for (int[] items : baskets) {
+                    for (int i = 0; i < items.length - 1; i++) {
+                        for (int j = i + 1; j < items.length; j++) {
+                            counts.adjustOrPutValue(PairKeys.pack(items[i], items[j]), 1, 1);
+                        }
+                    }
+                }
+            }
+
+            return counts;
+        }
+    }
+}
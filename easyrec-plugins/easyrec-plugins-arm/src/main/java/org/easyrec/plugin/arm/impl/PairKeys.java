@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.arm.impl;
+
+import org.easyrec.utils.Hashing;
+
+/**
+ * Packs a pair of item indices into a single long key of a primitive map.
+ * <p/>
+ * The packed indices are mixed by {@link Hashing#mix(long)}, which is reversible and spreads them over all bits of the
+ * key.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+final class PairKeys {
+    private PairKeys() {
+    }
+
+    static long pack(int first, int second) {
+        return Hashing.mix(((long) first << 32) | second);
+    }
+
+    static int first(long key) {
+        return (int) (Hashing.unmix(key) >>> 32);
+    }
+
+    static int second(long key) {
+        return (int) Hashing.unmix(key);
+    }
+}
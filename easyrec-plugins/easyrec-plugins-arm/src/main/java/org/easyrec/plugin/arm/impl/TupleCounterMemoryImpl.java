@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import org.easyrec.model.core.ItemVO;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import org.easyrec.plugin.arm.TupleCounter;
@@ -45,20 +46,36 @@ import org.easyrec.plugin.arm.model.TupleVO;
 public class TupleCounterMemoryImpl implements TupleCounter {
     // NOTE: integrate TupleInfo, consider Double val in second method!
     private HashMap<ItemVO<Integer, Integer>, HashMap<ItemVO<Integer, Integer>, Integer>> map;
+    private List<ItemVO<Integer, Integer>> items;
     int counter;
 
     public TupleCounterMemoryImpl() {
         map = new HashMap<ItemVO<Integer, Integer>, HashMap<ItemVO<Integer, Integer>, Integer>>();
+        items = new ArrayList<ItemVO<Integer, Integer>>();
         counter = 0;
     }
 
     public void init() {
         map.clear();
+        items = new ArrayList<ItemVO<Integer, Integer>>();
         counter = 0;
     }
 
+    public void init(List<ItemVO<Integer, Integer>> items) {
+        init();
+        this.items = new ArrayList<ItemVO<Integer, Integer>>(items);
+    }
+
     public void count(ItemVO<Integer, Integer> item1, ItemVO<Integer, Integer> item2)
             throws Exception {
+        count(item1, item2, 1);
+    }
+
+    public void count(int item1, int item2, int occurrences) throws Exception {
+        count(items.get(item1), items.get(item2), occurrences);
+    }
+
+    private void count(ItemVO<Integer, Integer> item1, ItemVO<Integer, Integer> item2, int occurrences) {
         ItemVO<Integer, Integer> mainKey, subKey;
         HashMap<ItemVO<Integer, Integer>, Integer> set;
 
@@ -79,9 +96,9 @@ public class TupleCounterMemoryImpl implements TupleCounter {
         Integer cnt = set.get(subKey);
         if (cnt == null) {
             counter++;
-            cnt = 1;
+            cnt = occurrences;
         } else {
-            cnt++;
+            cnt += occurrences;
         }
         set.put(subKey, cnt);
     }
@@ -101,6 +118,14 @@ public class TupleCounterMemoryImpl implements TupleCounter {
         return ret;
     }
 
+    public Iterable<TupleVO> tuples(int support) throws Exception {
+        return getTuples(support);
+    }
+
+    public void setMemoryBudget(long bytes) {
+        // the counts are kept on the heap
+    }
+
     public int size() throws Exception {
         return counter;
     }
@@ -17,20 +17,15 @@
  */
 package org.easyrec.plugin.arm.impl;
 
-import gnu.trove.map.hash.THashMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
-import gnu.trove.procedure.TObjectIntProcedure;
-import java.util.ArrayList;
-import java.util.HashMap;
-import org.easyrec.model.core.ItemVO;
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.map.hash.TLongIntHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-import java.util.Map.Entry;
-import java.util.Set;
-import org.easyrec.plugin.arm.TupleCounter;
 import org.easyrec.plugin.arm.model.TupleVO;
 
 /**
- * <DESCRIPTION>
+ * Counts item pairs in a single primitive map on the heap, keyed by the packed indices of both items.
  * <p/>
  * <p><b>Company:&nbsp;</b>
  * SAT, Research Studios Austria</p>
@@ -45,70 +40,60 @@ import org.easyrec.plugin.arm.model.TupleVO;
  *
  * @author Stephan Zavrel
  */
-public class TupleCounterMemoryTroveImpl implements TupleCounter {
-    // NOTE: integrate TupleInfo, consider Double val in second method!
-    private HashMap<ItemVO<Integer, Integer>, TObjectIntHashMap<ItemVO<Integer, Integer>>> map;
-    int counter;
+public class TupleCounterMemoryTroveImpl extends AbstractIndexedTupleCounter {
+    private TLongIntHashMap map;
 
     public TupleCounterMemoryTroveImpl() {
-        map = new HashMap<ItemVO<Integer, Integer>, TObjectIntHashMap<ItemVO<Integer, Integer>>>();
-        counter = 0;
+        map = new TLongIntHashMap();
     }
 
+    @Override
     public void init() {
-        map.clear();
-        counter = 0;
+        super.init();
+        map = new TLongIntHashMap();
     }
 
-    public void count(ItemVO<Integer, Integer> item1, ItemVO<Integer, Integer> item2)
-            throws Exception {
-        ItemVO<Integer, Integer> mainKey, subKey;
-        TObjectIntHashMap<ItemVO<Integer, Integer>> set;
+    @Override
+    protected void count(long key, int occurrences) {
+        map.adjustOrPutValue(key, occurrences, occurrences);
+    }
 
-        if (item1.getItem() < item2.getItem()) {
-            mainKey = item1;
-            subKey = item2;
-        } else {
-            mainKey = item2;
-            subKey = item1;
-        }
+    public Iterable<TupleVO> tuples(final int support) {
+        return new Iterable<TupleVO>() {
+            public Iterator<TupleVO> iterator() {
+                final TLongIntIterator it = map.iterator();
 
-        set = map.get(mainKey);
-        if (set == null) {
-            set = new TObjectIntHashMap<ItemVO<Integer, Integer>>();
-            map.put(mainKey, set);
-        }
+                return new Iterator<TupleVO>() {
+                    private TupleVO next = null;
 
-        Integer cnt = set.get(subKey);
-        if (cnt == null) {
-            counter++;
-            cnt = 1;
-        } else {
-            cnt++;
-        }
-        set.put(subKey, cnt);
-    }
+                    public boolean hasNext() {
+                        while (next == null && it.hasNext()) {
+                            it.advance();
+                            if (it.value() >= support) {
+                                next = tuple(it.key(), it.value());
+                            }
+                        }
+                        return next != null;
+                    }
 
-    public ArrayList<TupleVO> getTuples(final int support) throws Exception {
-        final ArrayList<TupleVO> ret = new ArrayList<TupleVO>();
-//        Set<ItemVO<Integer, Integer>> mainKeys = map.keySet();
+                    public TupleVO next() {
+                        if (!hasNext()) throw new NoSuchElementException("no element to return");
+
+                        TupleVO result = next;
+                        next = null;
+                        return result;
+                    }
 
-        Set<Entry<ItemVO<Integer, Integer>, TObjectIntHashMap<ItemVO<Integer, Integer>>>> entries = map.entrySet();
-        for (final Entry<ItemVO<Integer, Integer>, TObjectIntHashMap<ItemVO<Integer, Integer>>> entry : entries) {
-            entry.getValue().forEachEntry(new TObjectIntProcedure<ItemVO<Integer, Integer>>() {
-                public boolean execute(ItemVO<Integer, Integer> a, int b) {
-                    if (b >= support) {
-                        ret.add(new TupleVO(entry.getKey() , a, b));
+                    public void remove() {
+                        throw new UnsupportedOperationException("This iterator does not support removal");
                     }
-                    return true;
-                }
-            });
-        }
-        return ret;
+                };
+            }
+        };
     }
 
     public int size() throws Exception {
-        return counter;
+        return map.size();
     }
 
 }
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.arm.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.plugin.arm.model.TupleVO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Counts item pairs in an open addressing long to int table outside of the java heap.
+ * <p/>
+ * The size of the table follows from the memory budget (12 bytes per slot, filled up to half). When the table is
+ * full its pairs are written to a run file sorted by key and the table is cleared. The tuples are read by merging the
+ * runs, so the number of distinct pairs is only limited by the disk. Sorting a run needs a temporary
+ * <code>long[]</code> of its keys on the heap, i.e. a third of the memory budget.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class TupleCounterOffHeapImpl extends AbstractIndexedTupleCounter {
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+    private static final int BYTES_PER_SLOT = 12;
+    private static final int MIN_CAPACITY = 1 << 10;
+    // a direct buffer is limited to 2^31 bytes, i.e. 2^28 long keys
+    private static final int MAX_CAPACITY = 1 << 27;
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+    private LongBuffer keys;
+    private IntBuffer counts;
+    private int shift;
+    private int mask;
+    private int size;
+    private int maxSize;
+
+    private final List<File> runs = new ArrayList<File>();
+    // number of distinct pairs, -1 if it has to be computed by merging the runs
+    private int distinctPairs = 0;
+
+    public TupleCounterOffHeapImpl() {
+    }
+
+    public TupleCounterOffHeapImpl(long memoryBudget) {
+        setMemoryBudget(memoryBudget);
+    }
+
+    @Override
+    public void init() {
+        super.init();
+        deleteRuns();
+        // the table is allocated again by the first count, so an idle counter holds no memory
+        keys = null;
+        counts = null;
+        size = 0;
+        distinctPairs = 0;
+    }
+
+    @Override
+    public void setMemoryBudget(long bytes) {
+        if (bytes < MIN_CAPACITY * BYTES_PER_SLOT)
+            throw new IllegalArgumentException("'memoryBudget' must be at least " + MIN_CAPACITY * BYTES_PER_SLOT);
+
+        this.memoryBudget = bytes;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setSpillDirectory(File spillDirectory) {
+        if (spillDirectory == null) throw new IllegalArgumentException("Missing 'spillDirectory'");
+
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @return the number of run files written since the last {@link #init()}
+     */
+    public int getNumberOfRuns() {
+        return runs.size();
+    }
+
+    @Override
+    protected void count(long key, int occurrences) throws IOException {
+        if (keys == null) allocate();
+
+        int slot = (int) (key >>> shift);
+        int count;
+
+        while ((count = counts.get(slot)) != 0) {
+            if (keys.get(slot) == key) {
+                counts.put(slot, count + occurrences);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == maxSize) {
+            spill();
+            count(key, occurrences);
+            return;
+        }
+
+        keys.put(slot, key);
+        counts.put(slot, occurrences);
+        size++;
+        distinctPairs = runs.isEmpty() ? size : -1;
+    }
+
+    public int size() throws Exception {
+        if (distinctPairs < 0) {
+            spillRemainingPairs();
+            int pairs = 0;
+            for (Merger merger = new Merger(); merger.advance(); ) {
+                pairs++;
+            }
+            distinctPairs = pairs;
+        }
+        return distinctPairs;
+    }
+
+    public Iterable<TupleVO> tuples(final int support) throws Exception {
+        spillRemainingPairs();
+
+        return new Iterable<TupleVO>() {
+            public Iterator<TupleVO> iterator() {
+                return runs.isEmpty() ? new TableIterator(support) : new RunIterator(support);
+            }
+        };
+    }
+
+    private void allocate() {
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && capacity * 2L * BYTES_PER_SLOT <= memoryBudget) {
+            capacity *= 2;
+        }
+
+        keys = ByteBuffer.allocateDirect(capacity * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+        counts = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        mask = capacity - 1;
+        size = 0;
+        maxSize = capacity / 2;
+    }
+
+    /**
+     * Writes the pairs of the table sorted by key to a new run file and clears the table.
+     */
+    private void spill() throws IOException {
+        long start = System.currentTimeMillis();
+        long[] sorted = new long[size];
+        int n = 0;
+
+        for (int slot = 0; slot <= mask; slot++) {
+            if (counts.get(slot) != 0) sorted[n++] = keys.get(slot);
+        }
+        Arrays.sort(sorted);
+
+        File run = File.createTempFile("arm-pairs", ".run", spillDirectory);
+        run.deleteOnExit();
+        runs.add(run);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+        try {
+            for (long key : sorted) {
+                out.writeLong(key);
+                out.writeInt(counts.get(find(key)));
+            }
+        } finally {
+            out.close();
+        }
+
+        for (int slot = 0; slot <= mask; slot++) {
+            counts.put(slot, 0);
+        }
+        size = 0;
+        distinctPairs = -1;
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("spilled " + sorted.length + " pairs to " + run + " in " +
+                    (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * Once pairs have been spilled the pairs still in the table are written to a run as well, so that all pairs are
+     * read by merging the runs.
+     */
+    private void spillRemainingPairs() throws IOException {
+        if (!runs.isEmpty() && size > 0) spill();
+    }
+
+    private int find(long key) {
+        int slot = (int) (key >>> shift);
+
+        while (keys.get(slot) != key || counts.get(slot) == 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void deleteRuns() {
+        for (File run : runs) {
+            if (!run.delete()) {
+                logger.warn("failed to delete " + run);
+            }
+        }
+        runs.clear();
+    }
+
+    /**
+     * Iterates the pairs of the table if nothing was spilled.
+     */
+    private class TableIterator implements Iterator<TupleVO> {
+        private final int support;
+        private int slot = 0;
+        private TupleVO next = null;
+
+        private TableIterator(int support) {
+            this.support = support;
+        }
+
+        public boolean hasNext() {
+            while (next == null && keys != null && slot <= mask) {
+                int count = counts.get(slot);
+                if (count != 0 && count >= support) {
+                    next = tuple(keys.get(slot), count);
+                }
+                slot++;
+            }
+            return next != null;
+        }
+
+        public TupleVO next() {
+            if (!hasNext()) throw new NoSuchElementException("no element to return");
+
+            TupleVO result = next;
+            next = null;
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("This iterator does not support removal");
+        }
+    }
+
+    /**
+     * Iterates the merged runs. The run files are closed when the last tuple has been read.
+     */
+    private class RunIterator implements Iterator<TupleVO> {
+        private final int support;
+        private final Merger merger;
+        private TupleVO next = null;
+
+        private RunIterator(int support) {
+            this.support = support;
+            try {
+                this.merger = new Merger();
+            } catch (IOException e) {
+                throw new IllegalStateException("failed to open the pair runs", e);
+            }
+        }
+
+        public boolean hasNext() {
+            try {
+                while (next == null && merger.advance()) {
+                    if (merger.count >= support) {
+                        next = tuple(merger.key, merger.count);
+                    }
+                }
+            } catch (IOException e) {
+                merger.close();
+                throw new IllegalStateException("failed to read the pair runs", e);
+            }
+            return next != null;
+        }
+
+        public TupleVO next() {
+            if (!hasNext()) throw new NoSuchElementException("no element to return");
+
+            TupleVO result = next;
+            next = null;
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("This iterator does not support removal");
+        }
+    }
+
+    /**
+     * Merges the sorted runs and adds up the counts of equal keys.
+     */
+    private class Merger implements Closeable {
+        private final PriorityQueue<RunReader> readers = new PriorityQueue<RunReader>();
+        private long key;
+        private int count;
+
+        private Merger() throws IOException {
+            try {
+                for (File run : runs) {
+                    RunReader reader = new RunReader(run);
+                    if (reader.advance()) {
+                        readers.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Moves to the next distinct key, returns false and closes the runs at the end.
+         */
+        private boolean advance() throws IOException {
+            RunReader reader = readers.poll();
+            if (reader == null) return false;
+
+            key = reader.key;
+            count = 0;
+
+            while (reader != null && reader.key == key) {
+                count += reader.count;
+                if (reader.advance()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+                reader = readers.peek() != null && readers.peek().key == key ? readers.poll() : null;
+            }
+            return true;
+        }
+
+        public void close() {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+            readers.clear();
+        }
+    }
+
+    private static class RunReader implements Comparable<RunReader> {
+        private final DataInputStream in;
+        private long key;
+        private int count;
+
+        private RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+        }
+
+        private boolean advance() throws IOException {
+            try {
+                key = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            count = in.readInt();
+            return true;
+        }
+
+        public int compareTo(RunReader other) {
+            return key < other.key ? -1 : (key == other.key ? 0 : 1);
+        }
+
+        private void close() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // nothing left to read
+            }
+        }
+    }
+}
@@ -101,6 +101,20 @@ public class ARMConfiguration extends GeneratorConfiguration {
             description = "Defines the number of items considered for rule minig. Usually only the x most popular items are considered. CAUTION!!! This setting heavily influences the amount of memory needed by easyrec. The default value of 5000 requires a java heap size of 640MB to be on the safe side!",
             optional = false)
     private Integer maxSizeL1 = 5000;
+
+    @PluginParameter(
+            displayName = "counting threads",
+            shortDescription = "The number of threads counting item combinations.",
+            description = "Defines the number of threads that count the item combinations of the shopping baskets. Each thread counts the baskets of a part of the users. CAUTION!!! Every additional thread can need as much memory as the item combinations of all baskets!",
+            optional = true)
+    private Integer countingThreads = 1;
+
+    @PluginParameter(
+            displayName = "pair counter memory",
+            shortDescription = "The memory in MB used to count item combinations.",
+            description = "Defines the memory (in MB, outside of the java heap) used to count the item combinations of the shopping baskets. Combinations exceeding this memory are written to temporary files and merged afterwards.",
+            optional = true)
+    private Integer pairCounterMemory = 256;
     private Boolean doDeltaUpdate = false;
 
     public String getActionType() {
@@ -159,6 +173,22 @@ public class ARMConfiguration extends GeneratorConfiguration {
         this.maxSizeL1 = maxSizeL1;
     }
 
+    public Integer getCountingThreads() {
+        return countingThreads;
+    }
+
+    public void setCountingThreads(Integer countingThreads) {
+        this.countingThreads = countingThreads;
+    }
+
+    public Integer getPairCounterMemory() {
+        return pairCounterMemory;
+    }
+
+    public void setPairCounterMemory(Integer pairCounterMemory) {
+        this.pairCounterMemory = pairCounterMemory;
+    }
+
     public Integer getSupport() {
         return support;
     }
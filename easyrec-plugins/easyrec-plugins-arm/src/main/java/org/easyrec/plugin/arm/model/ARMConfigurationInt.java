@@ -27,6 +27,7 @@ public class ARMConfigurationInt {
     private Double ratingNeutral;
     private MetricTypes metricType;
     private Integer maxSizeL1;
+    private Integer countingThreads = 1;
     private Boolean doDeltaUpdate;
 
     public ARMConfigurationInt() {
@@ -121,6 +122,14 @@ public class ARMConfigurationInt {
         this.maxSizeL1 = maxSizeL1;
     }
 
+    public Integer getCountingThreads() {
+        return countingThreads;
+    }
+
+    public void setCountingThreads(Integer countingThreads) {
+        this.countingThreads = countingThreads;
+    }
+
     public Integer getSupport() {
         return support;
     }
@@ -37,6 +37,14 @@ public class ARMConfigurationValidator implements Validator {
             errors.rejectValue("maxRulesPerItem", "error.outOfRange", "Valid values for maximum rules per item must be greater than 1!");
         }
 
+        if (configuration.getCountingThreads() != null && configuration.getCountingThreads() < 1) {
+            errors.rejectValue("countingThreads", "error.outOfRange", "The number of counting threads must be at least 1!");
+        }
+
+        if (configuration.getPairCounterMemory() != null && configuration.getPairCounterMemory() < 1) {
+            errors.rejectValue("pairCounterMemory", "error.outOfRange", "The pair counter memory must be at least 1 MB!");
+        }
+
     }
 
 }
@@ -52,7 +52,7 @@ public interface RuleminingActionDAO {
 
     public TObjectIntHashMap<ItemVO<Integer, Integer>> defineL1(ARMConfigurationInt configuration);
 
-   public List<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
+   public Iterable<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
                                   TupleCounter tupleCounter,
                                   ARMConfigurationInt configuration,
                                   ARMStatistics stats);
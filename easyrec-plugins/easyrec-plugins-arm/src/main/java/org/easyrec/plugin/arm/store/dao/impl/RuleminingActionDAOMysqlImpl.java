@@ -20,14 +20,16 @@ package org.easyrec.plugin.arm.store.dao.impl;
 
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
+import gnu.trove.map.hash.TLongIntHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.ItemVO;
 import org.easyrec.store.dao.BaseActionDAO;
+import org.easyrec.utils.spring.store.StreamingPreparedStatementCreator;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.springframework.jdbc.core.ResultSetExtractor;
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.support.JdbcDaoSupport;
 
 import javax.sql.DataSource;
@@ -38,6 +40,7 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
 import org.easyrec.plugin.arm.TupleCounter;
+import org.easyrec.plugin.arm.impl.BasketBuilder;
 import org.easyrec.plugin.arm.model.ARMConfigurationInt;
 import org.easyrec.plugin.arm.model.ARMStatistics;
 import org.easyrec.plugin.arm.model.TupleVO;
@@ -62,6 +65,8 @@ import org.easyrec.plugin.arm.store.dao.RuleminingActionDAO;
 @DAO
 public class RuleminingActionDAOMysqlImpl extends JdbcDaoSupport implements RuleminingActionDAO {
 
+    private static final int NO_INDEX = -1;
+
     private static class ActionResultSetExtractor
             implements ResultSetExtractor<TObjectIntHashMap<ItemVO<Integer, Integer>>> {
 
@@ -269,33 +274,39 @@ public class RuleminingActionDAOMysqlImpl extends JdbcDaoSupport implements Rule
         return ret;
     }
 
-    public List<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
+    public Iterable<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
                                   TupleCounter tupleCounter,
                                   ARMConfigurationInt configuration,
                                   ARMStatistics stats) {
 
-        List<TupleVO> ret = null;
+        Iterable<TupleVO> ret = null;
 
         List<Object> args = Lists.newArrayList();
         List<Integer> argt = Lists.newArrayList();
 
-        RowMapper<ItemVO<Integer, Integer>> itemVOMapper = new RowMapper<ItemVO<Integer, Integer>>() {
-            public ItemVO<Integer, Integer> mapRow(ResultSet rs, int rowNum) throws SQLException {
-                return new ItemVO<Integer, Integer>(rs.getInt(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME),
-                        rs.getInt(BaseActionDAO.DEFAULT_ITEM_COLUMN_NAME),
-                        rs.getInt(BaseActionDAO.DEFAULT_ITEM_TYPE_COLUMN_NAME));
-            }
-        };
+        // the L1 items get the indices used by the tuple counter, looked up by their packed item and item type id
+        List<ItemVO<Integer, Integer>> items = new ArrayList<ItemVO<Integer, Integer>>(L1.keySet());
+        final TLongIntHashMap itemIndices = new TLongIntHashMap(items.size() * 2, 0.5f, 0L, NO_INDEX);
+        for (int i = 0; i < items.size(); i++) {
+            itemIndices.put(packItem(items.get(i).getItem(), items.get(i).getType()), i);
+        }
+        tupleCounter.init(items);
+
+        final BasketBuilder basketBuilder = new BasketBuilder(tupleCounter, Math.max(1,
+                configuration.getCountingThreads() != null ? configuration.getCountingThreads() : 1));
 
         try {
-            // get all Baskets with at least 2 items
+            // all actions of the baskets in a single pass, ordered by user
             StringBuilder query = new StringBuilder();
-            query.append("SELECT ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME);
+            query.append("SELECT ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME).append(", ");
+            query.append(BaseActionDAO.DEFAULT_ITEM_COLUMN_NAME).append(", ");
+            query.append(BaseActionDAO.DEFAULT_ITEM_TYPE_COLUMN_NAME);
             query.append(" FROM ").append(BaseActionDAO.DEFAULT_TABLE_NAME);
             query.append(" WHERE ").append(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME).append("=")
                     .append(configuration.getTenantId());
             query.append(" AND ").append(BaseActionDAO.DEFAULT_ACTION_TYPE_COLUMN_NAME).append("=")
                     .append(configuration.getActionType());
+            query.append(" AND ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME).append(" IS NOT NULL");
 
             if (configuration.getRatingNeutral() != null) {
                 query.append(" AND ").append(BaseActionDAO.DEFAULT_RATING_VALUE_COLUMN_NAME).append(">")
@@ -316,75 +327,50 @@ public class RuleminingActionDAOMysqlImpl extends JdbcDaoSupport implements Rule
                     }
                 }
             }
-            query.append(" GROUP BY ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME);
-            query.append(" HAVING count(*)>=2");
-
-            List<Integer> baskets = getJdbcTemplate().queryForList(query.toString(), args.toArray(),
-                    Ints.toArray(argt), Integer.class);
-
-            for (Integer basket : baskets) {
-                StringBuilder query2 = new StringBuilder();
-                query2.append("SELECT DISTINCT ");
-                query2.append(BaseActionDAO.DEFAULT_ITEM_COLUMN_NAME).append(", ");
-                query2.append(BaseActionDAO.DEFAULT_ITEM_TYPE_COLUMN_NAME).append(", ");
-                query2.append(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME);
-                query2.append(" FROM ").append(BaseActionDAO.DEFAULT_TABLE_NAME);
-                query2.append(" WHERE ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME).append("=").append(basket);
-                query2.append(" AND ").append(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME).append("=")
-                        .append(configuration.getTenantId());
-                query2.append(" AND ").append(BaseActionDAO.DEFAULT_ACTION_TYPE_COLUMN_NAME).append("=")
-                        .append(configuration.getActionType());
-
-                if (configuration.getRatingNeutral() != null) {
-                    query2.append(" AND ").append(BaseActionDAO.DEFAULT_RATING_VALUE_COLUMN_NAME).append(">")
-                            .append(configuration.getRatingNeutral());
-                }
+            query.append(" ORDER BY ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME);
 
-                if (!configuration.getItemTypes().isEmpty()) {
-                    query2.append(" AND ").append(BaseActionDAO.DEFAULT_ITEM_TYPE_COLUMN_NAME).append(" IN (");
-
-                    for (int i = 0; i < configuration.getItemTypes().size(); i++) {
-                        query2.append(configuration.getItemTypes().get(i));
-                        if (i < configuration.getItemTypes().size() - 1) {
-                            query2.append(",");
-                        } else {
-                            query2.append(")");
-                        }
-                    }
-                }
+            long start = System.currentTimeMillis();
 
-                List<ItemVO<Integer, Integer>> items = getJdbcTemplate()
-                        .query(query2.toString(), itemVOMapper);
+            getJdbcTemplate().query(
+                    new StreamingPreparedStatementCreator(query.toString(), args.toArray(), Ints.toArray(argt)),
+                    new RowCallbackHandler() {
+                        public void processRow(ResultSet rs) throws SQLException {
+                            int index = itemIndices.get(packItem(rs.getInt(2), rs.getInt(3)));
 
-                ArrayList<ItemVO<Integer, Integer>> v = new ArrayList<ItemVO<Integer, Integer>>();
+                            if (index == NO_INDEX) return;
 
-                for (ItemVO<Integer, Integer> itemVO : items) {
-                    if (!L1.containsKey(itemVO)) {
-                        continue;
-                    }
-                    v.add(itemVO);
-                }
+                            try {
+                                basketBuilder.add(rs.getInt(1), index);
+                            } catch (SQLException e) {
+                                throw e;
+                            } catch (Exception e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    });
+            int numberOfBaskets = basketBuilder.finish();
 
-                if (v.size() <= 1) {
-                    continue;
-                }
-                for (int i = 0; i < v.size() - 1; i++) {
-                    for (int j = i + 1; j < v.size(); j++) {
-                        tupleCounter.count(v.get(i), v.get(j));
-                    }
-                }
+            if (logger.isInfoEnabled()) {
+                logger.info("counted the pairs of " + numberOfBaskets + " baskets in " +
+                        (System.currentTimeMillis() - start) + "ms");
             }
 
             stats.setSizeCountMap(tupleCounter.size());
-            ret = tupleCounter.getTuples(configuration.getSupport());
+            ret = tupleCounter.tuples(configuration.getSupport());
 
         } catch (Exception e) {
             logger.error(e);
+        } finally {
+            basketBuilder.shutdown();
         }
 
         return ret;
     }
 
+    private static long packItem(int itemId, int itemTypeId) {
+        return ((long) itemId << 32) | (itemTypeId & 0xFFFFFFFFL);
+    }
+
 
     public int getCount(String tableName, String keyA, String keyB) {
         StringBuilder query = new StringBuilder("SELECT count(*) as cnt FROM ");
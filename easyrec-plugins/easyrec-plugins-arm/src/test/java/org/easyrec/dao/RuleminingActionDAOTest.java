@@ -1,15 +1,29 @@
-package org.easyrec.dao;
-
-
-import org.easyrec.plugin.arm.store.dao.RuleminingActionDAO;
-import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.unitils.UnitilsJUnit4TestClassRunner;
-import org.unitils.spring.annotation.SpringApplicationContext;
-import org.unitils.spring.annotation.SpringBean;
-
-@RunWith(UnitilsJUnit4TestClassRunner.class)
-@SpringApplicationContext({
+package org.easyrec.dao;
+
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.plugin.arm.impl.TupleCounterMemoryTroveImpl;
+import org.easyrec.plugin.arm.model.ARMConfigurationInt;
+import org.easyrec.plugin.arm.model.ARMStatistics;
+import org.easyrec.plugin.arm.model.TupleVO;
+import org.easyrec.plugin.arm.store.dao.RuleminingActionDAO;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.unitils.UnitilsJUnit4TestClassRunner;
+import org.unitils.dbunit.annotation.DataSet;
+import org.unitils.spring.annotation.SpringApplicationContext;
+import org.unitils.spring.annotation.SpringBean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(UnitilsJUnit4TestClassRunner.class)
+@SpringApplicationContext({
         "spring/easyrecDataSource.xml",
         "spring/core/TenantConfig_DEFAULT.xml",
         "spring/core/dao/AuthenticationDAO.xml",
@@ -29,16 +43,59 @@ import org.unitils.spring.annotation.SpringBean;
         "spring/core/service/TenantService.xml",
         "spring/core/service/ClusterService.xml",
         "spring/domain/service/TypeMappingService.xml",
-        "/spring/plugins/arm/dao/RuleMiningActionDAO.xml"})
-
-public class RuleminingActionDAOTest {
-
-    @SpringBean("ruleMiningActionDAO")
-    private RuleminingActionDAO ruleminingActionDAO;
-
-    @Test
-    public void ruleminingActionDAOTest() {
+        "/spring/plugins/arm/dao/RuleMiningActionDAO.xml"})
+@DataSet("/dbunit/plugins/arm/testData.xml")
+public class RuleminingActionDAOTest {
+
+    @SpringBean("ruleMiningActionDAO")
+    private RuleminingActionDAO ruleminingActionDAO;
+
+    @Test
+    public void ruleminingActionDAOTest() {
         //ruleminingActionDAO.;
-    }
-
-}
+    }
+
+    // the item type and rating filters apply to the items of the baskets, like the former per-basket queries did
+    @Test
+    public void defineL2_filtersBasketItems() {
+        TObjectIntHashMap<ItemVO<Integer, Integer>> L1 = new TObjectIntHashMap<ItemVO<Integer, Integer>>();
+        for (int itemType = 1; itemType <= 2; itemType++) {
+            for (int item = 1; item <= 3; item++) {
+                L1.put(new ItemVO<Integer, Integer>(1, item, itemType), 2);
+            }
+        }
+
+        List<TupleVO> tuples = defineL2(L1, configuration(Arrays.asList(1), null));
+
+        assertThat(tuples.size(), is(3));
+        for (TupleVO tuple : tuples) {
+            assertThat(tuple.getItem1().getType(), is(1));
+            assertThat(tuple.getItem2().getType(), is(1));
+            assertThat(tuple.getSupport(), is(2));
+        }
+
+        // none of the actions has a rating
+        assertThat(defineL2(L1, configuration(Arrays.asList(1, 2), 0.0)).size(), is(0));
+    }
+
+    private List<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
+                                   ARMConfigurationInt configuration) {
+        List<TupleVO> tuples = new ArrayList<TupleVO>();
+        for (TupleVO tuple : ruleminingActionDAO.defineL2(L1, new TupleCounterMemoryTroveImpl(), configuration,
+                new ARMStatistics())) {
+            tuples.add(tuple);
+        }
+        return tuples;
+    }
+
+    private static ARMConfigurationInt configuration(List<Integer> itemTypes, Double ratingNeutral) {
+        ARMConfigurationInt configuration = new ARMConfigurationInt();
+        configuration.setTenantId(1);
+        configuration.setActionType(1);
+        configuration.setItemTypes(itemTypes);
+        configuration.setRatingNeutral(ratingNeutral);
+        configuration.setSupport(1);
+        return configuration;
+    }
+
+}
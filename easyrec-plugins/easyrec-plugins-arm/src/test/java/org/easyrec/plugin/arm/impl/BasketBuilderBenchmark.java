@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.arm.impl;
+
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.plugin.arm.TupleCounter;
+
+/**
+ * Compares the single pass {@link BasketBuilder} with int indexed {@link TupleCounterMemoryTroveImpl} to the former
+ * way of counting: one list of {@link ItemVO}s per basket counted by the object keyed {@link TupleCounterMemoryImpl}.
+ * The database round trips per basket of the former implementation are not part of the comparison.
+ */
+public class BasketBuilderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        BasketBuilderTest.Actions actions = new BasketBuilderTest.Actions(100000, 5000, 20000, 30, 7);
+
+        // first round warms up the JIT
+        BasketBuilderTest.countWithItemVOs(actions);
+        BasketBuilderTest.countWithBasketBuilder(actions, 1);
+
+        measure("ItemVO baskets, TupleCounterMemoryImpl", actions, 0);
+        measure("BasketBuilder, TupleCounterMemoryTroveImpl", actions, 1);
+        measure("BasketBuilder (4 threads), TupleCounterMemoryTroveImpl", actions, 4);
+    }
+
+    private static void measure(String name, BasketBuilderTest.Actions actions, int threads) throws Exception {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+
+        TupleCounter tupleCounter = threads == 0 ? BasketBuilderTest.countWithItemVOs(actions) :
+                BasketBuilderTest.countWithBasketBuilder(actions, threads);
+
+        long elapsed = System.nanoTime() - start;
+        long heap = usedHeap() - heapBefore;
+
+        System.out.println(name + ": " + tupleCounter.size() + " pairs in " + (elapsed / 1000000) + "ms, " +
+                (heap / 1024) + "KB heap");
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+}
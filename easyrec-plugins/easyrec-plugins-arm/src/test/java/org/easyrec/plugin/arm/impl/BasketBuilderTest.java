@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.arm.impl;
+
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.plugin.arm.TupleCounter;
+import org.easyrec.plugin.arm.model.TupleVO;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Checks that the single pass {@link BasketBuilder} with int indexed {@link TupleCounterMemoryTroveImpl} counts the
+ * same tuples as the former way of counting: one list of {@link ItemVO}s per basket counted by the object keyed
+ * {@link TupleCounterMemoryImpl}. See {@link BasketBuilderBenchmark} for the run time and heap comparison.
+ */
+public class BasketBuilderTest {
+
+    private static final int TENANT = 1;
+    private static final int ITEM_TYPE = 1;
+
+    @Test
+    public void count_sameTuplesAsItemVOCounting() throws Exception {
+        Actions actions = new Actions(2000, 500, 300, 20, 42);
+
+        Map<String, Integer> expected = tuples(countWithItemVOs(actions), 2);
+
+        assertThat(tuples(countWithBasketBuilder(actions, 1), 2), is(expected));
+        assertThat(tuples(countWithBasketBuilder(actions, 4), 2), is(expected));
+    }
+
+    @Test
+    public void count_duplicateItemsAndSingleItemBaskets() throws Exception {
+        TupleCounter tupleCounter = new TupleCounterMemoryTroveImpl();
+        tupleCounter.init(items(3));
+
+        BasketBuilder basketBuilder = new BasketBuilder(tupleCounter, 1);
+        // user 1 has the same item twice, which is no pair
+        basketBuilder.add(1, 0);
+        basketBuilder.add(1, 0);
+        basketBuilder.add(2, 0);
+        basketBuilder.add(2, 1);
+        basketBuilder.add(2, 1);
+        basketBuilder.add(3, 1);
+        basketBuilder.add(3, 0);
+        basketBuilder.add(3, 2);
+
+        assertThat(basketBuilder.finish(), is(2));
+
+        Map<String, Integer> tuples = tuples(tupleCounter, 1);
+        assertThat(tuples.size(), is(3));
+        assertThat(tuples.get("0-1"), is(2));
+        assertThat(tuples.get("0-2"), is(1));
+        assertThat(tuples.get("1-2"), is(1));
+    }
+
+    /**
+     * The former defineL2: a list of distinct ItemVOs per basket, filtered by L1.
+     */
+    static TupleCounter countWithItemVOs(Actions actions) throws Exception {
+        Set<ItemVO<Integer, Integer>> l1 = new LinkedHashSet<ItemVO<Integer, Integer>>(actions.l1);
+        TupleCounter tupleCounter = new TupleCounterMemoryImpl();
+        tupleCounter.init();
+
+        int from = 0;
+        while (from < actions.users.length) {
+            int to = from;
+            Set<ItemVO<Integer, Integer>> basket = new LinkedHashSet<ItemVO<Integer, Integer>>();
+
+            while (to < actions.users.length && actions.users[to] == actions.users[from]) {
+                ItemVO<Integer, Integer> item = new ItemVO<Integer, Integer>(TENANT, actions.items[to], ITEM_TYPE);
+                if (l1.contains(item)) basket.add(item);
+                to++;
+            }
+
+            List<ItemVO<Integer, Integer>> v = new ArrayList<ItemVO<Integer, Integer>>(basket);
+            for (int i = 0; i < v.size() - 1; i++) {
+                for (int j = i + 1; j < v.size(); j++) {
+                    tupleCounter.count(v.get(i), v.get(j));
+                }
+            }
+            from = to;
+        }
+
+        return tupleCounter;
+    }
+
+    static TupleCounter countWithBasketBuilder(Actions actions, int threads) throws Exception {
+        Map<Integer, Integer> indices = new HashMap<Integer, Integer>();
+        for (int i = 0; i < actions.l1.size(); i++) {
+            indices.put(actions.l1.get(i).getItem(), i);
+        }
+
+        TupleCounter tupleCounter = new TupleCounterMemoryTroveImpl();
+        tupleCounter.init(actions.l1);
+
+        BasketBuilder basketBuilder = new BasketBuilder(tupleCounter, threads);
+        for (int i = 0; i < actions.users.length; i++) {
+            Integer index = indices.get(actions.items[i]);
+            if (index != null) basketBuilder.add(actions.users[i], index);
+        }
+        basketBuilder.finish();
+
+        return tupleCounter;
+    }
+
+    private static Map<String, Integer> tuples(TupleCounter tupleCounter, int support) throws Exception {
+        Map<String, Integer> tuples = new HashMap<String, Integer>();
+
+        for (TupleVO tuple : tupleCounter.getTuples(support)) {
+            int item1 = tuple.getItem1().getItem();
+            int item2 = tuple.getItem2().getItem();
+
+            tuples.put(Math.min(item1, item2) + "-" + Math.max(item1, item2), tuple.getSupport());
+        }
+
+        return tuples;
+    }
+
+    private static List<ItemVO<Integer, Integer>> items(int count) {
+        List<ItemVO<Integer, Integer>> items = new ArrayList<ItemVO<Integer, Integer>>();
+        for (int i = 0; i < count; i++) {
+            items.add(new ItemVO<Integer, Integer>(TENANT, i, ITEM_TYPE));
+        }
+        return items;
+    }
+
+    /**
+     * Random actions ordered by user. L1 contains every item with an id smaller than the L1 size.
+     */
+    static class Actions {
+        private final int[] users;
+        private final int[] items;
+        private final List<ItemVO<Integer, Integer>> l1;
+
+        Actions(int numberOfUsers, int sizeL1, int numberOfItems, int maxBasketSize, long seed) {
+            Random random = new Random(seed);
+            List<Integer> userList = new ArrayList<Integer>();
+            List<Integer> itemList = new ArrayList<Integer>();
+
+            for (int user = 0; user < numberOfUsers; user++) {
+                int basketSize = 1 + random.nextInt(maxBasketSize);
+                for (int i = 0; i < basketSize; i++) {
+                    userList.add(user);
+                    // skewed towards small ids, i.e. popular items
+                    itemList.add((int) (numberOfItems * Math.pow(random.nextDouble(), 3)));
+                }
+            }
+
+            users = new int[userList.size()];
+            items = new int[itemList.size()];
+            for (int i = 0; i < users.length; i++) {
+                users[i] = userList.get(i);
+                items[i] = itemList.get(i);
+            }
+            l1 = items(sizeL1);
+        }
+    }
+}
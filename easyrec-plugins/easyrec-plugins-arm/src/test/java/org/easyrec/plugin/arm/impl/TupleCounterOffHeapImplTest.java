@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.arm.impl;
+
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.plugin.arm.TupleCounter;
+import org.easyrec.plugin.arm.model.TupleVO;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares the {@link TupleCounterOffHeapImpl} with the {@link TupleCounterMemoryTroveImpl}, once with all pairs in
+ * its table and once with a memory budget small enough to spill the pairs to run files.
+ */
+public class TupleCounterOffHeapImplTest {
+
+    private static final int TENANT = 1;
+    private static final int ITEM_TYPE = 1;
+    private static final int NUMBER_OF_ITEMS = 400;
+
+    @Test
+    public void tuples_withoutSpilling() throws Exception {
+        TupleCounterOffHeapImpl tupleCounter = new TupleCounterOffHeapImpl();
+        TupleCounter expected = new TupleCounterMemoryTroveImpl();
+
+        count(20000, 42, tupleCounter, expected);
+
+        assertThat(tupleCounter.getNumberOfRuns(), is(0));
+        assertThat(tupleCounter.size(), is(expected.size()));
+        assertThat(tuples(tupleCounter, 1), is(tuples(expected, 1)));
+        assertThat(tuples(tupleCounter, 3), is(tuples(expected, 3)));
+    }
+
+    @Test
+    public void tuples_withSpilling() throws Exception {
+        // a table of 2048 slots, i.e. a run file every 1024 distinct pairs
+        TupleCounterOffHeapImpl tupleCounter = new TupleCounterOffHeapImpl(2048 * 12);
+        TupleCounter expected = new TupleCounterMemoryTroveImpl();
+
+        count(50000, 7, tupleCounter, expected);
+
+        assertThat(tupleCounter.getNumberOfRuns() > 1, is(true));
+        assertThat(tupleCounter.size(), is(expected.size()));
+        assertThat(tuples(tupleCounter, 1), is(tuples(expected, 1)));
+        assertThat(tuples(tupleCounter, 3), is(tuples(expected, 3)));
+        // the tuples can be read more than once
+        assertThat(tuples(tupleCounter, 3), is(tuples(expected, 3)));
+    }
+
+    @Test
+    public void init_deletesRuns() throws Exception {
+        File spillDirectory = new File(System.getProperty("java.io.tmpdir"), "arm-pairs-test");
+        spillDirectory.mkdirs();
+
+        TupleCounterOffHeapImpl tupleCounter = new TupleCounterOffHeapImpl(1024 * 12);
+        tupleCounter.setSpillDirectory(spillDirectory);
+
+        count(20000, 3, tupleCounter, new TupleCounterMemoryTroveImpl());
+        assertThat(tupleCounter.getNumberOfRuns() > 0, is(true));
+        assertThat(spillDirectory.list().length, is(tupleCounter.getNumberOfRuns()));
+
+        tupleCounter.init();
+
+        assertThat(tupleCounter.getNumberOfRuns(), is(0));
+        assertThat(tupleCounter.size(), is(0));
+        assertThat(spillDirectory.list().length, is(0));
+        spillDirectory.delete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMemoryBudget_tooSmall() {
+        new TupleCounterOffHeapImpl().setMemoryBudget(1024);
+    }
+
+    private static void count(int numberOfPairs, long seed, TupleCounter... tupleCounters) throws Exception {
+        List<ItemVO<Integer, Integer>> items = new ArrayList<ItemVO<Integer, Integer>>();
+        for (int i = 0; i < NUMBER_OF_ITEMS; i++) {
+            items.add(new ItemVO<Integer, Integer>(TENANT, i, ITEM_TYPE));
+        }
+        for (TupleCounter tupleCounter : tupleCounters) {
+            tupleCounter.init(items);
+        }
+
+        Random random = new Random(seed);
+        for (int i = 0; i < numberOfPairs; i++) {
+            // skewed towards small ids, so some pairs reach a higher support
+            int item1 = (int) (NUMBER_OF_ITEMS * Math.pow(random.nextDouble(), 2));
+            int item2 = (int) (NUMBER_OF_ITEMS * Math.pow(random.nextDouble(), 2));
+            if (item1 == item2) continue;
+
+            for (TupleCounter tupleCounter : tupleCounters) {
+                tupleCounter.count(item1, item2, 1);
+            }
+        }
+    }
+
+    private static Map<String, Integer> tuples(TupleCounter tupleCounter, int support) throws Exception {
+        Map<String, Integer> tuples = new HashMap<String, Integer>();
+
+        for (TupleVO tuple : tupleCounter.tuples(support)) {
+            int item1 = tuple.getItem1().getItem();
+            int item2 = tuple.getItem2().getItem();
+
+            tuples.put(Math.min(item1, item2) + "-" + Math.max(item1, item2), tuple.getSupport());
+        }
+
+        return tuples;
+    }
+}
@@ -21,11 +21,13 @@ package org.easyrec.plugin.itemitem;
 
 import org.easyrec.model.core.AssociatedItemVO;
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingVO;
 import org.easyrec.plugin.itemitem.model.UserAssoc;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
 import org.easyrec.plugin.itemitem.store.dao.UserAssocDAO;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Strategy for computing predictions.
@@ -68,6 +70,32 @@ public interface PredictionComputationStrategy {
     void predictForUserAndItem(Integer userId, ItemVO<Integer, Integer> item,
                                List<AssociatedItemVO<Integer, Integer>> itemAssocs);
 
+    /**
+     * Calculates the prediction what {@code userId} would have rated {@code item} like {@link
+     * #predictForUserAndItem(Integer, org.easyrec.model.core.ItemVO, java.util.List)} but returns it instead of storing
+     * it. Unlike {@link #predictForUserAndItem(Integer, org.easyrec.model.core.ItemVO, java.util.List)} this method
+     * may be called by several threads at once between {@link #beginPrediction(UserAssoc, int, int, boolean)} and
+     * {@link #endPrediction()}.
+     *
+     * @param userId        User to use for prediction.
+     * @param item          Item to use for prediction.
+     * @param itemAssocs    Items similar to {@code item}.
+     * @param ratingsOfUser The ratings of {@code userId} by item id.
+     * @return The prediction or {@code null} if no prediction can be made.
+     */
+    UserAssoc computePrediction(Integer userId, ItemVO<Integer, Integer> item,
+                                List<AssociatedItemVO<Integer, Integer>> itemAssocs,
+                                Map<Integer, RatingVO<Integer, Integer>> ratingsOfUser);
+
+    /**
+     * Stores predictions created by {@link #computePrediction(Integer, org.easyrec.model.core.ItemVO, java.util.List,
+     * java.util.Map)} with a single call to the user association DAO.
+     *
+     * @param predictions Predictions to store.
+     * @return Number of stored predictions.
+     */
+    int storePredictions(List<UserAssoc> predictions);
+
     /**
      * Set the action DAO to use for quering actions.
      *
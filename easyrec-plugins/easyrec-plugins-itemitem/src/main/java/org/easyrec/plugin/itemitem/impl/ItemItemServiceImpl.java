@@ -23,6 +23,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.AssociatedItemVO;
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingVO;
 import org.easyrec.model.core.transfer.IAConstraintVO;
 import org.easyrec.plugin.itemitem.ItemItemService;
 import org.easyrec.plugin.itemitem.PredictionComputationStrategy;
@@ -34,11 +35,22 @@ import org.easyrec.plugin.stats.GeneratorStatistics;
 import org.easyrec.plugin.support.ExecutablePluginSupport;
 import org.easyrec.service.core.ItemAssocService;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Implementation of the item-item algorithm. <p/> <p> <b>Company:&nbsp;</b> SAT, Research Studios Austria </p> <p/> <p>
+ * Implementation of the item-item algorithm. <p/> Predictions are calculated by a pool of threads, each of them
+ * predicting the ratings of a partition of the users. <p/> <p> <b>Company:&nbsp;</b> SAT, Research Studios Austria </p> <p/> <p>
  * <b>Copyright:&nbsp;</b> (c) 2009 </p> <p/> <p> <b>last modified:</b><br/> $Author$<br/> $Date$<br/> $Revision$ </p>
  *
  * @author Patrick Marschik
@@ -46,6 +58,9 @@ import java.util.List;
 public class ItemItemServiceImpl implements ItemItemService {
     // ------------------------------ FIELDS ------------------------------
 
+    private static final int USER_PARTITION_SIZE = 64;
+    private static final int USER_ASSOC_BUFFER = 10000;
+
     protected final Log logger = LogFactory.getLog(getClass());
     private final ItemAssocService itemAssocService;
     private final ActionDAO actionDao;
@@ -53,6 +68,7 @@ public class ItemItemServiceImpl implements ItemItemService {
     private ItemItemConfiguration configuration;
     private PredictionComputationStrategy predictionComputationStrategy;
     private SimilarityCalculationStrategy similarityCalculationStrategy;
+    private int threads = Runtime.getRuntime().availableProcessors();
 
     // --------------------------- CONSTRUCTORS ---------------------------
 
@@ -81,6 +97,19 @@ public class ItemItemServiceImpl implements ItemItemService {
         this.similarityCalculationStrategy = similarityCalculationStrategy;
     }
 
+    public int getThreads() { return threads; }
+
+    /**
+     * The number of threads calculating predictions, defaults to the number of processors.
+     *
+     * @param threads The number of threads calculating predictions.
+     */
+    public void setThreads(final int threads) {
+        if (threads <= 0) throw new IllegalArgumentException("'threads' must be greater than 0");
+
+        this.threads = threads;
+    }
+
     // ------------------------ INTERFACE METHODS ------------------------
 
 
@@ -117,7 +146,7 @@ public class ItemItemServiceImpl implements ItemItemService {
 
         if (logger.isInfoEnabled()) logger.info("Starting prediction computation.");
 
-        Date start = new Date();
+        final long start = System.currentTimeMillis();
 
         final List<Integer> users = actionDao.getUsersForTenant(tenantId);
         final List<ItemVO<Integer, Integer>> items = actionDao
@@ -127,35 +156,96 @@ public class ItemItemServiceImpl implements ItemItemService {
                 itemTypeId);
         final UserAssoc sample = new UserAssoc(null, changeDate, itemSample, sourceTypeId, tenantId, null);
 
-        predictionComputationStrategy
-                .beginPrediction(sample, minRatingValue, maxRatingValue, configuration.isNormalizePredictions());
-
-        final int TOTAL_STEPS = items.size();
-        int currentStep = 0;
-
         final IAConstraintVO<Integer, Integer> constraints = new IAConstraintVO<Integer, Integer>(
                 null, viewTypeId, sourceTypeId, sourceInfo, tenantId, true, null);
 
-        for (final ItemVO<Integer, Integer> item : items) {
-            if (control != null) control.updateProgress(
-                    String.format("Calculating predictions %d/%d - %.2f%%", currentStep, TOTAL_STEPS,
-                            ((double) currentStep / (double) TOTAL_STEPS) * 100.00));
+        // the similar items are loaded once and shared by all threads, items without similar items can't be predicted
+        final Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> itemAssocs =
+                new LinkedHashMap<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>>();
 
-            final List<AssociatedItemVO<Integer, Integer>> itemAssocs = itemAssocService
+        for (final ItemVO<Integer, Integer> item : items) {
+            final List<AssociatedItemVO<Integer, Integer>> itemAssocsOfItem = itemAssocService
                     .getItemsFrom(itemTypeId, assocTypeId, item, constraints);
 
-            for (final Integer user : users)
-                if (!actionDao.didUserRateItem(user, item, actionTypeId))
-                    predictionComputationStrategy.predictForUserAndItem(user, item, itemAssocs);
+            if (itemAssocsOfItem != null && !itemAssocsOfItem.isEmpty()) itemAssocs.put(item, itemAssocsOfItem);
         }
 
-        predictionComputationStrategy.endPrediction();
+        predictionComputationStrategy
+                .beginPrediction(sample, minRatingValue, maxRatingValue, configuration.isNormalizePredictions());
 
-        Date end = new Date();
-        double time = (end.getTime() - start.getTime()) / 1000L;
+        final int numberOfUsers = users.size();
+        final int numberOfPartitions = (numberOfUsers + USER_PARTITION_SIZE - 1) / USER_PARTITION_SIZE;
+        // every thread collects the ratings of the current user in its own map
+        final ThreadLocal<Map<Integer, RatingVO<Integer, Integer>>> ratingsOfUsers =
+                new ThreadLocal<Map<Integer, RatingVO<Integer, Integer>>>() {
+                    @Override
+                    protected Map<Integer, RatingVO<Integer, Integer>> initialValue() {
+                        return new HashMap<Integer, RatingVO<Integer, Integer>>();
+                    }
+                };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CompletionService<List<UserAssoc>> completionService =
+                new ExecutorCompletionService<List<UserAssoc>>(executor);
+
+        int predictionsCreated = 0;
+        boolean aborted = false;
+        final List<UserAssoc> predictions = new ArrayList<UserAssoc>(USER_ASSOC_BUFFER);
+
+        try {
+            int submitted = 0;
+            int completed = 0;
+
+            // a few partitions per thread are in flight, so the pending predictions stay small
+            while (submitted < numberOfPartitions && submitted < threads * 2) {
+                completionService.submit(new UserPartition(submitted++, users, itemAssocs, ratingsOfUsers, tenantId,
+                        itemTypeId));
+            }
+
+            while (completed < submitted) {
+                final List<UserAssoc> result = completionService.take().get();
+                completed++;
+
+                if (control != null && control.isAbortRequested()) {
+                    aborted = true;
+                    break;
+                }
+
+                if (submitted < numberOfPartitions) {
+                    completionService.submit(new UserPartition(submitted++, users, itemAssocs, ratingsOfUsers,
+                            tenantId, itemTypeId));
+                }
+
+                predictions.addAll(result);
+                predictionsCreated += result.size();
+
+                if (predictions.size() >= USER_ASSOC_BUFFER) {
+                    predictionComputationStrategy.storePredictions(predictions);
+                    predictions.clear();
+                }
+
+                if (control != null) {
+                    final int currentUsers = Math.min(completed * USER_PARTITION_SIZE, numberOfUsers);
+                    control.updateProgress(String.format("Calculating predictions %d/%d - %.2f%%", currentUsers,
+                            numberOfUsers, ((double) currentUsers / (double) numberOfUsers) * 100.00));
+                }
+            }
+
+            // an aborted computation doesn't store the predictions which are still pending
+            if (!aborted && predictions.size() > 0) predictionComputationStrategy.storePredictions(predictions);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Prediction computation was interrupted.", e);
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("Prediction computation failed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            predictionComputationStrategy.endPrediction();
+        }
 
         if (logger.isInfoEnabled())
-            logger.info(String.format("Calculating similarities for %d took %.2f seconds", tenantId, time));
+            logger.info(String.format("Calculating %d predictions for %d with %d threads took %.2f seconds",
+                    predictionsCreated, tenantId, threads, (System.currentTimeMillis() - start) / 1000.0));
     }
 
     // -------------------------- OTHER METHODS --------------------------
@@ -167,4 +257,61 @@ public class ItemItemServiceImpl implements ItemItemService {
         if (predictionComputationStrategy == null)
             throw new NullPointerException("predictionComputationStrategy can't be null.");
     }
+
+    // -------------------------- INNER CLASSES --------------------------
+
+    /**
+     * Predicts the ratings of a partition of consecutive users for all items they didn't rate.
+     */
+    private class UserPartition implements Callable<List<UserAssoc>> {
+        private final int partition;
+        private final List<Integer> users;
+        private final Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> itemAssocs;
+        private final ThreadLocal<Map<Integer, RatingVO<Integer, Integer>>> ratingsOfUsers;
+        private final Integer tenantId;
+        private final Integer itemTypeId;
+
+        private UserPartition(final int partition, final List<Integer> users,
+                              final Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> itemAssocs,
+                              final ThreadLocal<Map<Integer, RatingVO<Integer, Integer>>> ratingsOfUsers,
+                              final Integer tenantId, final Integer itemTypeId) {
+            this.partition = partition;
+            this.users = users;
+            this.itemAssocs = itemAssocs;
+            this.ratingsOfUsers = ratingsOfUsers;
+            this.tenantId = tenantId;
+            this.itemTypeId = itemTypeId;
+        }
+
+        public List<UserAssoc> call() {
+            final Map<Integer, RatingVO<Integer, Integer>> ratingsOfUser = ratingsOfUsers.get();
+            final int end = Math.min((partition + 1) * USER_PARTITION_SIZE, users.size());
+            final List<UserAssoc> result = new ArrayList<UserAssoc>();
+
+            for (final Integer user : users.subList(partition * USER_PARTITION_SIZE, end)) {
+                ratingsOfUser.clear();
+                for (final RatingVO<Integer, Integer> rating : actionDao
+                        .getLatestRatingsForTenant(tenantId, itemTypeId, null, user, null)) {
+                    // only the first rating of an item counts
+                    if (!ratingsOfUser.containsKey(rating.getItem().getItem()))
+                        ratingsOfUser.put(rating.getItem().getItem(), rating);
+                }
+
+                for (final Map.Entry<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> entry :
+                        itemAssocs.entrySet()) {
+                    final ItemVO<Integer, Integer> item = entry.getKey();
+
+                    // the ratings of the user replace a query per item whether the user rated it
+                    if (ratingsOfUser.containsKey(item.getItem())) continue;
+
+                    final UserAssoc prediction = predictionComputationStrategy
+                            .computePrediction(user, item, entry.getValue(), ratingsOfUser);
+
+                    if (prediction != null) result.add(prediction);
+                }
+            }
+
+            return result;
+        }
+    }
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.itemitem.impl;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.easyrec.model.core.RatingVO;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Sparse user x item matrix of ratings held in primitive arrays.
+ * <p/>
+ * The ratings are stored twice: by column (compressed sparse column, the users who rated an item) and by row
+ * (compressed sparse row, the items a user rated, i.e. an inverted index over the users). Columns are the items and
+ * rows are the users, both in ascending order of their ids. If a user rated an item more than once the first rating
+ * is kept.
+ * <p/>
+ * The arrays are shared, not copied, so callers must not modify them.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+final class SparseRatingMatrix {
+    // ------------------------------ FIELDS ------------------------------
+
+    private final int[] itemIds;
+    private final int[] userIds;
+
+    // the ratings of column c are at columnStart[c] .. columnStart[c + 1] - 1 of columnRows and columnValues
+    private final int[] columnStart;
+    private final int[] columnRows;
+    private final float[] columnValues;
+
+    // the ratings of row r are at rowStart[r] .. rowStart[r + 1] - 1 of rowColumns and rowValues
+    private final int[] rowStart;
+    private final int[] rowColumns;
+    private final float[] rowValues;
+
+    // --------------------------- CONSTRUCTORS ---------------------------
+
+    SparseRatingMatrix(final Collection<? extends RatingVO<Integer, Integer>> ratings) {
+        if (ratings == null) throw new IllegalArgumentException("Missing 'ratings'");
+
+        final int size = ratings.size();
+        final int[] users = new int[size];
+        final int[] items = new int[size];
+        final float[] values = new float[size];
+
+        int n = 0;
+        for (final RatingVO<Integer, Integer> rating : ratings) {
+            users[n] = rating.getUser();
+            items[n] = rating.getItem().getItem();
+            values[n] = rating.getRatingValue().floatValue();
+            n++;
+        }
+
+        itemIds = distinct(items);
+        userIds = distinct(users);
+
+        final TIntIntHashMap columns = indices(itemIds);
+        final TIntIntHashMap rows = indices(userIds);
+
+        for (int i = 0; i < size; i++) {
+            items[i] = columns.get(items[i]);
+            users[i] = rows.get(users[i]);
+        }
+
+        // places the ratings by column in input order, then sorts every column by row
+        final int[] start = new int[itemIds.length + 1];
+        for (int i = 0; i < size; i++) {
+            start[items[i] + 1]++;
+        }
+        for (int c = 0; c < itemIds.length; c++) {
+            start[c + 1] += start[c];
+        }
+
+        final int[] next = Arrays.copyOf(start, itemIds.length);
+        final long[] entries = new long[size];
+        for (int i = 0; i < size; i++) {
+            // the position breaks ties, so the first rating of a user comes first
+            entries[next[items[i]]++] = ((long) users[i] << 32) | i;
+        }
+
+        columnStart = new int[itemIds.length + 1];
+        int[] cRows = new int[size];
+        float[] cValues = new float[size];
+        final int[] rowCounts = new int[userIds.length + 1];
+        n = 0;
+
+        for (int c = 0; c < itemIds.length; c++) {
+            Arrays.sort(entries, start[c], start[c + 1]);
+            columnStart[c] = n;
+
+            int lastRow = -1;
+            for (int p = start[c]; p < start[c + 1]; p++) {
+                final int row = (int) (entries[p] >>> 32);
+                if (row == lastRow) continue;
+
+                cRows[n] = row;
+                cValues[n] = values[(int) entries[p]];
+                rowCounts[row + 1]++;
+                lastRow = row;
+                n++;
+            }
+        }
+        columnStart[itemIds.length] = n;
+
+        columnRows = n == size ? cRows : Arrays.copyOf(cRows, n);
+        columnValues = n == size ? cValues : Arrays.copyOf(cValues, n);
+
+        // the rows are filled column by column, so the columns of every row are sorted
+        rowStart = rowCounts;
+        for (int r = 0; r < userIds.length; r++) {
+            rowStart[r + 1] += rowStart[r];
+        }
+        rowColumns = new int[n];
+        rowValues = new float[n];
+
+        final int[] rowNext = Arrays.copyOf(rowStart, userIds.length);
+        for (int c = 0; c < itemIds.length; c++) {
+            for (int p = columnStart[c]; p < columnStart[c + 1]; p++) {
+                final int q = rowNext[columnRows[p]]++;
+                rowColumns[q] = c;
+                rowValues[q] = columnValues[p];
+            }
+        }
+    }
+
+    // -------------------------- OTHER METHODS --------------------------
+
+    int getNumberOfItems() { return itemIds.length; }
+
+    int getNumberOfUsers() { return userIds.length; }
+
+    int getNumberOfRatings() { return columnRows.length; }
+
+    int getItemId(final int column) { return itemIds[column]; }
+
+    int getUserId(final int row) { return userIds[row]; }
+
+    int[] getColumnStart() { return columnStart; }
+
+    int[] getColumnRows() { return columnRows; }
+
+    float[] getColumnValues() { return columnValues; }
+
+    int[] getRowStart() { return rowStart; }
+
+    int[] getRowColumns() { return rowColumns; }
+
+    float[] getRowValues() { return rowValues; }
+
+    /**
+     * @return the average rating of every item, indexed by column
+     */
+    double[] getColumnMeans() {
+        return means(columnStart, columnValues);
+    }
+
+    /**
+     * @return the average rating of every user, indexed by row
+     */
+    double[] getRowMeans() {
+        return means(rowStart, rowValues);
+    }
+
+    private static double[] means(final int[] start, final float[] values) {
+        final double[] means = new double[start.length - 1];
+
+        for (int i = 0; i < means.length; i++) {
+            double sum = 0.0;
+            for (int p = start[i]; p < start[i + 1]; p++) {
+                sum += values[p];
+            }
+            if (start[i + 1] > start[i]) means[i] = sum / (start[i + 1] - start[i]);
+        }
+
+        return means;
+    }
+
+    private static int[] distinct(final int[] ids) {
+        final int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || sorted[i] != sorted[n - 1]) sorted[n++] = sorted[i];
+        }
+
+        return Arrays.copyOf(sorted, n);
+    }
+
+    private static TIntIntHashMap indices(final int[] ids) {
+        final TIntIntHashMap indices = new TIntIntHashMap(Math.max(ids.length * 2, 16));
+
+        for (int i = 0; i < ids.length; i++) {
+            indices.put(ids[i], i);
+        }
+
+        return indices;
+    }
+}
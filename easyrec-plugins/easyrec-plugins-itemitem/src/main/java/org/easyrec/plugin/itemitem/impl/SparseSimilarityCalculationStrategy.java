@@ -0,0 +1,423 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.itemitem.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.model.core.ItemAssocVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingVO;
+import org.easyrec.plugin.itemitem.ItemItemService;
+import org.easyrec.plugin.itemitem.SimilarityCalculationStrategy;
+import org.easyrec.plugin.itemitem.model.SimilarityCalculationType;
+import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
+import org.easyrec.plugin.support.ExecutablePluginSupport;
+import org.easyrec.service.core.ItemAssocService;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Calculates the similarities of all items from a {@link SparseRatingMatrix} loaded with a single query, instead of
+ * querying the ratings of every pair of items.
+ * <p/>
+ * The measures are the ones of {@link CosineSimilarityCalculationStrategy},
+ * {@link AdjustedCosineSimilarityCalculationStrategy} and {@link PearsonSimilarityCalculationStrategy}: the ratings
+ * are reduced by nothing, the average rating of the user or the average rating of the item, and the sums run over the
+ * users who rated both items. For every item the sums with all items rated by the same users are accumulated by
+ * walking its column and the rows of its users, so pairs of items without common users cost nothing.
+ * <p/>
+ * The items are split into chunks that are computed by a pool of threads. Only the {@code maxNeighbours} most
+ * similar items of every item are kept and stored.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class SparseSimilarityCalculationStrategy implements SimilarityCalculationStrategy {
+    // ------------------------------ FIELDS ------------------------------
+
+    public static final int DEFAULT_MAX_NEIGHBOURS = 50;
+
+    private static final int CHUNK_SIZE = 64;
+    private static final int ITEM_ASSOC_BUFFER = 10000;
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final SimilarityCalculationType type;
+    private ItemAssocService itemAssocService;
+    private ActionDAO actionDao;
+    private int maxNeighbours = DEFAULT_MAX_NEIGHBOURS;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    // --------------------------- CONSTRUCTORS ---------------------------
+
+    public SparseSimilarityCalculationStrategy(final SimilarityCalculationType type) {
+        if (type == null) throw new IllegalArgumentException("Missing 'type'");
+
+        this.type = type;
+    }
+
+    public SparseSimilarityCalculationStrategy(final SimilarityCalculationType type, final ActionDAO actionDao,
+                                               final ItemAssocService itemAssocService) {
+        this(type);
+        this.actionDao = actionDao;
+        this.itemAssocService = itemAssocService;
+    }
+
+    // --------------------- GETTER / SETTER METHODS ---------------------
+
+    public void setItemAssocService(final ItemAssocService itemAssocService) {
+        this.itemAssocService = itemAssocService;
+    }
+
+    public void setActionDAO(final ActionDAO actionDao) {
+        this.actionDao = actionDao;
+    }
+
+    public int getMaxNeighbours() { return maxNeighbours; }
+
+    /**
+     * The number of most similar items stored for every item.
+     *
+     * @param maxNeighbours The number of most similar items stored for every item.
+     */
+    public void setMaxNeighbours(final int maxNeighbours) {
+        if (maxNeighbours <= 0) throw new IllegalArgumentException("'maxNeighbours' must be greater than 0");
+
+        this.maxNeighbours = maxNeighbours;
+    }
+
+    public int getThreads() { return threads; }
+
+    /**
+     * The number of threads calculating similarities, defaults to the number of processors.
+     *
+     * @param threads The number of threads calculating similarities.
+     */
+    public void setThreads(final int threads) {
+        if (threads <= 0) throw new IllegalArgumentException("'threads' must be greater than 0");
+
+        this.threads = threads;
+    }
+
+    public SimilarityCalculationType getType() { return type; }
+
+    // --------------------- Interface SimilarityCalculationStrategy ---------------------
+
+    public String getSourceInfo() {
+        switch (type) {
+            case COSINE:
+                return ItemItemService.SOURCE_INFO_COSINE;
+            case ADJUSTED_COSINE:
+                return ItemItemService.SOURCE_INFO_COSINE_ADJUSTED;
+            default:
+                return ItemItemService.SOURCE_INFO_PEARSON;
+        }
+    }
+
+    public int calculateSimilarity(final Integer tenantId, final Integer actionTypeId, final Integer itemTypeId,
+                                   final Integer assocTypeId, final Integer sourceTypeId, final Integer viewTypeId,
+                                   final Date changeDate, final ExecutablePluginSupport.ExecutionControl control) {
+        if (actionDao == null || itemAssocService == null) throw new IllegalStateException("DAOs not initialized");
+
+        long start = System.currentTimeMillis();
+        final List<RatingVO<Integer, Integer>> ratings = actionDao
+                .getRatingsForTenant(tenantId, itemTypeId, actionTypeId);
+        final SparseRatingMatrix matrix = new SparseRatingMatrix(ratings);
+
+        if (logger.isInfoEnabled()) {
+            logger.info("Loaded " + matrix.getNumberOfRatings() + " ratings of " + matrix.getNumberOfUsers() +
+                    " users on " + matrix.getNumberOfItems() + " items in " + (System.currentTimeMillis() - start) +
+                    "ms.");
+        }
+
+        final double[] rowOffsets = type == SimilarityCalculationType.ADJUSTED_COSINE ? matrix.getRowMeans() :
+                new double[matrix.getNumberOfUsers()];
+        final double[] columnOffsets = type == SimilarityCalculationType.PEARSON ? matrix.getColumnMeans() :
+                new double[matrix.getNumberOfItems()];
+
+        final int numberOfItems = matrix.getNumberOfItems();
+        final int numberOfChunks = (numberOfItems + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        // every thread has its own accumulators
+        final ThreadLocal<Accumulator> accumulators = new ThreadLocal<Accumulator>() {
+            @Override
+            protected Accumulator initialValue() {
+                return new Accumulator(matrix, rowOffsets, columnOffsets, maxNeighbours);
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CompletionService<List<ItemAssocVO<Integer, Integer>>> completionService =
+                new ExecutorCompletionService<List<ItemAssocVO<Integer, Integer>>>(executor);
+
+        int itemAssocsCreated = 0;
+        boolean aborted = false;
+        List<ItemAssocVO<Integer, Integer>> itemAssocs = new ArrayList<ItemAssocVO<Integer, Integer>>(
+                ITEM_ASSOC_BUFFER);
+
+        try {
+            int submitted = 0;
+            int completed = 0;
+
+            // a few chunks per thread are in flight, so the pending results stay small
+            while (submitted < numberOfChunks && submitted < threads * 2) {
+                completionService.submit(new Chunk(submitted++, matrix, accumulators, tenantId, itemTypeId,
+                        assocTypeId, sourceTypeId, viewTypeId, changeDate));
+            }
+
+            while (completed < submitted) {
+                final List<ItemAssocVO<Integer, Integer>> result = completionService.take().get();
+                completed++;
+
+                if (control != null && control.isAbortRequested()) {
+                    aborted = true;
+                    break;
+                }
+
+                if (submitted < numberOfChunks) {
+                    completionService.submit(new Chunk(submitted++, matrix, accumulators, tenantId, itemTypeId,
+                            assocTypeId, sourceTypeId, viewTypeId, changeDate));
+                }
+
+                itemAssocs.addAll(result);
+                itemAssocsCreated += result.size();
+
+                if (itemAssocs.size() >= ITEM_ASSOC_BUFFER) {
+                    itemAssocService.insertOrUpdateItemAssocs(itemAssocs);
+                    itemAssocs.clear();
+                }
+
+                if (control != null) {
+                    final int items = Math.min(completed * CHUNK_SIZE, numberOfItems);
+                    control.updateProgress(String.format("Calculating similarity %d/%d - %.2f%%", items,
+                            numberOfItems, ((double) items / (double) numberOfItems) * 100.0));
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Similarity calculation was interrupted.", e);
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("Similarity calculation failed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // an aborted calculation doesn't store the similarities which are still pending
+        if (!aborted && itemAssocs.size() > 0) itemAssocService.insertOrUpdateItemAssocs(itemAssocs);
+
+        if (logger.isInfoEnabled()) {
+            logger.info("Calculated " + itemAssocsCreated + " similarities with " + threads + " threads in " +
+                    (System.currentTimeMillis() - start) + "ms.");
+        }
+
+        return itemAssocsCreated;
+    }
+
+    // -------------------------- INNER CLASSES --------------------------
+
+    /**
+     * Calculates the similarities of a chunk of consecutive items.
+     */
+    private class Chunk implements Callable<List<ItemAssocVO<Integer, Integer>>> {
+        private final int chunk;
+        private final SparseRatingMatrix matrix;
+        private final ThreadLocal<Accumulator> accumulators;
+        private final Integer tenantId;
+        private final Integer itemTypeId;
+        private final Integer assocTypeId;
+        private final Integer sourceTypeId;
+        private final Integer viewTypeId;
+        private final Date changeDate;
+
+        private Chunk(final int chunk, final SparseRatingMatrix matrix, final ThreadLocal<Accumulator> accumulators,
+                      final Integer tenantId, final Integer itemTypeId, final Integer assocTypeId,
+                      final Integer sourceTypeId, final Integer viewTypeId, final Date changeDate) {
+            this.chunk = chunk;
+            this.matrix = matrix;
+            this.accumulators = accumulators;
+            this.tenantId = tenantId;
+            this.itemTypeId = itemTypeId;
+            this.assocTypeId = assocTypeId;
+            this.sourceTypeId = sourceTypeId;
+            this.viewTypeId = viewTypeId;
+            this.changeDate = changeDate;
+        }
+
+        public List<ItemAssocVO<Integer, Integer>> call() {
+            final Accumulator accumulator = accumulators.get();
+            final Neighbours neighbours = accumulator.neighbours;
+            final int end = Math.min((chunk + 1) * CHUNK_SIZE, matrix.getNumberOfItems());
+            final List<ItemAssocVO<Integer, Integer>> result = new ArrayList<ItemAssocVO<Integer, Integer>>();
+
+            for (int column = chunk * CHUNK_SIZE; column < end; column++) {
+                accumulator.calculate(column);
+
+                final ItemVO<Integer, Integer> item1 = item(column);
+                for (int i = 0; i < neighbours.size; i++) {
+                    result.add(new ItemAssocVO<Integer, Integer>(tenantId, item1, assocTypeId, neighbours.values[i],
+                            item(neighbours.columns[i]), sourceTypeId, getSourceInfo(), viewTypeId, null,
+                            changeDate));
+                }
+            }
+
+            return result;
+        }
+
+        private ItemVO<Integer, Integer> item(final int column) {
+            return new ItemVO<Integer, Integer>(tenantId, matrix.getItemId(column), itemTypeId);
+        }
+    }
+
+    /**
+     * Accumulates the sums of one item with all other items, indexed by column.
+     */
+    private static final class Accumulator {
+        private final SparseRatingMatrix matrix;
+        private final double[] rowOffsets;
+        private final double[] columnOffsets;
+        private final double[] numerator;
+        private final double[] denominator1;
+        private final double[] denominator2;
+        private final boolean[] touched;
+        private final int[] touchedColumns;
+        private final Neighbours neighbours;
+
+        private Accumulator(final SparseRatingMatrix matrix, final double[] rowOffsets, final double[] columnOffsets,
+                            final int maxNeighbours) {
+            final int numberOfItems = matrix.getNumberOfItems();
+
+            this.matrix = matrix;
+            this.rowOffsets = rowOffsets;
+            this.columnOffsets = columnOffsets;
+            this.numerator = new double[numberOfItems];
+            this.denominator1 = new double[numberOfItems];
+            this.denominator2 = new double[numberOfItems];
+            this.touched = new boolean[numberOfItems];
+            this.touchedColumns = new int[numberOfItems];
+            this.neighbours = new Neighbours(maxNeighbours);
+        }
+
+        /**
+         * Fills {@link #neighbours} with the most similar items of the item in the given column.
+         */
+        private void calculate(final int column) {
+            final int[] columnStart = matrix.getColumnStart();
+            final int[] columnRows = matrix.getColumnRows();
+            final float[] columnValues = matrix.getColumnValues();
+            final int[] rowStart = matrix.getRowStart();
+            final int[] rowColumns = matrix.getRowColumns();
+            final float[] rowValues = matrix.getRowValues();
+
+            int numberOfTouched = 0;
+
+            for (int p = columnStart[column]; p < columnStart[column + 1]; p++) {
+                final int row = columnRows[p];
+                final double rating1diff = columnValues[p] - rowOffsets[row] - columnOffsets[column];
+                final double rating1diffSquared = rating1diff * rating1diff;
+
+                for (int q = rowStart[row]; q < rowStart[row + 1]; q++) {
+                    final int other = rowColumns[q];
+                    if (other == column) continue;
+
+                    final double rating2diff = rowValues[q] - rowOffsets[row] - columnOffsets[other];
+
+                    if (!touched[other]) {
+                        touched[other] = true;
+                        touchedColumns[numberOfTouched++] = other;
+                    }
+                    numerator[other] += rating1diff * rating2diff;
+                    denominator1[other] += rating1diffSquared;
+                    denominator2[other] += rating2diff * rating2diff;
+                }
+            }
+
+            neighbours.clear();
+
+            for (int i = 0; i < numberOfTouched; i++) {
+                final int other = touchedColumns[i];
+                final double denominator = Math.sqrt(denominator1[other]) * Math.sqrt(denominator2[other]);
+
+                if (denominator != 0.0) {
+                    final double similarityValue = numerator[other] / denominator;
+
+                    if (!Double.isNaN(similarityValue)) neighbours.offer(other, similarityValue);
+                }
+
+                touched[other] = false;
+                numerator[other] = 0.0;
+                denominator1[other] = 0.0;
+                denominator2[other] = 0.0;
+            }
+        }
+    }
+
+    /**
+     * Bounded min heap keeping the items with the highest similarity.
+     */
+    private static final class Neighbours {
+        final int[] columns;
+        final double[] values;
+        int size = 0;
+
+        private Neighbours(final int capacity) {
+            columns = new int[capacity];
+            values = new double[capacity];
+        }
+
+        void clear() { size = 0; }
+
+        void offer(final int column, final double value) {
+            if (size < columns.length) {
+                int i = size++;
+                while (i > 0) {
+                    final int parent = (i - 1) >>> 1;
+                    if (values[parent] <= value) break;
+                    columns[i] = columns[parent];
+                    values[i] = values[parent];
+                    i = parent;
+                }
+                columns[i] = column;
+                values[i] = value;
+            } else if (value > values[0]) {
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && values[child + 1] < values[child]) child++;
+                    if (values[child] >= value) break;
+                    columns[i] = columns[child];
+                    values[i] = values[child];
+                    i = child;
+                }
+                columns[i] = column;
+                values[i] = value;
+            }
+        }
+    }
+}
@@ -88,7 +88,15 @@ public class WeightedPredictionComputationStrategy implements PredictionComputat
 
         if (sample == null) throw new IllegalStateException("beginPrediction not called");
 
-        final Map<Integer, RatingVO<Integer, Integer>> ratingsOfUserMap = getRatingsOfUserMap(userId);
+        final UserAssoc userAssoc = computePrediction(userId, item, itemAssocs, getRatingsOfUserMap(userId));
+
+        if (userAssoc != null) userAssocDao.insertOrUpdateUserAssoc(userAssoc);
+    }
+
+    public UserAssoc computePrediction(final Integer userId, final ItemVO<Integer, Integer> item,
+                                       final List<AssociatedItemVO<Integer, Integer>> itemAssocs,
+                                       final Map<Integer, RatingVO<Integer, Integer>> ratingsOfUser) {
+        if (sample == null) throw new IllegalStateException("beginPrediction not called");
 
         double numerator = 0.0;
         double denominator = 0.0;
@@ -96,7 +104,7 @@ public class WeightedPredictionComputationStrategy implements PredictionComputat
         // now for each similar item ...
         for (final AssociatedItemVO<Integer, Integer> itemAssoc : itemAssocs) {
             // get the rating of the user of that similar item
-            final RatingVO<Integer, Integer> ratingOfUser = ratingsOfUserMap
+            final RatingVO<Integer, Integer> ratingOfUser = ratingsOfUser
                     .get(itemAssoc.getItem().getItem());
 
             // user didn't rate the other item so a rating of 0 is assumed
@@ -112,7 +120,7 @@ public class WeightedPredictionComputationStrategy implements PredictionComputat
             denominator += Math.abs(similarity);
         }
 
-        if (denominator == 0) return;
+        if (denominator == 0) return null;
 
         double prediction = numerator / denominator;
 
@@ -121,10 +129,14 @@ public class WeightedPredictionComputationStrategy implements PredictionComputat
             prediction = Math.min(prediction, maxRatingValue);
         }
 
-        final UserAssoc userAssoc = new UserAssoc(prediction, sample.getChangeDate(), item, sample.getSourceTypeId(),
-                sample.getTenantId(), userId);
+        return new UserAssoc(prediction, sample.getChangeDate(), item, sample.getSourceTypeId(), sample.getTenantId(),
+                userId);
+    }
+
+    public int storePredictions(final List<UserAssoc> predictions) {
+        if (userAssocDao == null) throw new IllegalStateException("DAOs not set");
 
-        userAssocDao.insertOrUpdateUserAssoc(userAssoc);
+        return userAssocDao.insertOrUpdateUserAssocs(predictions);
     }
 
     public void setActionDAO(final ActionDAO actionDao) {
@@ -125,6 +125,16 @@ public interface ActionDAO extends TableCreatingDroppingDAO {
                                                                                  Integer itemId, Integer userId,
                                                                                  Date since);
 
+    /**
+     * Get all ratings of an action type, actions without a rating value are skipped.
+     *
+     * @param tenantId     Tenant id.
+     * @param itemTypeId   Item type id.
+     * @param actionTypeId Action type id.
+     * @return List of ratings containing all ratings of the action type.
+     */
+    List<RatingVO<Integer, Integer>> getRatingsForTenant(Integer tenantId, Integer itemTypeId, Integer actionTypeId);
+
     /**
      * Get a distinct list of users that perfromed an action.
      *
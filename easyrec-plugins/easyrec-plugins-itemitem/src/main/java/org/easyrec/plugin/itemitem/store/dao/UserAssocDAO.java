@@ -22,6 +22,8 @@ package org.easyrec.plugin.itemitem.store.dao;
 import org.easyrec.plugin.itemitem.model.UserAssoc;
 import org.easyrec.utils.spring.store.dao.TableCreatingDroppingDAO;
 
+import java.util.List;
+
 /**
  * Stores associations user to item associations. <p/> <p> <b>Company:&nbsp;</b> SAT, Research Studios Austria </p> <p/>
  * <p> <b>Copyright:&nbsp;</b> (c) 2007 </p> <p/> <p> <b>last modified:</b><br/> $Author$<br/> $Date$<br/> $Revision$
@@ -50,4 +52,12 @@ public interface UserAssocDAO extends TableCreatingDroppingDAO {
      * @return Number of added/modified rows.
      */
     int insertOrUpdateUserAssoc(UserAssoc userAssoc);
+
+    /**
+     * Inserts or updates several user to item associations in one batch.
+     *
+     * @param userAssocs User to item associations to insert/update.
+     * @return Number of inserted/updated associations.
+     */
+    int insertOrUpdateUserAssocs(List<UserAssoc> userAssocs);
 }
@@ -16,34 +16,46 @@
  * You should have received a copy of the GNU General Public License
  * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package org.easyrec.plugin.itemitem.store.dao.impl;
 
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
 import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
+import org.easyrec.utils.Hashing;
 
 import java.util.*;
 
 /**
- * Implementation of {@link ActionDAO} where the data is stored in-memory in a List. <p><b>Company:&nbsp;</b> SAT,
- * Research Studios Austria</p> <p><b>Copyright:&nbsp;</b> (c) 2007</p> <p><b>last modified:</b><br/> $Author$<br/>
- * $Date$<br/> $Revision$</p>
+ * Implementation of {@link ActionDAO} where the data is stored in-memory. <p/> The ratings are indexed per tenant and
+ * item type: every item and user has a posting list of the positions of its ratings, the first rating of every pair
+ * of user and item is held in a hash and the rating sums of items and users are maintained when a rating is added. So
+ * {@link #didUserRateItem(Integer, ItemVO, Integer)} is a single lookup and the other queries only touch the ratings
+ * they return. If a user rated an item more than once the first rating is used for ratings of pairs of items. <p/>
+ * Ratings can be added concurrently to reads only if the caller synchronizes. <p><b>Company:&nbsp;</b> SAT, Research
+ * Studios Austria</p> <p><b>Copyright:&nbsp;</b> (c) 2007</p> <p><b>last modified:</b><br/> $Author$<br/> $Date$<br/>
+ * $Revision$</p>
  *
  * @author Patrick Marschik
  */
 public class ActionDAOMemoryImpl implements ActionDAO {
     // ------------------------------ FIELDS ------------------------------
 
-    private List<RatingVO<Integer, Integer>> ratings = new LinkedList<RatingVO<Integer, Integer>>();
+    private static final int NO_INDEX = -1;
+
+    private final Map<Long, Partition> partitions = new LinkedHashMap<Long, Partition>();
     private int actionTypeId;
 
     // --------------------------- CONSTRUCTORS ---------------------------
 
     public ActionDAOMemoryImpl(Collection<? extends RatingVO<Integer, Integer>> ratings,
                                int actionTypeId) {
-        this.ratings.addAll(ratings);
         this.actionTypeId = actionTypeId;
+
+        addRatings(ratings);
     }
 
     // ------------------------ INTERFACE METHODS ------------------------
@@ -53,16 +65,12 @@ public class ActionDAOMemoryImpl implements ActionDAO {
 
     public boolean didUserRateItem(final Integer userId, final ItemVO<Integer, Integer> item,
                                    final Integer actionTypeId) {
-        if (actionTypeId != this.actionTypeId) return false;
+        if (!isActionType(actionTypeId)) return false;
+        if (userId == null || item.getItem() == null) return false;
 
-        for (RatingVO<Integer, Integer> rating : ratings) {
-            if (!rating.getUser().equals(userId)) continue;
-            if (!rating.getItem().equals(item)) continue;
+        Partition partition = getPartition(item.getTenant(), item.getType());
 
-            return true;
-        }
-
-        return false;
+        return partition != null && partition.getRating(item.getItem(), userId) != NO_INDEX;
     }
 
     public int generateActions(final Integer tenantId, final Date sinceLastAction) {
@@ -71,49 +79,27 @@ public class ActionDAOMemoryImpl implements ActionDAO {
 
     public List<ItemVO<Integer, Integer>> getAvailableItemsForTenant(final Integer tenantId,
                                                                               final Integer itemTypeId) {
-        Set<ItemVO<Integer, Integer>> result = new HashSet<ItemVO<Integer, Integer>>();
-
-        for (RatingVO<Integer, Integer> rating : ratings) {
-            if (!tenantId.equals(rating.getItem().getTenant())) continue;
-            if (!itemTypeId.equals(rating.getItem().getType())) continue;
+        Partition partition = getPartition(tenantId, itemTypeId);
 
-            if (result.contains(rating.getItem())) continue;
+        if (partition == null) return new ArrayList<ItemVO<Integer, Integer>>(0);
 
-            result.add(rating.getItem());
-        }
-
-        return new ArrayList<ItemVO<Integer, Integer>>(result);
+        return new ArrayList<ItemVO<Integer, Integer>>(partition.items);
     }
 
     public List<RatingVO<Integer, Integer>> getAverageRatingsForItem(final Integer tenantId,
                                                                                        final Integer itemTypeId) {
-        Map<Integer, Double> sum = new HashMap<Integer, Double>();
-        Map<Integer, Integer> count = new HashMap<Integer, Integer>();
-
-        for (RatingVO<Integer, Integer> rating : ratings) {
-            if (!tenantId.equals(rating.getItem().getTenant())) continue;
-            if (!itemTypeId.equals(rating.getItem().getType())) continue;
+        Partition partition = getPartition(tenantId, itemTypeId);
 
-            Integer key = rating.getItem().getItem();
-
-            if (!sum.containsKey(key)) {
-                sum.put(key, 0.0);
-                count.put(key, 0);
-            }
-
-            sum.put(key, sum.get(key) + rating.getRatingValue());
-            count.put(key, count.get(key) + 1);
-        }
+        if (partition == null) return new ArrayList<RatingVO<Integer, Integer>>(0);
 
         List<RatingVO<Integer, Integer>> result = new ArrayList<RatingVO<Integer, Integer>>(
-                sum.size());
+                partition.items.size());
 
-        for (Integer key : sum.keySet()) {
-            RatingVO<Integer, Integer> rating = new RatingVO<Integer, Integer>(
-                    new ItemVO<Integer, Integer>(tenantId, key, itemTypeId), sum.get(key) / count.get(key),
-                    count.get(key), null, null, null);
+        for (int i = 0; i < partition.items.size(); i++) {
+            int count = partition.itemCounts.get(i);
 
-            result.add(rating);
+            result.add(new RatingVO<Integer, Integer>(partition.items.get(i), partition.itemSums.get(i) / count,
+                    count, null, null, null));
         }
 
         return result;
@@ -121,32 +107,18 @@ public class ActionDAOMemoryImpl implements ActionDAO {
 
     public List<RatingVO<Integer, Integer>> getAverageRatingsForUser(final Integer tenantId,
                                                                                        final Integer itemTypeId) {
-        Map<Integer, Double> sum = new HashMap<Integer, Double>();
-        Map<Integer, Integer> count = new HashMap<Integer, Integer>();
-
-        for (RatingVO<Integer, Integer> rating : ratings) {
-            if (!tenantId.equals(rating.getItem().getTenant())) continue;
-            if (!itemTypeId.equals(rating.getItem().getType())) continue;
-
-            Integer key = rating.getUser();
+        Partition partition = getPartition(tenantId, itemTypeId);
 
-            if (!sum.containsKey(key)) {
-                sum.put(key, 0.0);
-                count.put(key, 0);
-            }
-
-            sum.put(key, sum.get(key) + rating.getRatingValue());
-            count.put(key, count.get(key) + 1);
-        }
+        if (partition == null) return new ArrayList<RatingVO<Integer, Integer>>(0);
 
         List<RatingVO<Integer, Integer>> result = new ArrayList<RatingVO<Integer, Integer>>(
-                sum.size());
+                partition.userIds.size());
 
-        for (Integer key : sum.keySet()) {
-            RatingVO<Integer, Integer> rating = new RatingVO<Integer, Integer>(null,
-                    sum.get(key) / count.get(key), count.get(key), null, key, null);
+        for (int u = 0; u < partition.userIds.size(); u++) {
+            int count = partition.userCounts.get(u);
 
-            result.add(rating);
+            result.add(new RatingVO<Integer, Integer>(null, partition.userSums.get(u) / count, count, null,
+                    partition.userIds.get(u), null));
         }
 
         return result;
@@ -157,49 +129,37 @@ public class ActionDAOMemoryImpl implements ActionDAO {
                                                                                          final Integer item1Id,
                                                                                          final Integer item2Id,
                                                                                          final Integer actionTypeId) {
-        if (actionTypeId != this.actionTypeId)
-            return new ArrayList<RatedTogether<Integer, Integer>>(0);
+        List<RatedTogether<Integer, Integer>> result = new ArrayList<RatedTogether<Integer, Integer>>();
 
-        Map<Integer, List<RatingVO<Integer, Integer>>> userRatings = new HashMap<Integer, List<RatingVO<Integer, Integer>>>();
+        if (!isActionType(actionTypeId)) return result;
+        if (item1Id == null || item2Id == null || item1Id.equals(item2Id)) return result;
 
-        for (RatingVO<Integer, Integer> rating : ratings) {
-            if (!rating.getItem().getTenant().equals(tenantId)) continue;
-            if (!rating.getItem().getType().equals(itemTypeId)) continue;
-            if (!rating.getItem().getItem().equals(item1Id) && !rating.getItem().getItem().equals(item2Id)) continue;
+        Partition partition = getPartition(tenantId, itemTypeId);
+        if (partition == null) return result;
 
-            Integer user = rating.getUser();
+        int item1 = partition.itemIndices.get(item1Id);
+        int item2 = partition.itemIndices.get(item2Id);
+        if (item1 == NO_INDEX || item2 == NO_INDEX) return result;
 
-            if (!userRatings.containsKey(user)) {
-                userRatings.put(user, new LinkedList<RatingVO<Integer, Integer>>());
-            }
+        // walks the raters of the item with less ratings and looks up their rating of the other item
+        boolean firstIsSmaller = partition.itemPostings.get(item1).size() <= partition.itemPostings.get(item2).size();
+        TIntArrayList postings = partition.itemPostings.get(firstIsSmaller ? item1 : item2);
+        int other = firstIsSmaller ? item2 : item1;
 
-            userRatings.get(user).add(rating);
-        }
-
-        List<RatedTogether<Integer, Integer>> result = new LinkedList<RatedTogether<Integer, Integer>>();
-
-        for (Integer user : userRatings.keySet()) {
-            List<RatingVO<Integer, Integer>> ur = userRatings.get(user);
+        for (int i = 0; i < postings.size(); i++) {
+            RatingVO<Integer, Integer> rating = partition.ratings.get(postings.get(i));
+            int user = partition.userIndices.get(rating.getUser());
 
-            RatingVO<Integer, Integer> rating1 = null;
-            RatingVO<Integer, Integer> rating2 = null;
+            // only the first rating of a user is paired
+            if (partition.firstRatings.get(key(firstIsSmaller ? item1 : item2, user)) != postings.get(i)) continue;
 
-            for (RatingVO<Integer, Integer> rating : ur) {
-                if (rating.getItem().getItem().equals(item1Id)) {
-                    rating1 = rating;
-                } else if (rating.getItem().getItem().equals(item2Id)) {
-                    rating2 = rating;
-                }
-
-                if (rating1 != null && rating2 != null) break;
-            }
+            int otherPosition = partition.firstRatings.get(key(other, user));
+            if (otherPosition == NO_INDEX) continue;
 
-            if (rating1 == null || rating2 == null) continue;
+            RatingVO<Integer, Integer> otherRating = partition.ratings.get(otherPosition);
 
-            rating1 = new RatingVO<Integer, Integer>(rating1.getItem(), rating1.getRatingValue(),
-                    rating1.getCount(), null, rating1.getUser(), null);
-            rating2 = new RatingVO<Integer, Integer>(rating2.getItem(), rating2.getRatingValue(),
-                    rating2.getCount(), null, rating2.getUser(), null);
+            RatingVO<Integer, Integer> rating1 = copy(firstIsSmaller ? rating : otherRating);
+            RatingVO<Integer, Integer> rating2 = copy(firstIsSmaller ? otherRating : rating);
 
             result.add(new RatedTogether<Integer, Integer>(rating1, rating2));
         }
@@ -212,11 +172,33 @@ public class ActionDAOMemoryImpl implements ActionDAO {
                                                                                         final Integer itemId,
                                                                                         final Integer userId,
                                                                                         final Date since) {
-        List<RatingVO<Integer, Integer>> result = new LinkedList<RatingVO<Integer, Integer>>();
+        List<RatingVO<Integer, Integer>> result = new ArrayList<RatingVO<Integer, Integer>>();
+
+        Partition partition = getPartition(tenantId, itemTypeId);
+        if (partition == null) return result;
+
+        TIntArrayList postings = null;
+
+        if (itemId != null) {
+            int item = partition.itemIndices.get(itemId);
+            if (item == NO_INDEX) return result;
+
+            postings = partition.itemPostings.get(item);
+        }
+
+        if (userId != null) {
+            int user = partition.userIndices.get(userId);
+            if (user == NO_INDEX) return result;
+
+            TIntArrayList userPostings = partition.userPostings.get(user);
+            if (postings == null || userPostings.size() < postings.size()) postings = userPostings;
+        }
+
+        int size = postings != null ? postings.size() : partition.ratings.size();
+
+        for (int i = 0; i < size; i++) {
+            RatingVO<Integer, Integer> rating = partition.ratings.get(postings != null ? postings.get(i) : i);
 
-        for (RatingVO<Integer, Integer> rating : ratings) {
-            if (!rating.getItem().getTenant().equals(tenantId)) continue;
-            if (!rating.getItem().getType().equals(itemTypeId)) continue;
             if (itemId != null && !rating.getItem().getItem().equals(itemId)) continue;
             if (userId != null && !rating.getUser().equals(userId)) continue;
             if (since != null && !rating.getLastActionTime().after(since)) continue;
@@ -227,13 +209,25 @@ public class ActionDAOMemoryImpl implements ActionDAO {
         return result;
     }
 
+    public List<RatingVO<Integer, Integer>> getRatingsForTenant(final Integer tenantId, final Integer itemTypeId,
+                                                                final Integer actionTypeId) {
+        if (!isActionType(actionTypeId)) return new ArrayList<RatingVO<Integer, Integer>>(0);
+
+        Partition partition = getPartition(tenantId, itemTypeId);
+        if (partition == null) return new ArrayList<RatingVO<Integer, Integer>>(0);
+
+        return new ArrayList<RatingVO<Integer, Integer>>(partition.ratings);
+    }
+
     public List<Integer> getUsersForTenant(final Integer tenantId) {
-        Set<Integer> result = new HashSet<Integer>();
+        Set<Integer> result = new LinkedHashSet<Integer>();
 
-        for (RatingVO<Integer, Integer> rating : ratings) {
-            if (result.contains(rating.getUser())) continue;
+        for (Partition partition : partitions.values()) {
+            if (!partition.tenantId.equals(tenantId)) continue;
 
-            result.add(rating.getUser());
+            for (int u = 0; u < partition.userIds.size(); u++) {
+                result.add(partition.userIds.get(u));
+            }
         }
 
         return new ArrayList<Integer>(result);
@@ -252,4 +246,137 @@ public class ActionDAOMemoryImpl implements ActionDAO {
     // --------------------- Interface TableCreatingDroppingDAO ---------------------
 
     public void dropTable() {}
+
+    // -------------------------- OTHER METHODS --------------------------
+
+    /**
+     * Adds a rating and updates the indices and averages.
+     *
+     * @param rating The rating to add.
+     */
+    public void addRating(final RatingVO<Integer, Integer> rating) {
+        if (rating == null) throw new IllegalArgumentException("Missing 'rating'");
+
+        ItemVO<Integer, Integer> item = rating.getItem();
+        Long key = partitionKey(item.getTenant(), item.getType());
+        Partition partition = partitions.get(key);
+
+        if (partition == null) {
+            partition = new Partition(item.getTenant());
+            partitions.put(key, partition);
+        }
+
+        partition.add(rating);
+    }
+
+    public void addRatings(final Collection<? extends RatingVO<Integer, Integer>> ratings) {
+        for (RatingVO<Integer, Integer> rating : ratings)
+            addRating(rating);
+    }
+
+    private Partition getPartition(final Integer tenantId, final Integer itemTypeId) {
+        if (tenantId == null || itemTypeId == null) return null;
+
+        return partitions.get(partitionKey(tenantId, itemTypeId));
+    }
+
+    /**
+     * Checks whether the action type is the one of the ratings, a missing action type matches none.
+     */
+    private boolean isActionType(final Integer actionTypeId) {
+        return actionTypeId != null && actionTypeId.intValue() == this.actionTypeId;
+    }
+
+    private static Long partitionKey(final Integer tenantId, final Integer itemTypeId) {
+        return ((long) tenantId << 32) | (itemTypeId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Key of a pair of item and user indices, mixed because Trove hashes a long by xor-ing its halves.
+     */
+    private static long key(final int item, final int user) {
+        return Hashing.mix(((long) item << 32) | (user & 0xFFFFFFFFL));
+    }
+
+    private static RatingVO<Integer, Integer> copy(final RatingVO<Integer, Integer> rating) {
+        return new RatingVO<Integer, Integer>(rating.getItem(), rating.getRatingValue(), rating.getCount(), null,
+                rating.getUser(), null);
+    }
+
+    // -------------------------- INNER CLASSES --------------------------
+
+    /**
+     * The ratings of one tenant and item type with their indices.
+     */
+    private static final class Partition {
+        private final Integer tenantId;
+
+        // in the order they were added
+        private final List<RatingVO<Integer, Integer>> ratings = new ArrayList<RatingVO<Integer, Integer>>();
+
+        private final List<ItemVO<Integer, Integer>> items = new ArrayList<ItemVO<Integer, Integer>>();
+        private final TIntIntHashMap itemIndices = new TIntIntHashMap(16, 0.5f, 0, NO_INDEX);
+        private final List<TIntArrayList> itemPostings = new ArrayList<TIntArrayList>();
+        private final TDoubleArrayList itemSums = new TDoubleArrayList();
+        private final TIntArrayList itemCounts = new TIntArrayList();
+
+        private final TIntArrayList userIds = new TIntArrayList();
+        private final TIntIntHashMap userIndices = new TIntIntHashMap(16, 0.5f, 0, NO_INDEX);
+        private final List<TIntArrayList> userPostings = new ArrayList<TIntArrayList>();
+        private final TDoubleArrayList userSums = new TDoubleArrayList();
+        private final TIntArrayList userCounts = new TIntArrayList();
+
+        // position of the first rating of every pair of item and user
+        private final TLongIntHashMap firstRatings = new TLongIntHashMap(16, 0.5f, 0, NO_INDEX);
+
+        private Partition(final Integer tenantId) {
+            this.tenantId = tenantId;
+        }
+
+        private void add(final RatingVO<Integer, Integer> rating) {
+            int position = ratings.size();
+            ratings.add(rating);
+
+            int item = itemIndices.get(rating.getItem().getItem());
+            if (item == NO_INDEX) {
+                item = items.size();
+                itemIndices.put(rating.getItem().getItem(), item);
+                items.add(rating.getItem());
+                itemPostings.add(new TIntArrayList(4));
+                itemSums.add(0.0);
+                itemCounts.add(0);
+            }
+
+            int user = userIndices.get(rating.getUser());
+            if (user == NO_INDEX) {
+                user = userIds.size();
+                userIndices.put(rating.getUser(), user);
+                userIds.add(rating.getUser());
+                userPostings.add(new TIntArrayList(4));
+                userSums.add(0.0);
+                userCounts.add(0);
+            }
+
+            itemPostings.get(item).add(position);
+            userPostings.get(user).add(position);
+
+            double value = rating.getRatingValue();
+            itemSums.set(item, itemSums.get(item) + value);
+            itemCounts.set(item, itemCounts.get(item) + 1);
+            userSums.set(user, userSums.get(user) + value);
+            userCounts.set(user, userCounts.get(user) + 1);
+
+            long key = key(item, user);
+            if (!firstRatings.containsKey(key)) firstRatings.put(key, position);
+        }
+
+        private int getRating(final int itemId, final int userId) {
+            int item = itemIndices.get(itemId);
+            int user = userIndices.get(userId);
+
+            if (item == NO_INDEX || user == NO_INDEX) return NO_INDEX;
+
+            return firstRatings.get(key(item, user));
+        }
+    }
 }
@@ -74,6 +74,9 @@ public class ActionDAOMysqlImpl extends AbstractTableCreatingDroppingDAOImpl imp
     public static final String QUERY_USERRATINGS;
     public static final int[] ARGT_USERRATINGS;
 
+    public static final String QUERY_RATINGS;
+    public static final int[] ARGT_RATINGS;
+
     public static final String QUERY_RATEDTOGETHER;
     public static final int[] ARGT_RATEDTOGETHER;
 
@@ -127,6 +130,18 @@ public class ActionDAOMysqlImpl extends AbstractTableCreatingDroppingDAOImpl imp
         QUERY_USERRATINGS = makeAverageRatingQueryString(COLUMN_USERID);
         ARGT_USERRATINGS = new int[]{Types.INTEGER, Types.INTEGER};
 
+        query = new StringBuilder("SELECT ");
+        appendAllColumns(query);
+        query.append("\nFROM ").append(TABLE_NAME).append("\n");
+        query.append("WHERE ");
+        query.append(COLUMN_TENANTID).append(" = ? AND ");
+        query.append(COLUMN_ITEMTYPEID).append(" = ? AND ");
+        query.append(COLUMN_ACTIONTYPEID).append(" = ? AND ");
+        query.append(COLUMN_RATINGVALUE).append(" IS NOT NULL");
+
+        QUERY_RATINGS = query.toString();
+        ARGT_RATINGS = new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER};
+
         query = new StringBuilder("SELECT\n");
         query.append("    a1.").append(COLUMN_TENANTID);
         query.append(", a1.").append(COLUMN_ITEMID);
@@ -430,6 +445,13 @@ public class ActionDAOMysqlImpl extends AbstractTableCreatingDroppingDAOImpl imp
         return getJdbcTemplate().query(query.toString(), args.toArray(), Ints.toArray(argt), defaultRatingMapper);
     }
 
+    public List<RatingVO<Integer, Integer>> getRatingsForTenant(final Integer tenantId, final Integer itemTypeId,
+                                                                final Integer actionTypeId) {
+        final Object[] args = new Object[]{tenantId, itemTypeId, actionTypeId};
+
+        return getJdbcTemplate().query(QUERY_RATINGS, args, ARGT_RATINGS, defaultRatingMapper);
+    }
+
     public List<Integer> getUsersForTenant(Integer tenantId) {
         Object[] args = new Object[]{tenantId};
 
@@ -87,4 +87,13 @@ public class UserAssocDAOMemoryImpl implements UserAssocDAO {
 
         return 1;
     }
+
+    public int insertOrUpdateUserAssocs(final List<UserAssoc> userAssocs) {
+        int rows = 0;
+
+        for (final UserAssoc userAssoc : userAssocs)
+            rows += insertOrUpdateUserAssoc(userAssoc);
+
+        return rows;
+    }
 }
@@ -26,7 +26,9 @@ import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
 
 import javax.sql.DataSource;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * MySQL implementation of @see{org.easyrec.plugin.itemitem.store.dao.UserAssocDAO} <p/> <p> <b>Company:&nbsp;</b> SAT,
@@ -88,10 +90,31 @@ public class UserAssocDAOMysqlImpl extends AbstractTableCreatingDroppingDAOImpl
     // --------------------- Interface UserAssocDAO ---------------------
 
     public int insertOrUpdateUserAssoc(final UserAssoc userAssoc) {
-        final Object[] args = new Object[]{userAssoc.getTenantId(), userAssoc.getUserFrom(), userAssoc.getAssocValue(),
-                userAssoc.getItemTo().getItem(), userAssoc.getItemTo().getType(), userAssoc.getSourceTypeId(),
-                new Date()};
+        return getJdbcTemplate().update(QUERY_INSERT, insertArgs(userAssoc, new Date()), ARGT_INSERT);
+    }
+
+    public int insertOrUpdateUserAssocs(final List<UserAssoc> userAssocs) {
+        if (userAssocs == null) throw new IllegalArgumentException("Missing 'userAssocs'");
+
+        if (userAssocs.isEmpty()) return 0;
+
+        final Date now = new Date();
+        final List<Object[]> batchArgs = new ArrayList<Object[]>(userAssocs.size());
+
+        for (final UserAssoc userAssoc : userAssocs)
+            batchArgs.add(insertArgs(userAssoc, now));
 
-        return getJdbcTemplate().update(QUERY_INSERT, args, ARGT_INSERT);
+        // one JDBC batch instead of a statement execution per association
+        getJdbcTemplate().batchUpdate(QUERY_INSERT, batchArgs, ARGT_INSERT);
+
+        return userAssocs.size();
+    }
+
+    // -------------------------- OTHER METHODS --------------------------
+
+    private static Object[] insertArgs(final UserAssoc userAssoc, final Date changeDate) {
+        return new Object[]{userAssoc.getTenantId(), userAssoc.getUserFrom(), userAssoc.getAssocValue(),
+                userAssoc.getItemTo().getItem(), userAssoc.getItemTo().getType(), userAssoc.getSourceTypeId(),
+                changeDate};
     }
 }
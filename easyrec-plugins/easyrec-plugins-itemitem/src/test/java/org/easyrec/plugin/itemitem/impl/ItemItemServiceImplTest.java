@@ -0,0 +1,175 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.itemitem.impl;
+
+import org.easyrec.model.core.AssociatedItemVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingVO;
+import org.easyrec.plugin.itemitem.model.ItemItemConfiguration;
+import org.easyrec.plugin.itemitem.model.SimilarityCalculationType;
+import org.easyrec.plugin.itemitem.model.UserAssoc;
+import org.easyrec.plugin.itemitem.store.dao.impl.ActionDAOMemoryImpl;
+import org.easyrec.plugin.itemitem.store.dao.impl.UserAssocDAOMemoryImpl;
+import org.easyrec.plugin.itemitem.test.helpers.ItemAssocServiceStub;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.easyrec.plugin.itemitem.test.matchers.IsCloseToUserAssocMatcher.closeToUserAssoc;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the prediction of {@link ItemItemServiceImpl}, comparing the predictions of the user partitions with the
+ * ones of {@link WeightedPredictionComputationStrategy#predictForUserAndItem(Integer, ItemVO, List)}.
+ *
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class ItemItemServiceImplTest {
+    // ------------------------------ FIELDS ------------------------------
+
+    private static final int TENANT = 1;
+    private static final int ITEM_TYPE = 1;
+    private static final int ACTION_TYPE = 1;
+    private static final int ASSOC_TYPE = 99;
+    private static final int SOURCE_TYPE = 98;
+    private static final int VIEW_TYPE = 97;
+
+    private ActionDAOMemoryImpl actionDAO;
+    private ItemAssocServiceStub itemAssocService;
+    private Date changeDate;
+
+    // -------------------------- OTHER METHODS --------------------------
+
+    @Before
+    public void before() {
+        actionDAO = new ActionDAOMemoryImpl(randomRatings(150, 30, 8, 5), ACTION_TYPE);
+        itemAssocService = new ItemAssocServiceStub();
+        changeDate = new Date();
+
+        SparseSimilarityCalculationStrategy similarityStrategy = new SparseSimilarityCalculationStrategy(
+                SimilarityCalculationType.COSINE);
+        similarityStrategy.setActionDAO(actionDAO);
+        similarityStrategy.setItemAssocService(itemAssocService);
+        similarityStrategy.setMaxNeighbours(10);
+        similarityStrategy.calculateSimilarity(TENANT, ACTION_TYPE, ITEM_TYPE, ASSOC_TYPE, SOURCE_TYPE, VIEW_TYPE,
+                changeDate, null);
+    }
+
+    @Test
+    public void predict_sameAsPerUserAndItem() {
+        List<UserAssoc> expected = predictPerUserAndItem();
+
+        for (int threads = 1; threads <= 3; threads++) {
+            List<UserAssoc> actual = predict(threads);
+
+            assertThat(actual.size(), is(expected.size()));
+            for (UserAssoc userAssoc : expected) {
+                assertThat(actual, hasItem(closeToUserAssoc(userAssoc, 1.0e-9)));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setThreads_rejectsZero() {
+        new ItemItemServiceImpl(actionDAO, itemAssocService).setThreads(0);
+    }
+
+    private List<UserAssoc> predict(int threads) {
+        UserAssocDAOMemoryImpl userAssocDAO = new UserAssocDAOMemoryImpl();
+        WeightedPredictionComputationStrategy predictionStrategy = newPredictionStrategy(userAssocDAO);
+
+        ItemItemServiceImpl service = new ItemItemServiceImpl(actionDAO, itemAssocService);
+        service.setConfiguration(new ItemItemConfiguration());
+        service.setSimilarityCalculationStrategy(new SparseSimilarityCalculationStrategy(
+                SimilarityCalculationType.COSINE));
+        service.setPredictionComputationStrategy(predictionStrategy);
+        service.setThreads(threads);
+
+        service.predict(TENANT, ACTION_TYPE, ITEM_TYPE, ASSOC_TYPE, VIEW_TYPE, SOURCE_TYPE, changeDate, null, 1, 10,
+                null);
+
+        return userAssocDAO.getUserAssocs();
+    }
+
+    /**
+     * Predicts the ratings item by item the way the prediction was calculated on a single thread.
+     */
+    private List<UserAssoc> predictPerUserAndItem() {
+        UserAssocDAOMemoryImpl userAssocDAO = new UserAssocDAOMemoryImpl();
+        WeightedPredictionComputationStrategy predictionStrategy = newPredictionStrategy(userAssocDAO);
+
+        predictionStrategy.beginPrediction(new UserAssoc(null, changeDate,
+                new ItemVO<Integer, Integer>(TENANT, null, ITEM_TYPE), SOURCE_TYPE, TENANT, null), 1, 10, false);
+
+        for (ItemVO<Integer, Integer> item : actionDAO.getAvailableItemsForTenant(TENANT, ITEM_TYPE)) {
+            List<AssociatedItemVO<Integer, Integer>> itemAssocs = itemAssocService
+                    .getItemsFrom(ITEM_TYPE, ASSOC_TYPE, item, null);
+
+            for (Integer user : actionDAO.getUsersForTenant(TENANT)) {
+                if (!actionDAO.didUserRateItem(user, item, ACTION_TYPE))
+                    predictionStrategy.predictForUserAndItem(user, item, itemAssocs);
+            }
+        }
+
+        predictionStrategy.endPrediction();
+
+        return userAssocDAO.getUserAssocs();
+    }
+
+    private WeightedPredictionComputationStrategy newPredictionStrategy(UserAssocDAOMemoryImpl userAssocDAO) {
+        WeightedPredictionComputationStrategy predictionStrategy = new WeightedPredictionComputationStrategy();
+        predictionStrategy.setActionDAO(actionDAO);
+        predictionStrategy.setUserAssocDAO(userAssocDAO);
+
+        return predictionStrategy;
+    }
+
+    private static List<RatingVO<Integer, Integer>> randomRatings(int numberOfUsers, int numberOfItems,
+                                                                  int maxRatingsPerUser, long seed) {
+        Random random = new Random(seed);
+        List<RatingVO<Integer, Integer>> ratings = new ArrayList<RatingVO<Integer, Integer>>();
+
+        for (int user = 1; user <= numberOfUsers; user++) {
+            Set<Integer> items = new HashSet<Integer>();
+            int count = 1 + random.nextInt(maxRatingsPerUser);
+
+            while (items.size() < count) {
+                items.add(1 + random.nextInt(numberOfItems));
+            }
+            for (Integer item : items) {
+                ratings.add(new RatingVO<Integer, Integer>(new ItemVO<Integer, Integer>(TENANT, item, ITEM_TYPE),
+                        (double) (1 + random.nextInt(10)), 1, new Date(), user, null));
+            }
+        }
+
+        return ratings;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.itemitem.impl;
+
+import org.easyrec.model.core.ItemAssocVO;
+import org.easyrec.model.core.RatingVO;
+import org.easyrec.plugin.itemitem.ItemItemService;
+import org.easyrec.plugin.itemitem.SimilarityCalculationStrategy;
+import org.easyrec.plugin.itemitem.model.SimilarityCalculationType;
+import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
+import org.easyrec.plugin.itemitem.store.dao.impl.ActionDAOMemoryImpl;
+import org.easyrec.plugin.itemitem.test.helpers.ItemAssocServiceStub;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.easyrec.plugin.itemitem.test.matchers.IsCloseToItemAssocMatcher.closeToItemAssoc;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link SparseSimilarityCalculationStrategy}, comparing its similarities with the ones of the strategies
+ * that query the ratings of every pair of items.
+ *
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class SparseSimilarityCalculationStrategyTest extends AbstractySimilarityCalculationStrategyTest {
+    // ------------------------------ FIELDS ------------------------------
+
+    private static final double DELTA = 1.0e-6;
+
+    // -------------------------- OTHER METHODS --------------------------
+
+    @Test
+    public void calculateSimilarity_cosineSameAsPerPair() {
+        List<RatingVO<Integer, Integer>> ratings = randomRatings(200, 40, 12, 42);
+
+        assertSameSimilarities(new CosineSimilarityCalculationStrategy(), SimilarityCalculationType.COSINE, ratings);
+    }
+
+    @Test
+    public void calculateSimilarity_adjustedCosineSameAsPerPair() {
+        List<RatingVO<Integer, Integer>> ratings = randomRatings(200, 40, 12, 7);
+
+        assertSameSimilarities(new AdjustedCosineSimilarityCalculationStrategy(),
+                SimilarityCalculationType.ADJUSTED_COSINE, ratings);
+    }
+
+    @Test
+    public void calculateSimilarity_pearsonSameAsPerPair() {
+        List<RatingVO<Integer, Integer>> ratings = randomRatings(200, 40, 12, 3);
+
+        assertSameSimilarities(new PearsonSimilarityCalculationStrategy(), SimilarityCalculationType.PEARSON,
+                ratings);
+        assertSameSimilarities(new PearsonSimilarityCalculationStrategy(), SimilarityCalculationType.PEARSON,
+                lemireRatings);
+    }
+
+    @Test
+    public void calculateSimilarity_keepsMostSimilarItems() {
+        List<RatingVO<Integer, Integer>> ratings = randomRatings(200, 40, 12, 11);
+        Date now = new Date();
+
+        Map<Integer, List<Double>> expected = new HashMap<Integer, List<Double>>();
+        for (ItemAssocVO<Integer, Integer> itemAssoc : calculate(new SparseSimilarityCalculationStrategy(
+                SimilarityCalculationType.COSINE), ratings, 1000, 1, now)) {
+            Integer item = itemAssoc.getItemFrom().getItem();
+            if (!expected.containsKey(item)) expected.put(item, new ArrayList<Double>());
+            expected.get(item).add(itemAssoc.getAssocValue());
+        }
+
+        Map<Integer, List<Double>> actual = new HashMap<Integer, List<Double>>();
+        for (ItemAssocVO<Integer, Integer> itemAssoc : calculate(new SparseSimilarityCalculationStrategy(
+                SimilarityCalculationType.COSINE), ratings, 5, 3, now)) {
+            Integer item = itemAssoc.getItemFrom().getItem();
+            if (!actual.containsKey(item)) actual.put(item, new ArrayList<Double>());
+            actual.get(item).add(itemAssoc.getAssocValue());
+        }
+
+        assertThat(actual.keySet(), is(expected.keySet()));
+        for (Integer item : expected.keySet()) {
+            List<Double> values = expected.get(item);
+            Collections.sort(values, Collections.reverseOrder());
+            List<Double> top = values.subList(0, Math.min(5, values.size()));
+
+            List<Double> kept = actual.get(item);
+            Collections.sort(kept, Collections.reverseOrder());
+
+            assertThat(kept, is(top));
+        }
+    }
+
+    @Test
+    public void calculateSimilarity_usesRatingsOfActionTypeOnly() {
+        List<RatingVO<Integer, Integer>> ratings = randomRatings(100, 20, 8, 5);
+        final List<RatingVO<Integer, Integer>> otherRatings = randomRatings(100, 20, 8, 6);
+        Date now = new Date();
+
+        // like ii_action the latest ratings hold the ratings of all action types, only action type 1 is used
+        ActionDAOMemoryImpl mixedActionDAO = new ActionDAOMemoryImpl(ratings, 1) {
+            @Override
+            public List<RatingVO<Integer, Integer>> getLatestRatingsForTenant(Integer tenantId, Integer itemTypeId,
+                                                                               Integer itemId, Integer userId,
+                                                                               Date since) {
+                List<RatingVO<Integer, Integer>> result = new ArrayList<RatingVO<Integer, Integer>>(
+                        super.getLatestRatingsForTenant(tenantId, itemTypeId, itemId, userId, since));
+                result.addAll(otherRatings);
+                return result;
+            }
+        };
+
+        List<ItemAssocVO<Integer, Integer>> expected = calculate(new SparseSimilarityCalculationStrategy(
+                SimilarityCalculationType.COSINE), new ActionDAOMemoryImpl(ratings, 1), 1000, 1, now);
+        List<ItemAssocVO<Integer, Integer>> actual = calculate(new SparseSimilarityCalculationStrategy(
+                SimilarityCalculationType.COSINE), mixedActionDAO, 1000, 1, now);
+
+        assertThat(actual.size(), is(expected.size()));
+        for (ItemAssocVO<Integer, Integer> itemAssoc : expected) {
+            assertThat(actual, hasItem(closeToItemAssoc(itemAssoc, DELTA)));
+        }
+    }
+
+    @Test
+    public void getSourceInfo_isCorrect() {
+        assertThat(new SparseSimilarityCalculationStrategy(SimilarityCalculationType.COSINE).getSourceInfo(),
+                is(ItemItemService.SOURCE_INFO_COSINE));
+        assertThat(new SparseSimilarityCalculationStrategy(SimilarityCalculationType.ADJUSTED_COSINE)
+                .getSourceInfo(), is(ItemItemService.SOURCE_INFO_COSINE_ADJUSTED));
+        assertThat(new SparseSimilarityCalculationStrategy(SimilarityCalculationType.PEARSON).getSourceInfo(),
+                is(ItemItemService.SOURCE_INFO_PEARSON));
+    }
+
+    protected String getSourceInfo() { return ItemItemService.SOURCE_INFO_PEARSON; }
+
+    private void assertSameSimilarities(SimilarityCalculationStrategy perPairStrategy,
+                                        SimilarityCalculationType type,
+                                        List<RatingVO<Integer, Integer>> ratings) {
+        Date now = new Date();
+
+        List<ItemAssocVO<Integer, Integer>> expected = calculate(perPairStrategy, ratings, 0, 0, now);
+        List<ItemAssocVO<Integer, Integer>> actual = calculate(new SparseSimilarityCalculationStrategy(type),
+                ratings, 1000, 4, now);
+
+        assertThat(actual.size(), is(expected.size()));
+        for (ItemAssocVO<Integer, Integer> itemAssoc : expected) {
+            assertThat(actual, hasItem(closeToItemAssoc(itemAssoc, DELTA)));
+        }
+    }
+
+    private static List<ItemAssocVO<Integer, Integer>> calculate(SimilarityCalculationStrategy strategy,
+                                                                 List<RatingVO<Integer, Integer>> ratings,
+                                                                 int maxNeighbours, int threads, Date now) {
+        return calculate(strategy, new ActionDAOMemoryImpl(ratings, 1), maxNeighbours, threads, now);
+    }
+
+    private static List<ItemAssocVO<Integer, Integer>> calculate(SimilarityCalculationStrategy strategy,
+                                                                 ActionDAO actionDAO, int maxNeighbours,
+                                                                 int threads, Date now) {
+        ItemAssocServiceStub itemAssocService = new ItemAssocServiceStub();
+
+        if (strategy instanceof SparseSimilarityCalculationStrategy) {
+            ((SparseSimilarityCalculationStrategy) strategy).setMaxNeighbours(maxNeighbours);
+            ((SparseSimilarityCalculationStrategy) strategy).setThreads(threads);
+        }
+        strategy.setActionDAO(actionDAO);
+        strategy.setItemAssocService(itemAssocService);
+
+        int created = strategy.calculateSimilarity(1, 1, 1, ASSOC_TYPE, SOURCE_TYPE, VIEW_TYPE, now, null);
+
+        assertThat(itemAssocService.getItemAssocs().size(), is(created));
+
+        return itemAssocService.getItemAssocs();
+    }
+
+    private static List<RatingVO<Integer, Integer>> randomRatings(int numberOfUsers, int numberOfItems,
+                                                                  int maxRatingsPerUser, long seed) {
+        Random random = new Random(seed);
+        List<RatingVO<Integer, Integer>> ratings = new ArrayList<RatingVO<Integer, Integer>>();
+
+        for (int user = 1; user <= numberOfUsers; user++) {
+            Set<Integer> items = new HashSet<Integer>();
+            int count = 1 + random.nextInt(maxRatingsPerUser);
+
+            while (items.size() < count) {
+                items.add(1 + random.nextInt(numberOfItems));
+            }
+            for (Integer item : items) {
+                ratings.add(createRating(item, 1 + random.nextInt(10), user));
+            }
+        }
+
+        return ratings;
+    }
+}
@@ -23,10 +23,15 @@ import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
 import org.junit.Before;
+import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
 /**
  * DOCUMENT ME! <p><b>Company:&nbsp;</b> SAT, Research Studios Austria</p> <p><b>Copyright:&nbsp;</b> (c) 2007</p>
  * <p><b>last modified:</b><br/> $Author$<br/> $Date$<br/> $Revision$</p>
@@ -69,4 +74,31 @@ public class ActionDAOMemoryImplTest extends AbstractActionDAOTest {
     protected ActionDAO getActionDAO() {
         return actionDAO;
     }
+
+    @Test
+    public void addRating_updatesIndicesAndAverages() {
+        ActionDAOMemoryImpl memoryDAO = (ActionDAOMemoryImpl) actionDAO;
+
+        assertThat(memoryDAO.didUserRateItem(3, new ItemVO<Integer, Integer>(1, 2, 1), 1), is(false));
+
+        memoryDAO.addRating(new RatingVO<Integer, Integer>(new ItemVO<Integer, Integer>(1, 2, 1), 4.0, null,
+                makeDate("2007-04-15 12:18:00"), 3, null));
+
+        assertThat(memoryDAO.didUserRateItem(3, new ItemVO<Integer, Integer>(1, 2, 1), 1), is(true));
+        assertThat(memoryDAO.getAverageRatingsForItem(1, 1),
+                hasItem(new RatingVO<Integer, Integer>(new ItemVO<Integer, Integer>(1, 2, 1), 3.0, 2, null, null,
+                        null)));
+        assertThat(memoryDAO.getAverageRatingsForUser(1, 1),
+                hasItem(new RatingVO<Integer, Integer>(null, 4.0, 1, null, 3, null)));
+        assertThat(memoryDAO.getLatestRatingsForTenant(1, 1, 2, null, null).size(), is(2));
+        assertThat(memoryDAO.getUsersForTenant(1).size(), is(3));
+        assertThat(memoryDAO.getUsersForTenant(2).size(), is(2));
+    }
+
+    @Test
+    public void missingActionType_matchesNoRatings() {
+        assertThat(actionDAO.didUserRateItem(1, new ItemVO<Integer, Integer>(1, 1, 1), null), is(false));
+        assertThat(actionDAO.getRatingsForTenant(1, 1, null).size(), is(0));
+        assertThat(actionDAO.getRatingsForTenant(1, 1, 1).size(), is(5));
+    }
 }
@@ -25,13 +25,17 @@ import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.transfer.IAConstraintVO;
 import org.easyrec.service.core.ItemAssocService;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 /**
- * Stub for {@link ItemAssocService} supporting only {@link #insertOrUpdateItemAssoc(org.easyrec.model.core.ItemAssocVO)}.
+ * Stub for {@link ItemAssocService} supporting only {@link #insertOrUpdateItemAssoc(org.easyrec.model.core.ItemAssocVO)}
+ * and querying the inserted associations with {@link #getItemsFrom(Integer, Integer, org.easyrec.model.core.ItemVO,
+ * org.easyrec.model.core.transfer.IAConstraintVO)}.
  * <p><b>Company:&nbsp;</b> SAT, Research Studios Austria</p> <p><b>Copyright:&nbsp;</b> (c) 2007</p> <p><b>last
  * modified:</b><br/> $Author$<br/> $Date$<br/> $Revision$</p>
  *
@@ -101,7 +105,12 @@ public class ItemAssocServiceStub implements ItemAssocService {
 
     public int insertOrUpdateItemAssocs(
             final List<ItemAssocVO<Integer,Integer>> itemAssocs) {
-        return 0;
+        int result = 0;
+
+        for (ItemAssocVO<Integer,Integer> itemAssoc : itemAssocs)
+            result += insertOrUpdateItemAssoc(itemAssoc);
+
+        return result;
     }
 
     public boolean isActiveItemAssoc(final Integer itemAssocId) {return false;}
@@ -134,13 +143,27 @@ public class ItemAssocServiceStub implements ItemAssocService {
                                                                                    final Integer assocType,
                                                                                    final ItemVO<Integer, Integer> itemTo,
                                                                                    final IAConstraintVO<Integer, Integer> constraints) {
-        return null;
+        final List<AssociatedItemVO<Integer, Integer>> result = new LinkedList<AssociatedItemVO<Integer, Integer>>();
+
+        for (final ItemAssocVO<Integer, Integer> itemAssoc : itemAssocs) {
+            if (!itemAssoc.getItemTo().equals(itemTo)) continue;
+            if (assocType != null && !assocType.equals(itemAssoc.getAssocType())) continue;
+
+            result.add(new AssociatedItemVO<Integer, Integer>(itemAssoc.getItemFrom(), itemAssoc.getAssocValue(),
+                    itemAssoc.getId(), itemAssoc.getAssocType()));
+        }
+
+        return result;
     }
 
     public List<AssociatedItemVO<Integer, Integer>> getItemsTo(
             final ItemVO<Integer, Integer> itemFrom, final Integer assocTypeId, final Integer itemToType,
             final IAConstraintVO<Integer, Integer> constraints) { return null; }
 
+    public Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> getItemsTo(
+            final Collection<ItemVO<Integer, Integer>> itemsFrom, final Integer assocTypeId,
+            final Integer itemToType, final IAConstraintVO<Integer, Integer> constraints) { return null; }
+
     public List<ItemAssocVO<Integer,Integer>> getItemAssocs(
             final ItemVO<Integer, Integer> itemFrom, final Integer assocType,
             final ItemVO<Integer, Integer> itemTo,
@@ -19,9 +19,9 @@
 
 package org.easyrec.plugin.mahout;
 
+import gnu.trove.map.hash.TIntIntHashMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.neighborhood.NearestNUserNeighborhood;
 import org.apache.mahout.cf.taste.impl.neighborhood.ThresholdUserNeighborhood;
 import org.apache.mahout.cf.taste.impl.recommender.GenericBooleanPrefUserBasedRecommender;
@@ -31,14 +31,13 @@ import org.apache.mahout.cf.taste.impl.similarity.SpearmanCorrelationSimilarity;
 import org.apache.mahout.cf.taste.impl.similarity.TanimotoCoefficientSimilarity;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
-import org.apache.mahout.cf.taste.recommender.RecommendedItem;
 import org.apache.mahout.cf.taste.recommender.Recommender;
 import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.easyrec.mahout.model.EasyrecCompactDataModel;
 import org.easyrec.mahout.model.EasyrecDataModel;
 import org.easyrec.mahout.model.EasyrecInMemoryDataModel;
+import org.easyrec.mahout.recommender.RecommendationWriter;
 import org.easyrec.mahout.store.MahoutDataModelMappingDAO;
-import org.easyrec.model.core.ItemAssocVO;
-import org.easyrec.model.core.ItemVO;
 import org.easyrec.plugin.model.Version;
 import org.easyrec.plugin.support.GeneratorPluginSupport;
 import org.easyrec.service.core.ItemAssocService;
@@ -47,9 +46,9 @@ import org.easyrec.store.dao.core.types.AssocTypeDAO;
 import org.easyrec.store.dao.core.types.ItemTypeDAO;
 import org.easyrec.store.dao.core.ItemDAO;
 
+import java.io.File;
 import java.net.URI;
 import java.util.Date;
-import java.util.List;
 
 /**
  * @author David MAnn
@@ -128,13 +127,28 @@ public class MahoutBooleanGenerator extends GeneratorPluginSupport<MahoutBoolean
         ItemAssocService itemAssocService = getItemAssocService();
 
         executionControl.updateProgress("initialize DataModel");
-        DataModel easyrecDataModel = new EasyrecDataModel(config.getTenantId(), typeMappingService.getIdOfActionType(config.getTenantId(), config.getActionType()), false, mahoutDataModelMappingDAO);
-
-        if (config.getCacheDataInMemory() == 1) {
-            executionControl.updateProgress("initialize EasyrecInMemoryDataModel");
-            easyrecDataModel = new EasyrecInMemoryDataModel(easyrecDataModel);
+        long dataModelStart = System.currentTimeMillis();
+        int actionTypeId = typeMappingService.getIdOfActionType(config.getTenantId(), config.getActionType());
+        DataModel easyrecDataModel;
+
+        if (config.getCacheDataInMemory() == 2) {
+            executionControl.updateProgress("initialize EasyrecCompactDataModel");
+            String snapshotDirectory = config.getSnapshotDirectory();
+            easyrecDataModel = new EasyrecCompactDataModel(config.getTenantId(), actionTypeId, false,
+                    mahoutDataModelMappingDAO,
+                    snapshotDirectory == null || snapshotDirectory.trim().length() == 0 ? null :
+                            new File(snapshotDirectory.trim()));
+        } else {
+            easyrecDataModel = new EasyrecDataModel(config.getTenantId(), actionTypeId, false, mahoutDataModelMappingDAO);
+
+            if (config.getCacheDataInMemory() == 1) {
+                executionControl.updateProgress("initialize EasyrecInMemoryDataModel");
+                easyrecDataModel = new EasyrecInMemoryDataModel(easyrecDataModel);
+            }
         }
 
+        stats.setDataModelDuration(System.currentTimeMillis() - dataModelStart);
+
         /*TanimotoCoefficientSimilarity is intended for "binary" data sets  where a user either expresses a generic "yes" preference for an item or has no preference.*/
         UserSimilarity userSimilarity = null;
 
@@ -187,38 +201,29 @@ public class MahoutBooleanGenerator extends GeneratorPluginSupport<MahoutBoolean
 
         stats.setNumberOfItems(easyrecDataModel.getNumItems());
 
+        executionControl.updateProgress("loading item types");
+        long itemTypesStart = System.currentTimeMillis();
+        TIntIntHashMap itemTypeIds = itemDAO.getItemTypeIdsOfItems(config.getTenantId());
+        stats.setItemTypesDuration(System.currentTimeMillis() - itemTypesStart);
 
-        int totalSteps = easyrecDataModel.getNumUsers();
-        int currentStep = 1;
-        for (LongPrimitiveIterator it = easyrecDataModel.getUserIDs(); it.hasNext() && !executionControl.isAbortRequested(); ) {
-            executionControl.updateProgress(currentStep++, totalSteps, "Saving Recommendations...");
-            long userId = it.nextLong();
-            List<RecommendedItem> recommendations = recommender.recommend(userId, config.getNumberOfRecs());
+        RecommendationWriter writer = new RecommendationWriter(recommender, itemAssocService, itemTypeIds,
+                config.getTenantId(), userType, assocType, sourceType, "Mahout Boolean Generator", viewType, execution);
 
-            if (recommendations.isEmpty()) {
-                logger.debug("User " + userId + " : no recommendations");
+        final ExecutionControl control = executionControl;
+        writer.write(easyrecDataModel.getUserIDs(), easyrecDataModel.getNumUsers(), config.getNumberOfRecs(),
+                config.getThreads(), new RecommendationWriter.Progress() {
+            public boolean isAbortRequested() {
+                return control.isAbortRequested();
             }
 
-            // print the list of recommendations for each
-            for (RecommendedItem recommendedItem : recommendations) {
-                logger.debug("User " + userId + " : " + recommendedItem);
-
-                Integer itemToId = (int) recommendedItem.getItemID();
-                Integer itemToType = itemDAO.getItemTypeIdOfItem(config.getTenantId(), itemToId);
-
-                ItemVO<Integer, Integer> fromItem = new ItemVO<Integer, Integer>(config.getTenantId(), (int) userId, userType);
-                Double recommendationStrength = (double) recommendedItem.getValue();
-                ItemVO<Integer, Integer> toItem = new ItemVO<Integer, Integer>(config.getTenantId(), itemToId, itemToType);
-
-                ItemAssocVO<Integer,Integer> itemAssoc = new ItemAssocVO<Integer,Integer>(
-                        config.getTenantId(), fromItem, assocType, recommendationStrength, toItem, sourceType,
-                        "Mahout Boolean Generator", viewType, null, execution);
-
-                itemAssocService.insertOrUpdateItemAssoc(itemAssoc);
-                stats.incNumberOfRulesCreated();
+            public void updateProgress(int currentStep, int totalSteps) {
+                control.updateProgress(currentStep, totalSteps, "Saving Recommendations...");
             }
-        }
+        });
 
+        stats.setNumberOfRulesCreated(writer.getRules());
+        stats.setRecommendDuration(writer.getRecommendDuration());
+        stats.setWriteDuration(writer.getWriteDuration());
     }
 
 }
@@ -43,7 +43,7 @@ public class MahoutBooleanGeneratorConfig extends GeneratorConfiguration {
     // all config values are initialized with the default values and the configuration is named "Default Configuration" in
     // the superclass (GeneratorConfiguration.)
 
-    @PluginParameter(description = "Set this value to 1 if you want to Cache the Data in your Memory.Could raise a out of memory exception on large dataSets but speeds up the whole process ALOT",
+    @PluginParameter(description = "Set this value to 1 if you want to Cache the Data in your Memory.Could raise a out of memory exception on large dataSets but speeds up the whole process ALOT. <br> 2 => read all actions with a single query into a compact in-memory model, which needs far less memory than 1.",
             displayName = "cacheDataInMemory",
             shortDescription = "Cache the Data in Memory",
             displayOrder = 0)
@@ -57,6 +57,20 @@ public class MahoutBooleanGeneratorConfig extends GeneratorConfiguration {
         this.cacheDataInMemory = cacheDataInMemory;
     }
 
+    @PluginParameter(description = "Only used if cacheDataInMemory is 2. The directory the compact model is stored in and reused from as long as no actions were added. Leave empty to always read the actions from the database.",
+            displayName = "snapshotDirectory",
+            shortDescription = "Directory of the compact model snapshots",
+            displayOrder = 0)
+    private String snapshotDirectory = ""; // DEFAULT VALUE
+
+    public String getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
+    public void setSnapshotDirectory(String snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
     @PluginParameter(description = "The number of item associations calculated for each item.",
             displayName = "numberOfRecs",
             shortDescription = "Number of recommendations per item",
@@ -71,6 +85,12 @@ public class MahoutBooleanGeneratorConfig extends GeneratorConfiguration {
 
     private String viewType = "SYSTEM";
 
+    @PluginParameter(description = "The number of threads recommending for the users. The recommendations are written in large batches by a single thread.",
+            displayName = "threads",
+            shortDescription = "Number of threads",
+            displayOrder = 3)
+    private int threads = 1; // DEFAULT VALUE
+
     @PluginParameter(description = "The User Similarity Method you want to use. <br> 1 => LogLikelihoodSimilarity <br>  2 => TanimotoCoefficientSimilarity <br> 3 => SpearmanCorrelationSimilarity <br>  4 => CityBlockSimilarity  <br>  ",
             displayName = "userSimilarityMethod",
             shortDescription = "The User Similarity Method you want to use.",
@@ -137,6 +157,14 @@ public class MahoutBooleanGeneratorConfig extends GeneratorConfiguration {
         this.viewType = viewType;
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public int getUserSimilarityMethod() {
         return userSimilarityMethod;
     }
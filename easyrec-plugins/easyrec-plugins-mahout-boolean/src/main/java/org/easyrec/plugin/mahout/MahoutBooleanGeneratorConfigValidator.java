@@ -48,6 +48,7 @@ public class MahoutBooleanGeneratorConfigValidator implements Validator {
         Double userNeighborhoodThreshold = configuration.getUserNeighborhoodThreshold(); //0-1
         Integer userNeighborhoodSize = configuration.getUserNeighborhoodSize(); // ! < 0
         Integer cacheDataInMemory = configuration.getCacheDataInMemory();
+        Integer threads = configuration.getThreads();
 
         if (userSimilarityMethod != null && (userSimilarityMethod < 1 || userSimilarityMethod > 4))
             errors.rejectValue("userSimilarityMethod", "error.outOfRange",
@@ -69,9 +70,13 @@ public class MahoutBooleanGeneratorConfigValidator implements Validator {
             errors.rejectValue("userNeighborhoodSize", "error.outOfRange",
                     "userNeighborhoodSize must be greater then 0.");
 
-        if (userNeighborhoodSize != null && (cacheDataInMemory != 0 && cacheDataInMemory != 1 ))
+        if (userNeighborhoodSize != null && (cacheDataInMemory < 0 || cacheDataInMemory > 2))
             errors.rejectValue("cacheDataInMemory", "error.outOfRange",
-                    "cacheDataInMemory must be 1(true) or 0(false) ");
+                    "cacheDataInMemory must be 1(true), 0(false) or 2(compact) ");
+
+        if (threads != null && threads < 1)
+            errors.rejectValue("threads", "error.outOfRange",
+                    "threads must be greater then 0.");
 
 
 
@@ -26,6 +26,10 @@ import org.easyrec.plugin.stats.GeneratorStatistics;
  */
 public class MahoutBooleanGeneratorStats extends GeneratorStatistics {
     private int numberOfItems = 0;
+    private long dataModelDuration = 0;
+    private long itemTypesDuration = 0;
+    private long recommendDuration = 0;
+    private long writeDuration = 0;
 
     public int getNumberOfItems() {
         return numberOfItems;
@@ -39,4 +43,48 @@ public class MahoutBooleanGeneratorStats extends GeneratorStatistics {
         this.numberOfItems++;
     }
 
+    /**
+     * @return Time spent initializing the data model, in milliseconds.
+     */
+    public long getDataModelDuration() {
+        return dataModelDuration;
+    }
+
+    public void setDataModelDuration(long dataModelDuration) {
+        this.dataModelDuration = dataModelDuration;
+    }
+
+    /**
+     * @return Time spent loading the item types of the items, in milliseconds.
+     */
+    public long getItemTypesDuration() {
+        return itemTypesDuration;
+    }
+
+    public void setItemTypesDuration(long itemTypesDuration) {
+        this.itemTypesDuration = itemTypesDuration;
+    }
+
+    /**
+     * @return Time the threads spent recommending, summed over all threads, in milliseconds.
+     */
+    public long getRecommendDuration() {
+        return recommendDuration;
+    }
+
+    public void setRecommendDuration(long recommendDuration) {
+        this.recommendDuration = recommendDuration;
+    }
+
+    /**
+     * @return Time spent writing the recommendations, in milliseconds.
+     */
+    public long getWriteDuration() {
+        return writeDuration;
+    }
+
+    public void setWriteDuration(long writeDuration) {
+        this.writeDuration = writeDuration;
+    }
+
 }
@@ -19,16 +19,17 @@
 
 package org.easyrec.plugin.mahout;
 
+import gnu.trove.map.hash.TIntIntHashMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.recommender.slopeone.SlopeOneRecommender;
-import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.easyrec.mahout.model.EasyrecCompactDataModel;
 import org.easyrec.mahout.model.EasyrecDataModel;
+import org.easyrec.mahout.model.EasyrecInMemoryDataModel;
+import org.easyrec.mahout.recommender.RecommendationWriter;
 import org.easyrec.mahout.store.MahoutDataModelMappingDAO;
-import org.easyrec.model.core.ItemAssocVO;
-import org.easyrec.model.core.ItemVO;
 import org.easyrec.plugin.model.Version;
 import org.easyrec.plugin.support.GeneratorPluginSupport;
 import org.easyrec.service.core.ItemAssocService;
@@ -37,9 +38,9 @@ import org.easyrec.store.dao.core.types.AssocTypeDAO;
 import org.easyrec.store.dao.core.types.ItemTypeDAO;
 import org.easyrec.store.dao.core.ItemDAO;
 
+import java.io.File;
 import java.net.URI;
 import java.util.Date;
-import java.util.List;
 
 /**
  * Sample generator plugin that demonstrates how to use the easyrec plugin API. <p/> <p><b>Company:&nbsp;</b> SAT,
@@ -122,9 +123,28 @@ public class MahoutSlopeoneGenerator extends GeneratorPluginSupport<MahoutSlopeo
         TypeMappingService typeMappingService = (TypeMappingService) super.getTypeMappingService();
         ItemAssocService itemAssocService = getItemAssocService();
 
-        EasyrecDataModel easyrecDataModel = new EasyrecDataModel(config.getTenantId(), typeMappingService.getIdOfActionType(config.getTenantId(), config.getActionType()), true, mahoutDataModelMappingDAO);
+        long dataModelStart = System.currentTimeMillis();
+        int actionTypeId = typeMappingService.getIdOfActionType(config.getTenantId(), config.getActionType());
+        DataModel easyrecDataModel;
+
+        if (config.getCacheDataInMemory() == 2) {
+            executionControl.updateProgress("initialize EasyrecCompactDataModel");
+            String snapshotDirectory = config.getSnapshotDirectory();
+            easyrecDataModel = new EasyrecCompactDataModel(config.getTenantId(), actionTypeId, true,
+                    mahoutDataModelMappingDAO,
+                    snapshotDirectory == null || snapshotDirectory.trim().length() == 0 ? null :
+                            new File(snapshotDirectory.trim()));
+        } else {
+            easyrecDataModel = new EasyrecDataModel(config.getTenantId(), actionTypeId, true, mahoutDataModelMappingDAO);
+
+            if (config.getCacheDataInMemory() == 1) {
+                executionControl.updateProgress("initialize EasyrecInMemoryDataModel");
+                easyrecDataModel = new EasyrecInMemoryDataModel(easyrecDataModel);
+            }
+        }
 
         Recommender recommender = new SlopeOneRecommender(easyrecDataModel);
+        stats.setDataModelDuration(System.currentTimeMillis() - dataModelStart);
 
         itemTypeDAO.insertOrUpdate(config.getTenantId(), "USER", false);
 
@@ -135,34 +155,29 @@ public class MahoutSlopeoneGenerator extends GeneratorPluginSupport<MahoutSlopeo
 
         stats.setNumberOfItems(easyrecDataModel.getNumItems());
 
-        for (LongPrimitiveIterator it = easyrecDataModel.getUserIDs(); it.hasNext(); ) {
-            long userId = it.nextLong();
-            List<RecommendedItem> recommendations = recommender.recommend(userId, config.getNumberOfRecs());
-
-            if (recommendations.isEmpty()) {
-                logger.debug("User " + userId + " : no recommendations");
-            }
-
-            // print the list of recommendations for each
-            for (RecommendedItem recommendedItem : recommendations) {
-                logger.debug("User " + userId + " : " + recommendedItem);
-
-                Integer itemToId = (int) recommendedItem.getItemID();
-                Integer itemToType = itemDAO.getItemTypeIdOfItem(config.getTenantId(), itemToId);
+        executionControl.updateProgress("loading item types");
+        long itemTypesStart = System.currentTimeMillis();
+        TIntIntHashMap itemTypeIds = itemDAO.getItemTypeIdsOfItems(config.getTenantId());
+        stats.setItemTypesDuration(System.currentTimeMillis() - itemTypesStart);
 
-                ItemVO<Integer, Integer> fromItem = new ItemVO<Integer, Integer>(config.getTenantId(), (int) userId, userType);
-                Double recommendationStrength = (double) recommendedItem.getValue();
-                ItemVO<Integer, Integer> toItem = new ItemVO<Integer, Integer>(config.getTenantId(), itemToId, itemToType);
+        RecommendationWriter writer = new RecommendationWriter(recommender, itemAssocService, itemTypeIds,
+                config.getTenantId(), userType, assocType, sourceType, "Mahout Slopeone Generator", viewType, execution);
 
-                ItemAssocVO<Integer,Integer> itemAssoc = new ItemAssocVO<Integer,Integer>(
-                        config.getTenantId(), fromItem, assocType, recommendationStrength, toItem, sourceType,
-                        "Mahout Slopeone Generator", viewType, null, execution);
+        final ExecutionControl control = executionControl;
+        writer.write(easyrecDataModel.getUserIDs(), easyrecDataModel.getNumUsers(), config.getNumberOfRecs(),
+                Math.max(config.getThreads(), 1), new RecommendationWriter.Progress() {
+            public boolean isAbortRequested() {
+                return control.isAbortRequested();
+            }
 
-                itemAssocService.insertOrUpdateItemAssoc(itemAssoc);
-                stats.incNumberOfRulesCreated();
+            public void updateProgress(int currentStep, int totalSteps) {
+                control.updateProgress(currentStep, totalSteps, "Saving Recommendations...");
             }
-        }
+        });
 
+        stats.setNumberOfRulesCreated(writer.getRules());
+        stats.setRecommendDuration(writer.getRecommendDuration());
+        stats.setWriteDuration(writer.getWriteDuration());
     }
 
 }
@@ -30,6 +30,21 @@ public class MahoutSlopeoneGeneratorConfig extends GeneratorConfiguration {
 
     private String viewType = "SYSTEM";
 
+    @PluginParameter(description = "The number of threads recommending for the users. The recommendations are written in large batches by a single thread.",
+            displayName = "threads",
+            shortDescription = "Number of threads")
+    private int threads = 1; // DEFAULT VALUE
+
+    @PluginParameter(description = "How the actions are read. <br> 0 => read from the database when needed <br> 1 => cache the data in memory, could raise a out of memory exception on large dataSets <br> 2 => read all actions with a single query into a compact in-memory model",
+            displayName = "cacheDataInMemory",
+            shortDescription = "Cache the Data in Memory")
+    private int cacheDataInMemory = 0; // DEFAULT VALUE
+
+    @PluginParameter(description = "Only used if cacheDataInMemory is 2. The directory the compact model is stored in and reused from as long as no actions were added. Leave empty to always read the actions from the database.",
+            displayName = "snapshotDirectory",
+            shortDescription = "Directory of the compact model snapshots")
+    private String snapshotDirectory = ""; // DEFAULT VALUE
+
     // --------------------- GETTER / SETTER METHODS ---------------------
 
     public int getNumberOfRecs() {
@@ -55,4 +70,28 @@ public class MahoutSlopeoneGeneratorConfig extends GeneratorConfiguration {
     public void setActionType(String actionType) {
         this.actionType = actionType;
     }
+
+    public int getCacheDataInMemory() {
+        return cacheDataInMemory;
+    }
+
+    public void setCacheDataInMemory(int cacheDataInMemory) {
+        this.cacheDataInMemory = cacheDataInMemory;
+    }
+
+    public String getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
+    public void setSnapshotDirectory(String snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
 }
@@ -36,6 +36,7 @@ import org.easyrec.plugin.slopeone.store.dao.LogEntryDAO;
 import org.easyrec.plugin.support.GeneratorPluginSupport;
 import org.easyrec.service.core.TenantService;
 import org.easyrec.service.domain.TypeMappingService;
+import org.easyrec.store.dao.core.types.ItemTypeDAO;
 
 import java.net.URI;
 import java.util.Date;
@@ -63,6 +64,7 @@ public class SlopeOneGenerator extends GeneratorPluginSupport<SlopeOneConfigurat
     private DeviationDAO deviationDAO;
     private LogEntryDAO logEntryDAO;
     private TypeMappingService typeMappingService;
+    private ItemTypeDAO itemTypeDAO;
 
     public SlopeOneGenerator() {
         super(DISPLAY_NAME, ID, VERSION, SlopeOneConfiguration.class, SlopeOneStats.class);
@@ -79,6 +81,9 @@ public class SlopeOneGenerator extends GeneratorPluginSupport<SlopeOneConfigurat
         this.slopeOneService = slopeOneService;
     }
 
+    @SuppressWarnings({"UnusedDeclaration"})
+    public void setItemTypeDAO(final ItemTypeDAO itemTypeDAO) { this.itemTypeDAO = itemTypeDAO; }
+
     @SuppressWarnings({"UnusedDeclaration"})
     public void setTypeMappingService(final TypeMappingService typeMappingService) {
         this.typeMappingService = typeMappingService;
@@ -113,7 +118,7 @@ public class SlopeOneGenerator extends GeneratorPluginSupport<SlopeOneConfigurat
 
     @Override
     protected void doExecute(final ExecutionControl control, SlopeOneStats stats) throws Exception {
-        control.updateProgress(0, 4, "Started");
+        control.updateProgress(0, 5, "Started");
 
         SlopeOneConfiguration configuration = getConfiguration();
         TenantVO tenant = tenantService.getTenantById(configuration.getTenantId());
@@ -160,8 +165,8 @@ public class SlopeOneGenerator extends GeneratorPluginSupport<SlopeOneConfigurat
 
         SlopeOneIntegerConfiguration integerConfiguration = new SlopeOneIntegerConfiguration(
                 configuration.getMaxRecsPerItem(), configuration.getMinRatedCount(),
-                configuration.getNonPersonalizedSourceInfo(), objActionTypeId, itemTypes, objViewTypeId,
-                objAssocTypeId, objSourceTypeId, tenantId);
+                configuration.getNonPersonalizedSourceInfo(), configuration.getPersonalizedSourceInfo(),
+                objActionTypeId, itemTypes, objViewTypeId, objAssocTypeId, objSourceTypeId, tenantId);
 
         LogEntry logEntry = new LogEntry(tenantId, execution, configuration, stats);
 
@@ -206,7 +211,25 @@ public class SlopeOneGenerator extends GeneratorPluginSupport<SlopeOneConfigurat
                 logger.info(String.format("Calculated non-personalized recommendations in %dms",
                         stats.getNonPersonalizedDuration()));
 
-            control.updateProgress(4, "Finishing ...");
+            if (Boolean.TRUE.equals(configuration.getPersonalizedRecommendations())) {
+                if (control.isAbortRequested()) return;
+
+                control.updateProgress(4, "Calculating personalized recommendations");
+
+                // the users are stored as items of the type USER, like other generators do
+                itemTypeDAO.insertOrUpdate(tenantId, "USER", false);
+                Integer objUserTypeId = typeMappingService.getIdOfItemType(tenantId, "USER");
+                objUserTypeId = Preconditions.checkNotNull(objUserTypeId, "item type 'USER' is missing.");
+
+                slopeOneService.personalizedRecommendations(integerConfiguration, stats, execution, objUserTypeId,
+                        true, control);
+
+                if (logger.isInfoEnabled())
+                    logger.info(String.format("Calculated personalized recommendations in %dms",
+                            stats.getPersonalizedDuration()));
+            }
+
+            control.updateProgress(5, "Finishing ...");
 
             TIntIterator iterator = itemTypes.iterator();
 
@@ -215,7 +238,7 @@ public class SlopeOneGenerator extends GeneratorPluginSupport<SlopeOneConfigurat
         } catch (Exception e) {
             stats.setException(e);
 
-            control.updateProgress(4, "Finishing with error ...");
+            control.updateProgress(5, "Finishing with error ...");
 
             throw e;
         } finally {
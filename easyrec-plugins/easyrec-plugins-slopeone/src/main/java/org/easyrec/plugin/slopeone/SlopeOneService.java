@@ -79,4 +79,21 @@ public interface SlopeOneService {
     void nonPersonalizedRecommendations(SlopeOneIntegerConfiguration config, SlopeOneStats stats, Date execution,
                                         Set<TenantItem> changedItemIds,
                                         final ExecutablePluginSupport.ExecutionControl control);
+
+    /**
+     * Generate personalized recommendations.
+     * <p/>
+     * Predicts the ratings of the items every user didn't rate yet from the deviations of the items the user rated and
+     * stores the best predictions as item associations from the user to the items.
+     *
+     * @param config     Configuration used.
+     * @param stats      Statistics.
+     * @param execution  Time to assign to newly created {@link org.easyrec.model.core.ItemAssocVO}s.
+     * @param userTypeId Item type of the users in the item associations.
+     * @param weighted   {@code true} to weight the deviations by the number of users that rated both items.
+     * @param control    Control for updating progress.
+     */
+    void personalizedRecommendations(SlopeOneIntegerConfiguration config, SlopeOneStats stats, Date execution,
+                                     int userTypeId, boolean weighted,
+                                     final ExecutablePluginSupport.ExecutionControl control);
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.slopeone.impl;
+
+import org.easyrec.plugin.slopeone.model.Deviation;
+import org.easyrec.plugin.slopeone.store.dao.DeviationDAO;
+import org.easyrec.utils.spring.cache.MethodCache;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Least recently used cache of the ordered deviations of items, shared by the threads calculating personalized
+ * recommendations. The deviations of an item are not limited, every deviation can lead to one of the best
+ * predictions of a user, so the cache is bounded by the total number of deviations rather than by items.
+ * <p/>
+ * The entries are held by a {@link MethodCache}. On a miss the deviations are read from the {@link DeviationDAO}
+ * outside of its locks, so two threads missing the same item at once both read it.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+final class DeviationCache {
+    private final DeviationDAO deviationDAO;
+    private final int tenantId;
+    @Nullable
+    private final Long minCountConstraint;
+    private final MethodCache cache;
+
+    // an item without deviations still takes an entry
+    private static final MethodCache.Weigher DEVIATIONS_WEIGHER = new MethodCache.Weigher() {
+        public long weigh(Object result) {
+            return Math.max(((List<?>) result).size(), 1);
+        }
+    };
+
+    /**
+     * @param maxDeviations The maximum number of deviations cached over all items.
+     */
+    DeviationCache(DeviationDAO deviationDAO, int tenantId, @Nullable Long minCountConstraint, long maxDeviations) {
+        if (deviationDAO == null) throw new IllegalArgumentException("Missing 'deviationDAO'");
+        if (maxDeviations <= 0) throw new IllegalArgumentException("'maxDeviations' must be greater than 0");
+
+        this.deviationDAO = deviationDAO;
+        this.tenantId = tenantId;
+        this.minCountConstraint = minCountConstraint;
+        this.cache = new MethodCache("getDeviationsOrdered", new Class<?>[]{Long.class}, maxDeviations,
+                DEVIATIONS_WEIGHER, 0);
+    }
+
+    /**
+     * @see DeviationDAO#getDeviationsOrdered(int, int, int, Long, Integer)
+     */
+    @SuppressWarnings("unchecked")
+    List<Deviation> getDeviationsOrdered(int itemTypeId, int itemId) {
+        Object[] key = new Object[]{((long) itemTypeId << 32) | (itemId & 0xFFFFFFFFL)};
+        List<Deviation> deviations = (List<Deviation>) cache.get(key);
+
+        if (deviations == null) {
+            deviations = deviationDAO.getDeviationsOrdered(tenantId, itemTypeId, itemId, minCountConstraint, null);
+            cache.put(key, deviations);
+        }
+
+        return deviations;
+    }
+
+    long getHits() {
+        return cache.getHits();
+    }
+
+    long getMisses() {
+        return cache.getMisses();
+    }
+}
@@ -19,11 +19,13 @@
 
 package org.easyrec.plugin.slopeone.impl;
 
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.ItemAssocVO;
+import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.RatingVO;
-import org.easyrec.model.core.TenantVO;
 import org.easyrec.plugin.slopeone.DeviationCalculationStrategy;
 import org.easyrec.plugin.slopeone.SlopeOneService;
 import org.easyrec.plugin.slopeone.model.*;
@@ -32,12 +34,29 @@ import org.easyrec.plugin.slopeone.store.dao.DeviationDAO;
 import org.easyrec.plugin.support.ExecutablePluginSupport;
 import org.easyrec.plugin.support.ExecutablePluginSupport.ExecutionControl;
 import org.easyrec.store.dao.core.ItemAssocDAO;
+import org.easyrec.store.dao.core.ItemAssocSink;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of SlopeOneService.<p><b>Company:&nbsp;</b> SAT, Research Studios Austria</p>
@@ -53,6 +72,14 @@ public class SlopeOneServiceImpl implements SlopeOneService {
     private DeviationDAO deviationDAO;
     private ItemAssocDAO itemAssocDAO;
 
+    private static final int MAX_ITEMASSOCS = 50000;
+    // number of item association batches waiting for the writer thread
+    private static final int WRITER_QUEUE_SIZE = 4;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean batchedNonPersonalizedRecommendations = false;
+    private int deviationCacheSize = 1000000;
+
     public SlopeOneServiceImpl(ItemAssocDAO itemAssocDAO, ActionDAO actionDAO, DeviationDAO deviationDAO,
                                DeviationCalculationStrategy deviationCalculation) {
         this.itemAssocDAO = itemAssocDAO;
@@ -61,6 +88,48 @@ public class SlopeOneServiceImpl implements SlopeOneService {
         this.deviationCalculation = deviationCalculation;
     }
 
+    public int getThreads() { return threads; }
+
+    /**
+     * The number of threads calculating the deviations of users, defaults to the number of processors. The deviation
+     * calculation strategy and the deviation DAO must be thread-safe if more than one thread is used.
+     *
+     * @param threads The number of threads calculating deviations.
+     */
+    public void setThreads(int threads) {
+        if (threads <= 0) throw new IllegalArgumentException("'threads' must be greater than 0");
+
+        this.threads = threads;
+    }
+
+    public int getDeviationCacheSize() { return deviationCacheSize; }
+
+    /**
+     * The number of deviations cached while calculating personalized recommendations. The deviations of an item are
+     * not limited, so the cache is bounded by deviations instead of items.
+     *
+     * @param deviationCacheSize Number of deviations.
+     */
+    public void setDeviationCacheSize(int deviationCacheSize) {
+        if (deviationCacheSize <= 0) throw new IllegalArgumentException("'deviationCacheSize' must be greater than 0");
+
+        this.deviationCacheSize = deviationCacheSize;
+    }
+
+    public boolean isBatchedNonPersonalizedRecommendations() { return batchedNonPersonalizedRecommendations; }
+
+    /**
+     * If enabled the deviations of all changed items are read with a single query, the best deviations of every item
+     * are selected by {@link #getThreads()} threads and the item associations are written by another thread while the
+     * next deviations are read.
+     *
+     * @param batchedNonPersonalizedRecommendations
+     *         {@code true} to calculate the non-personalized recommendations batched.
+     */
+    public void setBatchedNonPersonalizedRecommendations(boolean batchedNonPersonalizedRecommendations) {
+        this.batchedNonPersonalizedRecommendations = batchedNonPersonalizedRecommendations;
+    }
+
     public void calculateDeviations(SlopeOneIntegerConfiguration config, Date lastRun, SlopeOneStats stats,
                                     Set<TenantItem> changedItemIds,
                                     final ExecutablePluginSupport.ExecutionControl control) {
@@ -73,32 +142,47 @@ public class SlopeOneServiceImpl implements SlopeOneService {
         final int TOTAL_STEPS = users.size();
         int currentStep = 0;
 
-        for (int userId : users) {
-            if (control != null)
-                control.updateProgress(String.format("Calculating deviations %d/%d", currentStep++, TOTAL_STEPS));
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CompletionService<UserDeviations> completionService =
+                new ExecutorCompletionService<UserDeviations>(executor);
 
-            // for each of these users get all his ratings
-            List<RatingVO<Integer, Integer>> ratings =
-                    actionDAO.getRatings(config.getTenant(), config.getItemTypes(), userId);
-            stats.setNumberOfActionsConsidered(stats.getNumberOfActionsConsidered() + ratings.size());
+        try {
+            int submitted = 0;
 
-            // and use them to calculate the new deviations (old deviations, i.e. deviations that were already
-            // generated in a prior run are already filtered by the strategy.)
-            // moreover a proxy strategy merges the deviations with the deviations in the database (i.e. numerator
-            // and denominator are already summed to the current value.)
-            DeviationCalculationResult result = deviationCalculation.calculate(userId, ratings, lastRun);
-            List<Deviation> deviations = result.getDeviations();
-            stats.setNoCreatedDeviations(stats.getNoCreatedDeviations() + result.getCreated());
-            stats.setNoModifiedDeviations(stats.getNoModifiedDeviations() + result.getModified());
+            // a few users per thread are in flight, so the pending deviations stay small
+            while (submitted < TOTAL_STEPS && submitted < threads * 2) {
+                completionService.submit(new UserDeviationCalculation(config, users.get(submitted++), lastRun));
+            }
 
-            if (changedItemIds != null) {
-                for (Deviation deviation : deviations) {
-                    changedItemIds.add(new TenantItem(deviation.getItem1Id(), deviation.getItem1TypeId()));
-                    changedItemIds.add(new TenantItem(deviation.getItem2Id(), deviation.getItem1TypeId()));
+            while (currentStep < submitted) {
+                UserDeviations userDeviations = completionService.take().get();
+
+                if (control != null)
+                    control.updateProgress(String.format("Calculating deviations %d/%d", currentStep, TOTAL_STEPS));
+                currentStep++;
+
+                if (submitted < TOTAL_STEPS)
+                    completionService.submit(new UserDeviationCalculation(config, users.get(submitted++), lastRun));
+
+                DeviationCalculationResult result = userDeviations.result;
+                stats.setNumberOfActionsConsidered(stats.getNumberOfActionsConsidered() + userDeviations.ratings);
+                stats.setNoCreatedDeviations(stats.getNoCreatedDeviations() + result.getCreated());
+                stats.setNoModifiedDeviations(stats.getNoModifiedDeviations() + result.getModified());
+
+                if (changedItemIds != null) {
+                    for (Deviation deviation : result.getDeviations()) {
+                        changedItemIds.add(new TenantItem(deviation.getItem1Id(), deviation.getItem1TypeId()));
+                        changedItemIds.add(new TenantItem(deviation.getItem2Id(), deviation.getItem1TypeId()));
+                    }
                 }
             }
-
-            deviationDAO.insertDeviations(deviations);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Deviation calculation was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Deviation calculation failed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
 
         if (logger.isDebugEnabled())
@@ -126,9 +210,13 @@ public class SlopeOneServiceImpl implements SlopeOneService {
     public void nonPersonalizedRecommendations(final SlopeOneIntegerConfiguration config, final SlopeOneStats stats,
                                                final Date execution, final Set<TenantItem> changedItemIds,
                                                final ExecutionControl control) {
+        if (batchedNonPersonalizedRecommendations) {
+            batchedNonPersonalizedRecommendations(config, stats, execution, changedItemIds, control);
+            return;
+        }
+
         final long start = System.currentTimeMillis();
 
-        final int MAX_ITEMASSOCS = 50000;
         // atomic to support usage in changedItemIds.forEach(AnonymousClass)
         final AtomicInteger itemAssocCount = new AtomicInteger(0);
 
@@ -181,72 +269,449 @@ public class SlopeOneServiceImpl implements SlopeOneService {
         stats.setNonPersonalizedDuration(System.currentTimeMillis() - start);
     }
 
-    @SuppressWarnings({"UnusedDeclaration"})
-    public void personalizedRecommendations(TenantVO tenant, SlopeOneIntegerConfiguration config, SlopeOneStats stats,
-                                            Date execution, Set<TenantItem> changedItemIds, boolean weighted,
+    private void batchedNonPersonalizedRecommendations(final SlopeOneIntegerConfiguration config,
+                                                       final SlopeOneStats stats, final Date execution,
+                                                       final Set<TenantItem> changedItemIds,
+                                                       final ExecutionControl control) {
+        final long start = System.currentTimeMillis();
+
+        final Map<Integer, TIntSet> changedItemsOfTypes = new HashMap<Integer, TIntSet>();
+        for (TenantItem changedItem : changedItemIds) {
+            TIntSet changedItems = changedItemsOfTypes.get(changedItem.getItemTypeId());
+
+            if (changedItems == null) {
+                changedItems = new TIntHashSet();
+                changedItemsOfTypes.put(changedItem.getItemTypeId(), changedItems);
+            }
+
+            changedItems.add(changedItem.getItemId());
+        }
+
+        final int TOTAL_STEPS = changedItemIds.size();
+        final AtomicLong computeDuration = new AtomicLong(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CompletionService<List<ItemAssocVO<Integer, Integer>>> completionService =
+                new ExecutorCompletionService<List<ItemAssocVO<Integer, Integer>>>(executor);
+        final ItemAssocWriter writer = new ItemAssocWriter();
+        long fetchDuration = 0;
+
+        try {
+            // counts submitted and completed items and the time spent handling them while fetching
+            final long[] progress = new long[3];
+
+            for (final Map.Entry<Integer, TIntSet> changedItems : changedItemsOfTypes.entrySet()) {
+                long fetchStart = System.currentTimeMillis();
+
+                deviationDAO.getDeviationsGrouped(config.getTenant(), changedItems.getKey(),
+                        config.getMinRatedCount(), new DeviationDAO.DeviationsOfItemHandler() {
+                    public void handleDeviations(int itemId, List<Deviation> deviations) {
+                        if (!changedItems.getValue().contains(itemId)) return;
+
+                        long handleStart = System.currentTimeMillis();
+
+                        completionService.submit(new BestDeviations(config, execution, deviations,
+                                computeDuration));
+                        progress[0]++;
+
+                        // a few items per thread are in flight, so the pending deviations stay small
+                        while (progress[0] - progress[1] >= threads * 2) {
+                            writeCompleted(completionService, writer);
+                            progress[1]++;
+
+                            if (control != null) control.updateProgress(
+                                    String.format("Calculating non-personalized recommendations %d/%d", progress[1],
+                                            TOTAL_STEPS));
+                        }
+
+                        progress[2] += System.currentTimeMillis() - handleStart;
+                    }
+                });
+
+                fetchDuration += System.currentTimeMillis() - fetchStart;
+            }
+
+            fetchDuration -= progress[2];
+
+            while (progress[1] < progress[0]) {
+                writeCompleted(completionService, writer);
+                progress[1]++;
+            }
+
+            writer.close();
+        } finally {
+            executor.shutdownNow();
+            writer.shutdown();
+        }
+
+        itemAssocDAO.removeItemAssocByTenant(config.getTenant(), config.getAssocType(), config.getSourceType(),
+                execution);
+
+        stats.setNumberOfRulesCreated(writer.getWritten());
+        stats.setNonPersonalizedFetchDuration(fetchDuration);
+        stats.setNonPersonalizedComputeDuration(computeDuration.get());
+        stats.setNonPersonalizedWriteDuration(writer.getWriteDuration());
+        stats.setNonPersonalizedDuration(System.currentTimeMillis() - start);
+
+        if (logger.isInfoEnabled())
+            logger.info(String.format(
+                    "Writing %d non-personalized recommendations with %d threads took %.2f seconds (fetch %.2f, " +
+                            "compute %.2f, write %.2f)", writer.getWritten(), threads,
+                    stats.getNonPersonalizedDuration() / 1000.0, fetchDuration / 1000.0,
+                    computeDuration.get() / 1000.0, writer.getWriteDuration() / 1000.0));
+    }
+
+    private static void writeCompleted(CompletionService<List<ItemAssocVO<Integer, Integer>>> completionService,
+                                       ItemAssocWriter writer) {
+        try {
+            writer.write(completionService.take().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Non-personalized recommendation calculation was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Non-personalized recommendation calculation failed.", e.getCause());
+        }
+    }
+
+    public void personalizedRecommendations(final SlopeOneIntegerConfiguration config, final SlopeOneStats stats,
+                                            final Date execution, final int userTypeId, final boolean weighted,
                                             final ExecutionControl control) {
-        List<Integer> userIds = actionDAO.getUsers(config.getTenant(), config.getItemTypes(), execution);
+        final long start = System.currentTimeMillis();
+
+        // the deviations changed, so the predictions of all users are calculated again
+        List<Integer> userIds = actionDAO.getUsers(config.getTenant(), config.getItemTypes(), null);
 
         final int TOTAL_STEPS = userIds.size();
+        // maxRecsPerItem limits the recommendations of a user, not the deviations of the items the user rated
+        final DeviationCache deviationCache = new DeviationCache(deviationDAO, config.getTenant(),
+                config.getMinRatedCount(), deviationCacheSize);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CompletionService<List<ItemAssocVO<Integer, Integer>>> completionService =
+                new ExecutorCompletionService<List<ItemAssocVO<Integer, Integer>>>(executor);
+        final ItemAssocSink sink = itemAssocDAO.openItemAssocSink();
+        int recommendations = 0;
         int currentStep = 0;
+        boolean aborted = false;
 
-        for (int userId : userIds) {
-            if (control != null) control.updateProgress(
-                    String.format("Calculating personalized recommendations %d/%d", currentStep++, TOTAL_STEPS));
+        try {
+            int submitted = 0;
+
+            // a few users per thread are in flight, the calling thread writes while the others predict
+            while (submitted < TOTAL_STEPS && submitted < threads * 2) {
+                completionService.submit(new UserPredictions(config, execution, userIds.get(submitted++),
+                        userTypeId, weighted, deviationCache));
+            }
+
+            while (currentStep < submitted) {
+                List<ItemAssocVO<Integer, Integer>> itemAssocs = completionService.take().get();
+                currentStep++;
+
+                if (control != null && control.isAbortRequested()) {
+                    aborted = true;
+                    break;
+                }
+
+                if (submitted < TOTAL_STEPS) {
+                    completionService.submit(new UserPredictions(config, execution, userIds.get(submitted++),
+                            userTypeId, weighted, deviationCache));
+                }
+
+                for (ItemAssocVO<Integer, Integer> itemAssoc : itemAssocs)
+                    sink.add(itemAssoc);
+                recommendations += itemAssocs.size();
+
+                if (control != null) control.updateProgress(
+                        String.format("Calculating personalized recommendations %d/%d", currentStep, TOTAL_STEPS));
+            }
+
+            if (!aborted) sink.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Personalized recommendation calculation was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Personalized recommendation calculation failed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            // a no-op if the sink was closed, otherwise the associations which weren't written yet are dropped
+            sink.discard();
+        }
 
-            List<RatingVO<Integer, Integer>> ratings = actionDAO.getRatings(
-                    config.getTenant(), config.getItemTypes(), userId);
+        if (aborted) {
+            // the previous recommendations are kept, the new ones are incomplete
+            if (logger.isInfoEnabled())
+                logger.info(String.format("Personalized recommendations were aborted after %d of %d users",
+                        currentStep, TOTAL_STEPS));
+
+            return;
+        }
+
+        itemAssocDAO.removeItemAssocByTenant(config.getTenant(), config.getAssocType(), config.getSourceType(),
+                execution);
+
+        long duration = System.currentTimeMillis() - start;
+
+        stats.setNoPersonalizedUsers(currentStep);
+        stats.setNoPersonalizedRecommendations(recommendations);
+        stats.setPersonalizedDuration(duration);
+        stats.setPersonalizedUsersPerSecond(duration > 0 ? currentStep * 1000.0 / duration : 0.0);
+        stats.setDeviationCacheHits(deviationCache.getHits());
+        stats.setDeviationCacheMisses(deviationCache.getMisses());
+
+        if (logger.isInfoEnabled())
+            logger.info(String.format(
+                    "Writing %d personalized recommendations for %d users with %d threads took %.2f seconds, " +
+                            "%d deviation cache hits and %d misses", recommendations, currentStep, threads,
+                    duration / 1000.0, deviationCache.getHits(), deviationCache.getMisses()));
+    }
+
+    /**
+     * Predicts the ratings of the items a user didn't rate and turns the best predictions into item associations from
+     * the user to the items.
+     */
+    private class UserPredictions implements Callable<List<ItemAssocVO<Integer, Integer>>> {
+        private final SlopeOneIntegerConfiguration config;
+        private final Date execution;
+        private final int userId;
+        private final int userTypeId;
+        private final boolean weighted;
+        private final DeviationCache deviationCache;
+
+        private UserPredictions(SlopeOneIntegerConfiguration config, Date execution, int userId, int userTypeId,
+                                boolean weighted, DeviationCache deviationCache) {
+            this.config = config;
+            this.execution = execution;
+            this.userId = userId;
+            this.userTypeId = userTypeId;
+            this.weighted = weighted;
+            this.deviationCache = deviationCache;
+        }
+
+        public List<ItemAssocVO<Integer, Integer>> call() {
+            List<RatingVO<Integer, Integer>> ratings = actionDAO.getRatings(config.getTenant(), config.getItemTypes(),
+                    userId);
+            Set<ItemVO<Integer, Integer>> ratedItems = new HashSet<ItemVO<Integer, Integer>>(ratings.size());
+
+            for (RatingVO<Integer, Integer> rating : ratings)
+                ratedItems.add(rating.getItem());
+
+            // sum of the weighted predictions and sum of the weights per item
+            final Map<ItemVO<Integer, Integer>, double[]> predictions =
+                    new HashMap<ItemVO<Integer, Integer>, double[]>();
 
             for (RatingVO<Integer, Integer> rating : ratings) {
-                int itemId = rating.getItem().getItem();
-                int itemTypeId = rating.getItem().getType();
+                List<Deviation> deviations = deviationCache.getDeviationsOrdered(rating.getItem().getType(),
+                        rating.getItem().getItem());
+
+                for (Deviation deviation : deviations) {
+                    ItemVO<Integer, Integer> item = deviation.getItem2();
+
+                    if (ratedItems.contains(item)) continue;
+
+                    double[] prediction = predictions.get(item);
+
+                    if (prediction == null) {
+                        prediction = new double[2];
+                        predictions.put(item, prediction);
+                    }
+
+                    // the deviation is the average difference of the rating of item 1 and the rating of item 2
+                    double weight = weighted ? deviation.getDenominator() : 1.0;
+                    prediction[0] += (rating.getRatingValue() - deviation.getDeviation()) * weight;
+                    prediction[1] += weight;
+                }
+            }
+
+            List<ItemVO<Integer, Integer>> items = new ArrayList<ItemVO<Integer, Integer>>(predictions.keySet());
+
+            Collections.sort(items, new Comparator<ItemVO<Integer, Integer>>() {
+                public int compare(ItemVO<Integer, Integer> o1, ItemVO<Integer, Integer> o2) {
+                    double[] prediction1 = predictions.get(o1);
+                    double[] prediction2 = predictions.get(o2);
+
+                    return Double.compare(prediction2[0] / prediction2[1], prediction1[0] / prediction1[1]);
+                }
+            });
+
+            int size = config.getMaxRecsPerItem() != null ? Math.min(config.getMaxRecsPerItem(), items.size())
+                                                          : items.size();
+            List<ItemAssocVO<Integer, Integer>> itemAssocs = new ArrayList<ItemAssocVO<Integer, Integer>>(size);
+            ItemVO<Integer, Integer> user = new ItemVO<Integer, Integer>(config.getTenant(), userId, userTypeId);
+
+            for (ItemVO<Integer, Integer> item : items.subList(0, size)) {
+                double[] prediction = predictions.get(item);
+
+                itemAssocs.add(new ItemAssocVO<Integer, Integer>(config.getTenant(), user, config.getAssocType(),
+                        prediction[0] / prediction[1], item, config.getSourceType(), config.getPersonalizedSourceInfo(),
+                        config.getViewType(), Boolean.TRUE, execution));
+            }
+
+            return itemAssocs;
+        }
+    }
+
+    /**
+     * Selects the best deviations of a single item and turns them into item associations.
+     */
+    private static class BestDeviations implements Callable<List<ItemAssocVO<Integer, Integer>>> {
+        private static final Comparator<Deviation> DESCENDING = new Comparator<Deviation>() {
+            public int compare(Deviation o1, Deviation o2) {
+                return Double.compare(o2.getDeviation(), o1.getDeviation());
+            }
+        };
+
+        private final SlopeOneIntegerConfiguration config;
+        private final Date execution;
+        private final List<Deviation> deviations;
+        private final AtomicLong computeDuration;
+
+        private BestDeviations(SlopeOneIntegerConfiguration config, Date execution, List<Deviation> deviations,
+                               AtomicLong computeDuration) {
+            this.config = config;
+            this.execution = execution;
+            this.deviations = deviations;
+            this.computeDuration = computeDuration;
+        }
 
-                if (!changedItemIds.contains(new TenantItem(itemId, itemTypeId))) continue;
+        public List<ItemAssocVO<Integer, Integer>> call() {
+            long start = System.currentTimeMillis();
 
-                List<Deviation> deviations = deviationDAO.getDeviationsOrdered(config.getTenant(), itemTypeId, itemId,
-                        config.getMinRatedCount(), config.getMaxRecsPerItem());
+            Collections.sort(deviations, DESCENDING);
 
-                double recommendation = weighted ? weightedRecommendations(rating, deviations)
-                                                 : plainRecommendations(rating, deviations);
+            int size = config.getMaxRecsPerItem() != null ?
+                    Math.min(config.getMaxRecsPerItem(), deviations.size()) : deviations.size();
+            List<ItemAssocVO<Integer, Integer>> itemAssocs = new ArrayList<ItemAssocVO<Integer, Integer>>(size);
 
-                if (logger.isDebugEnabled())
-                    logger.debug("created recommendation " + recommendation);
-                // TODO write to database
+            for (Deviation deviation : deviations.subList(0, size)) {
+                itemAssocs.add(new ItemAssocVO<Integer, Integer>(config.getTenant(), deviation.getItem1(),
+                        config.getAssocType(), deviation.getDeviation(), deviation.getItem2(), config.getSourceType(),
+                        config.getNonPersonalizedSourceInfo(), config.getViewType(), Boolean.TRUE, execution));
             }
+
+            computeDuration.addAndGet(System.currentTimeMillis() - start);
+
+            return itemAssocs;
         }
     }
 
-    private double weightedRecommendations(final RatingVO<Integer, Integer> rating,
-                                           final List<Deviation> deviations) {
-        double numerator = 0.0;
-        long denominator = 0L;
+    /**
+     * Collects item associations into batches that are written by a separate thread. At most {@link
+     * #WRITER_QUEUE_SIZE} batches wait for the thread, further writes block until a batch was written.
+     */
+    private class ItemAssocWriter implements Callable<Void> {
+        private final BlockingQueue<List<ItemAssocVO<Integer, Integer>>> queue =
+                new ArrayBlockingQueue<List<ItemAssocVO<Integer, Integer>>>(WRITER_QUEUE_SIZE);
+        private final ExecutorService executor = Executors.newSingleThreadExecutor();
+        private final Future<Void> future;
+        private List<ItemAssocVO<Integer, Integer>> batch = new ArrayList<ItemAssocVO<Integer, Integer>>();
+        private volatile long writeDuration = 0;
+        private volatile int written = 0;
+
+        private ItemAssocWriter() {
+            future = executor.submit(this);
+        }
+
+        public Void call() throws InterruptedException {
+            List<ItemAssocVO<Integer, Integer>> itemAssocs;
+
+            // an empty batch marks the end
+            while (!(itemAssocs = queue.take()).isEmpty()) {
+                long start = System.currentTimeMillis();
+
+                itemAssocDAO.insertOrUpdateItemAssocs(itemAssocs);
+
+                writeDuration += System.currentTimeMillis() - start;
+                written += itemAssocs.size();
+            }
+
+            return null;
+        }
 
-        int itemId = rating.getItem().getItem();
+        public long getWriteDuration() { return writeDuration; }
 
-        for (Deviation deviation : deviations) {
-            if (deviation.getItem2Id() == itemId) continue;
+        public int getWritten() { return written; }
 
-            numerator += (deviation.getDeviation() * rating.getRatingValue()) * deviation.getDenominator();
-            denominator += deviation.getDenominator();
+        private void write(List<ItemAssocVO<Integer, Integer>> itemAssocs) throws InterruptedException {
+            batch.addAll(itemAssocs);
+
+            if (batch.size() >= MAX_ITEMASSOCS) {
+                enqueue(batch);
+                batch = new ArrayList<ItemAssocVO<Integer, Integer>>();
+            }
         }
 
-        return numerator / denominator;
+        /**
+         * Writes the remaining item associations and waits until all batches are written.
+         */
+        private void close() {
+            try {
+                if (!batch.isEmpty()) enqueue(batch);
+                enqueue(Collections.<ItemAssocVO<Integer, Integer>>emptyList());
+
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Writing non-personalized recommendations was interrupted.", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Writing non-personalized recommendations failed.", e.getCause());
+            }
+        }
+
+        private void shutdown() {
+            executor.shutdownNow();
+        }
+
+        private void enqueue(List<ItemAssocVO<Integer, Integer>> itemAssocs) throws InterruptedException {
+            // if the writer thread failed nobody empties the queue anymore
+            while (!queue.offer(itemAssocs, 1, TimeUnit.SECONDS)) {
+                if (future.isDone()) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Writing non-personalized recommendations failed.",
+                                e.getCause());
+                    }
+                }
+            }
+        }
     }
 
-    private double plainRecommendations(final RatingVO<Integer, Integer> rating,
-                                        final List<Deviation> deviations) {
-        double numerator = 0.0;
-        long denominator = 0L;
+    /**
+     * Calculates and inserts the deviations of a single user.
+     */
+    private class UserDeviationCalculation implements Callable<UserDeviations> {
+        private final SlopeOneIntegerConfiguration config;
+        private final int userId;
+        private final Date lastRun;
+
+        private UserDeviationCalculation(SlopeOneIntegerConfiguration config, int userId, Date lastRun) {
+            this.config = config;
+            this.userId = userId;
+            this.lastRun = lastRun;
+        }
 
-        int itemId = rating.getItem().getItem();
+        public UserDeviations call() {
+            // for each of these users get all his ratings
+            List<RatingVO<Integer, Integer>> ratings =
+                    actionDAO.getRatings(config.getTenant(), config.getItemTypes(), userId);
 
-        for (Deviation deviation : deviations) {
-            if (deviation.getItem2Id() == itemId) continue;
+            // and use them to calculate the new deviations (old deviations, i.e. deviations that were already
+            // generated in a prior run are already filtered by the strategy.)
+            // moreover a proxy strategy merges the deviations with the deviations in the database (i.e. numerator
+            // and denominator are already summed to the current value.)
+            DeviationCalculationResult result = deviationCalculation.calculate(userId, ratings, lastRun);
 
-            numerator += deviation.getDeviation() * rating.getRatingValue();
-            denominator++;
+            deviationDAO.insertDeviations(result.getDeviations());
+
+            return new UserDeviations(ratings.size(), result);
         }
+    }
 
-        return numerator / denominator;
+    private static class UserDeviations {
+        private final int ratings;
+        private final DeviationCalculationResult result;
+
+        private UserDeviations(int ratings, DeviationCalculationResult result) {
+            this.ratings = ratings;
+            this.result = result;
+        }
     }
 }
@@ -58,6 +58,7 @@ public class SlopeOneConfiguration extends GeneratorConfiguration {
     public static List<String> DEFAULT_ITEMTYPES = Collections.emptyList();
     public static String DEFAULT_ACTIONTYPE = "RATE";
     public static String DEFAULT_NONPERSONALIZEDSOURCEINFO = "slopeone-nonpersonalized";
+    public static String DEFAULT_PERSONALIZEDSOURCEINFO = "slopeone-personalized";
     public static Long DEFAULT_MINRATEDCOUNT = null;
     public static Integer DEFAULT_MAXRECSPERITEM = 10;
     public static String DEFAULT_VIEWTYPE = "COMMUNITY";
@@ -90,6 +91,17 @@ public class SlopeOneConfiguration extends GeneratorConfiguration {
     @XmlElement(name = "nonPersonalizedSourceInfo")
     private String nonPersonalizedSourceInfo;
 
+    @PluginParameter(
+            displayName = "personalized recommendations",
+            shortDescription = "Generate recommendations for every user.",
+            description = "Predicts the ratings of the items a user didn't rate yet from the deviations and stores the best maxRecsPerItem predictions as item associations from the user to the items.",
+            optional = true)
+    @XmlElement(name = "personalizedRecommendations")
+    private Boolean personalizedRecommendations = false;
+
+    @XmlElement(name = "personalizedSourceInfo")
+    private String personalizedSourceInfo = DEFAULT_PERSONALIZEDSOURCEINFO;
+
     // Changing this parameter in the scope of easyrec makes no sense -> annotation removed
     //    @PluginParameter(
     //        displayName = "actionType",
@@ -200,6 +212,28 @@ public class SlopeOneConfiguration extends GeneratorConfiguration {
         this.nonPersonalizedSourceInfo = nonPersonalizedSourceInfo;
     }
 
+    /**
+     * Whether recommendations for every user are generated.
+     *
+     * @return {@code true} if personalized recommendations are generated.
+     */
+    public Boolean getPersonalizedRecommendations() { return personalizedRecommendations; }
+
+    public void setPersonalizedRecommendations(final Boolean personalizedRecommendations) {
+        this.personalizedRecommendations = personalizedRecommendations;
+    }
+
+    /**
+     * Source info used when writing personalized recommendations to the itemassoc table.
+     *
+     * @return Source info stored when writing personalized recommendations to the itemassoc table.
+     */
+    public String getPersonalizedSourceInfo() { return personalizedSourceInfo; }
+
+    public void setPersonalizedSourceInfo(final String personalizedSourceInfo) {
+        this.personalizedSourceInfo = personalizedSourceInfo;
+    }
+
     /**
      * View type used when writing to the itemassoc table.
      *
@@ -223,12 +257,14 @@ public class SlopeOneConfiguration extends GeneratorConfiguration {
                 Objects.equal(maxRecsPerItem, that.maxRecsPerItem) &&
                 Objects.equal(minRatedCount, that.minRatedCount) &&
                 Objects.equal(nonPersonalizedSourceInfo, that.nonPersonalizedSourceInfo) &&
+                Objects.equal(personalizedRecommendations, that.personalizedRecommendations) &&
+                Objects.equal(personalizedSourceInfo, that.personalizedSourceInfo) &&
                 Objects.equal(viewType, that.viewType);
     }
 
     @Override
     public int hashCode() {
         return Objects.hashCode(actionType, itemTypes, maxRecsPerItem, minRatedCount, nonPersonalizedSourceInfo,
-                viewType);
+                personalizedRecommendations, personalizedSourceInfo, viewType);
     }
 }
@@ -47,6 +47,7 @@ public class SlopeOneIntegerConfiguration {
     @Nullable
     private Long minRatedCount;
     private String nonPersonalizedSourceInfo;
+    private String personalizedSourceInfo;
     private int actionType;
     private int assocType;
     private TIntSet itemTypes;
@@ -55,11 +56,13 @@ public class SlopeOneIntegerConfiguration {
     private int tenant;
 
     public SlopeOneIntegerConfiguration(@Nullable Integer maxRecsPerItem, @Nullable Long minRatedCount,
-                                        String nonPersonalizedSourceInfo, int actionType, TIntSet itemTypes,
-                                        int viewType, int assocType, int sourceType, int tenant) {
+                                        String nonPersonalizedSourceInfo, String personalizedSourceInfo,
+                                        int actionType, TIntSet itemTypes, int viewType, int assocType,
+                                        int sourceType, int tenant) {
         this.maxRecsPerItem = maxRecsPerItem;
         this.minRatedCount = minRatedCount;
         this.nonPersonalizedSourceInfo = nonPersonalizedSourceInfo;
+        this.personalizedSourceInfo = personalizedSourceInfo;
         this.actionType = actionType;
         this.itemTypes = itemTypes;
         this.viewType = viewType;
@@ -76,6 +79,8 @@ public class SlopeOneIntegerConfiguration {
 
     public String getNonPersonalizedSourceInfo() { return nonPersonalizedSourceInfo; }
 
+    public String getPersonalizedSourceInfo() { return personalizedSourceInfo; }
+
     public int getActionType() { return actionType; }
 
     public TIntSet getItemTypes() { return itemTypes; }
@@ -100,6 +105,7 @@ public class SlopeOneIntegerConfiguration {
                 Objects.equal(maxRecsPerItem, that.maxRecsPerItem) &&
                 Objects.equal(minRatedCount, that.minRatedCount) &&
                 Objects.equal(nonPersonalizedSourceInfo, that.nonPersonalizedSourceInfo) &&
+                Objects.equal(personalizedSourceInfo, that.personalizedSourceInfo) &&
                 Objects.equal(viewType, that.viewType) &&
                 Objects.equal(assocType, that.assocType) &&
                 Objects.equal(sourceType, that.sourceType) &&
@@ -109,6 +115,6 @@ public class SlopeOneIntegerConfiguration {
     @Override
     public int hashCode() {
         return Objects.hashCode(actionType, itemTypes, maxRecsPerItem, minRatedCount, nonPersonalizedSourceInfo,
-                viewType, assocType, sourceType, tenant);
+                personalizedSourceInfo, viewType, assocType, sourceType, tenant);
     }
 }
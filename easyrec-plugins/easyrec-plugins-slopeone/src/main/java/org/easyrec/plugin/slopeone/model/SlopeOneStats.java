@@ -43,6 +43,15 @@ public class SlopeOneStats extends GeneratorStatistics implements Serializable {
     private long noCreatedDeviations = 0;
     private long noModifiedDeviations = 0;
     private long nonPersonalizedDuration = 0;
+    private long nonPersonalizedFetchDuration = 0;
+    private long nonPersonalizedComputeDuration = 0;
+    private long nonPersonalizedWriteDuration = 0;
+    private long personalizedDuration = 0;
+    private int noPersonalizedUsers = 0;
+    private long noPersonalizedRecommendations = 0;
+    private double personalizedUsersPerSecond = 0.0;
+    private long deviationCacheHits = 0;
+    private long deviationCacheMisses = 0;
     private String exception = null;
 
     public long getActionDuration() { return actionDuration; }
@@ -96,11 +105,70 @@ public class SlopeOneStats extends GeneratorStatistics implements Serializable {
         this.nonPersonalizedDuration = nonPersonalizedDuration;
     }
 
-    /* Disabled for now since personalized recommendations won't be generated
+    /**
+     * @return Time spent reading the deviations for the non-personalized recommendations, in milliseconds.
+     */
+    public long getNonPersonalizedFetchDuration() { return nonPersonalizedFetchDuration; }
 
-       private long personalizedDuration;
-       public void setPersonalizedDuration(long personalizedDuration) { this.personalizedDuration = personalizedDuration; }
+    public void setNonPersonalizedFetchDuration(long nonPersonalizedFetchDuration) {
+        this.nonPersonalizedFetchDuration = nonPersonalizedFetchDuration;
+    }
 
-       public long getPersonalizedDuration() { return personalizedDuration; }
+    /**
+     * @return Time the threads spent selecting the best deviations of the items, summed over all threads, in
+     *         milliseconds.
      */
+    public long getNonPersonalizedComputeDuration() { return nonPersonalizedComputeDuration; }
+
+    public void setNonPersonalizedComputeDuration(long nonPersonalizedComputeDuration) {
+        this.nonPersonalizedComputeDuration = nonPersonalizedComputeDuration;
+    }
+
+    /**
+     * @return Time spent writing the item associations of the non-personalized recommendations, in milliseconds.
+     */
+    public long getNonPersonalizedWriteDuration() { return nonPersonalizedWriteDuration; }
+
+    public void setNonPersonalizedWriteDuration(long nonPersonalizedWriteDuration) {
+        this.nonPersonalizedWriteDuration = nonPersonalizedWriteDuration;
+    }
+
+    public long getPersonalizedDuration() { return personalizedDuration; }
+
+    public void setPersonalizedDuration(long personalizedDuration) { this.personalizedDuration = personalizedDuration; }
+
+    public int getNoPersonalizedUsers() { return noPersonalizedUsers; }
+
+    public void setNoPersonalizedUsers(int noPersonalizedUsers) { this.noPersonalizedUsers = noPersonalizedUsers; }
+
+    public long getNoPersonalizedRecommendations() { return noPersonalizedRecommendations; }
+
+    public void setNoPersonalizedRecommendations(long noPersonalizedRecommendations) {
+        this.noPersonalizedRecommendations = noPersonalizedRecommendations;
+    }
+
+    /**
+     * @return Number of users per second the personalized recommendations were calculated for.
+     */
+    public double getPersonalizedUsersPerSecond() { return personalizedUsersPerSecond; }
+
+    public void setPersonalizedUsersPerSecond(double personalizedUsersPerSecond) {
+        this.personalizedUsersPerSecond = personalizedUsersPerSecond;
+    }
+
+    /**
+     * @return Number of times the deviations of an item were taken from the cache while calculating the personalized
+     *         recommendations.
+     */
+    public long getDeviationCacheHits() { return deviationCacheHits; }
+
+    public void setDeviationCacheHits(long deviationCacheHits) { this.deviationCacheHits = deviationCacheHits; }
+
+    /**
+     * @return Number of times the deviations of an item were read from the deviation DAO while calculating the
+     *         personalized recommendations.
+     */
+    public long getDeviationCacheMisses() { return deviationCacheMisses; }
+
+    public void setDeviationCacheMisses(long deviationCacheMisses) { this.deviationCacheMisses = deviationCacheMisses; }
 }
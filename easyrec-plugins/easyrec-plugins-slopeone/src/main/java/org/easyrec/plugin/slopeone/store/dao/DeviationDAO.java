@@ -46,6 +46,18 @@ public interface DeviationDAO extends TableCreatingDroppingDAO {
     static final String COLUMN_DENOMINATOR = "denominator";
     static final String COLUMN_DEVIATION = "deviation";
 
+    /**
+     * Receives the deviations of one item at a time from {@link DeviationDAO#getDeviationsGrouped(int, int, Long,
+     * DeviationsOfItemHandler)}.
+     */
+    interface DeviationsOfItemHandler {
+        /**
+         * @param itemId     The item.
+         * @param deviations The deviations of the item, in no particular order.
+         */
+        void handleDeviations(int itemId, List<Deviation> deviations);
+    }
+
     /**
      * Indicates tart of a generator run, might create temp-tables or whatever.
      */
@@ -96,6 +108,19 @@ public interface DeviationDAO extends TableCreatingDroppingDAO {
     List<Deviation> getDeviationsOrdered(int tenantId, int itemTypeId, int itemId, @Nullable Long minCountConstraint,
                                          @Nullable Integer maxNumberOfDeviationsConstraint);
 
+    /**
+     * Gets the deviations of all items of an item type with a single query. For every item the handler receives the
+     * deviations {@link #getDeviationsOrdered(int, int, int, Long, Integer)} would return without the limit, but not
+     * necessarily ordered.
+     *
+     * @param tenantId           Tenant.
+     * @param itemTypeId         Item type.
+     * @param minCountConstraint Minimum "support" of deviations, uses the denominator column to filter.
+     * @param handler            Called once for every item that has deviations.
+     */
+    void getDeviationsGrouped(int tenantId, int itemTypeId, @Nullable Long minCountConstraint,
+                              DeviationsOfItemHandler handler);
+
     @Nonnull
     Set<TenantItem> getItemIds(int tenantId, TIntSet itemTypeIds);
 
@@ -19,6 +19,7 @@
 
 package org.easyrec.plugin.slopeone.store.dao.impl;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import gnu.trove.iterator.TIntIterator;
 import gnu.trove.set.TIntSet;
@@ -26,8 +27,10 @@ import org.easyrec.plugin.slopeone.model.Deviation;
 import org.easyrec.plugin.slopeone.model.TenantItem;
 import org.easyrec.plugin.slopeone.store.dao.DeviationDAO;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
+import org.easyrec.utils.spring.store.StreamingPreparedStatementCreator;
 import org.easyrec.utils.spring.store.dao.impl.AbstractTableCreatingDroppingDAOImpl;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.SqlParameter;
 import org.springframework.jdbc.object.MappingSqlQuery;
 import org.springframework.jdbc.object.SqlFunction;
@@ -66,6 +69,19 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class DeviationDAOCachedMergingMySQL extends AbstractTableCreatingDroppingDAOImpl implements DeviationDAO {
     public static final int[] NO_TYPES = new int[0];
+    // the rows of both parts of the union of the ordered deviations query for all items, ordered by item
+    private static final String QUERY_GROUPED_DEVIATIONS =
+            "SELECT id, item1Id, item2Id, item1TypeId, item2TypeId, numerator, denominator\n" +
+                    "FROM ((\n" +
+                    "    SELECT id, item1Id, item2Id, item1TypeId, item2TypeId, numerator, denominator\n" +
+                    "    FROM so_deviation\n" +
+                    "    WHERE tenantId = ? AND item1TypeId = ? AND denominator >= ?\n" +
+                    "  ) UNION ALL (\n" +
+                    "    SELECT id, item2Id AS item1Id, item1Id AS item2Id, item1TypeId, item2TypeId, numerator * -1 AS numerator, denominator\n" +
+                    "    FROM so_deviation USE INDEX (key_deviation_reverse)\n" +
+                    "    WHERE tenantId = ? AND item2TypeId = ? AND denominator >= ?\n" +
+                    "  )) AS so_deviation\n" +
+                    "ORDER BY item1Id";
     private static final AtomicInteger estimatedCacheSize = new AtomicInteger(0);
     private static final int maxCacheSize = 7000000;
 
@@ -252,16 +268,26 @@ public class DeviationDAOCachedMergingMySQL extends AbstractTableCreatingDroppin
 
         if (deviations.size() > 0) return deviations.get(0);
 
-        deviations = QUERY_GET_DEVIATION.execute(args);
+        Deviation result = getStoredDeviation(tenantId, item1Id, item1TypeId, item2Id, item2TypeId);
 
-        if (deviations.size() == 0) return null;
+        if (result == null) return null;
 
-        Deviation result = deviations.get(0);
         insertCachedDeviation(result);
 
         return result;
     }
 
+    /**
+     * Reads a deviation from the so_deviation table, bypassing the cache table.
+     */
+    protected Deviation getStoredDeviation(final int tenantId, final int item1Id, final int item1TypeId,
+                                           final int item2Id, int item2TypeId) {
+        Object[] args = new Object[]{tenantId, item1TypeId, item2TypeId, item1Id, item2Id};
+        List<Deviation> deviations = QUERY_GET_DEVIATION.execute(args);
+
+        return deviations.size() > 0 ? deviations.get(0) : null;
+    }
+
     public List<Deviation> getDeviationsOrdered(final int tenantId, final int itemTypeId, final int itemId,
                                                 final Long minCountConstraint,
                                                 final Integer maxNumberOfDeviationsConstraint) {
@@ -289,6 +315,37 @@ public class DeviationDAOCachedMergingMySQL extends AbstractTableCreatingDroppin
         return query.execute(args);
     }
 
+    public void getDeviationsGrouped(final int tenantId, final int itemTypeId, final Long minCountConstraint,
+                                     final DeviationsOfItemHandler handler) {
+        long minCount = minCountConstraint != null ? minCountConstraint : 0L;
+        Object[] args = new Object[]{tenantId, itemTypeId, minCount, tenantId, itemTypeId, minCount};
+        int[] argTypes = new int[]{Types.INTEGER, Types.INTEGER, Types.BIGINT, Types.INTEGER, Types.INTEGER,
+                Types.BIGINT};
+        final List<Deviation> deviationsOfItem = Lists.newArrayList();
+
+        // the rows arrive ordered by item, so the deviations of an item are complete when the next item starts
+        getJdbcTemplate().query(new StreamingPreparedStatementCreator(QUERY_GROUPED_DEVIATIONS, args, argTypes),
+                new RowCallbackHandler() {
+                    public void processRow(ResultSet rs) throws SQLException {
+                        Deviation deviation = new Deviation(rs.getInt("id"), tenantId, rs.getInt("item1Id"),
+                                rs.getInt("item1TypeId"), rs.getInt("item2Id"), rs.getInt("item2TypeId"),
+                                rs.getDouble("numerator"), rs.getLong("denominator"));
+
+                        if (!deviationsOfItem.isEmpty() &&
+                                deviationsOfItem.get(0).getItem1Id() != deviation.getItem1Id()) {
+                            handler.handleDeviations(deviationsOfItem.get(0).getItem1Id(),
+                                    Lists.newArrayList(deviationsOfItem));
+                            deviationsOfItem.clear();
+                        }
+
+                        deviationsOfItem.add(deviation);
+                    }
+                });
+
+        if (!deviationsOfItem.isEmpty())
+            handler.handleDeviations(deviationsOfItem.get(0).getItem1Id(), deviationsOfItem);
+    }
+
     @Nonnull
     public Set<TenantItem> getItemIds(final int tenantId, final TIntSet itemTypeIds) {
         TIntIterator iterator = itemTypeIds.iterator();
@@ -0,0 +1,483 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.slopeone.store.dao.impl;
+
+import com.google.common.base.Objects;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.easyrec.plugin.slopeone.model.Deviation;
+import org.easyrec.utils.spring.store.StreamingPreparedStatementCreator;
+import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.StatementCallback;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Sums the inserted deviations in memory and writes them to the so_deviation table only at {@link #endUpdate()}.
+ * <p/>
+ * The numerators and denominators are held in a {@link StripedDeviationTable} per tenant and pair of item types, so
+ * deviations of several users can be inserted concurrently. At {@link #endUpdate()} the sums are streamed with
+ * <code>LOAD DATA LOCAL INFILE</code> into the temp table in chunks and merged into so_deviation from there. When the
+ * tables outgrow the memory budget they are written the same way before {@link #endUpdate()}.
+ * <p/>
+ * Once written, the deviations of a tenant and item type are read into a {@link DeviationIndex} on first access and
+ * {@link #getDeviationsOrdered(int, int, int, Long, Integer)}, {@link #getDeviationsGrouped(int, int, Long,
+ * DeviationsOfItemHandler)} and {@link #getDeviation(int, int, int, int, int)} are served from memory. If the index
+ * doesn't fit into the memory budget the queries of {@link DeviationDAOCachedMergingMySQL} are used. Reads never see
+ * deviations inserted after the last write.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class DeviationDAOInMemoryMySQL extends DeviationDAOCachedMergingMySQL {
+    public static final long DEFAULT_MEMORY_BUDGET = 512L * 1024 * 1024;
+    public static final int DEFAULT_LOAD_CHUNK_SIZE = 500000;
+
+    private static final int STRIPES = 64;
+
+    // the file name is ignored since the rows are passed to the driver as stream, see loadChunk
+    private static final String QUERY_LOAD_TEMP_DEVIATIONS =
+            "LOAD DATA LOCAL INFILE 'deviations' INTO TABLE so_deviation_temp(tenantId, item1Id, item2Id, " +
+                    "item1TypeId, item2TypeId, numerator, denominator)";
+    // the deviation is assigned first because mysql assigns from left to right, i.e. later assignments see the
+    // updated numerator and denominator
+    private static final String QUERY_MERGE_TEMP_DEVIATIONS =
+            "INSERT INTO so_deviation(tenantId, item1Id, item2Id, item1TypeId, item2TypeId, numerator, denominator, deviation)\n" +
+                    "    SELECT tenantId, item1Id, item2Id, item1TypeId, item2TypeId, numerator, denominator, (numerator/denominator)\n" +
+                    "        FROM so_deviation_temp\n" +
+                    "ON DUPLICATE KEY UPDATE\n" +
+                    "        so_deviation.deviation = (so_deviation.numerator + VALUES(so_deviation.numerator))/(so_deviation.denominator + VALUES(so_deviation.denominator)),\n" +
+                    "        so_deviation.numerator = so_deviation.numerator + VALUES(so_deviation.numerator),\n" +
+                    "        so_deviation.denominator = so_deviation.denominator + VALUES(so_deviation.denominator)";
+    private static final String QUERY_COUNT_ITEM1_DEVIATIONS =
+            "SELECT item1Id AS item, count(*) AS deviations FROM so_deviation WHERE tenantId = ? AND item1TypeId = ? GROUP BY item1Id";
+    private static final String QUERY_COUNT_ITEM2_DEVIATIONS =
+            "SELECT item2Id AS item, count(*) AS deviations FROM so_deviation WHERE tenantId = ? AND item2TypeId = ? GROUP BY item2Id";
+    private static final String QUERY_INDEX_DEVIATIONS =
+            "SELECT id, item1Id, item2Id, item1TypeId, item2TypeId, numerator, denominator FROM so_deviation\n" +
+                    "WHERE tenantId = ? AND (item1TypeId = ? OR item2TypeId = ?)";
+
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private int loadChunkSize = DEFAULT_LOAD_CHUNK_SIZE;
+
+    // inserts share the read lock, writing the tables takes the write lock
+    private final ReadWriteLock writeLock = new ReentrantReadWriteLock();
+    private final ConcurrentMap<TableKey, StripedDeviationTable> tables =
+            new ConcurrentHashMap<TableKey, StripedDeviationTable>();
+    private final AtomicLong allocatedBytes = new AtomicLong(0);
+
+    private final Map<Long, DeviationIndex> indices = new ConcurrentHashMap<Long, DeviationIndex>();
+    private final Set<Long> unindexed = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final Object indexLock = new Object();
+    private long indexBytes = 0;
+
+    public DeviationDAOInMemoryMySQL(DataSource dataSource, SqlScriptService sqlScriptService) {
+        super(dataSource, sqlScriptService);
+    }
+
+    public long getMemoryBudget() { return memoryBudget; }
+
+    /**
+     * The memory the summed deviations and the indices of the stored deviations may use, in bytes.
+     *
+     * @param memoryBudget Memory budget in bytes.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget <= 0) throw new IllegalArgumentException("'memoryBudget' must be greater than 0");
+
+        this.memoryBudget = memoryBudget;
+    }
+
+    public int getLoadChunkSize() { return loadChunkSize; }
+
+    /**
+     * The number of deviations loaded into the MEMORY temp table at once.
+     *
+     * @param loadChunkSize Number of deviations.
+     */
+    public void setLoadChunkSize(int loadChunkSize) {
+        if (loadChunkSize <= 0) throw new IllegalArgumentException("'loadChunkSize' must be greater than 0");
+
+        this.loadChunkSize = loadChunkSize;
+    }
+
+    @Override
+    public void starting() {
+        super.starting();
+
+        writeLock.writeLock().lock();
+        try {
+            clearTables();
+            clearIndices();
+        } finally {
+            writeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void endUpdate() {
+        writeLock.writeLock().lock();
+        try {
+            writeTables();
+        } finally {
+            writeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void finished(int tenantId, int itemTypeId) {
+        super.finished(tenantId, itemTypeId);
+
+        synchronized (indexLock) {
+            DeviationIndex index = indices.remove(indexKey(tenantId, itemTypeId));
+
+            if (index != null) indexBytes -= index.getEstimatedBytes();
+            unindexed.remove(indexKey(tenantId, itemTypeId));
+        }
+    }
+
+    @Override
+    public Deviation getDeviation(int tenantId, int item1Id, int item1TypeId, int item2Id, int item2TypeId) {
+        DeviationIndex index = getIndex(tenantId, item1TypeId);
+
+        if (index == null) return getStoredDeviation(tenantId, item1Id, item1TypeId, item2Id, item2TypeId);
+
+        return index.getDeviation(item1Id, item2Id, item2TypeId);
+    }
+
+    @Override
+    public List<Deviation> getDeviationsOrdered(int tenantId, int itemTypeId, int itemId,
+                                                @Nullable Long minCountConstraint,
+                                                @Nullable Integer maxNumberOfDeviationsConstraint) {
+        DeviationIndex index = getIndex(tenantId, itemTypeId);
+
+        if (index == null)
+            return super.getDeviationsOrdered(tenantId, itemTypeId, itemId, minCountConstraint,
+                    maxNumberOfDeviationsConstraint);
+
+        return index.getDeviationsOrdered(itemId, minCountConstraint, maxNumberOfDeviationsConstraint);
+    }
+
+    @Override
+    public void getDeviationsGrouped(int tenantId, int itemTypeId, @Nullable Long minCountConstraint,
+                                     DeviationsOfItemHandler handler) {
+        DeviationIndex index = getIndex(tenantId, itemTypeId);
+
+        if (index == null) {
+            super.getDeviationsGrouped(tenantId, itemTypeId, minCountConstraint, handler);
+            return;
+        }
+
+        index.getDeviationsGrouped(minCountConstraint, handler);
+    }
+
+    @Override
+    public int insertDeviation(Deviation deviation) {
+        return insertDeviations(Collections.singletonList(deviation));
+    }
+
+    @Override
+    public int insertDeviations(List<Deviation> deviations) {
+        int inserted = 0;
+
+        writeLock.readLock().lock();
+        try {
+            StripedDeviationTable table = null;
+            TableKey tableKey = null;
+
+            for (Deviation deviation : deviations) {
+                // consecutive deviations mostly belong to the same table
+                if (tableKey == null || !tableKey.matches(deviation)) {
+                    tableKey = new TableKey(deviation);
+                    table = getTable(tableKey);
+                }
+
+                if (table.add(deviation.getItem1Id(), deviation.getItem2Id(), deviation.getNumerator(),
+                        deviation.getDenominator()))
+                    inserted++;
+            }
+        } finally {
+            writeLock.readLock().unlock();
+        }
+
+        if (allocatedBytes.get() > memoryBudget) {
+            writeLock.writeLock().lock();
+            try {
+                // another thread might have written the tables already
+                if (allocatedBytes.get() > memoryBudget) {
+                    if (logger.isInfoEnabled())
+                        logger.info("deviations exceed the memory budget of " + memoryBudget + " bytes");
+
+                    writeTables();
+                }
+            } finally {
+                writeLock.writeLock().unlock();
+            }
+        }
+
+        return inserted;
+    }
+
+    private StripedDeviationTable getTable(TableKey tableKey) {
+        StripedDeviationTable table = tables.get(tableKey);
+
+        if (table == null) {
+            StripedDeviationTable newTable = new StripedDeviationTable(STRIPES, allocatedBytes);
+            table = tables.putIfAbsent(tableKey, newTable);
+
+            if (table == null) {
+                table = newTable;
+            } else {
+                newTable.clear();
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * Merges the summed deviations into so_deviation and clears the tables. The caller must hold the write lock.
+     */
+    private void writeTables() {
+        if (tables.isEmpty()) return;
+
+        long start = System.currentTimeMillis();
+        final StringBuilder rows = new StringBuilder();
+        final int[] chunkRows = new int[]{0};
+        int totalRows = 0;
+
+        // the stored deviations change, so the indices are outdated
+        clearIndices();
+
+        for (Map.Entry<TableKey, StripedDeviationTable> entry : tables.entrySet()) {
+            final TableKey tableKey = entry.getKey();
+
+            entry.getValue().forEach(new StripedDeviationTable.DeviationProcedure() {
+                public void execute(int item1Id, int item2Id, double numerator, long denominator) {
+                    rows.append(tableKey.tenantId).append('\t');
+                    rows.append(item1Id).append('\t');
+                    rows.append(item2Id).append('\t');
+                    rows.append(tableKey.item1TypeId).append('\t');
+                    rows.append(tableKey.item2TypeId).append('\t');
+                    rows.append(numerator).append('\t');
+                    rows.append(denominator).append('\n');
+
+                    if (++chunkRows[0] >= loadChunkSize) {
+                        loadChunk(rows);
+                        chunkRows[0] = 0;
+                    }
+                }
+            });
+
+            totalRows += entry.getValue().size();
+        }
+
+        if (chunkRows[0] > 0) loadChunk(rows);
+
+        clearTables();
+
+        if (logger.isInfoEnabled())
+            logger.info("wrote " + totalRows + " deviations in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Loads the rows into so_deviation_temp, merges them into so_deviation and clears the rows.
+     */
+    private void loadChunk(StringBuilder rows) {
+        final byte[] bytes;
+
+        try {
+            bytes = rows.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        rows.setLength(0);
+
+        getJdbcTemplate().update("TRUNCATE so_deviation_temp");
+        getJdbcTemplate().execute(new StatementCallback<Integer>() {
+            public Integer doInStatement(Statement statement) throws SQLException {
+                com.mysql.jdbc.Statement mysqlStatement = statement.unwrap(com.mysql.jdbc.Statement.class);
+
+                mysqlStatement.setLocalInfileInputStream(new ByteArrayInputStream(bytes));
+                try {
+                    return statement.executeUpdate(QUERY_LOAD_TEMP_DEVIATIONS);
+                } finally {
+                    mysqlStatement.setLocalInfileInputStream(null);
+                }
+            }
+        });
+        getJdbcTemplate().update(QUERY_MERGE_TEMP_DEVIATIONS);
+    }
+
+    private void clearTables() {
+        for (StripedDeviationTable table : tables.values())
+            table.clear();
+
+        tables.clear();
+    }
+
+    private void clearIndices() {
+        synchronized (indexLock) {
+            indices.clear();
+            unindexed.clear();
+            indexBytes = 0;
+        }
+    }
+
+    /**
+     * @return The index of the stored deviations or {@code null} if it doesn't fit into the memory budget.
+     */
+    @Nullable
+    private DeviationIndex getIndex(int tenantId, int itemTypeId) {
+        Long key = indexKey(tenantId, itemTypeId);
+        DeviationIndex index = indices.get(key);
+
+        if (index != null || unindexed.contains(key)) return index;
+
+        synchronized (indexLock) {
+            index = indices.get(key);
+
+            if (index != null || unindexed.contains(key)) return index;
+
+            index = readIndex(tenantId, itemTypeId);
+
+            if (index != null) {
+                indices.put(key, index);
+                indexBytes += index.getEstimatedBytes();
+            } else {
+                unindexed.add(key);
+            }
+
+            return index;
+        }
+    }
+
+    /**
+     * Counts the deviations of every item, then streams the deviations into the index. The caller must hold the
+     * index lock.
+     */
+    @Nullable
+    private DeviationIndex readIndex(int tenantId, int itemTypeId) {
+        long start = System.currentTimeMillis();
+        final TIntIntHashMap deviationsPerItem = new TIntIntHashMap();
+        Object[] args = new Object[]{tenantId, itemTypeId};
+        int[] argTypes = new int[]{Types.INTEGER, Types.INTEGER};
+        RowCallbackHandler counter = new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                deviationsPerItem.adjustOrPutValue(rs.getInt("item"), rs.getInt("deviations"),
+                        rs.getInt("deviations"));
+            }
+        };
+
+        getJdbcTemplate().query(QUERY_COUNT_ITEM1_DEVIATIONS, args, argTypes, counter);
+        getJdbcTemplate().query(QUERY_COUNT_ITEM2_DEVIATIONS, args, argTypes, counter);
+
+        long numberOfDeviations = 0;
+        for (int deviations : deviationsPerItem.values())
+            numberOfDeviations += deviations;
+
+        long bytes = DeviationIndex.estimateBytes(numberOfDeviations, deviationsPerItem.size());
+
+        if (numberOfDeviations > Integer.MAX_VALUE - 8 || indexBytes + bytes > memoryBudget) {
+            if (logger.isInfoEnabled())
+                logger.info("index of " + numberOfDeviations + " deviations of tenant " + tenantId +
+                        " and item type " + itemTypeId + " exceeds the memory budget, reading from so_deviation");
+
+            return null;
+        }
+
+        final DeviationIndex index = new DeviationIndex(tenantId, itemTypeId, deviationsPerItem);
+
+        getJdbcTemplate().query(new StreamingPreparedStatementCreator(QUERY_INDEX_DEVIATIONS,
+                new Object[]{tenantId, itemTypeId, itemTypeId}, new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER}),
+                new RowCallbackHandler() {
+                    public void processRow(ResultSet rs) throws SQLException {
+                        index.add(rs.getInt("id"), rs.getInt("item1Id"), rs.getInt("item1TypeId"),
+                                rs.getInt("item2Id"), rs.getInt("item2TypeId"), rs.getDouble("numerator"),
+                                rs.getLong("denominator"));
+                    }
+                });
+
+        index.sort();
+
+        if (logger.isInfoEnabled())
+            logger.info("indexed " + numberOfDeviations + " deviations of tenant " + tenantId + " and item type " +
+                    itemTypeId + " in " + (System.currentTimeMillis() - start) + "ms");
+
+        return index;
+    }
+
+    private static Long indexKey(int tenantId, int itemTypeId) {
+        return ((long) tenantId << 32) | (itemTypeId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Tenant and item types of the deviations in a {@link StripedDeviationTable}.
+     */
+    private static final class TableKey {
+        private final int tenantId;
+        private final int item1TypeId;
+        private final int item2TypeId;
+
+        private TableKey(Deviation deviation) {
+            this.tenantId = deviation.getTenantId();
+            this.item1TypeId = deviation.getItem1TypeId();
+            this.item2TypeId = deviation.getItem2TypeId();
+        }
+
+        private boolean matches(Deviation deviation) {
+            return tenantId == deviation.getTenantId() && item1TypeId == deviation.getItem1TypeId() &&
+                    item2TypeId == deviation.getItem2TypeId();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TableKey)) return false;
+
+            TableKey that = (TableKey) obj;
+
+            return tenantId == that.tenantId && item1TypeId == that.item1TypeId && item2TypeId == that.item2TypeId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(tenantId, item1TypeId, item2TypeId);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.slopeone.store.dao.impl;
+
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.easyrec.plugin.slopeone.model.Deviation;
+import org.easyrec.plugin.slopeone.store.dao.DeviationDAO;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The stored deviations of the items of one tenant and item type, sorted by deviation per item.
+ * <p/>
+ * Every item has a segment of parallel primitive arrays holding the deviations where it is item 1 and - negated and
+ * with the items swapped - the deviations where it is item 2, i.e. the rows of both parts of the union in {@link
+ * DeviationDAOCachedMergingMySQL#getDeviationsOrdered(int, int, int, Long, Integer)}. The sizes of the segments are
+ * known before the deviations are added, the segments are sorted by {@link #sort()} and the index is read-only
+ * afterwards.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+final class DeviationIndex {
+    // id, other item, other item type, numerator, denominator and the swapped flag
+    static final int BYTES_PER_DEVIATION = 4 + 4 + 4 + 8 + 8 + 1;
+    // the item map and the segment offsets
+    static final int BYTES_PER_ITEM = 4 * 4 + 4 + 4;
+
+    private final int tenantId;
+    private final int itemTypeId;
+    private final TIntIntHashMap segments;
+    private final int[] start;
+    private final int[] next;
+
+    private final int[] ids;
+    private final int[] otherItemIds;
+    private final int[] otherItemTypeIds;
+    private final double[] numerators;
+    private final long[] denominators;
+    // true if the item of the segment is item 2 of the stored deviation
+    private final boolean[] swapped;
+
+    /**
+     * @param deviationsPerItem The number of deviations that will be added for every item.
+     */
+    DeviationIndex(int tenantId, int itemTypeId, TIntIntHashMap deviationsPerItem) {
+        this.tenantId = tenantId;
+        this.itemTypeId = itemTypeId;
+        this.segments = new TIntIntHashMap(Math.max(deviationsPerItem.size() * 2, 16));
+        this.start = new int[deviationsPerItem.size() + 1];
+
+        int segment = 0;
+        for (TIntIntIterator it = deviationsPerItem.iterator(); it.hasNext(); ) {
+            it.advance();
+            segments.put(it.key(), segment);
+            start[segment + 1] = start[segment] + it.value();
+            segment++;
+        }
+
+        this.next = start.clone();
+
+        int size = start[segment];
+        ids = new int[size];
+        otherItemIds = new int[size];
+        otherItemTypeIds = new int[size];
+        numerators = new double[size];
+        denominators = new long[size];
+        swapped = new boolean[size];
+    }
+
+    static long estimateBytes(long numberOfDeviations, int numberOfItems) {
+        return numberOfDeviations * BYTES_PER_DEVIATION + (long) numberOfItems * BYTES_PER_ITEM;
+    }
+
+    int getTenantId() { return tenantId; }
+
+    int getItemTypeId() { return itemTypeId; }
+
+    long getEstimatedBytes() { return estimateBytes(ids.length, start.length - 1); }
+
+    /**
+     * Adds a stored deviation to the segment of item 1 and/or item 2, depending on which of them has the item type of
+     * the index.
+     */
+    void add(int id, int item1Id, int item1TypeId, int item2Id, int item2TypeId, double numerator,
+             long denominator) {
+        if (item1TypeId == itemTypeId) put(item1Id, id, item2Id, item2TypeId, numerator, denominator, false);
+        if (item2TypeId == itemTypeId) put(item2Id, id, item1Id, item1TypeId, -numerator, denominator, true);
+    }
+
+    private void put(int itemId, int id, int otherItemId, int otherItemTypeId, double numerator, long denominator,
+                     boolean swap) {
+        if (!segments.containsKey(itemId))
+            throw new IllegalStateException("item " + itemId + " was not counted");
+
+        int segment = segments.get(itemId);
+        int position = next[segment]++;
+
+        if (position >= start[segment + 1])
+            throw new IllegalStateException("more deviations of item " + itemId + " than counted");
+
+        ids[position] = id;
+        otherItemIds[position] = otherItemId;
+        otherItemTypeIds[position] = otherItemTypeId;
+        numerators[position] = numerator;
+        denominators[position] = denominator;
+        swapped[position] = swap;
+    }
+
+    /**
+     * Sorts the deviations of every item in descending order.
+     */
+    void sort() {
+        for (int segment = 0; segment < start.length - 1; segment++)
+            sort(start[segment], start[segment + 1] - 1);
+    }
+
+    /**
+     * @see org.easyrec.plugin.slopeone.store.dao.DeviationDAO#getDeviationsOrdered(int, int, int, Long, Integer)
+     */
+    List<Deviation> getDeviationsOrdered(int itemId, @Nullable Long minCountConstraint,
+                                         @Nullable Integer maxNumberOfDeviationsConstraint) {
+        if (!segments.containsKey(itemId)) return Collections.emptyList();
+
+        int segment = segments.get(itemId);
+        int limit = maxNumberOfDeviationsConstraint != null ? maxNumberOfDeviationsConstraint : Integer.MAX_VALUE;
+        List<Deviation> result = new ArrayList<Deviation>(Math.min(limit, start[segment + 1] - start[segment]));
+
+        for (int i = start[segment]; i < start[segment + 1] && result.size() < limit; i++) {
+            if (minCountConstraint != null && denominators[i] < minCountConstraint) continue;
+
+            result.add(deviation(itemId, i));
+        }
+
+        return result;
+    }
+
+    /**
+     * @see org.easyrec.plugin.slopeone.store.dao.DeviationDAO#getDeviationsGrouped(int, int, Long,
+     *      DeviationDAO.DeviationsOfItemHandler)
+     */
+    void getDeviationsGrouped(@Nullable Long minCountConstraint, DeviationDAO.DeviationsOfItemHandler handler) {
+        for (TIntIntIterator it = segments.iterator(); it.hasNext(); ) {
+            it.advance();
+
+            List<Deviation> deviations = getDeviationsOrdered(it.key(), minCountConstraint, null);
+
+            if (!deviations.isEmpty()) handler.handleDeviations(it.key(), deviations);
+        }
+    }
+
+    /**
+     * @return The deviation stored for item 1 (of the item type of the index) and item 2 or {@code null}.
+     */
+    @Nullable
+    Deviation getDeviation(int item1Id, int item2Id, int item2TypeId) {
+        if (!segments.containsKey(item1Id)) return null;
+
+        int segment = segments.get(item1Id);
+
+        for (int i = start[segment]; i < start[segment + 1]; i++) {
+            if (!swapped[i] && otherItemIds[i] == item2Id && otherItemTypeIds[i] == item2TypeId)
+                return deviation(item1Id, i);
+        }
+
+        return null;
+    }
+
+    private Deviation deviation(int itemId, int i) {
+        // like the union query the item types of swapped deviations stay in place
+        int item1TypeId = swapped[i] ? otherItemTypeIds[i] : itemTypeId;
+        int item2TypeId = swapped[i] ? itemTypeId : otherItemTypeIds[i];
+
+        return new Deviation(ids[i], tenantId, itemId, item1TypeId, otherItemIds[i], item2TypeId, numerators[i],
+                denominators[i]);
+    }
+
+    private double deviationAt(int i) {
+        return numerators[i] / denominators[i];
+    }
+
+    /**
+     * Quicksort of the positions {@code from} to {@code to} (inclusive) by descending deviation.
+     */
+    private void sort(int from, int to) {
+        while (to - from > 16) {
+            int middle = (from + to) >>> 1;
+
+            // median of three as pivot, moved to the end
+            if (deviationAt(middle) > deviationAt(from)) swap(middle, from);
+            if (deviationAt(to) > deviationAt(from)) swap(to, from);
+            if (deviationAt(middle) > deviationAt(to)) swap(middle, to);
+
+            double pivot = deviationAt(to);
+            int store = from;
+
+            for (int i = from; i < to; i++) {
+                if (deviationAt(i) > pivot) swap(i, store++);
+            }
+            swap(store, to);
+
+            // recurse into the smaller part to bound the stack depth
+            if (store - from < to - store) {
+                sort(from, store - 1);
+                from = store + 1;
+            } else {
+                sort(store + 1, to);
+                to = store - 1;
+            }
+        }
+
+        for (int i = from + 1; i <= to; i++) {
+            for (int j = i; j > from && deviationAt(j) > deviationAt(j - 1); j--)
+                swap(j, j - 1);
+        }
+    }
+
+    private void swap(int i, int j) {
+        if (i == j) return;
+
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+
+        int otherItemId = otherItemIds[i];
+        otherItemIds[i] = otherItemIds[j];
+        otherItemIds[j] = otherItemId;
+
+        int otherItemTypeId = otherItemTypeIds[i];
+        otherItemTypeIds[i] = otherItemTypeIds[j];
+        otherItemTypeIds[j] = otherItemTypeId;
+
+        double numerator = numerators[i];
+        numerators[i] = numerators[j];
+        numerators[j] = numerator;
+
+        long denominator = denominators[i];
+        denominators[i] = denominators[j];
+        denominators[j] = denominator;
+
+        boolean swap = swapped[i];
+        swapped[i] = swapped[j];
+        swapped[j] = swap;
+    }
+}
@@ -63,27 +63,61 @@ public class InMemoryDeviationDAO implements DeviationDAO {
     public List<Deviation> getDeviationsOrdered(int tenantId, int itemTypeId, int itemId,
                                                 @Nullable final Long minCountConstraint,
                                                 @Nullable final Integer maxNumberOfDeviationsConstraint) {
-        List<Deviation> result = Lists.newArrayList(deviations);
+        List<Deviation> result = Lists.newArrayList();
 
-        if (minCountConstraint != null) {
-            ListIterator<Deviation> it = result.listIterator();
-
-            while (it.hasNext()) {
-                Deviation next = it.next();
-
-                if (next.getDenominator() < minCountConstraint) it.remove();
-            }
+        for (Deviation deviation : deviations) {
+            if (deviation.getTenantId() != tenantId) continue;
+            if (minCountConstraint != null && deviation.getDenominator() < minCountConstraint) continue;
+
+            if (deviation.getItem1TypeId() == itemTypeId && deviation.getItem1Id() == itemId)
+                result.add(deviation);
+            if (deviation.getItem2TypeId() == itemTypeId && deviation.getItem2Id() == itemId)
+                result.add(new Deviation(deviation.getId(), tenantId, deviation.getItem2Id(),
+                        deviation.getItem2TypeId(), deviation.getItem1Id(), deviation.getItem1TypeId(),
+                        -deviation.getNumerator(), deviation.getDenominator()));
         }
 
-        if (maxNumberOfDeviationsConstraint != null && result.size() > maxNumberOfDeviationsConstraint)
-            result = result.subList(0, maxNumberOfDeviationsConstraint);
-
         Collections.sort(result, new Comparator<Deviation>() {
             public int compare(final Deviation o1, final Deviation o2) {
                 return Double.compare(o2.getDeviation(), o1.getDeviation());
             }
         });
 
+        if (maxNumberOfDeviationsConstraint != null && result.size() > maxNumberOfDeviationsConstraint)
+            result = result.subList(0, maxNumberOfDeviationsConstraint);
+
+        return result;
+    }
+
+    public void getDeviationsGrouped(int tenantId, int itemTypeId, @Nullable Long minCountConstraint,
+                                     DeviationsOfItemHandler handler) {
+        Map<Integer, List<Deviation>> deviationsOfItems = new TreeMap<Integer, List<Deviation>>();
+
+        for (Deviation deviation : deviations) {
+            if (deviation.getTenantId() != tenantId) continue;
+            if (minCountConstraint != null && deviation.getDenominator() < minCountConstraint) continue;
+
+            if (deviation.getItem1TypeId() == itemTypeId)
+                deviationsOf(deviationsOfItems, deviation.getItem1Id()).add(deviation);
+            if (deviation.getItem2TypeId() == itemTypeId)
+                deviationsOf(deviationsOfItems, deviation.getItem2Id()).add(
+                        new Deviation(deviation.getId(), tenantId, deviation.getItem2Id(), deviation.getItem1TypeId(),
+                                deviation.getItem1Id(), deviation.getItem2TypeId(), -deviation.getNumerator(),
+                                deviation.getDenominator()));
+        }
+
+        for (Map.Entry<Integer, List<Deviation>> entry : deviationsOfItems.entrySet())
+            handler.handleDeviations(entry.getKey(), entry.getValue());
+    }
+
+    private static List<Deviation> deviationsOf(Map<Integer, List<Deviation>> deviationsOfItems, int itemId) {
+        List<Deviation> result = deviationsOfItems.get(itemId);
+
+        if (result == null) {
+            result = Lists.newArrayList();
+            deviationsOfItems.put(itemId, result);
+        }
+
         return result;
     }
 
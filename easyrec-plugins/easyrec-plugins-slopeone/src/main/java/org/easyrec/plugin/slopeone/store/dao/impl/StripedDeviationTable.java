@@ -0,0 +1,209 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.slopeone.store.dao.impl;
+
+import org.easyrec.utils.Hashing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sums the numerators and denominators of the deviations of item pairs of a single tenant and pair of item types.
+ * <p/>
+ * The pairs are spread over a fixed number of stripes. Each stripe is an open addressing table of primitive arrays
+ * guarded by its own lock, so threads adding deviations of different pairs rarely wait for each other. A stripe
+ * allocates its arrays with the first pair it holds. The bytes allocated by the stripes are added to a counter that
+ * may be shared by several tables.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+final class StripedDeviationTable {
+    // key, numerator and denominator
+    static final int BYTES_PER_SLOT = 8 + 8 + 8;
+
+    private static final int MIN_CAPACITY = 1 << 6;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final AtomicLong allocatedBytes;
+
+    /**
+     * Callback for {@link StripedDeviationTable#forEach(DeviationProcedure)}.
+     */
+    interface DeviationProcedure {
+        void execute(int item1Id, int item2Id, double numerator, long denominator);
+    }
+
+    StripedDeviationTable(int numberOfStripes, AtomicLong allocatedBytes) {
+        if (numberOfStripes <= 0 || Integer.bitCount(numberOfStripes) != 1)
+            throw new IllegalArgumentException("'numberOfStripes' must be a power of 2");
+        if (allocatedBytes == null) throw new IllegalArgumentException("Missing 'allocatedBytes'");
+
+        this.stripes = new Stripe[numberOfStripes];
+        this.stripeMask = numberOfStripes - 1;
+        this.allocatedBytes = allocatedBytes;
+
+        for (int i = 0; i < numberOfStripes; i++)
+            stripes[i] = new Stripe();
+    }
+
+    /**
+     * Adds numerator and denominator to the sums of a pair. Deviations with a denominator of 0 carry no ratings and are
+     * ignored.
+     *
+     * @return {@code true} if the pair wasn't in the table yet.
+     */
+    boolean add(int item1Id, int item2Id, double numerator, long denominator) {
+        if (denominator == 0) return false;
+
+        long key = ((long) item1Id << 32) | (item2Id & 0xFFFFFFFFL);
+        long hash = Hashing.mix(key);
+        Stripe stripe = stripes[(int) (hash >>> 32) & stripeMask];
+
+        synchronized (stripe) {
+            return stripe.add(key, hash, numerator, denominator);
+        }
+    }
+
+    /**
+     * @return The number of pairs in the table.
+     */
+    int size() {
+        int size = 0;
+
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Calls the procedure for every pair. Deviations must not be added concurrently.
+     */
+    void forEach(DeviationProcedure procedure) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (stripe.keys == null) continue;
+
+                for (int slot = 0; slot < stripe.denominators.length; slot++) {
+                    if (stripe.denominators[slot] == 0) continue;
+
+                    long key = stripe.keys[slot];
+                    procedure.execute((int) (key >>> 32), (int) key, stripe.numerators[slot],
+                            stripe.denominators[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Frees the stripes and subtracts their memory from the allocated bytes.
+     */
+    void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.release();
+            }
+        }
+    }
+
+    private final class Stripe {
+        private long[] keys;
+        private double[] numerators;
+        // a denominator of 0 marks an empty slot
+        private long[] denominators;
+        private int shift;
+        private int size;
+
+        private boolean add(long key, long hash, double numerator, long denominator) {
+            if (keys == null) allocate(MIN_CAPACITY);
+
+            int mask = keys.length - 1;
+            int slot = (int) (hash >>> shift);
+
+            while (denominators[slot] != 0) {
+                if (keys[slot] == key) {
+                    numerators[slot] += numerator;
+                    denominators[slot] += denominator;
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot] = key;
+            numerators[slot] = numerator;
+            denominators[slot] = denominator;
+
+            // the table is kept at most half full
+            if (++size > keys.length / 2) grow();
+
+            return true;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            double[] oldNumerators = numerators;
+            long[] oldDenominators = denominators;
+
+            allocate(oldKeys.length * 2);
+
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldDenominators[i] == 0) continue;
+
+                int slot = (int) (Hashing.mix(oldKeys[i]) >>> shift);
+                while (denominators[slot] != 0)
+                    slot = (slot + 1) & mask;
+
+                keys[slot] = oldKeys[i];
+                numerators[slot] = oldNumerators[i];
+                denominators[slot] = oldDenominators[i];
+                size++;
+            }
+        }
+
+        private void allocate(int capacity) {
+            allocatedBytes.addAndGet((long) (capacity - (keys != null ? keys.length : 0)) * BYTES_PER_SLOT);
+
+            keys = new long[capacity];
+            numerators = new double[capacity];
+            denominators = new long[capacity];
+            shift = 64 - Integer.numberOfTrailingZeros(capacity);
+            size = 0;
+        }
+
+        private void release() {
+            if (keys == null) return;
+
+            allocatedBytes.addAndGet((long) -keys.length * BYTES_PER_SLOT);
+
+            keys = null;
+            numerators = null;
+            denominators = null;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.slopeone.impl;
+
+import org.easyrec.plugin.slopeone.model.Deviation;
+import org.easyrec.plugin.slopeone.store.dao.impl.InMemoryDeviationDAO;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link DeviationCache}.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class DeviationCacheTest {
+    // ------------------------------ FIELDS ------------------------------
+
+    private CountingDeviationDAO deviationDAO;
+
+    // -------------------------- OTHER METHODS --------------------------
+
+    @Before
+    public void before() {
+        deviationDAO = new CountingDeviationDAO();
+        deviationDAO.insertDeviation(new Deviation(1, 1, 1, 2, 1, 3.0, 2));
+    }
+
+    @Test
+    public void getDeviationsOrdered_readsEveryItemOnce() {
+        DeviationCache cache = new DeviationCache(deviationDAO, 1, null, 1000);
+
+        List<Deviation> deviations = cache.getDeviationsOrdered(1, 1);
+
+        assertThat(cache.getDeviationsOrdered(1, 1), sameInstance(deviations));
+        cache.getDeviationsOrdered(1, 2);
+        cache.getDeviationsOrdered(1, 2);
+
+        assertThat(deviationDAO.reads, is(2));
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getMisses(), is(2L));
+    }
+
+    @Test
+    public void getDeviationsOrdered_evictsLeastRecentlyUsed() {
+        // a single deviation or item without deviations
+        DeviationCache cache = new DeviationCache(deviationDAO, 1, null, 1);
+
+        for (int item = 0; item < 1000; item++)
+            cache.getDeviationsOrdered(1, item);
+        cache.getDeviationsOrdered(1, 0);
+
+        assertThat(deviationDAO.reads, is(1001));
+    }
+
+    @Test
+    public void getDeviationsOrdered_readsAllDeviations() {
+        deviationDAO.insertDeviation(new Deviation(1, 1, 1, 3, 1, 1.0, 2));
+        DeviationCache cache = new DeviationCache(deviationDAO, 1, null, 1000);
+
+        assertThat(cache.getDeviationsOrdered(1, 1).size(), is(2));
+        assertThat(deviationDAO.maxNumberOfDeviations, is(nullValue()));
+    }
+
+    @Test
+    public void getDeviationsOrdered_boundedByDeviations() {
+        deviationDAO.insertDeviation(new Deviation(1, 1, 1, 3, 1, 1.0, 2));
+        // item 1 has two deviations, items 2 and 3 one each
+        DeviationCache cache = new DeviationCache(deviationDAO, 1, null, 2);
+
+        cache.getDeviationsOrdered(1, 1);
+        cache.getDeviationsOrdered(1, 2);
+        cache.getDeviationsOrdered(1, 3);
+        cache.getDeviationsOrdered(1, 2);
+        cache.getDeviationsOrdered(1, 3);
+        cache.getDeviationsOrdered(1, 1);
+
+        assertThat(deviationDAO.reads, is(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsZeroSize() {
+        new DeviationCache(deviationDAO, 1, null, 0);
+    }
+
+    private static class CountingDeviationDAO extends InMemoryDeviationDAO {
+        private int reads = 0;
+        private Integer maxNumberOfDeviations;
+
+        @Override
+        public List<Deviation> getDeviationsOrdered(int tenantId, int itemTypeId, int itemId, Long minCountConstraint,
+                                                    Integer maxNumberOfDeviationsConstraint) {
+            reads++;
+            maxNumberOfDeviations = maxNumberOfDeviationsConstraint;
+
+            return super.getDeviationsOrdered(tenantId, itemTypeId, itemId, minCountConstraint,
+                    maxNumberOfDeviationsConstraint);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.slopeone.impl;
+
+import gnu.trove.set.hash.TIntHashSet;
+import org.easyrec.model.core.ItemAssocVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingVO;
+import org.easyrec.plugin.slopeone.model.Deviation;
+import org.easyrec.plugin.slopeone.model.SlopeOneIntegerConfiguration;
+import org.easyrec.plugin.slopeone.model.SlopeOneStats;
+import org.easyrec.plugin.slopeone.store.dao.ActionDAO;
+import org.easyrec.plugin.slopeone.store.dao.impl.InMemoryDeviationDAO;
+import org.easyrec.store.dao.core.ItemAssocDAO;
+import org.easyrec.store.dao.core.ItemAssocSink;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the personalized recommendations of {@link SlopeOneServiceImpl}.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class SlopeOneServiceImplTest {
+    // ------------------------------ FIELDS ------------------------------
+
+    private static final int TENANT = 1;
+    private static final int ITEM_TYPE = 1;
+    private static final int USER_TYPE = 2;
+    private static final int USER = 7;
+
+    private List<RatingVO<Integer, Integer>> ratings;
+    private List<ItemAssocVO<Integer, Integer>> itemAssocs;
+    private InMemoryDeviationDAO deviationDAO;
+    private SlopeOneServiceImpl service;
+
+    // -------------------------- OTHER METHODS --------------------------
+
+    @Before
+    public void before() {
+        ratings = new ArrayList<RatingVO<Integer, Integer>>();
+        ratings.add(new RatingVO<Integer, Integer>(new ItemVO<Integer, Integer>(TENANT, 1, ITEM_TYPE), 5.0, null,
+                new Date(), USER));
+        ratings.add(new RatingVO<Integer, Integer>(new ItemVO<Integer, Integer>(TENANT, 2, ITEM_TYPE), 3.0, null,
+                new Date(), USER));
+
+        // the deviation is the rating of item 1 minus the rating of item 2
+        deviationDAO = new InMemoryDeviationDAO();
+        deviationDAO.insertDeviation(new Deviation(TENANT, 1, ITEM_TYPE, 2, ITEM_TYPE, 2.0, 1));
+        deviationDAO.insertDeviation(new Deviation(TENANT, 1, ITEM_TYPE, 3, ITEM_TYPE, 3.0, 1));
+        deviationDAO.insertDeviation(new Deviation(TENANT, 1, ITEM_TYPE, 4, ITEM_TYPE, 0.0, 1));
+        deviationDAO.insertDeviation(new Deviation(TENANT, 1, ITEM_TYPE, 5, ITEM_TYPE, -1.0, 1));
+        deviationDAO.insertDeviation(new Deviation(TENANT, 2, ITEM_TYPE, 5, ITEM_TYPE, -2.0, 1));
+
+        itemAssocs = new ArrayList<ItemAssocVO<Integer, Integer>>();
+        service = new SlopeOneServiceImpl(itemAssocDAO(itemAssocs), actionDAO(ratings), deviationDAO, null);
+        service.setThreads(1);
+    }
+
+    @Test
+    public void personalizedRecommendations_storesBestPredictions() {
+        // item 3 has the largest deviation from item 1 but the lowest prediction: 5 - 3 = 2
+        service.personalizedRecommendations(configuration(2), new SlopeOneStats(), new Date(), USER_TYPE, false,
+                null);
+
+        assertThat(itemAssocs.size(), is(2));
+        // (5 - (-1) + 3 - (-2)) / 2
+        assertRecommendation(itemAssocs.get(0), 5, 5.5);
+        // 5 - 0
+        assertRecommendation(itemAssocs.get(1), 4, 5.0);
+    }
+
+    @Test
+    public void personalizedRecommendations_skipsRatedItems() {
+        service.personalizedRecommendations(configuration(null), new SlopeOneStats(), new Date(), USER_TYPE, false,
+                null);
+
+        assertThat(itemAssocs.size(), is(3));
+        assertRecommendation(itemAssocs.get(0), 5, 5.5);
+        assertRecommendation(itemAssocs.get(1), 4, 5.0);
+        assertRecommendation(itemAssocs.get(2), 3, 2.0);
+    }
+
+    private static void assertRecommendation(ItemAssocVO<Integer, Integer> itemAssoc, int itemId, double value) {
+        assertThat(itemAssoc.getItemFrom(), is(new ItemVO<Integer, Integer>(TENANT, USER, USER_TYPE)));
+        assertThat(itemAssoc.getItemTo(), is(new ItemVO<Integer, Integer>(TENANT, itemId, ITEM_TYPE)));
+        assertThat(itemAssoc.getAssocValue(), is(value));
+    }
+
+    private static SlopeOneIntegerConfiguration configuration(Integer maxRecsPerItem) {
+        return new SlopeOneIntegerConfiguration(maxRecsPerItem, null, "slopeone-nonpersonalized",
+                "slopeone-personalized", 1, new TIntHashSet(new int[]{ITEM_TYPE}), 1, 1, 1, TENANT);
+    }
+
+    private static ActionDAO actionDAO(final List<RatingVO<Integer, Integer>> ratings) {
+        return (ActionDAO) Proxy.newProxyInstance(ActionDAO.class.getClassLoader(), new Class<?>[]{ActionDAO.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getUsers")) return Collections.singletonList(USER);
+                        if (method.getName().equals("getRatings")) return ratings;
+
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static ItemAssocDAO itemAssocDAO(final List<ItemAssocVO<Integer, Integer>> itemAssocs) {
+        final ItemAssocSink sink = new ItemAssocSink() {
+            public void add(ItemAssocVO<Integer, Integer> itemAssoc) { itemAssocs.add(itemAssoc); }
+
+            public void flush() {}
+
+            public void close() {}
+
+            public void discard() {}
+
+            public int getRowsWritten() { return itemAssocs.size(); }
+        };
+
+        return (ItemAssocDAO) Proxy.newProxyInstance(ItemAssocDAO.class.getClassLoader(),
+                new Class<?>[]{ItemAssocDAO.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("openItemAssocSink")) return sink;
+                        if (method.getName().equals("removeItemAssocByTenant")) return 0;
+
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.slopeone.store.dao.impl;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.easyrec.plugin.slopeone.model.Deviation;
+import org.easyrec.plugin.slopeone.store.dao.DeviationDAO;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.easyrec.plugin.slopeone.test.matchers.Matchers.equalToDeviation;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link DeviationIndex}, the expected deviations are the rows the union query of {@link
+ * DeviationDAOCachedMergingMySQL#getDeviationsOrdered(int, int, int, Long, Integer)} returns.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class DeviationIndexTest {
+    // ------------------------------ FIELDS ------------------------------
+
+    private DeviationIndex index;
+
+    // -------------------------- OTHER METHODS --------------------------
+
+    @Before
+    public void before() {
+        TIntIntHashMap deviationsPerItem = new TIntIntHashMap();
+        deviationsPerItem.put(1, 3);
+        deviationsPerItem.put(2, 2);
+        deviationsPerItem.put(3, 2);
+        deviationsPerItem.put(4, 2);
+
+        index = new DeviationIndex(1, 1, deviationsPerItem);
+        index.add(10, 1, 1, 2, 1, 3.0, 2);
+        index.add(11, 1, 1, 3, 1, -4.0, 1);
+        index.add(12, 3, 1, 2, 1, 1.0, 4);
+        index.add(13, 4, 1, 1, 1, 2.0, 1);
+        // item 5 has another item type and is only indexed as other item
+        index.add(14, 5, 2, 4, 1, 1.0, 1);
+        index.sort();
+    }
+
+    @Test
+    public void getDeviationsOrdered_descendingIncludingSwapped() {
+        List<Deviation> deviations = index.getDeviationsOrdered(1, null, null);
+
+        assertThat(deviations.size(), is(3));
+        assertThat(deviations.get(0), equalToDeviation(new Deviation(1, 1, 1, 2, 1, 3.0, 2)));
+        assertThat(deviations.get(1), equalToDeviation(new Deviation(1, 1, 1, 4, 1, -2.0, 1)));
+        assertThat(deviations.get(2), equalToDeviation(new Deviation(1, 1, 1, 3, 1, -4.0, 1)));
+    }
+
+    @Test
+    public void getDeviationsOrdered_appliesConstraints() {
+        assertThat(index.getDeviationsOrdered(1, 2L, null).size(), is(1));
+        assertThat(index.getDeviationsOrdered(1, null, 2).size(), is(2));
+        assertThat(index.getDeviationsOrdered(42, null, null).size(), is(0));
+    }
+
+    @Test
+    public void getDeviationsGrouped_sameAsOrdered() {
+        final Map<Integer, List<Deviation>> grouped = new HashMap<Integer, List<Deviation>>();
+
+        index.getDeviationsGrouped(null, new DeviationDAO.DeviationsOfItemHandler() {
+            public void handleDeviations(int itemId, List<Deviation> deviations) {
+                grouped.put(itemId, deviations);
+            }
+        });
+
+        assertThat(grouped.size(), is(4));
+        for (Map.Entry<Integer, List<Deviation>> entry : grouped.entrySet()) {
+            List<Deviation> expected = index.getDeviationsOrdered(entry.getKey(), null, null);
+
+            assertThat(entry.getValue().size(), is(expected.size()));
+            for (int i = 0; i < expected.size(); i++)
+                assertThat(entry.getValue().get(i), equalToDeviation(expected.get(i)));
+        }
+    }
+
+    @Test
+    public void getDeviation_onlyStoredDirection() {
+        assertThat(index.getDeviation(1, 2, 1), equalToDeviation(new Deviation(1, 1, 1, 2, 1, 3.0, 2)));
+        assertThat(index.getDeviation(2, 1, 1), nullValue());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void add_rejectsUncountedItem() {
+        index.add(15, 6, 1, 7, 1, 1.0, 1);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.slopeone.store.dao.impl;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link StripedDeviationTable}.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class StripedDeviationTableTest {
+    // -------------------------- OTHER METHODS --------------------------
+
+    @Test
+    public void add_sumsNumeratorAndDenominatorPerPair() {
+        AtomicLong allocatedBytes = new AtomicLong();
+        StripedDeviationTable table = new StripedDeviationTable(4, allocatedBytes);
+
+        assertThat(table.add(1, 2, 1.5, 1), is(true));
+        assertThat(table.add(2, 1, -1.5, 1), is(true));
+        assertThat(table.add(1, 2, 2.0, 2), is(false));
+        assertThat(table.add(1, 3, 2.0, 0), is(false));
+
+        final Map<Long, double[]> pairs = collect(table);
+
+        assertThat(table.size(), is(2));
+        assertThat(pairs.size(), is(2));
+        assertThat(pairs.get(key(1, 2))[0], closeTo(3.5, 1.0e-9));
+        assertThat(pairs.get(key(1, 2))[1], closeTo(3.0, 1.0e-9));
+        assertThat(pairs.get(key(2, 1))[0], closeTo(-1.5, 1.0e-9));
+    }
+
+    @Test
+    public void add_concurrentlySameAsSequentially() throws InterruptedException {
+        final StripedDeviationTable table = new StripedDeviationTable(8, new AtomicLong());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // every thread adds the same pairs, so each sum is four times the sequential one
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    Random random = new Random(7);
+
+                    for (int i = 0; i < 20000; i++)
+                        table.add(random.nextInt(300), random.nextInt(300), 1.0, 1);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        StripedDeviationTable sequential = new StripedDeviationTable(1, new AtomicLong());
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++)
+            sequential.add(random.nextInt(300), random.nextInt(300), 1.0, 1);
+
+        Map<Long, double[]> expected = collect(sequential);
+        Map<Long, double[]> actual = collect(table);
+
+        assertThat(actual.size(), is(expected.size()));
+        for (Map.Entry<Long, double[]> entry : expected.entrySet()) {
+            assertThat(actual.get(entry.getKey())[0], closeTo(entry.getValue()[0] * 4, 1.0e-9));
+            assertThat(actual.get(entry.getKey())[1], closeTo(entry.getValue()[1] * 4, 1.0e-9));
+        }
+    }
+
+    @Test
+    public void clear_releasesAllocatedBytes() {
+        AtomicLong allocatedBytes = new AtomicLong();
+        StripedDeviationTable table = new StripedDeviationTable(2, allocatedBytes);
+
+        assertThat(allocatedBytes.get(), is(0L));
+
+        for (int i = 0; i < 10000; i++)
+            table.add(i, i + 1, 1.0, 1);
+
+        assertThat(allocatedBytes.get(), greaterThan(0L));
+
+        table.clear();
+
+        assertThat(allocatedBytes.get(), is(0L));
+        assertThat(table.size(), is(0));
+    }
+
+    private static Map<Long, double[]> collect(StripedDeviationTable table) {
+        final Map<Long, double[]> pairs = new HashMap<Long, double[]>();
+
+        table.forEach(new StripedDeviationTable.DeviationProcedure() {
+            public void execute(int item1Id, int item2Id, double numerator, long denominator) {
+                pairs.put(key(item1Id, item2Id), new double[]{numerator, denominator});
+            }
+        });
+
+        return pairs;
+    }
+
+    private static long key(int item1Id, int item2Id) {
+        return ((long) item1Id << 32) | item2Id;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils;
+
+/**
+ * Hash functions for primitive keys.
+ * <p/>
+ * Trove hashes a long key to <code>(int) (key ^ (key >>> 32))</code>, which maps keys packed from two small ints
+ * (e.g. item and user indices) to only a few thousand hash codes. {@link #mix(long)} multiplies a key with an odd
+ * constant, which is reversible and spreads it over all bits, so the mixed value can be used as key of a primitive
+ * map or its high bits as index of a table.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public final class Hashing {
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+    // the multiplicative inverse of MIX modulo 2^64
+    private static final long UNMIX = 0xF1DE83E19937733DL;
+
+    private Hashing() {
+    }
+
+    public static long mix(long key) {
+        return key * MIX;
+    }
+
+    /**
+     * @return The key {@link #mix(long)} was called with.
+     */
+    public static long unmix(long mixed) {
+        return mixed * UNMIX;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.cache;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded LRU cache for the results of a single method.
+ * <p/>
+ * The key layout is chosen once from the method signature: methods without parameters use a constant key, methods
+ * with a single parameter of an immutable type (e.g. a String or a boxed primitive) use the argument itself and all
+ * other methods use an {@link ArgumentsKey} wrapping the argument array. Lookups therefore neither build strings nor
+ * (except for the composite key) allocate. The composite key stored with a result holds a copy of the arguments, with
+ * dates and arrays copied as well; other mutable arguments must not be changed after the call, otherwise the result
+ * can't be found anymore.
+ * The entries are spread over lock striped LRU segments; results expire after {@code timeToLiveSeconds} if that is
+ * greater than 0. {@code null} results are not cached.
+ * <p/>
+ * The cache is bounded either by the number of results or, if a {@link Weigher} is given, by the total weight of the
+ * results. A result weighing more than a segment may hold is not cached.
+ * <p/>
+ * The cache can be used directly, i.e. without going through a Spring AOP proxy:
+ * <pre>
+ * Object result = cache.get(args);
+ * if (result == null) {
+ *     result = invokeMethod(args);
+ *     cache.put(args, result);
+ * }
+ * </pre>
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class MethodCache {
+
+    // segments are only used for caches that are large enough to suffer from lock contention
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_SIZE = 256;
+
+    private static final Object NO_ARGUMENTS = new Object();
+    private static final Object NULL_ARGUMENT = new Object();
+
+    private final String name;
+    private final boolean immutableArgument;
+    private final long timeToLiveNanos;
+    private final Segment[] segments;
+
+    public MethodCache(Method method, int maxSize, int timeToLiveSeconds) {
+        this(method.getDeclaringClass().getSimpleName() + "." + method.getName(), method.getParameterTypes(), maxSize,
+                timeToLiveSeconds);
+    }
+
+    public MethodCache(String name, Class<?>[] parameterTypes, int maxSize, int timeToLiveSeconds) {
+        this(name, parameterTypes, maxSize, null, timeToLiveSeconds);
+    }
+
+    /**
+     * @param maxWeight The maximum total weight of the cached results.
+     * @param weigher   Weighs the results, if {@code null} every result weighs 1.
+     */
+    public MethodCache(String name, Class<?>[] parameterTypes, long maxWeight, Weigher weigher,
+                       int timeToLiveSeconds) {
+        if (maxWeight <= 0) throw new IllegalArgumentException("'maxWeight' must be greater than 0");
+        if (timeToLiveSeconds < 0)
+            throw new IllegalArgumentException("'timeToLiveSeconds' must be greater than or equal to 0");
+
+        this.name = name;
+        this.immutableArgument = parameterTypes.length == 1 && isImmutable(parameterTypes[0]);
+        this.timeToLiveNanos = timeToLiveSeconds * 1000000000L;
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && maxWeight / (segmentCount * 2) >= MIN_SEGMENT_SIZE) {
+            segmentCount *= 2;
+        }
+
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment((maxWeight + segmentCount - 1) / segmentCount, weigher);
+        }
+    }
+
+    /**
+     * Returns the cached result for the given arguments or {@code null} if there is none or it has expired.
+     */
+    public Object get(Object[] args) {
+        Object key = key(args);
+
+        return segmentFor(key).get(key, timeToLiveNanos > 0 ? System.nanoTime() : 0);
+    }
+
+    public void put(Object[] args, Object result) {
+        if (result == null) return;
+
+        Object key = key(args);
+        // the arguments might be reused by the caller, the stored key must not change afterwards
+        if (key instanceof ArgumentsKey) key = new ArgumentsKey(copy(args));
+
+        segmentFor(key).put(key, result, timeToLiveNanos > 0 ? System.nanoTime() + timeToLiveNanos : 0);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHits() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            hits += segment.getHits();
+        }
+        return hits;
+    }
+
+    public long getMisses() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            misses += segment.getMisses();
+        }
+        return misses;
+    }
+
+    private Object key(Object[] args) {
+        if (args == null || args.length == 0) return NO_ARGUMENTS;
+        if (immutableArgument) return args[0] != null ? args[0] : NULL_ARGUMENT;
+
+        return new ArgumentsKey(args);
+    }
+
+    private static Object[] copy(Object[] args) {
+        Object[] copy = args.clone();
+
+        for (int i = 0; i < copy.length; i++) {
+            Object arg = copy[i];
+
+            if (arg instanceof Date) {
+                copy[i] = ((Date) arg).clone();
+            } else if (arg != null && arg.getClass().isArray()) {
+                int length = Array.getLength(arg);
+                copy[i] = Array.newInstance(arg.getClass().getComponentType(), length);
+                System.arraycopy(arg, 0, copy[i], 0, length);
+            }
+        }
+
+        return copy;
+    }
+
+    private static boolean isImmutable(Class<?> type) {
+        return type.isPrimitive() || type == String.class || type == Integer.class || type == Long.class ||
+                type == Short.class || type == Byte.class || type == Character.class || type == Boolean.class ||
+                type == Double.class || type == Float.class || type == BigInteger.class || type == BigDecimal.class ||
+                type == Class.class || type.isEnum();
+    }
+
+    private Segment segmentFor(Object key) {
+        if (segments.length == 1) return segments[0];
+
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+
+        return segments[hash & (segments.length - 1)];
+    }
+
+    /**
+     * Weighs the results of a cache bounded by weight.
+     */
+    public interface Weigher {
+        /**
+         * @return The weight of the result, must not be negative.
+         */
+        long weigh(Object result);
+    }
+
+    /**
+     * Composite key for methods with several (or array) parameters. The hash code is computed once.
+     */
+    static final class ArgumentsKey {
+        private final Object[] args;
+        private final int hash;
+
+        ArgumentsKey(Object[] args) {
+            this.args = args;
+            this.hash = Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ArgumentsKey)) return false;
+
+            ArgumentsKey other = (ArgumentsKey) o;
+
+            return hash == other.hash && Arrays.deepEquals(args, other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class CachedResult {
+        private final Object value;
+        private final long expires;
+        private final long weight;
+
+        private CachedResult(Object value, long expires, long weight) {
+            this.value = value;
+            this.expires = expires;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Segment {
+        private final LinkedHashMap<Object, CachedResult> entries =
+                new LinkedHashMap<Object, CachedResult>(16, 0.75f, true);
+        private final long maxWeight;
+        private final Weigher weigher;
+        private long weight;
+        private long hits;
+        private long misses;
+
+        private Segment(long maxWeight, Weigher weigher) {
+            this.maxWeight = maxWeight;
+            this.weigher = weigher;
+        }
+
+        private synchronized Object get(Object key, long now) {
+            CachedResult entry = entries.get(key);
+
+            if (entry != null && entry.expires != 0 && entry.expires - now <= 0) {
+                entries.remove(key);
+                weight -= entry.weight;
+                entry = null;
+            }
+
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+
+            hits++;
+            return entry.value;
+        }
+
+        private synchronized void put(Object key, Object value, long expires) {
+            long valueWeight = weigher != null ? weigher.weigh(value) : 1;
+
+            if (valueWeight > maxWeight) return;
+
+            CachedResult replaced = entries.put(key, new CachedResult(value, expires, valueWeight));
+            weight += valueWeight - (replaced != null ? replaced.weight : 0);
+
+            // the least recently used entries come first, the entry just put is the last one
+            Iterator<CachedResult> iterator = entries.values().iterator();
+            while (weight > maxWeight) {
+                weight -= iterator.next().weight;
+                iterator.remove();
+            }
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+
+        private synchronized long getHits() {
+            return hits;
+        }
+
+        private synchronized long getMisses() {
+            return misses;
+        }
+    }
+}
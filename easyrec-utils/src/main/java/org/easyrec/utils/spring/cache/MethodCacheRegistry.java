@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.cache;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds one {@link MethodCache} per target class and method.
+ * <p/>
+ * The cache of a method is created by {@link #register} when the bean declaring the method is initialized and keeps
+ * its key layout, size and time to live from then on. A cache can be registered for more than one method, e.g. for
+ * the interface method a proxy reports as well as for the implementation. Size and time to live default to the values of the registry
+ * and can be overridden per method. The target class is part of the lookup because a cached method declared in an
+ * abstract base class (e.g. a tenant DAO) must not share its results across subclasses.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class MethodCacheRegistry {
+
+    private final ConcurrentMap<Method, ConcurrentMap<Class<?>, MethodCache>> caches =
+            new ConcurrentHashMap<Method, ConcurrentMap<Class<?>, MethodCache>>();
+
+    private int maxSize;
+    private int timeToLiveSeconds;
+
+    public MethodCacheRegistry(int maxSize, int timeToLiveSeconds) {
+        setMaxSize(maxSize);
+        setTimeToLiveSeconds(timeToLiveSeconds);
+    }
+
+    /**
+     * Returns the cache of the given method or {@code null} if it has not been registered yet.
+     */
+    public MethodCache getCache(Class<?> targetClass, Method method) {
+        ConcurrentMap<Class<?>, MethodCache> methodCaches = caches.get(method);
+
+        return methodCaches != null ? methodCaches.get(targetClass) : null;
+    }
+
+    /**
+     * Creates the cache for the given method unless it already exists.
+     *
+     * @param maxSize           maximum number of cached results, the default size of the registry is used if this is
+     *                          smaller than 1
+     * @param timeToLiveSeconds time to live of the cached results in seconds (0 for no expiry), the default of the
+     *                          registry is used if this is smaller than 0
+     * @return the cache of the method
+     */
+    public MethodCache register(Class<?> targetClass, Method method, int maxSize, int timeToLiveSeconds) {
+        ConcurrentMap<Class<?>, MethodCache> methodCaches = methodCaches(method);
+        MethodCache cache = methodCaches.get(targetClass);
+
+        if (cache == null) {
+            cache = new MethodCache(targetClass.getSimpleName() + "." + method.getName(),
+                    method.getParameterTypes(), maxSize > 0 ? maxSize : this.maxSize,
+                    timeToLiveSeconds >= 0 ? timeToLiveSeconds : this.timeToLiveSeconds);
+            MethodCache existing = methodCaches.putIfAbsent(targetClass, cache);
+
+            if (existing != null) cache = existing;
+        }
+
+        return cache;
+    }
+
+    /**
+     * Makes an existing cache the cache of another method of the target class unless that method already has one.
+     *
+     * @return the cache of the method
+     */
+    public MethodCache register(Class<?> targetClass, Method method, MethodCache cache) {
+        if (cache == null) throw new IllegalArgumentException("Missing 'cache'");
+
+        MethodCache existing = methodCaches(method).putIfAbsent(targetClass, cache);
+
+        return existing != null ? existing : cache;
+    }
+
+    private ConcurrentMap<Class<?>, MethodCache> methodCaches(Method method) {
+        ConcurrentMap<Class<?>, MethodCache> methodCaches = caches.get(method);
+
+        if (methodCaches == null) {
+            methodCaches = new ConcurrentHashMap<Class<?>, MethodCache>(4);
+            ConcurrentMap<Class<?>, MethodCache> existing = caches.putIfAbsent(method, methodCaches);
+
+            if (existing != null) methodCaches = existing;
+        }
+
+        return methodCaches;
+    }
+
+    public List<MethodCache> getCaches() {
+        // a cache registered for several methods is listed once
+        Set<MethodCache> result = Collections.newSetFromMap(new IdentityHashMap<MethodCache, Boolean>());
+
+        for (ConcurrentMap<Class<?>, MethodCache> methodCaches : caches.values()) {
+            result.addAll(methodCaches.values());
+        }
+
+        return new ArrayList<MethodCache>(result);
+    }
+
+    public void clear() {
+        for (MethodCache cache : getCaches()) {
+            cache.clear();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("'maxSize' must be greater than 0");
+
+        this.maxSize = maxSize;
+    }
+
+    public int getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+        if (timeToLiveSeconds < 0)
+            throw new IllegalArgumentException("'timeToLiveSeconds' must be greater than or equal to 0");
+
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+}
@@ -41,4 +41,16 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface LongCacheable {
+
+    /**
+     * Maximum number of cached results of the method, the size configured for the long term cache is used if this is
+     * smaller than 1.
+     */
+    int maxSize() default -1;
+
+    /**
+     * Time to live of the cached results in seconds (0 for no expiry), the time to live configured for the long term
+     * cache is used if this is smaller than 0.
+     */
+    int timeToLiveSeconds() default -1;
 }
@@ -20,10 +20,14 @@ package org.easyrec.utils.spring.cache.aop;
 import net.sf.ehcache.CacheManager;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.easyrec.utils.spring.cache.MethodCacheRegistry;
 import org.springframework.beans.factory.InitializingBean;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * Aspect that resets all the caches managed by the given CacheManager.
+ * Aspect that resets all the caches managed by the given CacheManager and all the given method cache registries.
  * USE WITH CAUTION: LEADS TO TEMPORARY PERFORMANCE DECREASE!!!!!!!!!!
  * <p/>
  * <p><b>Company:&nbsp;</b>
@@ -44,16 +48,24 @@ public class CacheResetAspectAdvice implements InitializingBean {
     private Log log = LogFactory.getLog(getClass());
 
     private CacheManager cacheManager;
+    private List<MethodCacheRegistry> registries = new ArrayList<MethodCacheRegistry>();
 
     public void setCacheManager(CacheManager cacheManager) {
         this.cacheManager = cacheManager;
     }
 
+    public void setRegistries(List<MethodCacheRegistry> registries) {
+        this.registries = registries;
+    }
+
     public void clearCaches() {
         if (log.isDebugEnabled()) {
             log.debug("!!!!!!!!!!!!! CLEARING ALL CACHES !!!!!!!!!!!!!!!!!");
         }
         cacheManager.clearAll();
+        for (MethodCacheRegistry registry : registries) {
+            registry.clear();
+        }
     }
 
     public void afterPropertiesSet() throws Exception {
@@ -18,20 +18,35 @@
  */
 package org.easyrec.utils.spring.cache.aop;
 
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.Element;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.easyrec.utils.spring.cache.MethodCache;
+import org.easyrec.utils.spring.cache.MethodCacheRegistry;
+import org.easyrec.utils.spring.cache.annotation.LongCacheable;
+import org.easyrec.utils.spring.cache.annotation.ShortCacheable;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
+import org.springframework.util.ClassUtils;
 
-import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
 
 /**
  * Aspect that caches method results.
  * <p/>
+ * Every intercepted method gets its own bounded cache in the given {@link MethodCacheRegistry}. The size and time to
+ * live of that cache are taken from the {@link LongCacheable} or {@link ShortCacheable} annotation of the method if
+ * set there, otherwise the defaults of the registry apply.
+ * <p/>
+ * The caches are created when a bean with methods carrying the {@code cacheableAnnotation} is initialized, so the
+ * calls don't race for creating them. Beans initialized before the advice get their caches on the first call.
+ * <p/>
  * <p><b>Company:&nbsp;</b>
  * SAT, Research Studios Austria</p>
  * <p/>
@@ -47,92 +62,130 @@ import java.io.Serializable;
  */
 
 @Order(Ordered.HIGHEST_PRECEDENCE)
-public class CachingAspectAdvice implements InitializingBean {
+public class CachingAspectAdvice implements InitializingBean, BeanPostProcessor {
     private Log log = LogFactory.getLog(getClass());
 
-    private Cache cache;
+    private MethodCacheRegistry registry;
+    private Class<? extends Annotation> cacheableAnnotation;
 
-    public void setCache(Cache cache) {
-        this.cache = cache;
+    public void setRegistry(MethodCacheRegistry registry) {
+        this.registry = registry;
     }
 
     /**
-     * Takes a method name and its arguments and stores the result in a cache.
+     * @param cacheableAnnotation The annotation of the methods this advice is applied to, their caches are created
+     *                            eagerly.
+     */
+    public void setCacheableAnnotation(Class<? extends Annotation> cacheableAnnotation) {
+        this.cacheableAnnotation = cacheableAnnotation;
+    }
+
+    /**
+     * Looks up the result of the intercepted method for the given arguments in the method's cache and calls the
+     * method on a cache miss.
      *
      * @param pjp the JoinPoint containing information about the intercepted method call
      * @return the result of the method call
      * @throws Throwable
      */
     public Object cacheMethodResult(ProceedingJoinPoint pjp) throws Throwable {
-        String targetName = pjp.getTarget().getClass().getName();
-        String methodName = pjp.getSignature().getName();
-        Object[] args = pjp.getArgs();
-        Object result;
+        Class<?> targetClass = pjp.getTarget().getClass();
+        Method method = ((MethodSignature) pjp.getSignature()).getMethod();
 
-        Log logger = LogFactory.getLog(pjp.getTarget().getClass());
+        MethodCache cache = registry.getCache(targetClass, method);
+        if (cache == null) cache = register(targetClass, method);
 
-        if (logger.isDebugEnabled()) {
-            logger.debug("looking for method " + methodName + " result in cache");
-        }
-        String cacheKey = getCacheKey(targetName, methodName, args);
-        Element element = cache.get(cacheKey);
-        if (element == null) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("Cache miss - calling intercepted method!");
-            }
-            result = pjp.proceed();
-            if (result == null) return null;
-            if (logger.isDebugEnabled()) {
-                logger.debug("Caching new result!");
-            }
-            try {
-                element = new Element(cacheKey, (Serializable) result);
-            } catch (Exception e) {
-                logger.debug("xxResult " + result + " for key: " + cacheKey + "..." + e.getMessage());
-                e.printStackTrace();
-            }
+        Object[] args = pjp.getArgs();
+        Object result = cache.get(args);
 
-            cache.put(element);
+        if (result == null) {
+            result = pjp.proceed();
+            cache.put(args, result);
         }
 
-        assert element != null;
+        return result;
+    }
+
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (cacheableAnnotation != null) {
+            Class<?> targetClass = AopUtils.getTargetClass(bean);
 
-        return element.getValue();
+            for (Method method : targetClass.getMethods()) {
+                if (method.isAnnotationPresent(cacheableAnnotation)) register(targetClass, method);
+            }
+        }
+
+        return bean;
     }
 
     /**
-     * Generates a unique key from the given arguments for storing a method result in a cache.
-     *
-     * @param targetName name of the object (bean) on which a method is called
-     * @param methodName name of the method called
-     * @param arguments  the arguments passed to the method called
-     * @return a unique key for the cache entry
+     * Creates the cache of a method. The signature of a JDK proxy call refers to the interface method, so the cache
+     * is registered for the implementation as well as for the interface methods it implements.
      */
-    private String getCacheKey(String targetName, String methodName, Object[] arguments) {
+    private MethodCache register(Class<?> targetClass, Method method) {
+        Method targetMethod = method;
 
-        StringBuilder sb = new StringBuilder();
+        try {
+            targetMethod = targetClass.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException ignored) {
+            // non public methods are only intercepted on the target class itself
+        }
+
+        MethodCache cache = create(targetClass, targetMethod);
 
-        sb.append(targetName).append(".").append(methodName);
-        for (Object object : arguments) {
-            if (object != null) {
-                sb.append(object.getClass().getName());
+        for (Class<?> type : ClassUtils.getAllInterfacesForClassAsSet(targetClass)) {
+            try {
+                registry.register(targetClass, type.getMethod(method.getName(), method.getParameterTypes()), cache);
+            } catch (NoSuchMethodException ignored) {
+                // the method isn't declared by this interface
             }
-            sb.append(object);
         }
-        return sb.toString();
+
+        return registry.register(targetClass, method, cache);
     }
 
+    /**
+     * Creates the cache of a method with the size and time to live of the annotation of the implementation.
+     */
+    private MethodCache create(Class<?> targetClass, Method targetMethod) {
+        int maxSize = -1;
+        int timeToLiveSeconds = -1;
+
+        LongCacheable longCacheable = targetMethod.getAnnotation(LongCacheable.class);
+        ShortCacheable shortCacheable = targetMethod.getAnnotation(ShortCacheable.class);
+
+        if (longCacheable != null) {
+            maxSize = longCacheable.maxSize();
+            timeToLiveSeconds = longCacheable.timeToLiveSeconds();
+        } else if (shortCacheable != null) {
+            maxSize = shortCacheable.maxSize();
+            timeToLiveSeconds = shortCacheable.timeToLiveSeconds();
+        }
+
+        MethodCache cache = registry.register(targetClass, targetMethod, maxSize, timeToLiveSeconds);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Created method cache " + cache.getName());
+        }
+
+        return cache;
+    }
 
     public void afterPropertiesSet() throws Exception {
         if (log.isInfoEnabled()) {
-            log.info("Checking if Cache was set properly ...");
+            log.info("Checking if MethodCacheRegistry was set properly ...");
         }
-        if (cache == null) {
+        if (registry == null) {
             throw new IllegalArgumentException(
-                    "A cache is required for the Caching Aspect to work! Use the 'cache' property to provide one!");
+                    "A MethodCacheRegistry is required for the Caching Aspect to work! Use the 'registry' property to provide one!");
         }
         if (log.isDebugEnabled()) {
-            log.debug("Cache found. Using cache " + cache.getName());
+            log.debug("MethodCacheRegistry found. Using " + registry.getMaxSize() + " results per method and a " +
+                    "time to live of " + registry.getTimeToLiveSeconds() + "s by default");
         }
         if (log.isInfoEnabled()) {
             log.info(this.getClass().getSimpleName() + " Aspect initialized!");
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.store;
+
+import com.google.common.collect.ObjectArrays;
+import com.google.common.primitives.Ints;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Objects.firstNonNull;
+
+/**
+ * Iterator that fetches large result sets for mysql bulkwise by paging on a unique numeric key column.
+ * <p/>
+ * Unlike {@link ResultSetIteratorMysql}, which appends <code>limit offset, count</code> and therefore makes mysql
+ * read and discard all rows before the offset for every bulk, each bulk is fetched with
+ * <code>key &gt; lastKey ORDER BY key LIMIT bulkSize</code>, i.e. a range scan on the key's index. Walking a whole
+ * table thus costs linear instead of quadratic time. The rows are returned in ascending key order.
+ * <p/>
+ * The sql must be a select on a single table without <code>ORDER BY</code>, <code>GROUP BY</code> or
+ * <code>LIMIT</code> clauses that returns the key column; the key condition is appended to an existing
+ * <code>WHERE</code> clause with <code>AND</code> (so use parentheses around <code>OR</code> conditions).
+ * <p/>
+ * <p>
+ * Example: <br />
+ * <p/>
+ * <pre>
+ *       Iterator<MyClass> resultIt = new KeysetResultSetIteratorMysql<MyClass>(
+ *               myDataSource, bulkSize, "select * from myTable where someValue = ?",
+ *               args, types, "id", myRowMapper);
+ * </pre>
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class KeysetResultSetIteratorMysql<T> implements Iterator<T> {
+    private static final Pattern WHERE_PATTERN = Pattern.compile("\\bwhere\\b", Pattern.CASE_INSENSITIVE);
+
+    //the logger
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String sql;
+    private final Object[] args;
+    private final int[] types;
+    private final int bulkSize;
+    private final RowMapper<T> keyRowMapper;
+
+    //internal iterator that is fetched from the current bulk
+    private Iterator<T> currentIterator = null;
+
+    //the key of the last row read
+    private long lastKey = Long.MIN_VALUE;
+
+    //true once a bulk smaller than bulkSize has been read
+    private boolean lastBulk = false;
+
+    /**
+     * create the result set iterator.
+     *
+     * @param ds        a DataSource
+     * @param bulkSize  number of result rows to fetch each time a query is sent to the db
+     * @param sql       sql (without 'order by' and 'limit' clauses!)
+     * @param args      args
+     * @param types     types
+     * @param keyColumn the unique numeric column to page on, usually the primary key
+     * @param rowMapper for creating the results
+     */
+    public KeysetResultSetIteratorMysql(DataSource ds, int bulkSize, String sql, Object[] args, int[] types,
+                                        final String keyColumn, final RowMapper<T> rowMapper) {
+        if (bulkSize <= 0) throw new IllegalArgumentException("'bulkSize' must be greater than 0");
+        if (keyColumn == null) throw new IllegalArgumentException("Missing 'keyColumn'");
+
+        this.bulkSize = bulkSize;
+        this.jdbcTemplate = new JdbcTemplate(ds);
+        this.sql = new StringBuilder(sql).append(WHERE_PATTERN.matcher(sql).find() ? " AND " : " WHERE ")
+                .append(keyColumn).append(" > ? ORDER BY ").append(keyColumn).append(" LIMIT ?").toString();
+        this.args = ObjectArrays.concat(firstNonNull(args, new Object[0]), new Object[]{lastKey, bulkSize},
+                Object.class);
+        this.types = Ints.concat(firstNonNull(types, new int[0]), new int[]{Types.BIGINT, Types.INTEGER});
+        // remembers the key of every row, the last one is where the next bulk starts
+        this.keyRowMapper = new RowMapper<T>() {
+            public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+                lastKey = rs.getLong(keyColumn);
+                return rowMapper.mapRow(rs, rowNum);
+            }
+        };
+    }
+
+    /**
+     * create the result set iterator without arguments to the sql statement
+     *
+     * @param ds        a DataSource
+     * @param bulkSize  number of result rows to fetch each time a query is sent to the db
+     * @param sql       the sql string (without 'order by' and 'limit' clauses!)
+     * @param keyColumn the unique numeric column to page on, usually the primary key
+     * @param rowMapper for creating the results
+     */
+    public KeysetResultSetIteratorMysql(DataSource ds, int bulkSize, String sql, String keyColumn,
+                                        RowMapper<T> rowMapper) {
+        this(ds, bulkSize, sql, null, null, keyColumn, rowMapper);
+    }
+
+    public boolean hasNext() {
+        while (currentIterator == null || !currentIterator.hasNext()) {
+            if (lastBulk) return false;
+
+            loadNextBulk();
+        }
+        return true;
+    }
+
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no element to return");
+        }
+        return currentIterator.next();
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("This iterator does not support removal");
+    }
+
+    private void loadNextBulk() {
+        if (logger.isDebugEnabled()) {
+            logger.debug("loading next bulk. lastKey= " + lastKey + ", bulkSize=" + bulkSize);
+        }
+        args[args.length - 2] = lastKey;
+
+        List<T> bulk = jdbcTemplate.query(sql, args, types, keyRowMapper);
+
+        lastBulk = bulk.size() < bulkSize;
+        currentIterator = bulk.iterator();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.store;
+
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Creates a forward only, read only statement that makes the mysql driver stream the rows of the result instead of
+ * reading the whole result into memory (<code>fetchSize = Integer.MIN_VALUE</code>).
+ * <p/>
+ * Use it with <code>JdbcTemplate.query(PreparedStatementCreator, RowCallbackHandler)</code> to process large results
+ * in a single query. The connection is busy until the result has been read completely.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class StreamingPreparedStatementCreator implements PreparedStatementCreator {
+
+    private final String sql;
+    private final Object[] args;
+    private final int[] types;
+
+    private volatile PreparedStatement statement;
+
+    public StreamingPreparedStatementCreator(String sql, Object[] args, int[] types) {
+        if (sql == null) throw new IllegalArgumentException("Missing 'sql'");
+
+        this.sql = sql;
+        this.args = args != null ? args : new Object[0];
+        this.types = types != null ? types : new int[0];
+    }
+
+    public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        // tells the MySQL driver to stream rows instead of reading the whole result
+        ps.setFetchSize(Integer.MIN_VALUE);
+
+        for (int i = 0; i < args.length; i++) {
+            StatementCreatorUtils.setParameterValue(ps, i + 1, types[i], args[i]);
+        }
+
+        statement = ps;
+        return ps;
+    }
+
+    /**
+     * Cancels the running query. Closing a streaming statement before the end of its result would make the driver
+     * read all remaining rows.
+     *
+     * @throws SQLException if the driver fails to cancel the query
+     */
+    public void cancel() throws SQLException {
+        PreparedStatement ps = statement;
+
+        if (ps != null) ps.cancel();
+    }
+
+    public String getSql() {
+        return sql;
+    }
+}
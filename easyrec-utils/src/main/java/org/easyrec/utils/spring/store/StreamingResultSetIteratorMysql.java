@@ -0,0 +1,255 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.store;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Iterator that reads a large result set for mysql with a single server-side streaming query.
+ * <p/>
+ * The query is executed with a {@link StreamingPreparedStatementCreator}, which makes the mysql driver stream the
+ * rows instead of reading the whole result into memory. A background thread maps the rows and prefetches them into a
+ * bounded queue, so reading from the database overlaps with processing the results.
+ * <p/>
+ * The streaming query holds a database connection until the result has been read completely. An iterator that is
+ * not read to the end should be closed with {@link #close()}; iterators that are neither exhausted nor closed are
+ * detected once they have been garbage collected.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class StreamingResultSetIteratorMysql<T> implements Iterator<T>, Closeable {
+    // marks the end of the result in the queue
+    private static final Object END = new Object();
+    // stands for a row mapped to null, the queue doesn't accept null elements
+    private static final Object NULL_ROW = new Object();
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    //the logger
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final BlockingQueue<Object> queue;
+    private final Producer producer;
+
+    //the prefetched next element, null if none has been taken from the queue yet
+    private Object next = null;
+    private boolean finished = false;
+
+    /**
+     * create the result set iterator and start reading the result.
+     *
+     * @param ds           a DataSource
+     * @param prefetchSize maximum number of rows that are read ahead
+     * @param sql          sql
+     * @param args         args
+     * @param types        types
+     * @param rowMapper    for creating the results
+     */
+    public StreamingResultSetIteratorMysql(DataSource ds, int prefetchSize, String sql, Object[] args, int[] types,
+                                           RowMapper<T> rowMapper) {
+        if (prefetchSize <= 0) throw new IllegalArgumentException("'prefetchSize' must be greater than 0");
+
+        this.queue = new ArrayBlockingQueue<Object>(prefetchSize);
+        this.producer = new Producer(this, new JdbcTemplate(ds),
+                new StreamingPreparedStatementCreator(sql, args, types), rowMapper, queue);
+
+        Thread thread = new Thread(producer, "ResultSetStreamer-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * create the result set iterator without arguments to the sql statement
+     *
+     * @param ds           a DataSource
+     * @param prefetchSize maximum number of rows that are read ahead
+     * @param sql          the sql string
+     * @param rowMapper    for creating the results
+     */
+    public StreamingResultSetIteratorMysql(DataSource ds, int prefetchSize, String sql, RowMapper<T> rowMapper) {
+        this(ds, prefetchSize, sql, null, null, rowMapper);
+    }
+
+    public boolean hasNext() {
+        if (next != null) return true;
+        if (finished) return false;
+
+        try {
+            next = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("interrupted while waiting for the next row", e);
+        }
+
+        if (next == END) {
+            next = null;
+            finished = true;
+
+            if (producer.failure != null) throw producer.failure;
+
+            return false;
+        }
+
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no element to return");
+        }
+
+        T result = next != NULL_ROW ? (T) next : null;
+        next = null;
+        return result;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("This iterator does not support removal");
+    }
+
+    /**
+     * Stops reading the result and releases the database connection. Does nothing if the result has been read
+     * completely.
+     */
+    public void close() {
+        if (finished) return;
+
+        finished = true;
+        next = null;
+        producer.closed = true;
+        // makes room in case the producer is waiting for the queue
+        queue.clear();
+    }
+
+    /**
+     * Reads the result and puts the mapped rows into the queue. Only holds a weak reference to the iterator so that
+     * an abandoned iterator can be detected.
+     */
+    private static class Producer implements Runnable, RowCallbackHandler {
+        private final Log logger = LogFactory.getLog(StreamingResultSetIteratorMysql.class);
+
+        private final WeakReference<StreamingResultSetIteratorMysql<?>> owner;
+        private final JdbcTemplate jdbcTemplate;
+        private final StreamingPreparedStatementCreator statementCreator;
+        private final RowMapper<?> rowMapper;
+        private final BlockingQueue<Object> queue;
+
+        private volatile boolean closed = false;
+        private volatile RuntimeException failure = null;
+        private int rowNum = 0;
+
+        private Producer(StreamingResultSetIteratorMysql<?> owner, JdbcTemplate jdbcTemplate,
+                         StreamingPreparedStatementCreator statementCreator, RowMapper<?> rowMapper,
+                         BlockingQueue<Object> queue) {
+            this.owner = new WeakReference<StreamingResultSetIteratorMysql<?>>(owner);
+            this.jdbcTemplate = jdbcTemplate;
+            this.statementCreator = statementCreator;
+            this.rowMapper = rowMapper;
+            this.queue = queue;
+        }
+
+        public void run() {
+            long start = System.currentTimeMillis();
+
+            try {
+                jdbcTemplate.query(statementCreator, this);
+            } catch (AbortedException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("stopped streaming after " + rowNum + " rows");
+                }
+                return;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("streamed " + rowNum + " rows in " + (System.currentTimeMillis() - start) + "ms");
+            }
+
+            try {
+                offer(END);
+            } catch (AbortedException ignored) {
+                // nobody is waiting for the end of the result anymore
+            }
+        }
+
+        public void processRow(ResultSet rs) throws SQLException {
+            Object row = rowMapper.mapRow(rs, rowNum++);
+            offer(row != null ? row : NULL_ROW);
+        }
+
+        private void offer(Object element) {
+            try {
+                while (!closed && !queue.offer(element, 1, TimeUnit.SECONDS)) {
+                    if (owner.get() == null) {
+                        logger.warn("a streaming result set iterator was neither read completely nor closed: " +
+                                statementCreator.getSql());
+                        closed = true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+            }
+
+            if (closed) {
+                cancel();
+                throw new AbortedException();
+            }
+        }
+
+        /**
+         * Cancels the query, otherwise closing the statement would make the driver read the remaining rows.
+         */
+        private void cancel() {
+            try {
+                statementCreator.cancel();
+            } catch (SQLException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("failed to cancel the streaming query", e);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class AbortedException extends RuntimeException {
+    }
+}
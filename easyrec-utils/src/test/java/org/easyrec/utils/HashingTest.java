@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HashingTest {
+
+    @Test
+    public void unmix_reversesMix() {
+        for (long key : new long[]{0L, 1L, -1L, 42L << 32 | 7L, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            assertThat(Hashing.unmix(Hashing.mix(key)), is(key));
+        }
+    }
+
+    @Test
+    public void mix_spreadsPackedKeys() {
+        Set<Integer> troveHashes = new HashSet<Integer>();
+
+        // pairs of small ints, Trove's hash of the unmixed keys has only 64 distinct values
+        for (long first = 0; first < 64; first++) {
+            for (long second = 0; second < 64; second++) {
+                long mixed = Hashing.mix(first << 32 | second);
+                troveHashes.add((int) (mixed ^ (mixed >>> 32)));
+            }
+        }
+
+        assertThat(troveHashes.size(), is(64 * 64));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.cache;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the per hit overhead of the former string keyed ehcache lookup of the CachingAspectAdvice with a
+ * {@link MethodCache} lookup. Both caches are filled first so that every measured call is a hit; the cached method
+ * is modelled after {@code ItemTypeDAO.getIdOfType(Integer tenantId, String itemType, Boolean visible)} and
+ * {@code IDMappingDAO.lookup(String id)}.
+ * <p/>
+ * Only the cache lookups are measured, the proxy overhead of Spring AOP is the same for both variants.
+ */
+public class MethodCacheBenchmark {
+
+    private static final int NUMBER_OF_THREADS = 8;
+    private static final int NUMBER_OF_KEYS = 1000;
+    private static final int HITS_PER_THREAD = 2000000;
+    private static final String TARGET_NAME = "org.easyrec.store.dao.core.types.impl.ItemTypeDAOMysqlImpl";
+
+    private interface Lookup {
+        Object get(Object[] args);
+    }
+
+    public static void main(String[] args) throws Exception {
+        CacheManager cacheManager = new CacheManager();
+        final Cache ehcache = new Cache("SAT_SHORT_TERM_CACHE", 10000, false, false, 600, 600);
+        cacheManager.addCache(ehcache);
+
+        final MethodCache getIdOfType = new MethodCache("getIdOfType",
+                new Class<?>[]{Integer.class, String.class, Boolean.class}, 10000, 600);
+        final MethodCache lookup = new MethodCache("lookup", new Class<?>[]{String.class}, 10000, 600);
+
+        try {
+            for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+                Object[] typeArgs = typeArgs(i);
+                Object[] lookupArgs = lookupArgs(i);
+
+                ehcache.put(new Element(legacyKey("getIdOfType", typeArgs), i));
+                ehcache.put(new Element(legacyKey("lookup", lookupArgs), i));
+                getIdOfType.put(typeArgs, i);
+                lookup.put(lookupArgs, i);
+            }
+
+            Lookup legacyType = new Lookup() {
+                public Object get(Object[] args) {
+                    return ehcache.get(legacyKey("getIdOfType", args)).getValue();
+                }
+            };
+            Lookup legacyLookup = new Lookup() {
+                public Object get(Object[] args) {
+                    return ehcache.get(legacyKey("lookup", args)).getValue();
+                }
+            };
+            Lookup methodType = new Lookup() {
+                public Object get(Object[] args) {
+                    return getIdOfType.get(args);
+                }
+            };
+            Lookup methodLookup = new Lookup() {
+                public Object get(Object[] args) {
+                    return lookup.get(args);
+                }
+            };
+
+            // the first round warms up the JIT
+            for (int threads : new int[]{1, 1, NUMBER_OF_THREADS}) {
+                run("ehcache getIdOfType", threads, legacyType, false);
+                run("MethodCache getIdOfType", threads, methodType, false);
+                run("ehcache lookup", threads, legacyLookup, true);
+                run("MethodCache lookup", threads, methodLookup, true);
+            }
+        } finally {
+            cacheManager.shutdown();
+        }
+    }
+
+    private static Object[] typeArgs(int i) {
+        return new Object[]{i % 100, "TYPE_" + (i / 100), Boolean.TRUE};
+    }
+
+    private static Object[] lookupArgs(int i) {
+        return new Object[]{"item_" + i};
+    }
+
+    /**
+     * The key built by the CachingAspectAdvice before it used {@link MethodCache}s.
+     */
+    private static String legacyKey(String methodName, Object[] arguments) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(TARGET_NAME).append(".").append(methodName);
+        for (Object object : arguments) {
+            if (object != null) {
+                sb.append(object.getClass().getName());
+            }
+            sb.append(object);
+        }
+        return sb.toString();
+    }
+
+    private static void run(String name, int threads, final Lookup lookup, final boolean singleArgument)
+            throws InterruptedException {
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final CountDownLatch doneSignal = new CountDownLatch(threads);
+        final Object[][] keys = new Object[NUMBER_OF_KEYS][];
+
+        for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+            keys[i] = singleArgument ? lookupArgs(i) : typeArgs(i);
+        }
+
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * 7;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        startSignal.await();
+                        for (int i = 0; i < HITS_PER_THREAD; i++) {
+                            if (lookup.get(keys[(i + offset) % NUMBER_OF_KEYS]) == null)
+                                throw new IllegalStateException("cache miss");
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        doneSignal.countDown();
+                    }
+                }
+            });
+            thread.start();
+        }
+
+        long start = System.nanoTime();
+        startSignal.countDown();
+        doneSignal.await();
+        long elapsed = System.nanoTime() - start;
+
+        long hits = (long) threads * HITS_PER_THREAD;
+        System.out.println(name + " (" + threads + " threads): " + hits + " hits in " + (elapsed / 1000000) +
+                "ms, " + (elapsed * threads / hits) + "ns/hit per thread");
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.cache;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Date;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class MethodCacheTest {
+
+    @Test
+    public void get_singleArgument() {
+        MethodCache cache = new MethodCache("lookup", new Class<?>[]{String.class}, 10, 0);
+        Object result = new Object();
+
+        cache.put(new Object[]{"a"}, result);
+
+        assertThat(cache.get(new Object[]{"a"}), is(sameInstance(result)));
+        assertThat(cache.get(new Object[]{"b"}), is(nullValue()));
+        assertThat(cache.get(new Object[]{null}), is(nullValue()));
+
+        cache.put(new Object[]{null}, "null");
+
+        assertThat(cache.get(new Object[]{null}), is((Object) "null"));
+        assertThat(cache.getHits(), is(2L));
+        assertThat(cache.getMisses(), is(2L));
+    }
+
+    @Test
+    public void get_severalArguments() {
+        MethodCache cache = new MethodCache("getIdOfType",
+                new Class<?>[]{Integer.class, String.class, Boolean.class}, 10, 0);
+        Object[] args = new Object[]{1, "ITEM", true};
+
+        cache.put(args, 7);
+        // the stored key must not depend on the array passed in
+        args[1] = "BOOK";
+
+        assertThat(cache.get(new Object[]{1, "ITEM", true}), is((Object) 7));
+        assertThat(cache.get(new Object[]{1, "ITEM", false}), is(nullValue()));
+        assertThat(cache.get(new Object[]{2, "ITEM", true}), is(nullValue()));
+        assertThat(cache.get(args), is(nullValue()));
+    }
+
+    @Test
+    public void get_mutableArgument() {
+        MethodCache cache = new MethodCache("getActions", new Class<?>[]{Date.class}, 10, 0);
+        Date since = new Date(1000);
+
+        cache.put(new Object[]{since}, "actions");
+        // changing the argument afterwards must neither change the stored key nor its hash
+        since.setTime(2000);
+
+        assertThat(cache.get(new Object[]{new Date(1000)}), is((Object) "actions"));
+        assertThat(cache.get(new Object[]{since}), is(nullValue()));
+    }
+
+    @Test
+    public void get_noArguments() {
+        MethodCache cache = new MethodCache("getAll", new Class<?>[0], 10, 0);
+
+        cache.put(new Object[0], "all");
+
+        assertThat(cache.get(new Object[0]), is((Object) "all"));
+        assertThat(cache.get(null), is((Object) "all"));
+    }
+
+    @Test
+    public void get_arrayArgument() {
+        MethodCache cache = new MethodCache("getAll", new Class<?>[]{int[].class}, 10, 0);
+
+        cache.put(new Object[]{new int[]{1, 2}}, "1,2");
+
+        assertThat(cache.get(new Object[]{new int[]{1, 2}}), is((Object) "1,2"));
+        assertThat(cache.get(new Object[]{new int[]{2, 1}}), is(nullValue()));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() {
+        MethodCache cache = new MethodCache("lookup", new Class<?>[]{Integer.class}, 2, 0);
+
+        cache.put(new Object[]{1}, "1");
+        cache.put(new Object[]{2}, "2");
+        cache.get(new Object[]{1});
+        cache.put(new Object[]{3}, "3");
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(new Object[]{1}), is((Object) "1"));
+        assertThat(cache.get(new Object[]{2}), is(nullValue()));
+        assertThat(cache.get(new Object[]{3}), is((Object) "3"));
+    }
+
+    @Test
+    public void put_evictsByWeight() {
+        MethodCache cache = new MethodCache("lookup", new Class<?>[]{Integer.class}, 5, new MethodCache.Weigher() {
+            public long weigh(Object result) {
+                return ((String) result).length();
+            }
+        }, 0);
+
+        cache.put(new Object[]{1}, "11");
+        cache.put(new Object[]{2}, "22");
+        cache.get(new Object[]{1});
+        cache.put(new Object[]{3}, "333");
+        // heavier than the whole cache
+        cache.put(new Object[]{4}, "444444");
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(new Object[]{1}), is((Object) "11"));
+        assertThat(cache.get(new Object[]{2}), is(nullValue()));
+        assertThat(cache.get(new Object[]{3}), is((Object) "333"));
+        assertThat(cache.get(new Object[]{4}), is(nullValue()));
+    }
+
+    @Test
+    public void put_ignoresNull() {
+        MethodCache cache = new MethodCache("lookup", new Class<?>[]{Integer.class}, 2, 0);
+
+        cache.put(new Object[]{1}, null);
+
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void get_expired() throws InterruptedException {
+        MethodCache cache = new MethodCache("lookup", new Class<?>[]{Integer.class}, 10, 1);
+
+        cache.put(new Object[]{1}, "1");
+        assertThat(cache.get(new Object[]{1}), is((Object) "1"));
+
+        Thread.sleep(1100);
+
+        assertThat(cache.get(new Object[]{1}), is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void register_perTargetClass() throws NoSuchMethodException {
+        MethodCacheRegistry registry = new MethodCacheRegistry(100, 0);
+        Method method = Object.class.getMethod("equals", Object.class);
+
+        assertThat(registry.getCache(String.class, method), is(nullValue()));
+
+        MethodCache stringCache = registry.register(String.class, method, -1, -1);
+        MethodCache integerCache = registry.register(Integer.class, method, 5, 10);
+
+        assertThat(registry.getCache(String.class, method), is(sameInstance(stringCache)));
+        assertThat(registry.register(String.class, method, 5, 5), is(sameInstance(stringCache)));
+        assertThat(integerCache, is(not(sameInstance(stringCache))));
+
+        stringCache.put(new Object[]{1}, "1");
+        integerCache.put(new Object[]{1}, "1");
+        registry.clear();
+
+        assertThat(stringCache.size(), is(0));
+        assertThat(integerCache.size(), is(0));
+        assertThat(registry.getCaches().size(), is(2));
+    }
+
+    @Test
+    public void register_existingCacheForAnotherMethod() throws NoSuchMethodException {
+        MethodCacheRegistry registry = new MethodCacheRegistry(100, 0);
+        Method method = Object.class.getMethod("equals", Object.class);
+        Method interfaceMethod = Comparable.class.getMethod("compareTo", Object.class);
+
+        MethodCache cache = registry.register(String.class, method, -1, -1);
+
+        assertThat(registry.register(String.class, interfaceMethod, cache), is(sameInstance(cache)));
+        assertThat(registry.getCache(String.class, interfaceMethod), is(sameInstance(cache)));
+        assertThat(registry.getCaches().size(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_invalidSize() {
+        new MethodCache("lookup", new Class<?>[]{Integer.class}, 0, 0);
+    }
+}
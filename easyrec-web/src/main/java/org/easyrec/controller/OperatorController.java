@@ -227,6 +227,7 @@ public class OperatorController extends MultiActionController {
                 if (!operator.getOperatorId().equals(Operator.DEFAULT_OPERATORID)) {
                     List<RemoteTenant> tenants = remoteTenantDAO.getTenantsFromOperator(operatorId);
                     for (RemoteTenant remoteTenant : tenants) {
+                        pluginScheduler.stopTask(remoteTenant);
                         remoteTenantService.removeTenant(remoteTenant.getId());
                     }
                     operatorDAO.remove(operatorId);
@@ -287,8 +288,6 @@ public class OperatorController extends MultiActionController {
                                 RemoteTenant.SCHEDULER_DEFAULT_EXECUTION_TIME);
                         pluginScheduler.addTask(remoteTenantDAO.get(iTenantId));
 
-                        pluginScheduler.addTask(remoteTenantDAO.get(iTenantId));
-
                         namedConfigurationService.setupDefaultTenant(iTenantId, request.getRemoteAddr());
 
                         remoteTenantService.updateTenantStatistics(iTenantId);
@@ -4,6 +4,7 @@ import com.jamonapi.MonitorFactory;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.easyrec.store.dao.core.impl.ProfileCache;
 import org.easyrec.util.core.MessageBlock;
 import org.easyrec.util.core.Security;
 import org.easyrec.utils.servlet.ServletUtils;
@@ -22,6 +23,9 @@ public class BenchmarkController  extends MultiActionController {
 
     private static final String JAMON_REPORT = "jamonreport";
     private static final String JAMON_RESET = "jamonreset";
+    private static final String PROFILE_CACHE = "profilecache";
+
+    private ProfileCache profileCache;
 
     /*
      * this function returns a mav Object which displays the java monitor report.
@@ -125,4 +129,54 @@ public class BenchmarkController  extends MultiActionController {
         }
     }
 
+    /*
+     * this function returns a mav object which displays the statistics of the profile cache.
+     */
+    public ModelAndView profilecache(HttpServletRequest request, HttpServletResponse httpServletResponse) {
+        String tenantId = ServletUtils.getSafeParameter(request, "tenantId", "");
+        String operatorId = ServletUtils.getSafeParameter(request, "operatorId", "");
+
+        ModelAndView mav = new ModelAndView("page");
+
+        mav.addObject("title", "easyrec :: administration");
+
+        mav.addObject("operatorId", operatorId);
+        mav.addObject("tenantId", tenantId);
+
+        if (Security.isDeveloper(request)) {
+            mav.setViewName("dev/page");
+            mav.addObject("page", "output");
+
+            if (profileCache == null || !profileCache.isEnabled()) {
+                mav.addObject("outstr", "The profile cache is disabled.");
+                return mav;
+            }
+
+            StringBuilder report = new StringBuilder("<table>");
+            report.append("<tr><td><b>profiles</b></td><td>").append(profileCache.size()).append(" of ")
+                    .append(profileCache.getMaxProfiles()).append("</td></tr>");
+            report.append("<tr><td><b>memory</b></td><td>").append(profileCache.getMemory() / 1024).append(" of ")
+                    .append(profileCache.getMaxMemory() / 1024).append(" KB</td></tr>");
+            report.append("<tr><td><b>hits</b></td><td>").append(profileCache.getHits()).append("</td></tr>");
+            report.append("<tr><td><b>misses</b></td><td>").append(profileCache.getMisses()).append("</td></tr>");
+            report.append("<tr><td><b>hit rate</b></td><td>")
+                    .append(String.format("%.1f%%", profileCache.getHitRate() * 100)).append("</td></tr>");
+            report.append("<tr><td><b>evictions</b></td><td>").append(profileCache.getEvictions())
+                    .append("</td></tr>");
+            report.append("<tr><td><b>invalidations</b></td><td>").append(profileCache.getInvalidations())
+                    .append("</td></tr>");
+            report.append("</table>");
+
+            mav.addObject("outstr", report.toString());
+
+            return mav;
+        } else {
+            return MessageBlock.createSingle(mav, MSG.NOT_SIGNED_IN, PROFILE_CACHE, MSG.ERROR);
+        }
+    }
+
+    public void setProfileCache(ProfileCache profileCache) {
+        this.profileCache = profileCache;
+    }
+
 }
@@ -22,6 +22,7 @@ import org.easyrec.plugin.generator.Generator;
 import org.easyrec.plugin.generator.GeneratorConfiguration;
 import org.easyrec.plugin.model.PluginId;
 import org.easyrec.plugin.stats.GeneratorStatistics;
+import org.easyrec.service.core.ProfileService;
 import org.easyrec.service.core.TenantService;
 import org.easyrec.service.domain.DomainActionService;
 import org.easyrec.service.domain.DomainItemAssocService;
@@ -73,6 +74,7 @@ public class TenantsController extends MultiActionController {
     private AssocTypeDAO assocTypeDAO;
     private NamedConfigurationDAO namedConfigurationDAO;
     private EasyRecSettings easyrecSettings;
+    private ProfileService profileService;
 
     public void setEasyrecSettings(EasyRecSettings easyrecSettigs) {
         this.easyrecSettings = easyrecSettigs;
@@ -134,6 +136,10 @@ public class TenantsController extends MultiActionController {
         this.namedConfigurationDAO = namedConfigurationDAO;
     }
 
+    public void setProfileService(ProfileService profileService) {
+        this.profileService = profileService;
+    }
+
     private static final String REMOVE_TENANT = "removeTenant";
     private static final String RESET_TENANT = "resetTenant";
     private static final String VIEW_ALL_TENANTS = "viewAllTenants";
@@ -146,6 +152,7 @@ public class TenantsController extends MultiActionController {
     private static final String STORE_ARCHIVE = "storeArchive";
     private static final String STORE_PLUGIN_CONFIG = "storePluginConfig";
     private static final String STORE_PLUGINS_ACTIVE = "storePluginsActive";
+    private static final String REINDEX_PROFILES = "reindexProfiles";
 
 
     public ModelAndView removetenant(HttpServletRequest request, HttpServletResponse httpServletResponse) {
@@ -207,6 +214,38 @@ public class TenantsController extends MultiActionController {
         }
     }
 
+    /**
+     * Rebuilds the index of the profile dimensions configured in easyrec.profile.indexedDimensions for a tenant.
+     */
+    public ModelAndView reindexprofiles(HttpServletRequest request, HttpServletResponse httpServletResponse) {
+        String tenantId = ServletUtils.getSafeParameter(request, "tenantId", "");
+        String operatorId = ServletUtils.getSafeParameter(request, "operatorId", "");
+
+        ModelAndView mav = new ModelAndView("page");
+
+        mav.addObject("title", "easyrec :: administration");
+
+        mav.addObject("operatorId", operatorId);
+        mav.addObject("tenantId", tenantId);
+
+        if (!Security.isDeveloper(request))
+            return MessageBlock.createSingle(mav, MSG.NOT_SIGNED_IN, REINDEX_PROFILES, MSG.ERROR);
+
+        RemoteTenant remoteTenant = remoteTenantDAO.get(operatorId, tenantId);
+
+        if (remoteTenant != null)
+            try {
+                int profiles = profileService.reindexProfiles(remoteTenant.getId());
+                logger.info("Reindexed " + profiles + " profiles of tenant " + remoteTenant.getStringId());
+
+                return MessageBlock.createSingle(mav, MSG.OPERATION_SUCCESSFUL, REINDEX_PROFILES, MSG.SUCCESS);
+            } catch (Exception e) {
+                logger.error("Reindexing the profiles failed", e);
+            }
+
+        return MessageBlock.createSingle(mav, MSG.OPERATION_FAILED, REINDEX_PROFILES, MSG.ERROR);
+    }
+
     public ModelAndView viewalltenants(HttpServletRequest request, HttpServletResponse httpServletResponse) {
         String tenantId = ServletUtils.getSafeParameter(request, "tenantId", "");
         String operatorId = ServletUtils.getSafeParameter(request, "operatorId", "");
@@ -372,12 +411,12 @@ public class TenantsController extends MultiActionController {
                 if (!"".equals(backtracking)) {
                     tenantService.updateConfigProperty(r.getId(), RemoteTenant.BACKTRACKING, backtracking);
                     r.setBacktracking(backtracking);
-                    shopRecommenderService.emptyCache();
+                    shopRecommenderService.emptyCache(r.getId());
                 }
                 if (backtrackingURL != null) {
                     tenantService.updateConfigProperty(r.getId(), RemoteTenant.BACKTRACKING_URL, backtrackingURL);
                     r.setBackTrackingURL(backtrackingURL);
-                    shopRecommenderService.emptyCache();
+                    shopRecommenderService.emptyCache(r.getId());
                 }
 
             }
@@ -407,7 +446,7 @@ public class TenantsController extends MultiActionController {
             if (r != null) {
                 tenantService.updateConfigProperty(r.getId(), RemoteTenant.MAXACTIONS, maxactions);
                 r.setMaxActions(maxactions);
-                shopRecommenderService.emptyCache();
+                shopRecommenderService.emptyCache(r.getId());
                 remoteTenantDAO.updateTenantInCache(r);
 
             }
@@ -441,9 +480,8 @@ public class TenantsController extends MultiActionController {
 
             tenantService.storeTenantConfig(remoteTenant.getId(), remoteTenant.getTenantConfigProperties());
 
-            if (!Strings.isNullOrEmpty(executionTime)) {
-                pluginScheduler.updateTask(remoteTenant);
-            }
+            // also removes the task if scheduling was disabled
+            pluginScheduler.updateTask(remoteTenant);
         }
 
         return MessageBlock.createSingle(mav, MSG.PLUGIN_CONFIG_CHANGED, STORE_SCHEDULER, MSG.SUCCESS);
@@ -19,32 +19,61 @@ package org.easyrec.model.web;
 
 import org.easyrec.model.core.web.RemoteTenant;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedList;
 
 /**
+ * The queue of tenants waiting for their scheduled generator runs. The queue is thread-safe: tenants are added by
+ * timer threads and polled by the plugin scheduler, which can {@link #await(long) wait} for new tenants or for a
+ * {@link #wakeUp() wake up} signal of its worker threads.
+ *
  * @author phlavac
  */
 public class Queue {
 
-    private List<RemoteTenant> queue = null;
+    private final LinkedList<RemoteTenant> queue;
+    private boolean wakeUp = false;
 
     public Queue() {
-        queue = new ArrayList<RemoteTenant>();
+        queue = new LinkedList<RemoteTenant>();
     }
 
-    public void add(RemoteTenant r) {
+    public synchronized void add(RemoteTenant r) {
         queue.add(r);
+        notifyAll();
     }
 
-    public RemoteTenant poll() {
-        if (!queue.isEmpty()) {
-            return queue.remove(0);
-        }
-        return null;
+    public synchronized RemoteTenant poll() {
+        return queue.poll();
     }
 
-    public boolean isEmpty() {
+    public synchronized boolean isEmpty() {
         return queue.isEmpty();
     }
-}
\ No newline at end of file
+
+    /**
+     * Waits until a tenant is added, {@link #wakeUp()} is called or the timeout elapses. Returns immediately if the
+     * queue is not empty or a wake up signal is pending.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public synchronized void await(long timeout) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        long remaining = timeout;
+
+        while (queue.isEmpty() && !wakeUp && remaining > 0) {
+            wait(remaining);
+            remaining = end - System.currentTimeMillis();
+        }
+
+        wakeUp = false;
+    }
+
+    /**
+     * Wakes up a thread waiting in {@link #await(long)}.
+     */
+    public synchronized void wakeUp() {
+        wakeUp = true;
+        notifyAll();
+    }
+}
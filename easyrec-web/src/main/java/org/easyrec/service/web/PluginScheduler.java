@@ -18,16 +18,21 @@
  */
 package org.easyrec.service.web;
 
+import com.google.common.base.Predicates;
+import com.jamonapi.MonitorFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.web.Operator;
 import org.easyrec.model.core.web.RemoteTenant;
+import org.easyrec.model.plugin.LogEntry;
 import org.easyrec.model.plugin.NamedConfiguration;
 import org.easyrec.model.plugin.archive.ArchivePseudoConfiguration;
 import org.easyrec.model.plugin.archive.ArchivePseudoGenerator;
 import org.easyrec.model.web.EasyRecSettings;
 import org.easyrec.model.web.Queue;
 import org.easyrec.plugin.configuration.GeneratorContainer;
+import org.easyrec.plugin.model.PluginId;
+import org.easyrec.plugin.stats.GeneratorStatistics;
 import org.easyrec.service.core.TenantService;
 import org.easyrec.store.dao.plugin.LogEntryDAO;
 import org.easyrec.store.dao.web.OperatorDAO;
@@ -35,22 +40,48 @@ import org.easyrec.store.dao.web.RemoteTenantDAO;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class schedules plugins for each tenant.
  * <p/>
- * TODO update javadoc
  * All tenants, that have an active plugin scheduler flag are added
- * to the plugin TaskList. The PluginTaskList is a HashMap that contains
- * the tenant id as key and a PluginTask as value.
+ * to the plugin TaskList. The PluginTaskList is a map that contains
+ * the tenant id as key and a PluginTask as value. The task list is kept
+ * up to date by the controllers changing tenants, which call
+ * {@link #addTask}, {@link #updateTask} and {@link #stopTask}.
  * <p/>
  * A PluginTask adds a tenant to the execution queue at its execution time.
  * <p/>
- * The queue holds a list of all tenants that are waiting to be scheduled.
- * After a tenant is processed by the plugins, he is removed from the queue.
+ * The scheduler thread takes the tenants from the queue and splits their
+ * work into jobs: archiving (if enabled), one job per active generator
+ * configuration and a final job publishing the item association snapshot
+ * and updating the tenant statistics. The jobs are run by a pool of
+ * <code>workerThreads</code> threads:
+ * <ul>
+ * <li>waiting tenants are served by descending scheduler priority
+ * ({@link RemoteTenant#SCHEDULER_PRIORITY}), then round robin,</li>
+ * <li>at most <code>maxRunsPerTenant</code> jobs of a tenant run at the same time,</li>
+ * <li>archiving and the final job of a tenant run exclusively and</li>
+ * <li>a plugin never runs for two tenants at the same time since generators
+ * are shared instances (see {@link GeneratorContainer}).</li>
+ * </ul>
+ * Queue latency and run time per tenant and per generator are recorded as
+ * JAMon monitors.
  *
  * @author phlavac
  */
@@ -59,11 +90,16 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
     // TODO: move to vocabulary?
     private final static int SCHEDULER_PAUSE = 30 * 1000;
 
+    private final static String JAMON_TENANT_QUEUE_LATENCY = "scheduler.tenant.queueLatency.";
+    private final static String JAMON_TENANT_RUN_TIME = "scheduler.tenant.runTime.";
+    private final static String JAMON_GENERATOR_QUEUE_LATENCY = "scheduler.generator.queueLatency.";
+    private final static String JAMON_GENERATOR_RUN_TIME = "scheduler.generator.runTime.";
+
     private final Log logger = LogFactory.getLog(getClass());
 
     private RemoteTenantDAO remoteTenantDAO;
     private OperatorDAO operatorDAO;
-    private HashMap<Integer, PluginTimerTask> pluginTimerTasks;
+    private Map<Integer, PluginTimerTask> pluginTimerTasks;
     private LogEntryDAO logEntryDAO;
     private Queue queue;
     private TenantService tenantService;
@@ -71,7 +107,18 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
     private EasyRecSettings easyrecSettings;
     private GeneratorContainer generatorContainer;
 
+    private int workerThreads = 1;
+    private int maxRunsPerTenant = 1;
+
     private Scheduler scheduler;
+    private ExecutorService workers;
+
+    // jobs finished by the workers and tenants stopped while waiting, both handled by the scheduler thread
+    private final ConcurrentLinkedQueue<Job> finishedJobs = new ConcurrentLinkedQueue<Job>();
+    private final ConcurrentLinkedQueue<Integer> stoppedTenants = new ConcurrentLinkedQueue<Integer>();
+
+    private volatile int waitingTenants = 0;
+    private volatile int runningJobs = 0;
 
     public PluginScheduler() {
         queue = new Queue();
@@ -88,9 +135,10 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
         if (easyrecSettings.isGenerator()) {
             initTasks();
             logEntryDAO.endAllEntries();
+            workers = Executors.newFixedThreadPool(workerThreads, new WorkerThreadFactory());
             scheduler = new Scheduler(queue);
             scheduler.start();
-            logger.info("Plugin Scheduler started.");
+            logger.info("Plugin Scheduler started with " + workerThreads + " worker thread(s).");
         }
     }
 
@@ -103,14 +151,19 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
     public void destroy() throws Exception {
         Thread interruptThread = scheduler;
         scheduler = null;
-        interruptThread.interrupt();
+        if (interruptThread != null) interruptThread.interrupt();
 
-        for (PluginTimerTask task : pluginTimerTasks.values()) {
-            task.destroy();
-            //noinspection UnusedAssignment
-            task = null;
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+
+        if (pluginTimerTasks != null) {
+            for (PluginTimerTask task : pluginTimerTasks.values()) {
+                task.destroy();
+            }
+            pluginTimerTasks.clear();
         }
-        pluginTimerTasks.clear();
         logger.info("PluginScheduler shut down.");
     }
 
@@ -122,7 +175,10 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
     public void addTask(RemoteTenant remoteTenant) {
 
         if (pluginTimerTasks != null) {
-            pluginTimerTasks.put(remoteTenant.getId(), new PluginTimerTask(remoteTenant, queue));
+            PluginTimerTask previous =
+                    pluginTimerTasks.put(remoteTenant.getId(), new PluginTimerTask(remoteTenant, queue));
+
+            if (previous != null) previous.destroy();
         }
     }
 
@@ -133,20 +189,16 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
      */
     public void updateTask(RemoteTenant remoteTenant) {
 
-        boolean tenantInTaskList = false;
-
         if (pluginTimerTasks != null) {
 
-            PluginTimerTask pluginTimerTask = pluginTimerTasks.get(remoteTenant.getId());
+            PluginTimerTask pluginTimerTask = pluginTimerTasks.remove(remoteTenant.getId());
+            boolean tenantInTaskList = pluginTimerTask != null;
 
-            if (pluginTimerTask != null) {
-                tenantInTaskList = true;
+            if (tenantInTaskList) {
                 pluginTimerTask.destroy();
-                pluginTimerTasks.remove(remoteTenant.getId());
-
             }
             if (remoteTenant.isSchedulerEnabled()) {
-                pluginTimerTasks.put(remoteTenant.getId(), new PluginTimerTask(remoteTenant, queue));
+                addTask(remoteTenant);
                 if (!tenantInTaskList) {
                     logger.info("'" + remoteTenant.getOperatorId() + " - " + remoteTenant.getStringId() +
                             "' added to PluginTask List");
@@ -162,20 +214,22 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
 
 
     /**
-     * Stops a tenant's PluginTimerTask
+     * Stops a tenant's PluginTimerTask and cancels its waiting plugin runs.
      *
      * @param remoteTenant RemoteTenant
      */
     public void stopTask(RemoteTenant remoteTenant) {
 
         if (pluginTimerTasks != null) {
-            PluginTimerTask pluginTimerTask = pluginTimerTasks.get(remoteTenant.getId());
+            PluginTimerTask pluginTimerTask = pluginTimerTasks.remove(remoteTenant.getId());
 
             if (pluginTimerTask != null) {
                 pluginTimerTask.destroy();
-                pluginTimerTasks.remove(remoteTenant.getId());
             }
 
+            stoppedTenants.add(remoteTenant.getId());
+            queue.wakeUp();
+
             logger.info("'" + remoteTenant.getOperatorId() + " - " + remoteTenant.getStringId() +
                     "' removed from PluginTimerTask");
 
@@ -184,7 +238,7 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
 
     public void initTasks() {
 
-        pluginTimerTasks = new HashMap<Integer, PluginTimerTask>();
+        pluginTimerTasks = new ConcurrentHashMap<Integer, PluginTimerTask>();
 
         List<Operator> operators = operatorDAO.getOperators(0, Integer.MAX_VALUE);
         for (Operator operator : operators) {
@@ -202,18 +256,90 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
     }
 
     /**
-     * Iterates through all tenants and adds or removes a tenant
+     * @return the number of tenants waiting for or running plugins
+     */
+    public int getWaitingTenants() {
+        return waitingTenants;
+    }
+
+    /**
+     * @return the number of jobs currently run by the worker threads
      */
-    private void updateTasks() {
+    public int getRunningJobs() {
+        return runningJobs;
+    }
 
-        List<Operator> operators = operatorDAO.getOperators(0, Integer.MAX_VALUE);
+    /**
+     * A unit of work of a tenant's scheduled run.
+     */
+    private static class Job {
+        private final TenantRun tenantRun;
+        // null for the final job of a tenant run
+        private final NamedConfiguration namedConfiguration;
+        // exclusive jobs start when no other job of the tenant runs and block the jobs queued after them
+        private final boolean exclusive;
+
+        private long started;
+        private LogEntry logEntry;
+
+        private Job(TenantRun tenantRun, NamedConfiguration namedConfiguration, boolean exclusive) {
+            this.tenantRun = tenantRun;
+            this.namedConfiguration = namedConfiguration;
+            this.exclusive = exclusive;
+        }
 
-        for (Operator operator : operators) {
+        private PluginId getPluginId() {
+            return namedConfiguration != null ? namedConfiguration.getPluginId() : null;
+        }
+    }
 
-            List<RemoteTenant> tenants = remoteTenantDAO.getTenantsFromOperator(operator.getOperatorId());
-            for (RemoteTenant r : tenants) {
-                updateTask(r);
+    /**
+     * The state of a tenant from being polled from the queue until its final job finished.
+     */
+    private static class TenantRun {
+        private final RemoteTenant remoteTenant;
+        private final String label;
+        private final int priority;
+        private final long enqueued;
+        private final LinkedList<Job> pending = new LinkedList<Job>();
+
+        private long started = 0;
+        private long lastStarted = 0;
+        private int running = 0;
+        private boolean exclusiveRunning = false;
+        private boolean succeeded = false;
+
+        private TenantRun(RemoteTenant remoteTenant, long enqueued) {
+            this.remoteTenant = remoteTenant;
+            this.label = remoteTenant.getOperatorId() + ":" + remoteTenant.getStringId();
+            this.priority = remoteTenant.getSchedulerPriority();
+            this.enqueued = enqueued;
+        }
+
+        /**
+         * @return the next job that may be started or null
+         */
+        private Job nextJob(Set<PluginId> busyPlugins, int maxRunsPerTenant) {
+            if (exclusiveRunning || running >= maxRunsPerTenant) return null;
+
+            for (Job job : pending) {
+                boolean busy = job.getPluginId() != null && busyPlugins.contains(job.getPluginId());
+
+                if (job.exclusive) return job == pending.getFirst() && running == 0 && !busy ? job : null;
+                if (!busy) return job;
             }
+
+            return null;
+        }
+
+        /**
+         * @return true if this tenant should be served before the other tenant
+         */
+        private boolean isBefore(TenantRun other) {
+            if (priority != other.priority) return priority > other.priority;
+            if (running != other.running) return running < other.running;
+            if (lastStarted != other.lastStarted) return lastStarted < other.lastStarted;
+            return enqueued < other.enqueued;
         }
     }
 
@@ -222,9 +348,14 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
         private final Log logger = LogFactory.getLog(getClass());
 
         Queue queue;
-        RemoteTenant remoteTenant;
+
+        // tenants waiting for or running plugins in the order they were polled from the queue
+        private final Map<Integer, TenantRun> tenantRuns = new LinkedHashMap<Integer, TenantRun>();
+        private final Set<PluginId> busyPlugins = new HashSet<PluginId>();
+        private int running = 0;
 
         Scheduler(Queue queue) {
+            super("PluginScheduler");
             this.queue = queue;
         }
 
@@ -234,55 +365,216 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
             Thread thisThread = Thread.currentThread();
 
             while (!thisThread.isInterrupted() && scheduler == thisThread) {
+                try {
+                    handleFinishedJobs();
+                    handleStoppedTenants();
+                    pollQueue();
+                    dispatch();
+
+                    waitingTenants = tenantRuns.size();
+                    runningJobs = running;
+
+                    logger.debug("pausing plugin scheduler for at most " + SCHEDULER_PAUSE + "ms.");
+                    queue.await(SCHEDULER_PAUSE);
+                } catch (InterruptedException ex) {
+                    logger.debug("pausing plugin scheduler failed", ex);
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException ex) {
+                    logger.error("plugin scheduler failed, continuing", ex);
+                }
+            }
+            logger.debug("PluginScheduler stopped. ");
+        }
 
-                updateTasks();
+        private void pollQueue() {
+            RemoteTenant remoteTenant;
 
-                if (queue.isEmpty()) {
-                    try {
-                        sleep(SCHEDULER_PAUSE);
-                        logger.debug("pausing plugin scheduler for " + SCHEDULER_PAUSE + "ms.");
-                    } catch (InterruptedException ex) {
-                        logger.debug("pausing plugin scheduler failed", ex);
-                        Thread.currentThread().interrupt();
-                    }
-                } else {
-                    remoteTenant = queue.poll();
+            while ((remoteTenant = queue.poll()) != null) {
+                String name = remoteTenant.getOperatorId() + " - " + remoteTenant.getStringId();
 
-                    final Properties tenantConfig = tenantService.getTenantConfig(remoteTenant.getId());
+                if (tenantRuns.containsKey(remoteTenant.getId())) {
+                    logger.warn("plugins for tenant '" + name + "' are still running, skipping");
+                    continue;
+                }
+                if (!pluginTimerTasks.containsKey(remoteTenant.getId())) {
+                    logger.info("tenant '" + name + "' is no longer scheduled, skipping");
+                    continue;
+                }
 
-                    if (tenantConfig == null) {
-                        logger.warn("could not get tenant configuration, aborting");
+                final Properties tenantConfig = tenantService.getTenantConfig(remoteTenant.getId());
 
-                        return;
-                    }
+                if (tenantConfig == null) {
+                    logger.warn("could not get tenant configuration of '" + name + "', skipping");
+                    continue;
+                }
+
+                TenantRun tenantRun = new TenantRun(remoteTenant, System.currentTimeMillis());
+
+                if ("true".equals(tenantConfig.getProperty(RemoteTenant.AUTO_ARCHIVER_ENABLED))) {
+                    String daysString = tenantConfig.getProperty(RemoteTenant.AUTO_ARCHIVER_TIME_RANGE);
+                    final int days = Integer.parseInt(daysString);
+                    ArchivePseudoConfiguration configuration = new ArchivePseudoConfiguration(days);
+                    configuration.setAssociationType("ARCHIVE");
+                    NamedConfiguration namedConfiguration = new NamedConfiguration(remoteTenant.getId(), 0,
+                            ArchivePseudoGenerator.ID, "Archive", configuration, true);
+
+                    tenantRun.pending.add(new Job(tenantRun, namedConfiguration, true));
+                }
+
+                for (NamedConfiguration namedConfiguration :
+                        generatorContainer.getActiveConfigurations(remoteTenant.getId())) {
+                    tenantRun.pending.add(new Job(tenantRun, namedConfiguration, false));
+                }
+
+                tenantRun.pending.add(new Job(tenantRun, null, true));
+                tenantRuns.put(remoteTenant.getId(), tenantRun);
+
+                logger.info("queued " + (tenantRun.pending.size() - 1) + " plugin run(s) for tenant '" + name +
+                        "' with priority " + tenantRun.priority);
+            }
+        }
+
+        private void handleFinishedJobs() {
+            Job job;
+
+            while ((job = finishedJobs.poll()) != null) {
+                TenantRun tenantRun = job.tenantRun;
+                long now = System.currentTimeMillis();
+
+                running--;
+                tenantRun.running--;
+                if (job.exclusive) tenantRun.exclusiveRunning = false;
+                if (job.getPluginId() != null) {
+                    busyPlugins.remove(job.getPluginId());
+                    MonitorFactory.add(JAMON_GENERATOR_RUN_TIME + job.getPluginId(), "ms", now - job.started);
+                }
+
+                // the archiver doesn't change item associations
+                if (job.logEntry != null && !job.exclusive && !GeneratorContainer.isFailed(job.logEntry))
+                    tenantRun.succeeded = true;
+
+                if (tenantRun.running == 0 && tenantRun.pending.isEmpty()) {
+                    tenantRuns.remove(tenantRun.remoteTenant.getId());
+                    MonitorFactory.add(JAMON_TENANT_RUN_TIME + tenantRun.label, "ms", now - tenantRun.started);
+                }
+            }
+        }
+
+        private void handleStoppedTenants() {
+            Integer tenantId;
+
+            while ((tenantId = stoppedTenants.poll()) != null) {
+                TenantRun tenantRun = tenantRuns.get(tenantId);
+
+                if (tenantRun == null) continue;
 
-                    if ("true".equals(tenantConfig.getProperty(RemoteTenant.AUTO_ARCHIVER_ENABLED))) {
-                        String daysString = tenantConfig.getProperty(RemoteTenant.AUTO_ARCHIVER_TIME_RANGE);
-                        final int days = Integer.parseInt(daysString);
-                        ArchivePseudoConfiguration configuration = new ArchivePseudoConfiguration(days);
-                        configuration.setAssociationType("ARCHIVE");
-                        NamedConfiguration namedConfiguration = new NamedConfiguration(remoteTenant.getId(), 0,
-                                ArchivePseudoGenerator.ID, "Archive", configuration, true);
+                tenantRun.pending.clear();
+                if (tenantRun.running == 0) tenantRuns.remove(tenantId);
 
-                        logger.info("Archiving actions older than " + days + " day(s)");
+                logger.info("cancelled waiting plugin runs of tenant '" + tenantRun.remoteTenant.getOperatorId() +
+                        " - " + tenantRun.remoteTenant.getStringId() + "'");
+            }
+        }
+
+        private void dispatch() {
+            while (running < workerThreads) {
+                TenantRun next = null;
+                Job nextJob = null;
+
+                for (TenantRun tenantRun : tenantRuns.values()) {
+                    if (next != null && !tenantRun.isBefore(next)) continue;
 
-                        generatorContainer.runGenerator(namedConfiguration);
+                    Job job = tenantRun.nextJob(busyPlugins, maxRunsPerTenant);
+
+                    if (job != null) {
+                        next = tenantRun;
+                        nextJob = job;
                     }
+                }
 
-                    logger.info("starting generator plugin for tenant: " + remoteTenant.getOperatorId() + ":" +
-                            remoteTenant.getStringId());
+                if (nextJob == null) return;
 
-                    generatorContainer.runGeneratorsForTenant(remoteTenant.getId());
+                start(nextJob);
+            }
+        }
 
-                    ///////////////////////////////////////
-                    // TODO: insert logic here to trigger plugin generators
-                    // TODO: send call to REST-API to mostview ALL Time to get results cached
-                    // Problem: how to get ContextPath the needs to present to build backtracking URL?
+        private void start(final Job job) {
+            TenantRun tenantRun = job.tenantRun;
+            long now = System.currentTimeMillis();
 
-                    remoteTenantService.updateTenantStatistics(remoteTenant.getId());
+            for (Iterator<Job> it = tenantRun.pending.iterator(); it.hasNext(); ) {
+                if (it.next() == job) {
+                    it.remove();
+                    break;
                 }
             }
-            logger.debug("PluginScheduler stopped. ");
+
+            if (tenantRun.started == 0) {
+                tenantRun.started = now;
+                MonitorFactory.add(JAMON_TENANT_QUEUE_LATENCY + tenantRun.label, "ms", now - tenantRun.enqueued);
+            }
+            if (job.getPluginId() != null) {
+                busyPlugins.add(job.getPluginId());
+                MonitorFactory.add(JAMON_GENERATOR_QUEUE_LATENCY + job.getPluginId(), "ms",
+                        now - tenantRun.enqueued);
+            }
+
+            tenantRun.lastStarted = now;
+            tenantRun.running++;
+            if (job.exclusive) tenantRun.exclusiveRunning = true;
+            running++;
+            job.started = now;
+
+            workers.execute(new Runnable() {
+                public void run() {
+                    try {
+                        runJob(job);
+                    } catch (Throwable t) {
+                        logger.error("plugin run for tenant '" + job.tenantRun.label + "' failed", t);
+                    } finally {
+                        finishedJobs.add(job);
+                        queue.wakeUp();
+                    }
+                }
+            });
+        }
+
+        private void runJob(Job job) {
+            RemoteTenant remoteTenant = job.tenantRun.remoteTenant;
+
+            if (job.namedConfiguration == null) {
+                // publish once after all generators of the tenant ran
+                if (job.tenantRun.succeeded) generatorContainer.publishSnapshot(remoteTenant.getId());
+
+                ///////////////////////////////////////
+                // TODO: send call to REST-API to mostview ALL Time to get results cached
+                // Problem: how to get ContextPath the needs to present to build backtracking URL?
+
+                remoteTenantService.updateTenantStatistics(remoteTenant.getId());
+                return;
+            }
+
+            if (ArchivePseudoGenerator.ID.equals(job.getPluginId())) {
+                logger.info("Archiving actions of tenant " + job.tenantRun.label + " older than " +
+                        ((ArchivePseudoConfiguration) job.namedConfiguration.getConfiguration()).getDays() +
+                        " day(s)");
+            } else {
+                logger.info("starting generator plugin " + job.getPluginId() + " for tenant: " +
+                        job.tenantRun.label);
+            }
+
+            job.logEntry = generatorContainer.runGeneratorWithoutPublishing(job.namedConfiguration,
+                    Predicates.<GeneratorStatistics>alwaysTrue(), false);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "PluginScheduler-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 
@@ -313,4 +605,22 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
     public void setGeneratorContainer(GeneratorContainer generatorContainer) {
         this.generatorContainer = generatorContainer;
     }
+
+    /**
+     * @param workerThreads the number of plugin runs executed at the same time
+     */
+    public void setWorkerThreads(int workerThreads) {
+        if (workerThreads < 1) throw new IllegalArgumentException("'workerThreads' must be greater than 0");
+
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * @param maxRunsPerTenant the maximum number of plugin runs of a single tenant executed at the same time
+     */
+    public void setMaxRunsPerTenant(int maxRunsPerTenant) {
+        if (maxRunsPerTenant < 1) throw new IllegalArgumentException("'maxRunsPerTenant' must be greater than 0");
+
+        this.maxRunsPerTenant = maxRunsPerTenant;
+    }
 }
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.web;
+
+import com.google.common.base.Objects;
+import com.jamonapi.MonitorFactory;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.model.core.web.Item;
+
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the community rankings (most viewed/bought/rated, best/worst rated items) served by the REST API.
+ * <p/>
+ * Rankings are stored in an ehcache {@link Cache} under typed {@link Key}s. The cache's time to live is the hard
+ * expiry of a ranking; rankings older than <code>refreshSeconds</code> are still served but reloaded in the background
+ * (stale-while-revalidate). Concurrent misses of the same ranking wait for a single load instead of all querying the
+ * database. Rankings can be invalidated per tenant or per tenant and item type; a load that started before an
+ * invalidation is returned to its callers but not cached.
+ * <p/>
+ * Hits, stale hits, misses and load times are counted per ranking and recorded as JAMon monitors
+ * (<code>rest.rankingcache.*</code>).
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class RankingCache {
+
+    public enum Ranking {
+        MOST_BOUGHT("mostbought"),
+        MOST_VIEWED("mostviewed"),
+        MOST_RATED("mostrated"),
+        BEST_RATED("bestrated"),
+        WORST_RATED("worstrated");
+
+        private final String label;
+
+        Ranking(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Identifies a cached ranking.
+     */
+    public static final class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Ranking ranking;
+        private final int tenantId;
+        private final String itemType;
+        private final Integer cluster;
+        private final String timeRange;
+
+        /**
+         * @param itemType  the item type or null for rankings of all item types
+         * @param cluster   the cluster or null
+         * @param timeRange the time range, e.g. "ALL"
+         */
+        public Key(Ranking ranking, int tenantId, String itemType, Integer cluster, String timeRange) {
+            if (ranking == null) throw new IllegalArgumentException("Missing 'ranking'");
+            if (timeRange == null) throw new IllegalArgumentException("Missing 'timeRange'");
+
+            this.ranking = ranking;
+            this.tenantId = tenantId;
+            this.itemType = itemType;
+            this.cluster = cluster;
+            this.timeRange = timeRange;
+        }
+
+        public Ranking getRanking() {
+            return ranking;
+        }
+
+        public int getTenantId() {
+            return tenantId;
+        }
+
+        public String getItemType() {
+            return itemType;
+        }
+
+        public Integer getCluster() {
+            return cluster;
+        }
+
+        public String getTimeRange() {
+            return timeRange;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+
+            return ranking == key.ranking && tenantId == key.tenantId && Objects.equal(itemType, key.itemType) &&
+                    Objects.equal(cluster, key.cluster) && timeRange.equals(key.timeRange);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(ranking, tenantId, itemType, cluster, timeRange);
+        }
+
+        @Override
+        public String toString() {
+            return ranking.getLabel() + "{tenantId=" + tenantId + ", itemType=" + itemType + ", cluster=" + cluster +
+                    ", timeRange=" + timeRange + "}";
+        }
+    }
+
+    /**
+     * Loads a ranking from the database.
+     */
+    public interface Loader {
+        List<Item> load();
+    }
+
+    /**
+     * Hit, miss and load counters of a ranking.
+     */
+    public static class Statistics {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong staleHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong loads = new AtomicLong();
+        private final AtomicLong loadTime = new AtomicLong();
+
+        /**
+         * @return the number of requests answered from the cache with a fresh ranking
+         */
+        public long getHits() {
+            return hits.get();
+        }
+
+        /**
+         * @return the number of requests answered from the cache with a ranking that was refreshed afterwards
+         */
+        public long getStaleHits() {
+            return staleHits.get();
+        }
+
+        /**
+         * @return the number of requests that had to wait for a ranking to be loaded
+         */
+        public long getMisses() {
+            return misses.get();
+        }
+
+        /**
+         * @return the number of rankings loaded from the database, including background refreshes
+         */
+        public long getLoads() {
+            return loads.get();
+        }
+
+        /**
+         * @return the total time spent loading rankings in milliseconds
+         */
+        public long getLoadTime() {
+            return loadTime.get();
+        }
+
+        public double getHitRate() {
+            long requests = hits.get() + staleHits.get() + misses.get();
+
+            return requests == 0 ? 0.0 : (double) (hits.get() + staleHits.get()) / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + getHits() + ", staleHits=" + getStaleHits() + ", misses=" + getMisses() + ", loads=" +
+                    getLoads() + ", loadTime=" + getLoadTime() + "ms";
+        }
+    }
+
+    private static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Item> items;
+        private final long loaded;
+
+        private Entry(List<Item> items, long loaded) {
+            this.items = items;
+            this.loaded = loaded;
+        }
+    }
+
+    private static final String JAMON_HIT = "rest.rankingcache.hit.";
+    private static final String JAMON_STALE_HIT = "rest.rankingcache.stalehit.";
+    private static final String JAMON_MISS = "rest.rankingcache.miss.";
+    private static final String JAMON_LOAD = "rest.rankingcache.load.";
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final Cache cache;
+    private final ConcurrentMap<Key, Load> loads = new ConcurrentHashMap<Key, Load>();
+    private final Map<Ranking, Statistics> statistics = new EnumMap<Ranking, Statistics>(Ranking.class);
+
+    // a load only caches its result if no invalidation happened since it started
+    private final AtomicLong globalGeneration = new AtomicLong();
+    private final ConcurrentMap<Integer, AtomicLong> tenantGenerations = new ConcurrentHashMap<Integer, AtomicLong>();
+
+    private final ThreadPoolExecutor refresher;
+    private long refreshMillis = 5 * 60 * 1000L;
+
+    public RankingCache(Cache cache) {
+        if (cache == null) throw new IllegalArgumentException("Missing 'cache'");
+
+        this.cache = cache;
+
+        for (Ranking ranking : Ranking.values()) {
+            statistics.put(ranking, new Statistics());
+        }
+
+        refresher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(100),
+                new RefresherThreadFactory());
+    }
+
+    /**
+     * Returns a cached ranking or loads it. The returned list is shared and must not be modified.
+     *
+     * @param key    the ranking
+     * @param loader loads the ranking if it is not cached or needs to be refreshed
+     * @return the ranking
+     */
+    public List<Item> get(Key key, Loader loader) {
+        Statistics stats = statistics.get(key.getRanking());
+        Element element = cache.get(key);
+
+        if (element != null && !element.isExpired()) {
+            Entry entry = (Entry) element.getObjectValue();
+
+            if (System.currentTimeMillis() - entry.loaded < refreshMillis) {
+                stats.hits.incrementAndGet();
+                MonitorFactory.add(JAMON_HIT + key.getRanking().getLabel(), "count", 1);
+            } else {
+                stats.staleHits.incrementAndGet();
+                MonitorFactory.add(JAMON_STALE_HIT + key.getRanking().getLabel(), "count", 1);
+                refresh(key, loader);
+            }
+
+            return entry.items;
+        }
+
+        stats.misses.incrementAndGet();
+        MonitorFactory.add(JAMON_MISS + key.getRanking().getLabel(), "count", 1);
+
+        Load load = new Load(key, loader);
+        Load running = loads.putIfAbsent(key, load);
+
+        // the first thread missing the ranking loads it, the others wait for its result
+        if (running == null) {
+            running = load;
+            load.task.run();
+        }
+
+        try {
+            return running.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for ranking " + key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IllegalStateException("loading ranking " + key + " failed", e.getCause());
+        }
+    }
+
+    /**
+     * Removes all rankings of a tenant.
+     */
+    public void invalidate(int tenantId) {
+        getTenantGeneration(tenantId).incrementAndGet();
+
+        for (Object key : cache.getKeys()) {
+            if (key instanceof Key && ((Key) key).getTenantId() == tenantId) cache.remove(key);
+        }
+    }
+
+    /**
+     * Removes the rankings of an item type and the rankings across all item types of a tenant.
+     */
+    public void invalidate(int tenantId, String itemType) {
+        getTenantGeneration(tenantId).incrementAndGet();
+
+        for (Object key : cache.getKeys()) {
+            if (!(key instanceof Key)) continue;
+
+            Key rankingKey = (Key) key;
+
+            if (rankingKey.getTenantId() == tenantId &&
+                    (rankingKey.getItemType() == null || rankingKey.getItemType().equals(itemType)))
+                cache.remove(key);
+        }
+    }
+
+    /**
+     * Removes all rankings.
+     */
+    public void invalidateAll() {
+        globalGeneration.incrementAndGet();
+        cache.removeAll();
+    }
+
+    public Statistics getStatistics(Ranking ranking) {
+        return statistics.get(ranking);
+    }
+
+    /**
+     * Stops the background refresh.
+     */
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * @param refreshSeconds rankings older than this are served but reloaded in the background
+     */
+    public void setRefreshSeconds(int refreshSeconds) {
+        if (refreshSeconds < 1) throw new IllegalArgumentException("'refreshSeconds' must be greater than 0");
+
+        this.refreshMillis = refreshSeconds * 1000L;
+    }
+
+    private void refresh(Key key, Loader loader) {
+        Load load = new Load(key, loader);
+
+        // the ranking is already being loaded
+        if (loads.putIfAbsent(key, load) != null) return;
+
+        try {
+            refresher.execute(load.task);
+        } catch (RejectedExecutionException e) {
+            // the queue is full or the refresher was shut down, the ranking is refreshed on one of the next requests
+            loads.remove(key, load);
+        }
+    }
+
+    private AtomicLong getTenantGeneration(int tenantId) {
+        AtomicLong generation = tenantGenerations.get(tenantId);
+
+        if (generation == null) {
+            AtomicLong newGeneration = new AtomicLong();
+            generation = tenantGenerations.putIfAbsent(tenantId, newGeneration);
+            if (generation == null) generation = newGeneration;
+        }
+
+        return generation;
+    }
+
+    private long getGeneration(int tenantId) {
+        return globalGeneration.get() + getTenantGeneration(tenantId).get();
+    }
+
+    /**
+     * A load of a ranking shared by all threads requesting it while it runs.
+     */
+    private class Load implements Callable<List<Item>> {
+        private final Key key;
+        private final Loader loader;
+        private final FutureTask<List<Item>> task;
+
+        private Load(Key key, Loader loader) {
+            this.key = key;
+            this.loader = loader;
+            this.task = new FutureTask<List<Item>>(this);
+        }
+
+        public List<Item> call() throws Exception {
+            long generation = getGeneration(key.getTenantId());
+            long start = System.currentTimeMillis();
+
+            try {
+                List<Item> items = loader.load();
+                long now = System.currentTimeMillis();
+                Statistics stats = statistics.get(key.getRanking());
+
+                stats.loads.incrementAndGet();
+                stats.loadTime.addAndGet(now - start);
+                MonitorFactory.add(JAMON_LOAD + key.getRanking().getLabel(), "ms", now - start);
+
+                if (getGeneration(key.getTenantId()) == generation) cache.put(new Element(key, new Entry(items, now)));
+
+                return items;
+            } catch (RuntimeException e) {
+                logger.warn("loading ranking " + key + " failed", e);
+                throw e;
+            } finally {
+                loads.remove(key, this);
+            }
+        }
+    }
+
+    private static class RefresherThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "RankingCache-refresher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.web;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.store.dao.web.StatisticsDAO;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the statistics of the administration pages up to date.
+ * <p/>
+ * Every <code>updateSeconds</code> seconds the actions and clicks on recommendations stored since
+ * the last update are counted by {@link StatisticsDAO#updateStatistics(int)}, in chunks of
+ * <code>actionsPerUpdate</code> actions until the statistics are up to date. After an installation
+ * or migration the actions stored before are counted the same way.
+ * <p/>
+ * <p><b>Company:&nbsp;</b>
+ * SAT, Research Studios Austria</p>
+ * <p/>
+ * <p><b>Copyright:&nbsp;</b>
+ * (c) 2012</p>
+ */
+public class StatisticsUpdater implements InitializingBean, DisposableBean {
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private StatisticsDAO statisticsDAO;
+
+    private int updateSeconds = 60;
+    private int actionsPerUpdate = 100000;
+
+    private ScheduledExecutorService executor;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (statisticsDAO == null) throw new IllegalArgumentException("Missing 'statisticsDAO'");
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "StatisticsUpdater");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                update();
+            }
+        }, updateSeconds, updateSeconds, TimeUnit.SECONDS);
+
+        logger.info("Statistics updater started, updating every " + updateSeconds + "s.");
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Counts the actions and clicks stored since the last update.
+     */
+    public void update() {
+        long start = System.currentTimeMillis();
+        long counted = 0;
+
+        try {
+            int chunk;
+
+            do {
+                chunk = statisticsDAO.updateStatistics(actionsPerUpdate);
+                counted += chunk;
+            } while (chunk >= actionsPerUpdate && !Thread.currentThread().isInterrupted());
+        } catch (RuntimeException e) {
+            // an exception would cancel the following updates
+            logger.warn("Updating the statistics failed.", e);
+        }
+
+        if (counted > 0 && logger.isDebugEnabled())
+            logger.debug("Counted " + counted + " actions in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    public void setStatisticsDAO(StatisticsDAO statisticsDAO) {
+        this.statisticsDAO = statisticsDAO;
+    }
+
+    public int getUpdateSeconds() {
+        return updateSeconds;
+    }
+
+    public void setUpdateSeconds(int updateSeconds) {
+        if (updateSeconds <= 0) throw new IllegalArgumentException("'updateSeconds' must be greater than 0");
+
+        this.updateSeconds = updateSeconds;
+    }
+
+    public int getActionsPerUpdate() {
+        return actionsPerUpdate;
+    }
+
+    public void setActionsPerUpdate(int actionsPerUpdate) {
+        if (actionsPerUpdate <= 0) throw new IllegalArgumentException("'actionsPerUpdate' must be greater than 0");
+
+        this.actionsPerUpdate = actionsPerUpdate;
+    }
+}
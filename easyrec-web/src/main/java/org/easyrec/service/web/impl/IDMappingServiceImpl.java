@@ -32,8 +32,11 @@ import org.easyrec.store.dao.core.ItemDAO;
 import org.easyrec.store.dao.core.types.AssocTypeDAO;
 import org.easyrec.store.dao.core.types.ItemTypeDAO;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <DESCRIPTION>
@@ -267,12 +270,13 @@ public class IDMappingServiceImpl implements IDMappingService {
         List<Item> items = new ArrayList<Item>();
         Item item = null;
         if (inList != null) {
+            ItemLookup itemLookup = new ItemLookup(remoteTenant, inList);
+
             for (ItemVO<Integer, String> itemVO : inList) {
 
                 if (items.size() >= numberOfRecommendations) break;
 
-                item = itemDAO.get(remoteTenant, idMappingDAO.lookup(itemVO.getItem()),
-                        itemVO.getType());
+                item = itemLookup.get(itemVO);
 
                 if (item != null) {
                     if (item.isActive()) {
@@ -316,12 +320,17 @@ public class IDMappingServiceImpl implements IDMappingService {
         Item item = null;
 
         if (recommendation != null && recommendation.getRecommendedItems() != null) {
+            List<ItemVO<Integer, String>> itemVOs = new ArrayList<ItemVO<Integer, String>>();
+            for (RecommendedItemVO<Integer, String> recommendedItem : recommendation.getRecommendedItems()) {
+                itemVOs.add(recommendedItem.getItem());
+            }
+            ItemLookup itemLookup = new ItemLookup(remoteTenant, itemVOs);
+
             for (RecommendedItemVO<Integer, String> recommendedItem : recommendation.getRecommendedItems()) {
 
                 if (items.size() >= numberOfRecommendations) break;
 
-                item = itemDAO.get(remoteTenant, idMappingDAO.lookup(recommendedItem.getItem().getItem()),
-                        recommendedItem.getItem().getType());
+                item = itemLookup.get(recommendedItem.getItem());
 
 
                 if (item != null) {
@@ -377,12 +386,17 @@ public class IDMappingServiceImpl implements IDMappingService {
         Item item = null;
 
         if (rankedItems != null) {
+            List<ItemVO<Integer, String>> itemVOs = new ArrayList<ItemVO<Integer, String>>();
+            for (RankedItemVO<Integer, String> rankedItem : rankedItems) {
+                itemVOs.add(rankedItem.getItem());
+            }
+            ItemLookup itemLookup = new ItemLookup(remoteTenant, itemVOs);
+
             for (RankedItemVO<Integer, String> rankedItem : rankedItems) {
 
                 if (items.size() >= numberOfRecommendations) break;
 
-                item = itemDAO.get(remoteTenant, idMappingDAO.lookup(rankedItem.getItem().getItem()),
-                        rankedItem.getItem().getType());
+                item = itemLookup.get(rankedItem.getItem());
 
                 if (item != null) {
                     if (item.isActive()) {
@@ -415,10 +429,15 @@ public class IDMappingServiceImpl implements IDMappingService {
         Item item = null;
 
         if (ratedItems != null) {
+            List<ItemVO<Integer, String>> itemVOs = new ArrayList<ItemVO<Integer, String>>();
+            for (RatingVO<Integer, String> ratedItem : ratedItems) {
+                itemVOs.add(ratedItem.getItem());
+            }
+            ItemLookup itemLookup = new ItemLookup(remoteTenant, itemVOs);
+
             for (RatingVO<Integer, String> ratedItem : ratedItems) {
                 if (items.size() >= numberOfRecommendations) break;
-                item = itemDAO.get(remoteTenant, idMappingDAO.lookup(ratedItem.getItem().getItem()),
-                        ratedItem.getItem().getType());
+                item = itemLookup.get(ratedItem.getItem());
 
                 if (item != null) {
                     if (item.isActive()) {
@@ -517,4 +536,48 @@ public class IDMappingServiceImpl implements IDMappingService {
         }
         return items;
     }
-}
\ No newline at end of file
+
+    /**
+     * Resolves the String IDs and the items of a list of result items up front: one IDMappingDAO lookup for all
+     * items and one ItemDAO lookup per item type instead of two lookups per item.
+     */
+    private class ItemLookup {
+        private final Map<Integer, String> stringIds;
+        private final Map<String, Map<String, Item>> itemsByType = new HashMap<String, Map<String, Item>>();
+
+        private ItemLookup(RemoteTenant remoteTenant, List<ItemVO<Integer, String>> itemVOs) {
+            List<Integer> itemIds = new ArrayList<Integer>(itemVOs.size());
+            for (ItemVO<Integer, String> itemVO : itemVOs) {
+                itemIds.add(itemVO.getItem());
+            }
+
+            stringIds = idMappingDAO.lookupAll(itemIds);
+
+            Map<String, List<String>> stringIdsByType = new HashMap<String, List<String>>();
+            for (ItemVO<Integer, String> itemVO : itemVOs) {
+                String stringId = stringIds.get(itemVO.getItem());
+
+                if (stringId == null) continue;
+
+                List<String> typeStringIds = stringIdsByType.get(itemVO.getType());
+                if (typeStringIds == null) {
+                    typeStringIds = new ArrayList<String>();
+                    stringIdsByType.put(itemVO.getType(), typeStringIds);
+                }
+                typeStringIds.add(stringId);
+            }
+
+            for (Map.Entry<String, List<String>> entry : stringIdsByType.entrySet()) {
+                itemsByType.put(entry.getKey(), itemDAO.getAll(remoteTenant, entry.getKey(), entry.getValue()));
+            }
+        }
+
+        @Nullable
+        private Item get(ItemVO<Integer, String> itemVO) {
+            String stringId = stringIds.get(itemVO.getItem());
+            Map<String, Item> items = itemsByType.get(itemVO.getType());
+
+            return stringId != null && items != null ? items.get(stringId) : null;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.easyrec.service.web.impl;
 import org.easyrec.model.core.web.Item;
 import org.easyrec.model.core.web.RemoteTenant;
 import org.easyrec.service.web.ItemService;
+import org.easyrec.service.web.RankingCache;
 import org.easyrec.store.dao.core.ItemDAO;
 import org.easyrec.store.dao.web.RemoteTenantDAO;
 
@@ -48,6 +49,7 @@ public class ItemServiceImpl implements ItemService {
 
     ItemDAO itemDAO;
     RemoteTenantDAO remoteTenantDAO;
+    RankingCache rankingCache;
 
     public void setItemDAO(ItemDAO itemDAO) {
         this.itemDAO = itemDAO;
@@ -57,6 +59,10 @@ public class ItemServiceImpl implements ItemService {
         this.remoteTenantDAO = remoteTenantDAO;
     }
 
+    public void setRankingCache(RankingCache rankingCache) {
+        this.rankingCache = rankingCache;
+    }
+
 
     public ItemServiceImpl() {}
 
@@ -77,6 +83,7 @@ public class ItemServiceImpl implements ItemService {
                 Integer i = Integer.parseInt(request.getParameter("itemId"));
                 Item item = itemDAO.get(i);
                 itemDAO.activate(r.getId(), item.getItemId(), item.getItemType());
+                invalidateRankings(r.getId(), item.getItemType());
             } catch (Exception e) {
                 throw new Exception("Item does not exist." + e.getMessage());
             }
@@ -99,6 +106,7 @@ public class ItemServiceImpl implements ItemService {
                 Integer i = Integer.parseInt(request.getParameter("itemId"));
                 Item item = itemDAO.get(i);
                 itemDAO.deactivate(r.getId(), item.getItemId(), item.getItemType());
+                invalidateRankings(r.getId(), item.getItemType());
             } catch (Exception e) {
                 throw new Exception("Item does not exist." + e.getMessage());
             }
@@ -149,4 +157,8 @@ public class ItemServiceImpl implements ItemService {
         return returnedItems;
     }
 
-}
\ No newline at end of file
+    // rankings only contain active items, reactivated items must show up and deactivated ones leave gaps
+    private void invalidateRankings(Integer tenantId, String itemType) {
+        if (rankingCache != null) rankingCache.invalidate(tenantId, itemType);
+    }
+}
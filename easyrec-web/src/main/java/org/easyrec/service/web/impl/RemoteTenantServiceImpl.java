@@ -262,6 +262,7 @@ public class RemoteTenantServiceImpl implements RemoteTenantService {
         }
 
         remoteTenantDAO.reset(tenantId);
+        statisticsDAO.removeStatistics(tenantId);
         updateTenantStatistics(tenantId);
     }
 
@@ -274,6 +275,7 @@ public class RemoteTenantServiceImpl implements RemoteTenantService {
         RemoteTenant r = remoteTenantDAO.get(tenantId);
         if (r != null) {
             itemDAO.removeItems(r.getId());
+            statisticsDAO.removeStatistics(r.getId());
             remoteTenantDAO.remove(r.getOperatorId(), r.getStringId());
         }
 
@@ -543,4 +543,9 @@ public interface ShopRecommenderService {
      * clear items in cache
      */
     public void emptyCache();
+
+    /**
+     * clear the cached rankings of a tenant
+     */
+    public void emptyCache(Integer tenantId);
 }
\ No newline at end of file
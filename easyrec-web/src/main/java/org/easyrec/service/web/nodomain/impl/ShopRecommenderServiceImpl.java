@@ -22,8 +22,6 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.jamonapi.Monitor;
 import com.jamonapi.MonitorFactory;
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.Element;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.*;
@@ -42,12 +40,14 @@ import org.easyrec.service.domain.DomainRecommenderService;
 import org.easyrec.service.domain.TypeMappingService;
 import org.easyrec.service.web.IDMappingService;
 import org.easyrec.service.web.ItemService;
+import org.easyrec.service.web.RankingCache;
 import org.easyrec.service.web.nodomain.ShopRecommenderService;
 import org.easyrec.rest.nodomain.exception.EasyRecRestException;
 import org.easyrec.store.dao.IDMappingDAO;
 import org.easyrec.store.dao.core.ItemDAO;
 import org.easyrec.store.dao.core.types.AssocTypeDAO;
 import org.easyrec.store.dao.web.RemoteTenantDAO;
+import org.easyrec.util.core.Web;
 import org.easyrec.utils.spring.log.annotation.IOLog;
 import org.easyrec.utils.spring.profile.annotation.Profiled;
 import org.easyrec.vocabulary.MSG;
@@ -84,7 +84,7 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
     private ItemService itemService;
     private ItemDAO itemDAO;
     private RemoteTenantDAO remoteTenantDAO;
-    private Cache cache;
+    private RankingCache rankingCache;
     private ProfileService profileService;
     private ClusterService clusterService;
     private TenantService tenantService;
@@ -569,15 +569,13 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // Rankings
     ///////////////////////////////////////////////////////////////////////////////////////////////
-    @SuppressWarnings({"unchecked"})
     @IOLog
     @Profiled
     @Override
-    public List<Item> mostBoughtItems(Integer tenantId, String itemType, Integer cluster, Integer numberOfResults, String timeRange,
-                                      TimeConstraintVO constraint, Session session) {
-        List<Item> items;
-
-        RemoteTenant remoteTenant = remoteTenantDAO.get(tenantId);
+    public List<Item> mostBoughtItems(final Integer tenantId, final String itemType, final Integer cluster,
+                                      Integer numberOfResults, String timeRange, TimeConstraintVO constraint,
+                                      final Session session) {
+        final RemoteTenant remoteTenant = remoteTenantDAO.get(tenantId);
 
         if (logger.isDebugEnabled()) {
 
@@ -587,53 +585,43 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
         if (timeRange == null) {
             timeRange = "ALL";
         } // default timeRange
-        String cacheKey = tenantId + WS.ACTION_MOST_BOUGHT + itemType + cluster + timeRange ;
-        Element e = cache.get(cacheKey);
-        if ((e != null) && (!e.isExpired())) {
-            items = itemService.filterDeactivatedItems((List<Item>) e.getValue());
-            return items.subList(0, Math.min(items.size(), numberOfResults));
-        }
-        if (constraint == null) constraint = new TimeConstraintVO();
-        adjustConstraint(constraint, TimeRange.getEnumFromString(timeRange));
+        // the loader may run in the background after the request, it only keeps values that don't change
+        final TimeRange range = TimeRange.getEnumFromString(timeRange);
+        final Session rankingSession = detach(session);
 
+        List<Item> items = rankingCache.get(
+                new RankingCache.Key(RankingCache.Ranking.MOST_BOUGHT, tenantId, itemType, cluster, timeRange),
+                new RankingCache.Loader() {
+                    public List<Item> load() {
+                        TimeConstraintVO timeConstraint = new TimeConstraintVO();
+                        adjustConstraint(timeConstraint, range);
 
-        Monitor monCore = MonitorFactory.start(JAMON_REST_MOST_BOUGHT_CORE);
+                        Monitor monCore = MonitorFactory.start(JAMON_REST_MOST_BOUGHT_CORE);
 
-        List<RankedItemVO<Integer, String>> rankedItems = domainActionService
-                .mostBoughtItems(tenantId, itemType, cluster, WS.MAX_NUMBER_OF_RANKING_RESULTS, constraint, Boolean.TRUE);
+                        List<RankedItemVO<Integer, String>> rankedItems = domainActionService
+                                .mostBoughtItems(tenantId, itemType, cluster, WS.MAX_NUMBER_OF_RANKING_RESULTS,
+                                        timeConstraint, Boolean.TRUE);
 
-        // filter invisible items
-        Set<String> invisibleItemTypes = typeMappingService.getItemTypes(tenantId, false);
+                        removeInvisibleRankedItems(tenantId, rankedItems);
 
-        if (invisibleItemTypes.size() > 0) {
-            ListIterator<RankedItemVO<Integer, String>> iterator = rankedItems.listIterator();
+                        monCore.stop();
 
-            while (iterator.hasNext()) {
-                RankedItemVO<Integer, String> rankedItemVO = iterator.next();
-
-                if (invisibleItemTypes.contains(rankedItemVO.getItem().getType()))
-                    iterator.remove();
-            }
-        }
-
-        monCore.stop();
-
-        items = idMappingService.mapRankedItems(rankedItems, remoteTenant, session, WS.MAX_NUMBER_OF_RANKING_RESULTS);
-
-        cache.put(new Element(cacheKey, items));
+                        return idMappingService.mapRankedItems(rankedItems, remoteTenant, rankingSession,
+                                WS.MAX_NUMBER_OF_RANKING_RESULTS);
+                    }
+                });
 
+        items = itemService.filterDeactivatedItems(items);
         return items.subList(0, Math.min(items.size(), numberOfResults));
     }
 
-    @SuppressWarnings({"unchecked"})
     @IOLog
     @Profiled
     @Override
-    public List<Item> mostViewedItems(Integer tenantId, String itemType, Integer cluster, Integer numberOfResults, String timeRange,
-                                      TimeConstraintVO constraint, Session session) {
-        List<Item> items;
-
-        RemoteTenant remoteTenant = remoteTenantDAO.get(tenantId);
+    public List<Item> mostViewedItems(final Integer tenantId, final String itemType, final Integer cluster,
+                                      Integer numberOfResults, String timeRange, TimeConstraintVO constraint,
+                                      final Session session) {
+        final RemoteTenant remoteTenant = remoteTenantDAO.get(tenantId);
 
         if (logger.isDebugEnabled()) {
 
@@ -643,52 +631,43 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
         if (timeRange == null) {
             timeRange = "ALL";
         } // default timeRange
-        String cacheKey = tenantId + WS.ACTION_MOST_VIEWED + itemType + cluster +timeRange;
-        Element e = cache.get(cacheKey);
-        if ((e != null) && (!e.isExpired())) {
-            logger.debug("most viewed - cache hit");
-            items = itemService.filterDeactivatedItems((List<Item>) e.getValue());
-            return items.subList(0, Math.min(items.size(), numberOfResults));
-        }
-        if (constraint == null) constraint = new TimeConstraintVO();
-        adjustConstraint(constraint, TimeRange.getEnumFromString(timeRange));
+        // the loader may run in the background after the request, it only keeps values that don't change
+        final TimeRange range = TimeRange.getEnumFromString(timeRange);
+        final Session rankingSession = detach(session);
 
-        logger.debug("most viewed - cache miss - fetching new data from db");
-        Monitor monCore = MonitorFactory.start(JAMON_REST_MOST_VIEWED_CORE);
-        List<RankedItemVO<Integer, String>> rankedItems = domainActionService
-                .mostViewedItems(tenantId, itemType, cluster, WS.MAX_NUMBER_OF_RANKING_RESULTS, constraint, Boolean.TRUE);
+        List<Item> items = rankingCache.get(
+                new RankingCache.Key(RankingCache.Ranking.MOST_VIEWED, tenantId, itemType, cluster, timeRange),
+                new RankingCache.Loader() {
+                    public List<Item> load() {
+                        TimeConstraintVO timeConstraint = new TimeConstraintVO();
+                        adjustConstraint(timeConstraint, range);
 
-        // filter invisible items
-        Set<String> invisibleItemTypes = typeMappingService.getItemTypes(tenantId, false);
+                        Monitor monCore = MonitorFactory.start(JAMON_REST_MOST_VIEWED_CORE);
 
-        if (invisibleItemTypes.size() > 0) {
-            ListIterator<RankedItemVO<Integer, String>> iterator = rankedItems.listIterator();
+                        List<RankedItemVO<Integer, String>> rankedItems = domainActionService
+                                .mostViewedItems(tenantId, itemType, cluster, WS.MAX_NUMBER_OF_RANKING_RESULTS,
+                                        timeConstraint, Boolean.TRUE);
 
-            while (iterator.hasNext()) {
-                RankedItemVO<Integer, String> rankedItemVO = iterator.next();
+                        removeInvisibleRankedItems(tenantId, rankedItems);
 
-                if (invisibleItemTypes.contains(rankedItemVO.getItem().getType()))
-                    iterator.remove();
-            }
-        }
-
-        monCore.stop();
+                        monCore.stop();
 
-        items = idMappingService.mapRankedItems(rankedItems, remoteTenant, session, WS.MAX_NUMBER_OF_RANKING_RESULTS);
+                        return idMappingService.mapRankedItems(rankedItems, remoteTenant, rankingSession,
+                                WS.MAX_NUMBER_OF_RANKING_RESULTS);
+                    }
+                });
 
-        cache.put(new Element(cacheKey, items));
+        items = itemService.filterDeactivatedItems(items);
         return items.subList(0, Math.min(items.size(), numberOfResults));
     }
 
-    @SuppressWarnings({"unchecked"})
     @IOLog
     @Profiled
     @Override
-    public List<Item> mostRatedItems(Integer tenantId, String itemType, Integer cluster, Integer numberOfResults, String timeRange,
-                                     TimeConstraintVO constraint, Session session) {
-        List<Item> items;
-
-        RemoteTenant remoteTenant = remoteTenantDAO.get(tenantId);
+    public List<Item> mostRatedItems(final Integer tenantId, final String itemType, final Integer cluster,
+                                     Integer numberOfResults, String timeRange, TimeConstraintVO constraint,
+                                     final Session session) {
+        final RemoteTenant remoteTenant = remoteTenantDAO.get(tenantId);
 
         if (logger.isDebugEnabled()) {
 
@@ -698,39 +677,33 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
         if (timeRange == null) {
             timeRange = "ALL";
         } // default timeRange
-        String cacheKey = tenantId + WS.ACTION_MOST_RATED + itemType + cluster + timeRange;
-        Element e = cache.get(cacheKey);
-        if ((e != null) && (!e.isExpired())) {
-            items = itemService.filterDeactivatedItems((List<Item>) e.getValue());
-            return items.subList(0, Math.min(items.size(), numberOfResults));
-        }
-        if (constraint == null) constraint = new TimeConstraintVO();
-        adjustConstraint(constraint, TimeRange.getEnumFromString(timeRange));
+        // the loader may run in the background after the request, it only keeps values that don't change
+        final TimeRange range = TimeRange.getEnumFromString(timeRange);
+        final Session rankingSession = detach(session);
 
-        Monitor monCore = MonitorFactory.start(JAMON_REST_MOST_RATED_CORE);
+        List<Item> items = rankingCache.get(
+                new RankingCache.Key(RankingCache.Ranking.MOST_RATED, tenantId, itemType, cluster, timeRange),
+                new RankingCache.Loader() {
+                    public List<Item> load() {
+                        TimeConstraintVO timeConstraint = new TimeConstraintVO();
+                        adjustConstraint(timeConstraint, range);
 
-        List<RankedItemVO<Integer, String>> rankedItems = domainActionService
-                .mostRatedItems(tenantId, itemType, cluster, WS.MAX_NUMBER_OF_RANKING_RESULTS, constraint, Boolean.TRUE);
+                        Monitor monCore = MonitorFactory.start(JAMON_REST_MOST_RATED_CORE);
 
-        // filter invisible items
-        Set<String> invisibleItemTypes = typeMappingService.getItemTypes(tenantId, false);
+                        List<RankedItemVO<Integer, String>> rankedItems = domainActionService
+                                .mostRatedItems(tenantId, itemType, cluster, WS.MAX_NUMBER_OF_RANKING_RESULTS,
+                                        timeConstraint, Boolean.TRUE);
 
-        if (invisibleItemTypes.size() > 0) {
-            ListIterator<RankedItemVO<Integer, String>> iterator = rankedItems.listIterator();
+                        removeInvisibleRankedItems(tenantId, rankedItems);
 
-            while (iterator.hasNext()) {
-                RankedItemVO<Integer, String> rankedItemVO = iterator.next();
+                        monCore.stop();
 
-                if (invisibleItemTypes.contains(rankedItemVO.getItem().getType()))
-                    iterator.remove();
-            }
-        }
-
-        monCore.stop();
+                        return idMappingService.mapRankedItems(rankedItems, remoteTenant, rankingSession,
+                                WS.MAX_NUMBER_OF_RANKING_RESULTS);
+                    }
+                });
 
-        items = idMappingService.mapRankedItems(rankedItems, remoteTenant, session, WS.MAX_NUMBER_OF_RANKING_RESULTS);
-
-        cache.put(new Element(cacheKey, items));
+        items = itemService.filterDeactivatedItems(items);
         return items.subList(0, Math.min(items.size(), numberOfResults));
     }
 
@@ -766,15 +739,15 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // Ratings
     ///////////////////////////////////////////////////////////////////////////////////////////////
-    @SuppressWarnings({"unchecked"})
     @IOLog
     @Profiled
     @Override
-    public List<Item> worstRatedItems(Integer tenantId, String userId, String itemType, Integer numberOfResults,
-                                      String timeRange, TimeConstraintVO constraint, Session session) {
+    public List<Item> worstRatedItems(final Integer tenantId, final String userId, final String itemType,
+                                      Integer numberOfResults, String timeRange, TimeConstraintVO constraint,
+                                      final Session session) {
         List<Item> items;
 
-        RemoteTenant remoteTenant = remoteTenantDAO.get(tenantId);
+        final RemoteTenant remoteTenant = remoteTenantDAO.get(tenantId);
 
         if (logger.isDebugEnabled()) {
 
@@ -785,52 +758,38 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
             timeRange = "ALL";
         } // default timeRange
         if (userId == null) {
-            Element e = cache.get(tenantId + WS.ACTION_WORST_RATED + itemType + timeRange);
-            if ((e != null) && (!e.isExpired())) {
-                items = itemService.filterDeactivatedItems((List<Item>) e.getValue());
-                return items.subList(0, Math.min(items.size(), numberOfResults));
-            }
-            if (constraint == null) constraint = new TimeConstraintVO();
-            adjustConstraint(constraint, TimeRange.getEnumFromString(timeRange));
-        }
-
-        Monitor monCore = MonitorFactory.start(JAMON_REST_WORST_RATED_CORE);
-
-        List<RatingVO<Integer, String>> ratedItems = domainActionService
-                .badItemRatings(tenantId, idMappingDAO.lookup(userId), null, itemType, WS.MAX_NUMBER_OF_RANKING_RESULTS,
-                        constraint);
-
-        // filter invisible items
-        Set<String> invisibleItemTypes = typeMappingService.getItemTypes(tenantId, false);
-
-        if (invisibleItemTypes.size() > 0) {
-            ListIterator<RatingVO<Integer, String>> iterator = ratedItems.listIterator();
-
-            while (iterator.hasNext()) {
-                RatingVO<Integer, String> ratingVO = iterator.next();
-
-                if (invisibleItemTypes.contains(ratingVO.getItem().getType()))
-                    iterator.remove();
-            }
+            // the loader may run in the background after the request, it only keeps values that don't change
+            final TimeRange range = TimeRange.getEnumFromString(timeRange);
+            final Session rankingSession = detach(session);
+
+            items = rankingCache.get(
+                    new RankingCache.Key(RankingCache.Ranking.WORST_RATED, tenantId, itemType, null, timeRange),
+                    new RankingCache.Loader() {
+                        public List<Item> load() {
+                            TimeConstraintVO timeConstraint = new TimeConstraintVO();
+                            adjustConstraint(timeConstraint, range);
+
+                            return loadWorstRatedItems(tenantId, null, itemType, timeConstraint, remoteTenant,
+                                    rankingSession);
+                        }
+                    });
+            items = itemService.filterDeactivatedItems(items);
+        } else {
+            items = loadWorstRatedItems(tenantId, userId, itemType, constraint, remoteTenant, session);
         }
 
-        monCore.stop();
-
-        items = idMappingService.mapRatedItems(ratedItems, remoteTenant, session, WS.MAX_NUMBER_OF_RANKING_RESULTS);
-
-        if ((userId == null)) cache.put(new Element(tenantId + WS.ACTION_WORST_RATED + itemType + timeRange, items));
         return items.subList(0, Math.min(items.size(), numberOfResults));
     }
 
-    @SuppressWarnings({"unchecked"})
     @IOLog
     @Profiled
     @Override
-    public List<Item> bestRatedItems(Integer tenantId, String userId, String itemType, Integer numberOfResults,
-                                     String timeRange, TimeConstraintVO constraint, Session session) {
+    public List<Item> bestRatedItems(final Integer tenantId, final String userId, final String itemType,
+                                     Integer numberOfResults, String timeRange, TimeConstraintVO constraint,
+                                     final Session session) {
         List<Item> items;
 
-        RemoteTenant remoteTenant = remoteTenantDAO.get(tenantId);
+        final RemoteTenant remoteTenant = remoteTenantDAO.get(tenantId);
 
         if (logger.isDebugEnabled()) {
 
@@ -841,41 +800,26 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
             timeRange = "ALL";
         } // default timeRange
         if (userId == null) {
-            Element e = cache.get(tenantId + WS.ACTION_BEST_RATED + itemType + timeRange);
-            if ((e != null) && (!e.isExpired())) {
-                items = itemService.filterDeactivatedItems((List<Item>) e.getValue());
-                return items.subList(0, Math.min(items.size(), numberOfResults));
-            }
-            if (constraint == null) constraint = new TimeConstraintVO();
-            adjustConstraint(constraint, TimeRange.getEnumFromString(timeRange));
-        }
-
-        Monitor monCore = MonitorFactory.start(JAMON_REST_BEST_RATED_CORE);
-
-        List<RatingVO<Integer, String>> ratedItems = domainActionService
-                .goodItemRatings(tenantId, idMappingDAO.lookup(userId), null, itemType,
-                        WS.MAX_NUMBER_OF_RANKING_RESULTS,
-                        constraint);
-
-        // filter invisible items
-        Set<String> invisibleItemTypes = typeMappingService.getItemTypes(tenantId, false);
-
-        if (invisibleItemTypes.size() > 0) {
-            ListIterator<RatingVO<Integer, String>> iterator = ratedItems.listIterator();
-
-            while (iterator.hasNext()) {
-                RatingVO<Integer, String> ratingVO = iterator.next();
-
-                if (invisibleItemTypes.contains(ratingVO.getItem().getType()))
-                    iterator.remove();
-            }
+            // the loader may run in the background after the request, it only keeps values that don't change
+            final TimeRange range = TimeRange.getEnumFromString(timeRange);
+            final Session rankingSession = detach(session);
+
+            items = rankingCache.get(
+                    new RankingCache.Key(RankingCache.Ranking.BEST_RATED, tenantId, itemType, null, timeRange),
+                    new RankingCache.Loader() {
+                        public List<Item> load() {
+                            TimeConstraintVO timeConstraint = new TimeConstraintVO();
+                            adjustConstraint(timeConstraint, range);
+
+                            return loadBestRatedItems(tenantId, null, itemType, timeConstraint, remoteTenant,
+                                    rankingSession);
+                        }
+                    });
+            items = itemService.filterDeactivatedItems(items);
+        } else {
+            items = loadBestRatedItems(tenantId, userId, itemType, constraint, remoteTenant, session);
         }
 
-        monCore.stop();
-
-        items = idMappingService.mapRatedItems(ratedItems, remoteTenant, session, WS.MAX_NUMBER_OF_RANKING_RESULTS);
-
-        if ((userId == null)) cache.put(new Element(tenantId + WS.ACTION_BEST_RATED + itemType + timeRange, items));
         return items.subList(0, Math.min(items.size(), numberOfResults));
     }
 
@@ -1184,6 +1128,81 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
 
 
     // private methods
+    private List<Item> loadWorstRatedItems(Integer tenantId, String userId, String itemType,
+                                           TimeConstraintVO constraint, RemoteTenant remoteTenant, Session session) {
+        Monitor monCore = MonitorFactory.start(JAMON_REST_WORST_RATED_CORE);
+
+        List<RatingVO<Integer, String>> ratedItems = domainActionService
+                .badItemRatings(tenantId, idMappingDAO.lookup(userId), null, itemType, WS.MAX_NUMBER_OF_RANKING_RESULTS,
+                        constraint);
+
+        removeInvisibleRatedItems(tenantId, ratedItems);
+
+        monCore.stop();
+
+        return idMappingService.mapRatedItems(ratedItems, remoteTenant, session, WS.MAX_NUMBER_OF_RANKING_RESULTS);
+    }
+
+    private List<Item> loadBestRatedItems(Integer tenantId, String userId, String itemType,
+                                          TimeConstraintVO constraint, RemoteTenant remoteTenant, Session session) {
+        Monitor monCore = MonitorFactory.start(JAMON_REST_BEST_RATED_CORE);
+
+        List<RatingVO<Integer, String>> ratedItems = domainActionService
+                .goodItemRatings(tenantId, idMappingDAO.lookup(userId), null, itemType,
+                        WS.MAX_NUMBER_OF_RANKING_RESULTS,
+                        constraint);
+
+        removeInvisibleRatedItems(tenantId, ratedItems);
+
+        monCore.stop();
+
+        return idMappingService.mapRatedItems(ratedItems, remoteTenant, session, WS.MAX_NUMBER_OF_RANKING_RESULTS);
+    }
+
+    // filter invisible items
+    private void removeInvisibleRankedItems(Integer tenantId, List<RankedItemVO<Integer, String>> rankedItems) {
+        Set<String> invisibleItemTypes = typeMappingService.getItemTypes(tenantId, false);
+
+        if (invisibleItemTypes.size() > 0) {
+            ListIterator<RankedItemVO<Integer, String>> iterator = rankedItems.listIterator();
+
+            while (iterator.hasNext()) {
+                RankedItemVO<Integer, String> rankedItemVO = iterator.next();
+
+                if (invisibleItemTypes.contains(rankedItemVO.getItem().getType()))
+                    iterator.remove();
+            }
+        }
+    }
+
+    private void removeInvisibleRatedItems(Integer tenantId, List<RatingVO<Integer, String>> ratedItems) {
+        Set<String> invisibleItemTypes = typeMappingService.getItemTypes(tenantId, false);
+
+        if (invisibleItemTypes.size() > 0) {
+            ListIterator<RatingVO<Integer, String>> iterator = ratedItems.listIterator();
+
+            while (iterator.hasNext()) {
+                RatingVO<Integer, String> ratingVO = iterator.next();
+
+                if (invisibleItemTypes.contains(ratingVO.getItem().getType()))
+                    iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Copies the session for loading a cached ranking, which may happen after the request finished. The ranking is
+     * shared by all sessions, its tracking urls only take the web app path from the request and {@link Web} resolves
+     * that path once and keeps it.
+     */
+    private static Session detach(Session session) {
+        if (session == null) return null;
+
+        if (session.getRequest() != null) Web.getExtendedWebAppPathFromRequestURI(session.getRequest());
+
+        return new Session(session.getSessionId(), session.getIp());
+    }
+
     private void adjustConstraint(TimeConstraintVO constraint, TimeRange timeRange) {
 
         Calendar cal = Calendar.getInstance();
@@ -1297,13 +1316,22 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
         this.itemService = itemService;
     }
 
-    public void setCache(Cache cache) {
-        this.cache = cache;
+    public RankingCache getRankingCache() {
+        return rankingCache;
+    }
+
+    public void setRankingCache(RankingCache rankingCache) {
+        this.rankingCache = rankingCache;
     }
 
     @Override
     public void emptyCache() {
-        cache.removeAll();
+        rankingCache.invalidateAll();
+    }
+
+    @Override
+    public void emptyCache(Integer tenantId) {
+        rankingCache.invalidate(tenantId);
     }
 
     public ClusterService getClusterService() {
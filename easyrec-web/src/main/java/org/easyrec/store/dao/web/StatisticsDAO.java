@@ -111,5 +111,22 @@ public interface StatisticsDAO {
      */
     public Integer getMonthlyActions(Integer tenantId);
 
+    /**
+     * Adds the actions and clicks on recommendations stored since the last update to the
+     * statistics, at most <code>maxActions</code> actions per call.
+     *
+     * @param maxActions
+     * @return the number of action ids counted, less than <code>maxActions</code> if the
+     *         statistics are up to date
+     */
+    public int updateStatistics(int maxActions);
+
+    /**
+     * Removes the counted statistics of a tenant, e.g. after its actions were removed.
+     *
+     * @param tenantId
+     */
+    public void removeStatistics(int tenantId);
+
 
 }
@@ -20,43 +20,138 @@ package org.easyrec.store.dao.web.impl;
 
 import org.easyrec.model.core.web.RemoteTenant;
 import org.easyrec.model.core.web.statistic.*;
-import org.easyrec.service.domain.TypeMappingService;
 import org.easyrec.store.dao.web.StatisticsDAO;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.support.JdbcDaoSupport;
+import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
 import java.sql.Date;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.sql.Types;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
+ * The tenant statistics of the administration pages.
+ * <p/>
+ * Actions and clicks on recommendations are counted in the statistic_* tables (see
+ * <code>sql/easyrec_migrate_0.99.sql</code>): actions per tenant, action type and day/hour, actions per user and
+ * item, clicks per tenant, assoc type and day and the conversions of clicked items. {@link #updateStatistics(int)}
+ * adds the actions and backtracking entries stored since its last call, which are remembered in the
+ * statistic_watermark table, so the statistics of the dashboard are read from a few small tables instead of grouping
+ * the whole action table. The counts include actions that were archived since they were counted.
+ * <p/>
+ * With InnoDB an action can commit after actions with greater ids, so the highest id isn't a safe watermark. Every
+ * update samples the highest id and counts the actions up to the id sampled at least <code>safetyLagSeconds</code>
+ * seconds before, backtracking entries are counted up to that time as well. An action or click whose transaction
+ * stays open longer than the safety lag is not counted. The samples are kept in memory, so the first updates after a
+ * start count nothing until a sample is old enough.
+ *
  * @author dkovacs, dmann
  */
 public class StatisticsDAOMySql extends JdbcDaoSupport implements StatisticsDAO {
 
+    // the actions with an id greater than the first and up to the second parameter
+    private static final String ACTION_RANGE = " FROM action WHERE id > ? AND id <= ? ";
+    // the backtracking entries from the first (inclusive) to the second (exclusive) parameter
+    private static final String BACKTRACKING_RANGE = " FROM backtracking WHERE timestamp >= ? AND timestamp < ? ";
+
+    private static final String SQL_UPDATE_ACTION_DAY = new StringBuilder()
+            .append(" INSERT INTO statistic_action_day (tenantId, actionTypeId, day, actions) ")
+            .append(" SELECT tenantId, actionTypeId, DATE(actionTime), COUNT(1) ").append(ACTION_RANGE)
+            .append(" GROUP BY tenantId, actionTypeId, DATE(actionTime) ")
+            .append(" ON DUPLICATE KEY UPDATE actions = actions + VALUES(actions)").toString();
+
+    private static final String SQL_UPDATE_ACTION_HOUR = new StringBuilder()
+            .append(" INSERT INTO statistic_action_hour (tenantId, actionTypeId, hour, actions) ")
+            .append(" SELECT tenantId, actionTypeId, DATE_FORMAT(actionTime, '%Y-%m-%d %H:00:00'), COUNT(1) ")
+            .append(ACTION_RANGE)
+            .append(" GROUP BY tenantId, actionTypeId, DATE_FORMAT(actionTime, '%Y-%m-%d %H:00:00') ")
+            .append(" ON DUPLICATE KEY UPDATE actions = actions + VALUES(actions)").toString();
+
+    private static final String SQL_UPDATE_USER = new StringBuilder()
+            .append(" INSERT INTO statistic_user (tenantId, userId, actions) ")
+            .append(" SELECT tenantId, userId, COUNT(1) ").append(ACTION_RANGE).append(" AND userId IS NOT NULL ")
+            .append(" GROUP BY tenantId, userId ")
+            .append(" ON DUPLICATE KEY UPDATE actions = actions + VALUES(actions)").toString();
+
+    private static final String SQL_UPDATE_ITEM = new StringBuilder()
+            .append(" INSERT INTO statistic_item (tenantId, itemTypeId, itemId, actions) ")
+            .append(" SELECT tenantId, itemTypeId, itemId, COUNT(1) ").append(ACTION_RANGE)
+            .append(" AND itemId IS NOT NULL ").append(" GROUP BY tenantId, itemTypeId, itemId ")
+            .append(" ON DUPLICATE KEY UPDATE actions = actions + VALUES(actions)").toString();
+
+    private static final String SQL_UPDATE_BACKTRACKING_DAY = new StringBuilder()
+            .append(" INSERT INTO statistic_backtracking_day (tenantId, assocType, day, clicks) ")
+            .append(" SELECT tenantId, assocType, DATE(timestamp), COUNT(1) ").append(BACKTRACKING_RANGE)
+            .append(" GROUP BY tenantId, assocType, DATE(timestamp) ")
+            .append(" ON DUPLICATE KEY UPDATE clicks = clicks + VALUES(clicks)").toString();
+
+    private static final String SQL_UPDATE_CLICK = new StringBuilder()
+            .append(" INSERT INTO statistic_click (tenantId, userId, itemId, clicks) ")
+            .append(" SELECT tenantId, userId, itemToId, COUNT(1) ").append(BACKTRACKING_RANGE)
+            .append(" GROUP BY tenantId, userId, itemToId ")
+            .append(" ON DUPLICATE KEY UPDATE clicks = clicks + VALUES(clicks)").toString();
+
+    // a conversion is a pair of an action and a click of the same user on the same item. New actions are joined with
+    // the clicks counted before, new clicks with all actions up to the new watermark (the third parameter).
+    private static final String SQL_UPDATE_CONVERSION_OF_ACTIONS = new StringBuilder()
+            .append(" INSERT INTO statistic_conversion (tenantId, actionTypeId, conversions) ")
+            .append(" SELECT a.tenantId, a.actionTypeId, SUM(c.clicks) FROM action a ")
+            .append(" INNER JOIN statistic_click c ")
+            .append("    ON (c.tenantId = a.tenantId AND c.userId = a.userId AND c.itemId = a.itemId) ")
+            .append(" WHERE a.id > ? AND a.id <= ? AND a.itemTypeId = 1 ")
+            .append(" GROUP BY a.tenantId, a.actionTypeId ")
+            .append(" ON DUPLICATE KEY UPDATE conversions = conversions + VALUES(conversions)").toString();
+
+    private static final String SQL_UPDATE_CONVERSION_OF_CLICKS = new StringBuilder()
+            .append(" INSERT INTO statistic_conversion (tenantId, actionTypeId, conversions) ")
+            .append(" SELECT a.tenantId, a.actionTypeId, COUNT(1) FROM backtracking b ")
+            .append(" INNER JOIN action a ")
+            .append("    ON (a.tenantId = b.tenantId AND a.userId = b.userId AND a.itemId = b.itemToId) ")
+            .append(" WHERE b.timestamp >= ? AND b.timestamp < ? AND a.id <= ? AND a.itemTypeId = 1 ")
+            .append(" GROUP BY a.tenantId, a.actionTypeId ")
+            .append(" ON DUPLICATE KEY UPDATE conversions = conversions + VALUES(conversions)").toString();
+
+    private static final String[] STATISTIC_TABLES = {"statistic_action_day", "statistic_action_hour",
+            "statistic_backtracking_day", "statistic_user", "statistic_item", "statistic_click",
+            "statistic_conversion"};
+
     private AssocStatisticRowMapper assocStatisticRowMapper = new AssocStatisticRowMapper();
     private TenantStatisticRowMapper tenantStatisticRowMapper = new TenantStatisticRowMapper();
     private UserStatisticRowMapper userStatisticRowMapper = new UserStatisticRowMapper();
     private ConversionStatisticRowMapper conversionStatisticRowMapper = new ConversionStatisticRowMapper();
     private RuleMinerStatisticRowMapper ruleMinerStatisticRowMapper = new RuleMinerStatisticRowMapper();
 
-
-    private TypeMappingService typeMappingService;
-
+    private int safetyLagSeconds = 30;
+    // the highest action ids sampled by the updates, oldest first
+    private final Deque<ActionIdSample> actionIdSamples = new ArrayDeque<ActionIdSample>();
 
     public StatisticsDAOMySql(DataSource dataSource) {
         setDataSource(dataSource);
     }
 
-    public void setTypeMappingService(TypeMappingService typeMappingService) {
-        this.typeMappingService = typeMappingService;
+    public int getSafetyLagSeconds() {
+        return safetyLagSeconds;
+    }
+
+    /**
+     * The time actions and clicks have to commit in, they are counted only by the updates at least this many
+     * seconds after they were stored.
+     */
+    public void setSafetyLagSeconds(int safetyLagSeconds) {
+        if (safetyLagSeconds <= 0) throw new IllegalArgumentException("'safetyLagSeconds' must be greater than 0");
+
+        this.safetyLagSeconds = safetyLagSeconds;
     }
 
 
@@ -72,7 +167,8 @@ public class StatisticsDAOMySql extends JdbcDaoSupport implements StatisticsDAO
      * If the actionType Parameter is not null, only Action Bundles of the
      * given type are returned.
      * <p/>
-     * Actionsbundles are retrieved from the action and backtracking table.
+     * Actionsbundles are retrieved from the hourly action and the daily backtracking statistics,
+     * i.e. the hours/days overlapping the time range are counted.
      * actiontypes
      * VIEW    1
      * RATE    3
@@ -88,69 +184,23 @@ public class StatisticsDAOMySql extends JdbcDaoSupport implements StatisticsDAO
         HashMap<Integer, HashMap<Integer, Integer>> actionBundleMap = new HashMap<Integer, HashMap<Integer, Integer>>();
 
         SqlRowSet rs;
-        StringBuilder sql = new StringBuilder();
-        Object[] args;
-        int[] argTypes;
+        StringBuilder sql;
 
         if (assocType == null) {
+            sql = new StringBuilder().append(" SELECT ").append("    actionTypeId, ")
+                    .append("    DAY(hour) as unit, ").append("    SUM(actions) as cnt ").append(" FROM ")
+                    .append("    statistic_action_hour ").append(" WHERE ").append("    tenantId = ? AND ")
+                    .append("    hour > ? - INTERVAL 1 HOUR AND ").append("    hour <= ? ");
 
-            if (actionType == null) {
-                // query actionbundles for all actions type is slower than to query
-                // action bundles for each action type.
-                List<Integer> actionTypes = new LinkedList<Integer>(
-                        typeMappingService.getActionTypeMapping(tenant).values());
-
-                List<Object> lArgs = new ArrayList<Object>();
-                List<Integer> lArgTypes = new ArrayList<Integer>();
-
-                for (int i = 0; i < actionTypes.size(); i++) {
-                    Integer actionTypeId = actionTypes.get(i);
-
-                    sql.append(" SELECT ").append("    actionTypeId,     ").append("    DAY(actiontime) as unit, ")
-                            .append("    COUNT(1) as cnt").append(" FROM ").append("    action  ").append(" WHERE ")
-                            .append("    tenantId = ?   AND ").append("    actionTime >= ? AND ")
-                            .append("    actionTime <= ? AND ").append("    actionTypeId = ").append(actionTypeId)
-                            .append(" GROUP BY ").append("   actiontypeid, ").append("   DAY(actiontime) ");
-
-                    if (i < actionTypes.size() - 1) {
-                        sql.append("   UNION ");
-                    }
-                    lArgs.add(tenant);
-                    lArgs.add(new Date(from));
-                    lArgs.add(new Date(to));
-
-                    lArgTypes.add(Types.INTEGER);
-                    lArgTypes.add(Types.TIMESTAMP);
-                    lArgTypes.add(Types.TIMESTAMP);
-
-                }
-
-                int[] intArray = new int[lArgTypes.size()];
-                for (int i = 0; i < lArgTypes.size(); i++) {
-                    intArray[i] = lArgTypes.get(i);
-                }
-
-                argTypes = intArray;
-                args = lArgs.toArray();
-
-
-            } else {
-                sql = new StringBuilder().append(" SELECT ").append("    actionTypeId,     ")
-                        .append("    DAY(actiontime) as unit, ").append("    COUNT(1) as cnt").append(" FROM ")
-                        .append("    action  ").append(" WHERE ").append("    tenantId = ? AND   ")
-                        .append("    actionTime >= ? AND ").append("    actionTime <= ?     ");
-
-                if (actionType != null) {
-                    sql.append(" AND actionTypeId=").append(actionType);
-                }
-
-                sql.append(" GROUP BY ").append("   actiontypeid, ").append("   DAY(actiontime) ");
-
-                args = new Object[]{tenant, new Date(from), new Date(to)};
-                argTypes = new int[]{Types.INTEGER, Types.DATE, Types.DATE};
+            if (actionType != null) {
+                sql.append(" AND actionTypeId = ").append(actionType);
             }
 
-            rs = getJdbcTemplate().queryForRowSet(sql.toString(), args, argTypes);
+            sql.append(" GROUP BY ").append("   actionTypeId, ").append("   DATE(hour) ");
+
+            rs = getJdbcTemplate().queryForRowSet(sql.toString(),
+                    new Object[]{tenant, new Timestamp(from), new Timestamp(to)},
+                    new int[]{Types.INTEGER, Types.TIMESTAMP, Types.TIMESTAMP});
 
             while (rs.next()) {
                 if (actionBundleMap.get(rs.getInt("actionTypeId")) == null) {
@@ -181,10 +231,10 @@ public class StatisticsDAOMySql extends JdbcDaoSupport implements StatisticsDAO
 
             sql = new StringBuilder().append("SELECT ")
                     .append("	IF(assocType<100, 1001, assocType) as actionTypeId, ")
-                    .append("	DAY(timestamp) as unit,  ").append("	COUNT(1) as cnt ").append("FROM  ")
-                    .append("	backtracking   ").append("WHERE  ").append("	tenantId = ? AND    ")
-                    .append("	timestamp > ? AND  ").append("	timestamp < ? AND ").append(sAssocType)
-                    .append(" GROUP BY  ").append("	assocType,  ").append("	DAY(timestamp) ");
+                    .append("	DAY(day) as unit,  ").append("	SUM(clicks) as cnt ").append("FROM  ")
+                    .append("	statistic_backtracking_day   ").append("WHERE  ").append("	tenantId = ? AND    ")
+                    .append("	day >= ? AND  ").append("	day <= ? AND ").append(sAssocType)
+                    .append(" GROUP BY  ").append("	IF(assocType<100, 1001, assocType),  ").append("	day ");
 
             rs = getJdbcTemplate().queryForRowSet(sql.toString(), new Object[]{tenant, new Date(from), new Date(to)},
                     new int[]{Types.INTEGER, Types.DATE, Types.DATE});
@@ -224,8 +274,7 @@ public class StatisticsDAOMySql extends JdbcDaoSupport implements StatisticsDAO
 
     /**
      * Compute tenant statistics for
-     * recommendation_coverage: Number of total actions of items that are in the itemassoc table.
-     * 10M entries/tenant: average computation time 4,5 minutes
+     * recommendation_coverage: Number of total actions of the most popular items that are in the itemassoc table.
      */
     public TenantStatistic getTenantStatistics(RemoteTenant remoteTenant) {
 
@@ -238,47 +287,41 @@ public class StatisticsDAOMySql extends JdbcDaoSupport implements StatisticsDAO
                 .append("     i.items, ").append("     u.users, ")
                 .append("     ROUND(a.actions/u.users,2) AS average_actions_per_user, ")
                 .append("     ROUND((e.number_of_total_actions_of_items_in_itemassoc/a.actions)*100,2) as recommendation_coverage ")
-                .append(" FROM ").append(" (SELECT count(1) as actions FROM action WHERE tenantid=?) a JOIN  ")
-                .append(" (SELECT count(1) as backtracks FROM backtracking WHERE tenantid=?) b JOIN  ")
-                .append(" (SELECT count(1) as items FROM (SELECT distinct itemid FROM action where tenantid = ?) a) i JOIN  ")
-                .append(" (SELECT count(1) as users FROM (SELECT distinct userid FROM action where tenantid = ?) a) u JOIN ")
-                .append(" (SELECT SUM(c) AS number_of_total_actions_of_items_in_itemassoc FROM ( ")
-                .append("   SELECT c FROM  ").append("       (SELECT itemid, itemtypeid, tenantid, COUNT(1) as c ")
-                .append("        FROM action  ").append("        WHERE  ").append("           tenantid = ?   ")
-                .append("        GROUP BY  ").append("           itemid ").append("        LIMIT ").append(l1)
-                .append("        ) a INNER JOIN itemassoc i ON (  ").append("           i.itemfromid = a.itemid AND   ")
-                .append("           a.itemtypeid = i.itemFromTypeId AND  ")
-                .append("           a.tenantid   = i.tenantid)  ").append("       GROUP BY   ")
-                .append("           a.itemid, a.itemtypeid, a.tenantid  ").append("       ) a) e  ").toString();
+                .append(" FROM ")
+                .append(" (SELECT COALESCE(SUM(actions),0) as actions FROM statistic_action_day WHERE tenantid=?) a JOIN  ")
+                .append(" (SELECT COALESCE(SUM(clicks),0) as backtracks FROM statistic_backtracking_day WHERE tenantid=?) b JOIN  ")
+                .append(" (SELECT count(1) as items FROM statistic_item WHERE tenantid = ?) i JOIN  ")
+                .append(" (SELECT count(1) as users FROM statistic_user WHERE tenantid = ?) u JOIN ")
+                .append(" (SELECT SUM(actions) AS number_of_total_actions_of_items_in_itemassoc FROM ( ")
+                .append("       SELECT itemid, itemtypeid, actions FROM statistic_item ")
+                .append("       WHERE tenantid = ? ").append("       ORDER BY actions DESC ")
+                .append("       LIMIT ").append(l1).append("   ) p ").append("   WHERE EXISTS ( ")
+                .append("       SELECT 1 FROM itemassoc i WHERE ").append("           i.tenantid = ? AND ")
+                .append("           i.itemfromid = p.itemid AND ").append("           i.itemFromTypeId = p.itemtypeid) ")
+                .append(" ) e  ").toString();
 
         TenantStatistic t = getJdbcTemplate()
-                .queryForObject(sql, new Object[]{tenantId, tenantId, tenantId, tenantId, tenantId},
-                        new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER},
-                        tenantStatisticRowMapper);
+                .queryForObject(sql, new Object[]{tenantId, tenantId, tenantId, tenantId, tenantId, tenantId},
+                        new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER,
+                                Types.INTEGER}, tenantStatisticRowMapper);
 
         return t;
     }
 
     /**
-     * Get Users Statistics for a given Tenant
-     * !!! 10M actions --> about 1 hour to execute!!!
+     * Get Users Statistics for a given Tenant from the number of actions counted per user.
      */
     public UserStatistic getUserStatistics(int tenantId) {
-        String sql = new StringBuilder().append(" SELECT ").append("     u1.users_with_1_action, ")
-                .append("     u2.users_with_2_actions, ").append("     u5_10.users_with_3_10_actions, ")
-                .append("     u10_100.users_with_11_100_actions, ").append("     u100.users_with_101_and_more_actions ")
-                .append(" FROM ")
-                .append(" (select count(1) as users_with_1_action from (select count(1) as actions, userid from action where tenantid = ? group by userid having count(1) = 1 ) u) u1 join ")
-                .append(" (select count(1) as users_with_2_actions from (select count(1) as actions, userid from action where tenantid = ? group by userid having count(1) = 2 ) u) u2 join ")
-                .append(" (select count(1) as users_with_3_10_actions from (select count(1) as actions, userid from action where tenantid = ? group by userid having count(1) > 2 and count(1) <= 10) u) u5_10 join ")
-                .append(" (select count(1) as users_with_11_100_actions from (select count(1) as actions, userid from action where tenantid = ? group by userid having count(1) > 10 and count(1) <= 100) u) u10_100 join ")
-                .append(" (select count(1) as users_with_101_and_more_actions from (select count(1) as actions, userid from action where tenantid = ? group by userid having count(1) > 100 ) u) u100 ")
+        String sql = new StringBuilder().append(" SELECT ").append("     SUM(actions = 1) AS users_with_1_action, ")
+                .append("     SUM(actions = 2) AS users_with_2_actions, ")
+                .append("     SUM(actions > 2 AND actions <= 10) AS users_with_3_10_actions, ")
+                .append("     SUM(actions > 10 AND actions <= 100) AS users_with_11_100_actions, ")
+                .append("     SUM(actions > 100) AS users_with_101_and_more_actions ")
+                .append(" FROM ").append("     statistic_user ").append(" WHERE ").append("     tenantid = ? ")
                 .toString();
 
         UserStatistic u = getJdbcTemplate()
-                .queryForObject(sql, new Object[]{tenantId, tenantId, tenantId, tenantId, tenantId},
-                        new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER},
-                        userStatisticRowMapper);
+                .queryForObject(sql, new Object[]{tenantId}, new int[]{Types.INTEGER}, userStatisticRowMapper);
 
         return u;
 
@@ -287,6 +330,7 @@ public class StatisticsDAOMySql extends JdbcDaoSupport implements StatisticsDAO
     /**
      * Get Users Statistics for a given Tenant for the last X day.
      * The more day the longer the query need to execute.
+     * This query is not answered from the statistic tables.
      */
     public UserStatistic getUserStatistics(int tenantId, int days) {
 
@@ -346,20 +390,13 @@ public class StatisticsDAOMySql extends JdbcDaoSupport implements StatisticsDAO
 
         if (tenantId != null && buyActionTypeId != null) {
 
-            String sql = new StringBuilder().append(" SELECT COUNT(1) AS recommendationToBuyCount FROM ( ")
-                    .append("    SELECT ")
-                    .append("        itemId, userid ")
-                    .append(" FROM ")
-                    .append("    action WHERE itemTypeId = 1 AND actionTypeId = ? AND tenantid = ?) a ")
-                    .append(" INNER JOIN ")
-                    .append("   (SELECT itemToId, userid FROM backtracking WHERE tenantid= ?) b ")
-                    .append(" ON (a.itemId = b.itemToId AND a.userid= b.userid) ").toString();
+            String sql = new StringBuilder()
+                    .append(" SELECT COALESCE(SUM(conversions), 0) AS recommendationToBuyCount ")
+                    .append(" FROM statistic_conversion WHERE tenantId = ? AND actionTypeId = ? ").toString();
 
             ConversionStatistic c = getJdbcTemplate()
-                    .queryForObject(sql, new Object[]{buyActionTypeId, tenantId, tenantId},
-                            new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER
-
-                            }, conversionStatisticRowMapper);
+                    .queryForObject(sql, new Object[]{tenantId, buyActionTypeId},
+                            new int[]{Types.INTEGER, Types.INTEGER}, conversionStatisticRowMapper);
             return c;
         } else return new ConversionStatistic(0);
     }
@@ -371,11 +408,136 @@ public class StatisticsDAOMySql extends JdbcDaoSupport implements StatisticsDAO
         if (tenantId != null) {
 
             return getJdbcTemplate().queryForInt(
-                    " SELECT COUNT(1) FROM action WHERE MONTH(actionTime) = MONTH(now()) AND YEAR(actionTime) = YEAR(now()) AND tenantid = ? ",
+                    " SELECT COALESCE(SUM(actions), 0) FROM statistic_action_day WHERE tenantid = ? AND day >= DATE_FORMAT(now(), '%Y-%m-01') AND day < DATE_FORMAT(now() + INTERVAL 1 MONTH, '%Y-%m-01') ",
                     new Object[]{tenantId}, new int[]{Types.INTEGER});
         } else return 0;
     }
 
+    /**
+     * Counts the actions with ids up to <code>maxActions</code> above the last counted one and all
+     * backtracking entries, both stored at least the safety lag ago. The statistic tables and the
+     * watermark are updated in one transaction, the watermark row is locked so concurrent updates
+     * wait for each other.
+     */
+    public int updateStatistics(final int maxActions) {
+        if (maxActions <= 0) throw new IllegalArgumentException("'maxActions' must be greater than 0");
+
+        return getJdbcTemplate().execute(new ConnectionCallback<Integer>() {
+            public Integer doInConnection(Connection connection) throws SQLException, DataAccessException {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+
+                try {
+                    int counted = updateStatistics(connection, maxActions);
+                    connection.commit();
+
+                    return counted;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } catch (RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            }
+        });
+    }
+
+    private int updateStatistics(Connection connection, int maxActions) throws SQLException {
+        update(connection, "INSERT IGNORE INTO statistic_watermark (id) VALUES (1)");
+
+        long lastActionId;
+        Timestamp lastBacktrackingTime;
+        long maxActionId;
+        Timestamp now;
+        Timestamp backtrackingTime;
+
+        PreparedStatement statement = connection.prepareStatement(
+                "SELECT actionId, backtrackingTime, (SELECT COALESCE(MAX(id), 0) FROM action), NOW(), " +
+                        "NOW() - INTERVAL ? SECOND FROM statistic_watermark WHERE id = 1 FOR UPDATE");
+        ResultSet rs = null;
+
+        try {
+            statement.setInt(1, safetyLagSeconds);
+            rs = statement.executeQuery();
+            rs.next();
+
+            lastActionId = rs.getLong(1);
+            lastBacktrackingTime = rs.getTimestamp(2);
+            maxActionId = rs.getLong(3);
+            now = rs.getTimestamp(4);
+            backtrackingTime = rs.getTimestamp(5);
+        } finally {
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(statement);
+        }
+
+        // another instance may have counted further already
+        long safeActionId = Math.max(getSafeActionId(now, maxActionId, backtrackingTime), lastActionId);
+        long actionId = Math.min(safeActionId, lastActionId + maxActions);
+        if (backtrackingTime.before(lastBacktrackingTime)) backtrackingTime = lastBacktrackingTime;
+
+        // conversions first, they need the clicks counted before this update
+        update(connection, SQL_UPDATE_CONVERSION_OF_ACTIONS, lastActionId, actionId);
+        update(connection, SQL_UPDATE_CONVERSION_OF_CLICKS, lastBacktrackingTime, backtrackingTime, actionId);
+
+        update(connection, SQL_UPDATE_ACTION_DAY, lastActionId, actionId);
+        update(connection, SQL_UPDATE_ACTION_HOUR, lastActionId, actionId);
+        update(connection, SQL_UPDATE_USER, lastActionId, actionId);
+        update(connection, SQL_UPDATE_ITEM, lastActionId, actionId);
+        update(connection, SQL_UPDATE_BACKTRACKING_DAY, lastBacktrackingTime, backtrackingTime);
+        update(connection, SQL_UPDATE_CLICK, lastBacktrackingTime, backtrackingTime);
+
+        update(connection, "UPDATE statistic_watermark SET actionId = ?, backtrackingTime = ? WHERE id = 1",
+                actionId, backtrackingTime);
+
+        return (int) (actionId - lastActionId);
+    }
+
+    /**
+     * Adds a sample of the highest action id and returns the newest sample taken at or before <code>safeTime</code>,
+     * 0 if there is none.
+     */
+    private long getSafeActionId(Timestamp now, long maxActionId, Timestamp safeTime) {
+        synchronized (actionIdSamples) {
+            actionIdSamples.addLast(new ActionIdSample(now, maxActionId));
+
+            ActionIdSample safe = null;
+            while (!actionIdSamples.peekFirst().time.after(safeTime))
+                safe = actionIdSamples.pollFirst();
+
+            if (safe == null) return 0;
+
+            // the following updates may still need it
+            actionIdSamples.addFirst(safe);
+
+            return safe.actionId;
+        }
+    }
+
+    private static void update(Connection connection, String sql, Object... args) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+
+        try {
+            for (int i = 0; i < args.length; i++)
+                statement.setObject(i + 1, args[i]);
+
+            statement.executeUpdate();
+        } finally {
+            JdbcUtils.closeStatement(statement);
+        }
+    }
+
+    /**
+     * Removes the counted statistics of a tenant.
+     */
+    public void removeStatistics(int tenantId) {
+        for (String table : STATISTIC_TABLES)
+            getJdbcTemplate().update("DELETE FROM " + table + " WHERE tenantId = ?", new Object[]{tenantId},
+                    new int[]{Types.INTEGER});
+    }
 
     private static class AssocStatisticRowMapper implements RowMapper<AssocStatistic> {
         public AssocStatistic mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -418,4 +580,14 @@ public class StatisticsDAOMySql extends JdbcDaoSupport implements StatisticsDAO
             return new ConversionStatistic(rs.getInt("recommendationToBuyCount"));
         }
     }
+
+    private static final class ActionIdSample {
+        private final Timestamp time;
+        private final long actionId;
+
+        private ActionIdSample(Timestamp time, long actionId) {
+            this.time = time;
+            this.actionId = actionId;
+        }
+    }
 }
\ No newline at end of file
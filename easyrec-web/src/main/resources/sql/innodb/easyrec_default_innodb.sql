@@ -288,7 +288,8 @@ CREATE TABLE backtracking (
 	itemToId INT(10) UNSIGNED NOT NULL,
 	assocType INT(10) UNSIGNED NOT NULL,
 	timestamp DATETIME NOT NULL,
-	INDEX assoc (itemFromId, tenantId, assocType, itemToId)
+	INDEX assoc (itemFromId, tenantId, assocType, itemToId),
+	INDEX time (timestamp)
  ) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='Backtracking information about recommendations';
 
 DROP TABLE IF EXISTS plugin;
@@ -346,3 +347,100 @@ CREATE TABLE plugin_configuration (
   UNIQUE KEY unique_configuration (tenantId,assocTypeId,pluginId(250),pluginVersion,name(250)),
   KEY idx_tenantAssoc (tenantId,assocTypeId)
 ) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='store plugin configurations for tenants';
+
+--
+-- Pre-aggregated statistics of the administration pages, updated from the action and backtracking table by the
+-- statistics updater (see StatisticsDAOMySql). The tables are transactional so an update is counted exactly once.
+-- Actions and clicks are counted once they are older than the safety lag of the updater
+--
+
+DROP TABLE IF EXISTS statistic_action_day;
+CREATE TABLE statistic_action_day (
+  tenantId int(11) NOT NULL,
+  actionTypeId int(11) NOT NULL,
+  day date NOT NULL,
+  actions int(11) unsigned NOT NULL DEFAULT '0',
+  PRIMARY KEY (tenantId,day,actionTypeId)
+) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='Number of actions per tenant, action type and day';
+
+DROP TABLE IF EXISTS statistic_action_hour;
+CREATE TABLE statistic_action_hour (
+  tenantId int(11) NOT NULL,
+  actionTypeId int(11) NOT NULL,
+  hour datetime NOT NULL,
+  actions int(11) unsigned NOT NULL DEFAULT '0',
+  PRIMARY KEY (tenantId,hour,actionTypeId)
+) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='Number of actions per tenant, action type and hour';
+
+DROP TABLE IF EXISTS statistic_backtracking_day;
+CREATE TABLE statistic_backtracking_day (
+  tenantId int(10) unsigned NOT NULL,
+  assocType int(10) unsigned NOT NULL,
+  day date NOT NULL,
+  clicks int(11) unsigned NOT NULL DEFAULT '0',
+  PRIMARY KEY (tenantId,day,assocType)
+) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='Number of clicks on recommendations per tenant, assoc type and day';
+
+DROP TABLE IF EXISTS statistic_user;
+CREATE TABLE statistic_user (
+  tenantId int(11) NOT NULL,
+  userId int(11) NOT NULL,
+  actions int(11) unsigned NOT NULL DEFAULT '0',
+  PRIMARY KEY (tenantId,userId)
+) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='Number of actions per tenant and user';
+
+DROP TABLE IF EXISTS statistic_item;
+CREATE TABLE statistic_item (
+  tenantId int(11) NOT NULL,
+  itemTypeId int(11) NOT NULL,
+  itemId int(11) NOT NULL,
+  actions int(11) unsigned NOT NULL DEFAULT '0',
+  PRIMARY KEY (tenantId,itemTypeId,itemId),
+  KEY popular (tenantId,actions)
+) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='Number of actions per tenant and item';
+
+DROP TABLE IF EXISTS statistic_click;
+CREATE TABLE statistic_click (
+  tenantId int(10) unsigned NOT NULL,
+  userId int(10) unsigned NOT NULL,
+  itemId int(10) unsigned NOT NULL,
+  clicks int(11) unsigned NOT NULL DEFAULT '0',
+  PRIMARY KEY (tenantId,userId,itemId)
+) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='Number of clicks on recommended items per tenant, user and item';
+
+DROP TABLE IF EXISTS statistic_conversion;
+CREATE TABLE statistic_conversion (
+  tenantId int(11) NOT NULL,
+  actionTypeId int(11) NOT NULL,
+  conversions bigint(20) unsigned NOT NULL DEFAULT '0',
+  PRIMARY KEY (tenantId,actionTypeId)
+) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='Number of actions on items clicked as recommendation before';
+
+DROP TABLE IF EXISTS statistic_watermark;
+CREATE TABLE statistic_watermark (
+  id tinyint(1) unsigned NOT NULL,
+  actionId int(11) unsigned NOT NULL DEFAULT '0',
+  backtrackingTime datetime NOT NULL DEFAULT '1970-01-01 00:00:00',
+  PRIMARY KEY (id)
+) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='Last action and backtracking time counted in the statistic tables';
+
+INSERT INTO statistic_watermark (id) VALUES (1);
+
+DROP TABLE IF EXISTS profile_index;
+CREATE TABLE profile_index (
+  tenantId int(11) NOT NULL,
+  itemtype varchar(20) NOT NULL,
+  itemid varchar(250) NOT NULL,
+  dimension varchar(250) NOT NULL,
+  position int(11) NOT NULL,
+  value varchar(250) NOT NULL,
+  PRIMARY KEY (tenantId,itemtype,itemid,dimension,position),
+  KEY dimension_value (tenantId,dimension,value,itemtype)
+) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='Values of the indexed profile dimensions per item';
+
+DROP TABLE IF EXISTS profile_index_dimension;
+CREATE TABLE profile_index_dimension (
+  tenantId int(11) NOT NULL,
+  dimension varchar(250) NOT NULL,
+  PRIMARY KEY (tenantId,dimension)
+) ENGINE=InnoDb DEFAULT CHARSET=latin1 COMMENT='Dimensions whose profile index was built from all profiles of a tenant';
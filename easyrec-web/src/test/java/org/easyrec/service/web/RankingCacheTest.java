@@ -0,0 +1,185 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.web;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import org.easyrec.model.core.web.Item;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class RankingCacheTest {
+
+    private CacheManager cacheManager;
+    private RankingCache rankingCache;
+
+    @Before
+    public void createCache() {
+        Cache cache = new Cache("RANKING_CACHE_TEST", 100, false, false, 3600, 0);
+
+        cacheManager = new CacheManager();
+        cacheManager.addCache(cache);
+        rankingCache = new RankingCache(cache);
+    }
+
+    @After
+    public void shutdownCache() {
+        rankingCache.shutdown();
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void get_loadsOnce() {
+        CountingLoader loader = new CountingLoader();
+        RankingCache.Key key = key(1, "ITEM");
+
+        List<Item> items = rankingCache.get(key, loader);
+
+        assertThat(rankingCache.get(key, loader), is(sameInstance(items)));
+        assertThat(rankingCache.get(key(1, "ITEM"), loader), is(sameInstance(items)));
+        assertThat(loader.loads.get(), is(1));
+
+        RankingCache.Statistics statistics = rankingCache.getStatistics(RankingCache.Ranking.MOST_VIEWED);
+        assertThat(statistics.getMisses(), is(1L));
+        assertThat(statistics.getHits(), is(2L));
+        assertThat(statistics.getLoads(), is(1L));
+        assertThat(rankingCache.getStatistics(RankingCache.Ranking.MOST_BOUGHT).getLoads(), is(0L));
+    }
+
+    @Test
+    public void get_concurrentMissesLoadOnce() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final RankingCache.Loader loader = new RankingCache.Loader() {
+            public List<Item> load() {
+                loads.incrementAndGet();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ArrayList<Item>();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<Item>>> results = new ArrayList<Future<List<Item>>>();
+
+        try {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<List<Item>>() {
+                    public List<Item> call() {
+                        return rankingCache.get(key(1, "ITEM"), loader);
+                    }
+                }));
+            }
+
+            Thread.sleep(200);
+            release.countDown();
+
+            for (Future<List<Item>> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS), is(sameInstance(results.get(0).get())));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    public void invalidate_tenant() {
+        CountingLoader loader = new CountingLoader();
+
+        List<Item> tenant1 = rankingCache.get(key(1, "ITEM"), loader);
+        List<Item> tenant2 = rankingCache.get(key(2, "ITEM"), loader);
+
+        rankingCache.invalidate(1);
+
+        assertThat(rankingCache.get(key(1, "ITEM"), loader), is(not(sameInstance(tenant1))));
+        assertThat(rankingCache.get(key(2, "ITEM"), loader), is(sameInstance(tenant2)));
+        assertThat(loader.loads.get(), is(3));
+    }
+
+    @Test
+    public void invalidate_itemType() {
+        CountingLoader loader = new CountingLoader();
+
+        List<Item> item = rankingCache.get(key(1, "ITEM"), loader);
+        List<Item> book = rankingCache.get(key(1, "BOOK"), loader);
+        List<Item> all = rankingCache.get(key(1, null), loader);
+
+        rankingCache.invalidate(1, "ITEM");
+
+        assertThat(rankingCache.get(key(1, "ITEM"), loader), is(not(sameInstance(item))));
+        assertThat(rankingCache.get(key(1, "BOOK"), loader), is(sameInstance(book)));
+        assertThat(rankingCache.get(key(1, null), loader), is(not(sameInstance(all))));
+    }
+
+    @Test
+    public void get_refreshesStaleRanking() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        rankingCache.setRefreshSeconds(1);
+
+        List<Item> items = rankingCache.get(key(1, "ITEM"), loader);
+
+        Thread.sleep(1100);
+
+        // the stale ranking is served while it is reloaded in the background
+        assertThat(rankingCache.get(key(1, "ITEM"), loader), is(sameInstance(items)));
+
+        for (int i = 0; i < 100 && loader.loads.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+
+        assertThat(loader.loads.get(), is(2));
+        assertThat(rankingCache.get(key(1, "ITEM"), loader), is(not(sameInstance(items))));
+        assertThat(rankingCache.getStatistics(RankingCache.Ranking.MOST_VIEWED).getStaleHits(), is(1L));
+    }
+
+    private static RankingCache.Key key(int tenantId, String itemType) {
+        return new RankingCache.Key(RankingCache.Ranking.MOST_VIEWED, tenantId, itemType, null, "ALL");
+    }
+
+    private static class CountingLoader implements RankingCache.Loader {
+        private final AtomicInteger loads = new AtomicInteger();
+
+        public List<Item> load() {
+            loads.incrementAndGet();
+            return new ArrayList<Item>();
+        }
+    }
+}